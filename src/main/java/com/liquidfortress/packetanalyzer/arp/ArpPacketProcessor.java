@@ -21,15 +21,16 @@
 package com.liquidfortress.packetanalyzer.arp;
 
 import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import org.apache.logging.log4j.core.Logger;
 import org.pcap4j.packet.ArpPacket;
 import org.pcap4j.packet.IllegalRawDataException;
-import org.pcap4j.packet.Packet;
 import org.pcap4j.packet.namednumber.ArpOperation;
 import org.pcap4j.util.MacAddress;
 
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 
 /**
  * ArpPacketProcessor
@@ -40,13 +41,19 @@ public class ArpPacketProcessor {
     private static Logger log = Main.log;
 
 
-    public static void processArpPacket(Packet packet, PcapFileSummary pcapFileSummary) {
-        if (packet == null) {
+    public static void processArpPacket(ByteBuffer packetData, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        int length = packetData.limit() - packetInfo.networkOffset;
+        if (length <= 0) {
             return; // skip empty packets
         }
         log.trace("Converting to ARP packet");
         try {
-            ArpPacket arpPacket = ArpPacket.newPacket(packet.getRawData(), 0, packet.length());
+            // ARP is inspected with Pcap4j, so it gets its own copy of the bytes
+            byte[] rawData = new byte[length];
+            ByteBuffer arpData = packetData.duplicate();
+            arpData.position(packetInfo.networkOffset);
+            arpData.get(rawData);
+            ArpPacket arpPacket = ArpPacket.newPacket(rawData, 0, length);
             ArpPacket.ArpHeader arpHeader = arpPacket.getHeader();
             ArpOperation arpOperation = arpHeader.getOperation();
             InetAddress sourceIp = arpHeader.getSrcProtocolAddr();
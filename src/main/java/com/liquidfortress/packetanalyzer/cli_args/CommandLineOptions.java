@@ -35,6 +35,23 @@ public class CommandLineOptions {
     public static final String MODE = "mode";
     public static final String OUTPUT_FILE = "output-file";
     public static final String INPUT_FILES = "input-files";
+    public static final String LIBPCAP = "libpcap";
+    public static final String THREADS = "threads";
+    public static final String COMBINED = "combined";
+    public static final String SHARDS = "shards";
+    public static final String REPORT_INTERVAL = "report-interval";
+    public static final String FOLLOW = "follow";
+    public static final String FROM = "from";
+    public static final String TO = "to";
+    public static final String FILTER = "filter";
+    public static final String APPROXIMATE = "approximate";
+    public static final String FLOW_CAPACITY = "flow-capacity";
+    public static final String IDLE_TIMEOUT = "idle-timeout";
+    public static final String FLOW_TIMEOUT = "flow-timeout";
+    public static final String FLOW_STORE = "flow-store";
+    public static final String BUFFER_CONNECTIONS = "buffer-connections";
+    public static final String MAX_INCIDENTS = "max-incidents";
+    public static final String STANDARD_INPUT = "-"; // input file name that reads from stdin
     public static final String SILENT = "silent";
     public static final String VERBOSE = "verbose";
     public static final String HELP = "help";
@@ -98,10 +115,155 @@ public class CommandLineOptions {
                 .longOpt(INPUT_FILES)
                 .hasArgs()
                 .argName("INPUT_FILES")
-                .desc("Input files in tcpdump / pcap format")
+                .desc("Input files in tcpdump / pcap format, optionally gzip or zstd compressed.  Named pipes " +
+                        "are read as streams, and - reads a pcap stream from standard input")
                 .build();
         options.addOption(inputFiles);
 
+        Option libpcap = Option.builder("l")
+                .longOpt(LIBPCAP)
+                .desc("Read input files through libpcap instead of the built-in memory-mapped reader")
+                .build();
+        options.addOption(libpcap);
+
+        Option threads = Option.builder("t")
+                .longOpt(THREADS)
+                .hasArg()
+                .argName("THREADS")
+                .type(Integer.class)
+                .desc("Number of input files to process concurrently (default: 1)")
+                .build();
+        options.addOption(threads);
+
+        Option shards = Option.builder("p")
+                .longOpt(SHARDS)
+                .hasArg()
+                .argName("SHARDS")
+                .type(Integer.class)
+                .desc("Split each input file across this many flow shards, each with its own decode and " +
+                        "processing thread (default: 1).  Mode 3 always runs on a single shard.")
+                .build();
+        options.addOption(shards);
+
+        Option reportInterval = Option.builder("r")
+                .longOpt(REPORT_INTERVAL)
+                .hasArg()
+                .argName("PACKETS")
+                .type(Long.class)
+                .desc("Print a progress report every PACKETS packets while an input is being read.  " +
+                        "In mode 3 the report lists the attacks detected since the previous one")
+                .build();
+        options.addOption(reportInterval);
+
+        Option combined = Option.builder("c")
+                .longOpt(COMBINED)
+                .desc("After the per-file reports, print one report combining all input files")
+                .build();
+        options.addOption(combined);
+
+        Option follow = Option.builder("w")
+                .longOpt(FOLLOW)
+                .desc("Keep reading the input as it grows until stopped with Ctrl-C.  The input is a single pcap " +
+                        "file, or a directory of rotated captures in which the newest file is followed and each " +
+                        "newer file is picked up as it appears")
+                .build();
+        options.addOption(follow);
+
+        Option from = Option.builder()
+                .longOpt(FROM)
+                .hasArg()
+                .argName("TIME")
+                .desc("Only analyze packets captured at or after TIME, given as seconds since the epoch or as an " +
+                        "ISO-8601 instant such as 2017-07-14T02:40:00Z.  Plain pcap files are read through a " +
+                        "sidecar index (<file>.lfpaidx), which is built on first use; followed captures are " +
+                        "filtered record by record instead")
+                .build();
+        options.addOption(from);
+
+        Option to = Option.builder()
+                .longOpt(TO)
+                .hasArg()
+                .argName("TIME")
+                .desc("Only analyze packets captured before TIME")
+                .build();
+        options.addOption(to);
+
+        Option filter = Option.builder("x")
+                .longOpt(FILTER)
+                .hasArg()
+                .argName("EXPRESSION")
+                .desc("Only analyze packets matching EXPRESSION, e.g. \"tcp and net 10.0.0.0/8 and not port 22\".  " +
+                        "Terms: ip, ip6, arp, tcp, udp, icmp, icmp6, proto N, ether proto N, [src|dst] host ADDRESS, " +
+                        "[src|dst] net ADDRESS/PREFIX, [src|dst] port N, [src|dst] portrange N-M; combined with " +
+                        "and, or, not and parentheses.  Other packets are skipped before decoding and not counted")
+                .build();
+        options.addOption(filter);
+
+        Option approximate = Option.builder("a")
+                .longOpt(APPROXIMATE)
+                .hasArg()
+                .optionalArg(true)
+                .argName("PRECISION")
+                .type(Integer.class)
+                .desc("Estimate the unique IP address and UDP source counts with fixed-size HyperLogLog sketches " +
+                        "of 2^PRECISION registers instead of keeping every address.  PRECISION is from 4 to 18 " +
+                        "(default: 14, about 0.8% standard error); the reports show the standard error")
+                .build();
+        options.addOption(approximate);
+
+        Option flowCapacity = Option.builder()
+                .longOpt(FLOW_CAPACITY)
+                .hasArg()
+                .argName("CONNECTIONS")
+                .type(Integer.class)
+                .desc("Most TCP connections tracked at once per input (default: 1048576).  When the flow table " +
+                        "is full, a least recently seen connection is expired to make room")
+                .build();
+        options.addOption(flowCapacity);
+
+        Option idleTimeout = Option.builder()
+                .longOpt(IDLE_TIMEOUT)
+                .hasArg()
+                .argName("SECONDS")
+                .desc("Expire a TCP connection that has seen no packets for SECONDS of capture time (default: 300)")
+                .build();
+        options.addOption(idleTimeout);
+
+        Option flowTimeout = Option.builder()
+                .longOpt(FLOW_TIMEOUT)
+                .hasArg()
+                .argName("SECONDS")
+                .desc("Expire a TCP connection that has been open for SECONDS of capture time (default: 7200).  " +
+                        "Expired connections are listed separately in mode 2")
+                .build();
+        options.addOption(flowTimeout);
+
+        Option flowStore = Option.builder()
+                .longOpt(FLOW_STORE)
+                .hasArg()
+                .argName("STORE")
+                .desc("Where the TCP flow table keeps connection state: heap (default), direct (fixed-size slots " +
+                        "in direct buffers, outside the Java heap) or mapped (slots in memory-mapped temporary files, " +
+                        "which the operating system can page out)")
+                .build();
+        options.addOption(flowStore);
+
+        Option bufferConnections = Option.builder()
+                .longOpt(BUFFER_CONNECTIONS)
+                .desc("Keep closed and expired TCP connections in memory until the mode 2 report, instead of " +
+                        "streaming them to temporary files as they close")
+                .build();
+        options.addOption(bufferConnections);
+
+        Option maxIncidents = Option.builder()
+                .longOpt(MAX_INCIDENTS)
+                .hasArg()
+                .argName("INCIDENTS")
+                .desc("Track at most INCIDENTS open attacks of each kind in mode 3 (default: 1024).  Attacks " +
+                        "detected while the limit is reached are counted but not reported")
+                .build();
+        options.addOption(maxIncidents);
+
         Option silent = Option.builder("s")
                 .longOpt(SILENT)
                 .desc("Do not print output to the console")
@@ -20,13 +20,20 @@
 
 package com.liquidfortress.packetanalyzer.cli_args;
 
+import com.liquidfortress.packetanalyzer.filter.PacketFilterCompiler;
 import com.liquidfortress.packetanalyzer.main.Mode;
+import com.liquidfortress.packetanalyzer.statistics.HyperLogLog;
+import com.liquidfortress.packetanalyzer.tcp.FlowStorage;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.ParseException;
 
 import java.io.File;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.LinkedList;
 
 /**
@@ -66,7 +73,9 @@ public class CommandLineValidator {
             for (String inputFileStr : inputFileStrings) {
                 // TODO: if no path separator is in the inputFile String, assume current directory as path and append it
                 File input = new File(inputFileStr);
-                if ((!input.exists()) || (!input.canRead())) {
+                if (CommandLineOptions.STANDARD_INPUT.equals(inputFileStr)) {
+                    validatedArgs.inputFiles.add(input);
+                } else if ((!input.exists()) || (!input.canRead())) {
                     System.out.println("Input file: " + inputFileStr + " does not exist or cannot be read!");
                     return false;
                 } else {
@@ -78,6 +87,107 @@ public class CommandLineValidator {
         return false;
     }
 
+    private static boolean isThreadsValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        try {
+            validatedArgs.threads = Integer.valueOf(commandLine.getOptionValue(CommandLineOptions.THREADS));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return validatedArgs.threads > 0;
+    }
+
+    private static boolean areShardsValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        try {
+            validatedArgs.shards = Integer.valueOf(commandLine.getOptionValue(CommandLineOptions.SHARDS));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return validatedArgs.shards > 0;
+    }
+
+    private static boolean isReportIntervalValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        try {
+            validatedArgs.reportInterval = Long.valueOf(commandLine.getOptionValue(CommandLineOptions.REPORT_INTERVAL));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return validatedArgs.reportInterval > 0;
+    }
+
+    private static boolean isApproximatePrecisionValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        validatedArgs.approximatePrecision = HyperLogLog.DEFAULT_PRECISION;
+        String precision = commandLine.getOptionValue(CommandLineOptions.APPROXIMATE);
+        if (precision != null) {
+            try {
+                validatedArgs.approximatePrecision = Integer.valueOf(precision);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return (validatedArgs.approximatePrecision >= HyperLogLog.MIN_PRECISION) &&
+                (validatedArgs.approximatePrecision <= HyperLogLog.MAX_PRECISION);
+    }
+
+    // capacity and timeouts of the TCP flow table; timeouts are seconds of capture time, with an optional fraction
+    private static boolean isFlowTableValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        try {
+            if (commandLine.hasOption(CommandLineOptions.FLOW_CAPACITY)) {
+                validatedArgs.flowCapacity = Integer.valueOf(commandLine.getOptionValue(CommandLineOptions.FLOW_CAPACITY));
+            }
+            if (commandLine.hasOption(CommandLineOptions.IDLE_TIMEOUT)) {
+                validatedArgs.idleTimeoutNanos = parseTime(commandLine.getOptionValue(CommandLineOptions.IDLE_TIMEOUT));
+            }
+            if (commandLine.hasOption(CommandLineOptions.FLOW_TIMEOUT)) {
+                validatedArgs.absoluteTimeoutNanos = parseTime(commandLine.getOptionValue(CommandLineOptions.FLOW_TIMEOUT));
+            }
+        } catch (NumberFormatException | DateTimeParseException | ArithmeticException e) {
+            return false;
+        }
+        return (validatedArgs.flowCapacity > 0) && (validatedArgs.idleTimeoutNanos > 0) && (validatedArgs.absoluteTimeoutNanos > 0);
+    }
+
+    private static boolean isFlowStoreValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        try {
+            validatedArgs.flowStorage = FlowStorage.valueOf(commandLine.getOptionValue(CommandLineOptions.FLOW_STORE).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isMaxIncidentsValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        try {
+            validatedArgs.maxIncidents = Integer.valueOf(commandLine.getOptionValue(CommandLineOptions.MAX_INCIDENTS));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return validatedArgs.maxIncidents > 0;
+    }
+
+    // seconds since the epoch (with an optional fraction) or an ISO-8601 instant, in nanoseconds since the epoch
+    static long parseTime(String time) {
+        try {
+            return new BigDecimal(time).movePointRight(9).setScale(0, RoundingMode.FLOOR).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            Instant instant = Instant.parse(time);
+            return (instant.getEpochSecond() * 1000000000L) + instant.getNano();
+        }
+    }
+
+    private static boolean isTimeRangeValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        try {
+            if (commandLine.hasOption(CommandLineOptions.FROM)) {
+                validatedArgs.fromNanos = parseTime(commandLine.getOptionValue(CommandLineOptions.FROM));
+            }
+            if (commandLine.hasOption(CommandLineOptions.TO)) {
+                validatedArgs.toNanos = parseTime(commandLine.getOptionValue(CommandLineOptions.TO));
+            }
+        } catch (DateTimeParseException | ArithmeticException e) {
+            return false;
+        }
+        return validatedArgs.fromNanos < validatedArgs.toNanos;
+    }
+
     private static boolean isOutputFileValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
         String outputFileStr = commandLine.getOptionValue(CommandLineOptions.OUTPUT_FILE);
         // TODO: if no path separator is in the outputFile String, assume current directory as path and append it
@@ -115,6 +225,91 @@ public class CommandLineValidator {
                 CommandLineOptions.printHelp();
                 System.exit(-3);
             }
+            // libpcap
+            if (commandLine.hasOption(CommandLineOptions.LIBPCAP)) {
+                validatedArgs.useLibpcap = true;
+            }
+            // threads
+            if (commandLine.hasOption(CommandLineOptions.THREADS) && !isThreadsValid(commandLine, validatedArgs)) {
+                System.out.println("Threads is not valid!  It must be a positive number.");
+                CommandLineOptions.printHelp();
+                System.exit(-5);
+            }
+            // shards
+            if (commandLine.hasOption(CommandLineOptions.SHARDS) && !areShardsValid(commandLine, validatedArgs)) {
+                System.out.println("Shards is not valid!  It must be a positive number.");
+                CommandLineOptions.printHelp();
+                System.exit(-6);
+            }
+            // report interval
+            if (commandLine.hasOption(CommandLineOptions.REPORT_INTERVAL) && !isReportIntervalValid(commandLine, validatedArgs)) {
+                System.out.println("Report interval is not valid!  It must be a positive number of packets.");
+                CommandLineOptions.printHelp();
+                System.exit(-7);
+            }
+            // combined
+            if (commandLine.hasOption(CommandLineOptions.COMBINED)) {
+                validatedArgs.combined = true;
+            }
+            // time range
+            if ((commandLine.hasOption(CommandLineOptions.FROM) || commandLine.hasOption(CommandLineOptions.TO)) &&
+                    !isTimeRangeValid(commandLine, validatedArgs)) {
+                System.out.println("Time range is not valid!  Times are seconds since the epoch or ISO-8601 instants, and from must be before to.");
+                CommandLineOptions.printHelp();
+                System.exit(-10);
+            }
+            // filter
+            if (commandLine.hasOption(CommandLineOptions.FILTER)) {
+                validatedArgs.filter = commandLine.getOptionValue(CommandLineOptions.FILTER);
+                try {
+                    validatedArgs.packetFilter = PacketFilterCompiler.compile(validatedArgs.filter);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Filter is not valid: " + e.getMessage());
+                    CommandLineOptions.printHelp();
+                    System.exit(-11);
+                }
+            }
+            // approximate
+            if (commandLine.hasOption(CommandLineOptions.APPROXIMATE) && !isApproximatePrecisionValid(commandLine, validatedArgs)) {
+                System.out.println("Approximate precision is not valid!  It must be from " + HyperLogLog.MIN_PRECISION +
+                        " to " + HyperLogLog.MAX_PRECISION + ".");
+                CommandLineOptions.printHelp();
+                System.exit(-12);
+            }
+            // flow table
+            if ((commandLine.hasOption(CommandLineOptions.FLOW_CAPACITY) || commandLine.hasOption(CommandLineOptions.IDLE_TIMEOUT) ||
+                    commandLine.hasOption(CommandLineOptions.FLOW_TIMEOUT)) && !isFlowTableValid(commandLine, validatedArgs)) {
+                System.out.println("Flow table settings are not valid!  Capacity must be a positive number of connections, " +
+                        "and timeouts a positive number of seconds.");
+                CommandLineOptions.printHelp();
+                System.exit(-13);
+            }
+            // flow store
+            if (commandLine.hasOption(CommandLineOptions.FLOW_STORE) && !isFlowStoreValid(commandLine, validatedArgs)) {
+                System.out.println("Flow store is not valid!  It must be heap, direct, or mapped.");
+                CommandLineOptions.printHelp();
+                System.exit(-14);
+            }
+            // max incidents
+            if (commandLine.hasOption(CommandLineOptions.MAX_INCIDENTS) && !isMaxIncidentsValid(commandLine, validatedArgs)) {
+                System.out.println("Max incidents is not valid!  It must be a positive number of attacks.");
+                CommandLineOptions.printHelp();
+                System.exit(-15);
+            }
+            // follow
+            if (commandLine.hasOption(CommandLineOptions.FOLLOW)) {
+                validatedArgs.follow = true;
+                if ((validatedArgs.inputFiles.size() != 1) ||
+                        CommandLineOptions.STANDARD_INPUT.equals(validatedArgs.inputFiles.getFirst().getPath())) {
+                    System.out.println("Follow needs exactly one input file or directory, and it cannot be standard input!");
+                    CommandLineOptions.printHelp();
+                    System.exit(-8);
+                }
+            }
+            // buffer connections
+            if (commandLine.hasOption(CommandLineOptions.BUFFER_CONNECTIONS)) {
+                validatedArgs.bufferConnections = true;
+            }
             // silent
             if (commandLine.hasOption(CommandLineOptions.SILENT)) {
                 validatedArgs.silent = true;
@@ -20,7 +20,11 @@
 
 package com.liquidfortress.packetanalyzer.cli_args;
 
+import com.liquidfortress.packetanalyzer.filter.PacketFilter;
 import com.liquidfortress.packetanalyzer.main.Mode;
+import com.liquidfortress.packetanalyzer.pcap_file.AttackTable;
+import com.liquidfortress.packetanalyzer.tcp.ActiveTcpConnections;
+import com.liquidfortress.packetanalyzer.tcp.FlowStorage;
 
 import java.io.File;
 import java.util.LinkedList;
@@ -35,6 +39,23 @@ public class ValidatedArgs {
     public Mode mode;
     public LinkedList<File> inputFiles;
     public File outputFile = null;
+    public boolean useLibpcap = false;
+    public int threads = 1;
+    public int shards = 1;
+    public long reportInterval = 0; // packets; 0 means report only at the end of each input
+    public boolean combined = false;
+    public boolean follow = false;
+    public long fromNanos = Long.MIN_VALUE; // capture time range to analyze, in nanoseconds since the epoch
+    public long toNanos = Long.MAX_VALUE;
+    public String filter = null;
+    public PacketFilter packetFilter = null; // compiled from filter
+    public int approximatePrecision = 0; // HyperLogLog precision for unique counts; 0 means exact counts
+    public int flowCapacity = ActiveTcpConnections.DEFAULT_CAPACITY; // TCP connections tracked at once
+    public long idleTimeoutNanos = ActiveTcpConnections.DEFAULT_IDLE_TIMEOUT;
+    public long absoluteTimeoutNanos = ActiveTcpConnections.DEFAULT_ABSOLUTE_TIMEOUT;
+    public FlowStorage flowStorage = FlowStorage.HEAP; // where the TCP flow table keeps connection state
+    public boolean bufferConnections = false; // keep closed TCP connections in memory instead of spooling them
+    public int maxIncidents = AttackTable.DEFAULT_MAX_INCIDENTS; // open attacks tracked at once by each detector
     public boolean silent = false;
     public boolean verbose = false;
 
@@ -44,6 +65,22 @@ public class ValidatedArgs {
                 "mode=" + mode +
                 ", inputFiles=" + inputFiles +
                 ", outputFile=" + outputFile +
+                ", useLibpcap=" + useLibpcap +
+                ", threads=" + threads +
+                ", shards=" + shards +
+                ", reportInterval=" + reportInterval +
+                ", combined=" + combined +
+                ", follow=" + follow +
+                ", fromNanos=" + fromNanos +
+                ", toNanos=" + toNanos +
+                ", filter=" + filter +
+                ", approximatePrecision=" + approximatePrecision +
+                ", flowCapacity=" + flowCapacity +
+                ", idleTimeoutNanos=" + idleTimeoutNanos +
+                ", absoluteTimeoutNanos=" + absoluteTimeoutNanos +
+                ", flowStorage=" + flowStorage +
+                ", bufferConnections=" + bufferConnections +
+                ", maxIncidents=" + maxIncidents +
                 ", silent=" + silent +
                 ", verbose=" + verbose +
                 '}';
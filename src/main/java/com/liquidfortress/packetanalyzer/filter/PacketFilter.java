@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.filter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PacketFilter
+ * <p/>
+ * Predicate over the raw bytes of an Ethernet frame, from the buffer's
+ * position to its limit.  It reads fixed offsets only and neither decodes
+ * the frame nor changes the buffer's position.
+ */
+@FunctionalInterface
+public interface PacketFilter {
+
+    boolean test(ByteBuffer frame);
+
+    default PacketFilter and(PacketFilter other) {
+        return (ByteBuffer frame) -> test(frame) && other.test(frame);
+    }
+
+    default PacketFilter or(PacketFilter other) {
+        return (ByteBuffer frame) -> test(frame) || other.test(frame);
+    }
+
+    default PacketFilter negate() {
+        return (ByteBuffer frame) -> !test(frame);
+    }
+}
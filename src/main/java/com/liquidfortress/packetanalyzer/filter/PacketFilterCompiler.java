@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.filter;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PacketFilterCompiler
+ * <p/>
+ * Compiles a --filter expression into a PacketFilter built from composed
+ * lambdas over fixed frame offsets.  The grammar is a small subset of
+ * tcpdump's:
+ * <pre>
+ *   expression := and ( ("or" | "||") and )*
+ *   and        := not ( [ "and" | "&amp;&amp;" ] not )*
+ *   not        := ("not" | "!") not | "(" expression ")" | term
+ *   term       := "ip" | "ip6" | "arp" | "tcp" | "udp" | "icmp" | "icmp6"
+ *               | "proto" NUMBER | "ether" "proto" NUMBER
+ *               | [ "src" | "dst" ] "host" ADDRESS
+ *               | [ "src" | "dst" ] "net" ADDRESS "/" PREFIX
+ *               | [ "src" | "dst" ] "port" NUMBER
+ *               | [ "src" | "dst" ] "portrange" NUMBER "-" NUMBER
+ * </pre>
+ * Juxtaposed terms are and-ed, so "tcp port 80" means "tcp and port 80".
+ * Ports match TCP and UDP only, and not in non-first IPv4 fragments.
+ * IPv6 extension headers are not followed.
+ */
+public class PacketFilterCompiler {
+    // offsets from the start of the frame
+    private static final int ETHERTYPE = 12;
+    private static final int NETWORK = 14;
+    private static final int IPV4_PROTOCOL = NETWORK + 9;
+    private static final int IPV4_FRAGMENT = NETWORK + 6;
+    private static final int IPV4_SOURCE = NETWORK + 12;
+    private static final int IPV4_DESTINATION = NETWORK + 16;
+    private static final int IPV4_MIN_END = NETWORK + 20;
+    private static final int IPV6_NEXT_HEADER = NETWORK + 6;
+    private static final int IPV6_SOURCE = NETWORK + 8;
+    private static final int IPV6_DESTINATION = NETWORK + 24;
+    private static final int IPV6_TRANSPORT = NETWORK + 40;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_ARP = 0x0806;
+    private static final int ETHERTYPE_IPV6 = 0x86dd;
+    private static final int PROTOCOL_ICMPV4 = 1;
+    private static final int PROTOCOL_TCP = 6;
+    private static final int PROTOCOL_UDP = 17;
+    private static final int PROTOCOL_ICMPV6 = 58;
+
+    private enum Direction {SOURCE, DESTINATION, EITHER}
+
+    private final List<String> tokens;
+    private int next = 0;
+
+    private PacketFilterCompiler(String expression) {
+        this.tokens = tokenize(expression);
+    }
+
+    // throws IllegalArgumentException with a description of the problem if the expression is not valid
+    public static PacketFilter compile(String expression) {
+        PacketFilterCompiler compiler = new PacketFilterCompiler(expression);
+        if (compiler.tokens.isEmpty()) {
+            throw new IllegalArgumentException("the filter expression is empty");
+        }
+        PacketFilter packetFilter = compiler.parseOr();
+        if (compiler.next < compiler.tokens.size()) {
+            throw new IllegalArgumentException("unexpected '" + compiler.tokens.get(compiler.next) + "'");
+        }
+        return packetFilter;
+    }
+
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if ((c == '(') || (c == ')') || (c == '!')) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (expression.startsWith("&&", i) || expression.startsWith("||", i)) {
+                tokens.add(expression.substring(i, i + 2));
+                i += 2;
+            } else {
+                int start = i;
+                while ((i < expression.length()) && !Character.isWhitespace(expression.charAt(i)) &&
+                        ("()!&|".indexOf(expression.charAt(i)) < 0)) {
+                    i++;
+                }
+                tokens.add(expression.substring(start, i).toLowerCase());
+            }
+        }
+        return tokens;
+    }
+
+    private String peek() {
+        return (next < tokens.size()) ? tokens.get(next) : null;
+    }
+
+    private String take(String what) {
+        if (next >= tokens.size()) {
+            throw new IllegalArgumentException("expected " + what + " at the end of the filter expression");
+        }
+        return tokens.get(next++);
+    }
+
+    private PacketFilter parseOr() {
+        PacketFilter packetFilter = parseAnd();
+        while ("or".equals(peek()) || "||".equals(peek())) {
+            next++;
+            packetFilter = packetFilter.or(parseAnd());
+        }
+        return packetFilter;
+    }
+
+    private PacketFilter parseAnd() {
+        PacketFilter packetFilter = parseNot();
+        while (true) {
+            String token = peek();
+            if ("and".equals(token) || "&&".equals(token)) {
+                next++;
+            } else if ((token == null) || token.equals(")") || token.equals("or") || token.equals("||")) {
+                return packetFilter;
+            }
+            packetFilter = packetFilter.and(parseNot());
+        }
+    }
+
+    private PacketFilter parseNot() {
+        String token = take("a filter term");
+        if (token.equals("not") || token.equals("!")) {
+            return parseNot().negate();
+        }
+        if (token.equals("(")) {
+            PacketFilter packetFilter = parseOr();
+            if (!")".equals(take("')'"))) {
+                throw new IllegalArgumentException("expected ')' after '" + tokens.get(next - 2) + "'");
+            }
+            return packetFilter;
+        }
+        return parseTerm(token);
+    }
+
+    private PacketFilter parseTerm(String token) {
+        switch (token) {
+            case "ip":
+                return etherType(ETHERTYPE_IPV4);
+            case "ip6":
+                return etherType(ETHERTYPE_IPV6);
+            case "arp":
+                return etherType(ETHERTYPE_ARP);
+            case "tcp":
+                return ipProtocol(PROTOCOL_TCP);
+            case "udp":
+                return ipProtocol(PROTOCOL_UDP);
+            case "icmp":
+                return ipProtocol(PROTOCOL_ICMPV4);
+            case "icmp6":
+                return ipProtocol(PROTOCOL_ICMPV6);
+            case "proto":
+                return ipProtocol(parseNumber(take("a protocol number"), 0xff));
+            case "ether":
+                if (!"proto".equals(take("'proto'"))) {
+                    throw new IllegalArgumentException("expected 'proto' after 'ether'");
+                }
+                return etherType(parseNumber(take("an EtherType"), 0xffff));
+            case "src":
+                return parseDirected(Direction.SOURCE, take("'host', 'net', 'port' or 'portrange'"));
+            case "dst":
+                return parseDirected(Direction.DESTINATION, take("'host', 'net', 'port' or 'portrange'"));
+            default:
+                return parseDirected(Direction.EITHER, token);
+        }
+    }
+
+    private PacketFilter parseDirected(Direction direction, String token) {
+        switch (token) {
+            case "host":
+                return net(take("an IP address"), false, direction);
+            case "net":
+                return net(take("a network in CIDR notation"), true, direction);
+            case "port": {
+                int port = parseNumber(take("a port number"), 0xffff);
+                return port(port, port, direction);
+            }
+            case "portrange": {
+                String range = take("a port range");
+                int dash = range.indexOf('-');
+                if (dash < 0) {
+                    throw new IllegalArgumentException("port range '" + range + "' is not of the form LOW-HIGH");
+                }
+                int low = parseNumber(range.substring(0, dash), 0xffff);
+                int high = parseNumber(range.substring(dash + 1), 0xffff);
+                if (low > high) {
+                    throw new IllegalArgumentException("port range '" + range + "' is empty");
+                }
+                return port(low, high, direction);
+            }
+            default:
+                throw new IllegalArgumentException("unknown filter term '" + token + "'");
+        }
+    }
+
+    // decimal or 0x-prefixed hexadecimal, at most max
+    private static int parseNumber(String token, int max) {
+        try {
+            int number = token.startsWith("0x") ? Integer.parseInt(token.substring(2), 16) : Integer.parseInt(token);
+            if ((number >= 0) && (number <= max)) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("'" + token + "' is not a number from 0 to " + max);
+    }
+
+    private static PacketFilter etherType(int etherType) {
+        return (ByteBuffer frame) -> (frame.remaining() >= NETWORK) &&
+                ((frame.getShort(frame.position() + ETHERTYPE) & 0xffff) == etherType);
+    }
+
+    private static boolean isIpv4(ByteBuffer frame, int minimumLength) {
+        return (frame.remaining() >= minimumLength) && (frame.getShort(frame.position() + ETHERTYPE) == (short) ETHERTYPE_IPV4);
+    }
+
+    private static boolean isIpv6(ByteBuffer frame, int minimumLength) {
+        return (frame.remaining() >= minimumLength) && (frame.getShort(frame.position() + ETHERTYPE) == (short) ETHERTYPE_IPV6);
+    }
+
+    private static PacketFilter ipProtocol(int protocol) {
+        return (ByteBuffer frame) -> {
+            int start = frame.position();
+            if (isIpv4(frame, IPV4_MIN_END)) {
+                return (frame.get(start + IPV4_PROTOCOL) & 0xff) == protocol;
+            }
+            return isIpv6(frame, IPV6_TRANSPORT) && ((frame.get(start + IPV6_NEXT_HEADER) & 0xff) == protocol);
+        };
+    }
+
+    // host (a single address) or net (CIDR)
+    private static PacketFilter net(String token, boolean cidr, Direction direction) {
+        String address = token;
+        int prefix = -1;
+        int slash = token.indexOf('/');
+        if (cidr != (slash >= 0)) {
+            throw new IllegalArgumentException(cidr ? ("network '" + token + "' is not in CIDR notation") :
+                    ("host '" + token + "' must be a single address; use 'net' for networks"));
+        }
+        if (slash >= 0) {
+            address = token.substring(0, slash);
+            prefix = parseNumber(token.substring(slash + 1), 128);
+        }
+        // literal addresses only, so that no name lookup happens
+        if (address.isEmpty() || !address.matches("[0-9a-f:.]+")) {
+            throw new IllegalArgumentException("'" + address + "' is not an IP address");
+        }
+        byte[] bytes;
+        try {
+            bytes = InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("'" + address + "' is not an IP address");
+        }
+        boolean ipv6 = (bytes.length == 16) || (address.indexOf(':') >= 0);
+        if (ipv6 && (bytes.length == 4)) { // an IPv4-mapped IPv6 literal
+            throw new IllegalArgumentException("'" + address + "' is an IPv4-mapped address; use the IPv4 form");
+        }
+        int bits = bytes.length * 8;
+        if (prefix < 0) {
+            prefix = bits;
+        } else if (prefix > bits) {
+            throw new IllegalArgumentException("prefix length of '" + token + "' is larger than " + bits);
+        }
+        ByteBuffer value = ByteBuffer.wrap(bytes);
+        if (bytes.length == 4) {
+            int mask = (prefix == 0) ? 0 : (-1 << (32 - prefix));
+            int network = value.getInt() & mask;
+            return directed(direction,
+                    (ByteBuffer frame) -> isIpv4(frame, IPV4_MIN_END) && ((frame.getInt(frame.position() + IPV4_SOURCE) & mask) == network),
+                    (ByteBuffer frame) -> isIpv4(frame, IPV4_MIN_END) && ((frame.getInt(frame.position() + IPV4_DESTINATION) & mask) == network));
+        }
+        long highMask = (prefix == 0) ? 0 : ((prefix >= 64) ? -1L : (-1L << (64 - prefix)));
+        long lowMask = (prefix <= 64) ? 0 : ((prefix == 128) ? -1L : (-1L << (128 - prefix)));
+        long high = value.getLong() & highMask;
+        long low = value.getLong() & lowMask;
+        return directed(direction,
+                (ByteBuffer frame) -> isIpv6(frame, IPV6_TRANSPORT) &&
+                        ((frame.getLong(frame.position() + IPV6_SOURCE) & highMask) == high) &&
+                        ((frame.getLong(frame.position() + IPV6_SOURCE + 8) & lowMask) == low),
+                (ByteBuffer frame) -> isIpv6(frame, IPV6_TRANSPORT) &&
+                        ((frame.getLong(frame.position() + IPV6_DESTINATION) & highMask) == high) &&
+                        ((frame.getLong(frame.position() + IPV6_DESTINATION + 8) & lowMask) == low));
+    }
+
+    private static PacketFilter port(int low, int high, Direction direction) {
+        return directed(direction, (ByteBuffer frame) -> inRange(port(frame, 0), low, high),
+                (ByteBuffer frame) -> inRange(port(frame, 2), low, high));
+    }
+
+    private static boolean inRange(int port, int low, int high) {
+        return (port >= low) && (port <= high);
+    }
+
+    // the TCP or UDP port at the given offset in the transport header, or -1 if there is none
+    private static int port(ByteBuffer frame, int offset) {
+        int start = frame.position();
+        int transport;
+        int protocol;
+        if (isIpv4(frame, IPV4_MIN_END)) {
+            if ((frame.getShort(start + IPV4_FRAGMENT) & 0x1fff) != 0) {
+                return -1; // only the first fragment has the transport header
+            }
+            protocol = frame.get(start + IPV4_PROTOCOL) & 0xff;
+            transport = NETWORK + ((frame.get(start + NETWORK) & 0x0f) * 4);
+        } else if (isIpv6(frame, IPV6_TRANSPORT)) {
+            protocol = frame.get(start + IPV6_NEXT_HEADER) & 0xff;
+            transport = IPV6_TRANSPORT;
+        } else {
+            return -1;
+        }
+        if (((protocol != PROTOCOL_TCP) && (protocol != PROTOCOL_UDP)) || (frame.remaining() < transport + 4)) {
+            return -1;
+        }
+        return frame.getShort(start + transport + offset) & 0xffff;
+    }
+
+    private static PacketFilter directed(Direction direction, PacketFilter source, PacketFilter destination) {
+        switch (direction) {
+            case SOURCE:
+                return source;
+            case DESTINATION:
+                return destination;
+            default:
+                return source.or(destination);
+        }
+    }
+}
@@ -25,9 +25,8 @@ import com.liquidfortress.packetanalyzer.main.Mode;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.*;
-import org.pcap4j.packet.namednumber.IcmpV4Type;
-import org.pcap4j.packet.namednumber.IcmpV6Type;
+
+import java.nio.ByteBuffer;
 
 /**
  * IcmpPacketProcessor
@@ -35,81 +34,73 @@ import org.pcap4j.packet.namednumber.IcmpV6Type;
  * Process ICMP packets
  */
 public class IcmpPacketProcessor {
+    private static final int ICMPV4_ECHO_REPLY = 0;
+    private static final int ICMPV4_ECHO = 8;
+    private static final int ICMPV6_ECHO_REQUEST = 128;
+    private static final int ICMPV6_ECHO_REPLY = 129;
     private static Logger log = Main.log;
 
 
-    public static void processIcmpv4Packet(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
+    public static void processIcmpv4Packet(ByteBuffer packetData, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
+        if (packetInfo.transportLength == 0) {
             return; // skip empty packets
         }
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        try {
-            // detect Ping of Death
-            if ((mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) &&
-                    (pcapFileSummary.pingOfDeathDetector.detect(packet, pcapFileSummary, packetInfo))) {
-                return;
+        // detect Ping of Death
+        if ((mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) &&
+                (pcapFileSummary.pingOfDeathDetector.detect(pcapFileSummary, packetInfo))) {
+            return;
+        }
+        if (!packetInfo.isDecoded(PacketInfo.TRANSPORT_LAYER)) {
+            log.error("Exception occurred while processing a packet. Exception was: invalid ICMPv4 header");
+            return;
+        }
+        int icmpType = packetInfo.icmpType;
+        if (icmpType == ICMPV4_ECHO) {
+            traceEcho("ICMPv4_ECHO_REQUEST", packetData, packetInfo);
+            // detect ping sweeps
+            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+                pcapFileSummary.hostSweepDetector.add(packetInfo, pcapFileSummary);
             }
-            log.trace("Converting to ICMPv4 packet");
-            IcmpV4CommonPacket icmpV4CommonPacket = IcmpV4CommonPacket.newPacket(packet.getRawData(), 0, packet.length());
-            IcmpV4CommonPacket.IcmpV4CommonHeader icmpV4CommonHeader = icmpV4CommonPacket.getHeader();
-            IcmpV4Type icmpV4Type = icmpV4CommonHeader.getType();
-            if (icmpV4Type == IcmpV4Type.ECHO) {
-                IcmpV4EchoPacket icmpV4EchoPacket = IcmpV4EchoPacket.newPacket(icmpV4CommonPacket.getRawData(), 0, icmpV4CommonPacket.length());
-                IcmpV4EchoPacket.IcmpV4EchoHeader icmpV4EchoHeader = icmpV4EchoPacket.getHeader();
-                short identifier = icmpV4EchoHeader.getIdentifier();
-                short sequenceNumber = icmpV4EchoHeader.getSequenceNumber();
-                log.trace("ICMPv4_ECHO_REQUEST{ source: " + sourceAddress + ", destination: " + destinationAddress +
-                        ", identifier: " + identifier + ", seq number: " + sequenceNumber + " }");
-            } else if (icmpV4Type == IcmpV4Type.ECHO_REPLY) {
-                IcmpV4EchoReplyPacket icmpV4EchoReplyPacket = IcmpV4EchoReplyPacket.newPacket(icmpV4CommonPacket.getRawData(), 0, icmpV4CommonPacket.length());
-                IcmpV4EchoReplyPacket.IcmpV4EchoReplyHeader icmpV4EchoReplyHeader = icmpV4EchoReplyPacket.getHeader();
-                short identifier = icmpV4EchoReplyHeader.getIdentifier();
-                short sequenceNumber = icmpV4EchoReplyHeader.getSequenceNumber();
-                log.trace("ICMPv4_ECHO_REPLY{ source: " + sourceAddress + ", destination: " + destinationAddress +
-                        ", identifier: " + identifier + ", seq number: " + sequenceNumber + " }");
-                // detect SMURF attack
-                if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                    pcapFileSummary.smurfDetector.add(packetInfo, pcapFileSummary);
-                }
-            } else {
-                log.trace("Other ICMPv4 packet with type: " + icmpV4Type);
+        } else if (icmpType == ICMPV4_ECHO_REPLY) {
+            traceEcho("ICMPv4_ECHO_REPLY", packetData, packetInfo);
+            // detect SMURF attack
+            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+                pcapFileSummary.smurfDetector.add(packetInfo, pcapFileSummary);
             }
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
+        } else if (log.isTraceEnabled()) {
+            log.trace("Other ICMPv4 packet with type: " + icmpType);
         }
     }
 
-    public static void processIcmpv6Packet(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
+    public static void processIcmpv6Packet(ByteBuffer packetData, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
+        if (packetInfo.transportLength == 0) {
             return; // skip empty packets
         }
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        try {
-            log.trace("Converting to ICMPv6 packet");
-            IcmpV6CommonPacket icmpV6CommonPacket = IcmpV6CommonPacket.newPacket(packet.getRawData(), 0, packet.length());
-            IcmpV6CommonPacket.IcmpV6CommonHeader icmpV6CommonHeader = icmpV6CommonPacket.getHeader();
-            IcmpV6Type icmpV6Type = icmpV6CommonHeader.getType();
-            if (icmpV6Type == IcmpV6Type.ECHO_REQUEST) {
-                IcmpV6EchoRequestPacket icmpV6EchoRequestPacket = IcmpV6EchoRequestPacket.newPacket(icmpV6CommonPacket.getRawData(), 0, icmpV6CommonPacket.length());
-                IcmpV6EchoRequestPacket.IcmpV6EchoRequestHeader icmpV6EchoRequestHeader = icmpV6EchoRequestPacket.getHeader();
-                short identifier = icmpV6EchoRequestHeader.getIdentifier();
-                short sequenceNumber = icmpV6EchoRequestHeader.getSequenceNumber();
-                log.trace("ICMPv6_ECHO_REQUEST{ source: " + sourceAddress + ", destination: " + destinationAddress +
-                        ", identifier: " + identifier + ", seq number: " + sequenceNumber + " }");
-            } else if (icmpV6Type == IcmpV6Type.ECHO_REPLY) {
-                IcmpV6EchoReplyPacket icmpV6EchoReplyPacket = IcmpV6EchoReplyPacket.newPacket(icmpV6CommonPacket.getRawData(), 0, icmpV6CommonPacket.length());
-                IcmpV6EchoReplyPacket.IcmpV6EchoReplyHeader icmpV6EchoReplyHeader = icmpV6EchoReplyPacket.getHeader();
-                short identifier = icmpV6EchoReplyHeader.getIdentifier();
-                short sequenceNumber = icmpV6EchoReplyHeader.getSequenceNumber();
-                log.trace("ICMPv6_ECHO_REPLY{ source: " + sourceAddress + ", destination: " + destinationAddress +
-                        ", identifier: " + identifier + ", seq number: " + sequenceNumber + " }");
-            } else {
-                log.trace("Other ICMPv6 packet with type: " + icmpV6Type);
+        if (!packetInfo.isDecoded(PacketInfo.TRANSPORT_LAYER)) {
+            log.error("Exception occurred while processing a packet. Exception was: invalid ICMPv6 header");
+            return;
+        }
+        int icmpType = packetInfo.icmpType;
+        if (icmpType == ICMPV6_ECHO_REQUEST) {
+            traceEcho("ICMPv6_ECHO_REQUEST", packetData, packetInfo);
+            // detect ping sweeps
+            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+                pcapFileSummary.hostSweepDetector.add(packetInfo, pcapFileSummary);
             }
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
+        } else if (icmpType == ICMPV6_ECHO_REPLY) {
+            traceEcho("ICMPv6_ECHO_REPLY", packetData, packetInfo);
+        } else if (log.isTraceEnabled()) {
+            log.trace("Other ICMPv6 packet with type: " + icmpType);
+        }
+    }
+
+    // the echo identifier and sequence number are only read for trace logging
+    private static void traceEcho(String name, ByteBuffer packetData, PacketInfo packetInfo) {
+        if (log.isTraceEnabled() && (packetInfo.payloadLength >= 4)) {
+            short identifier = packetData.getShort(packetInfo.payloadOffset);
+            short sequenceNumber = packetData.getShort(packetInfo.payloadOffset + 2);
+            log.trace(name + "{ source: " + packetInfo.getSourceAddress() + ", destination: " + packetInfo.getDestinationAddress() +
+                    ", identifier: " + identifier + ", seq number: " + sequenceNumber + " }");
         }
     }
 }
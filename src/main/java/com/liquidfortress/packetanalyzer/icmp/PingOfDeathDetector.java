@@ -22,10 +22,12 @@ package com.liquidfortress.packetanalyzer.icmp;
 
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.AttackTable;
+import com.liquidfortress.packetanalyzer.pcap_file.FlowKey;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.Packet;
 
 /**
  * PingOfDeathDetector
@@ -36,36 +38,43 @@ public class PingOfDeathDetector {
     private final static int MAX_PING_LENGTH = 65515;  // bytes
     private final static int MAX_PING_PAYLOAD = 65507; // bytes
     private static Logger log = Main.log;
-    private boolean attackInProgress = false;
-    private AttackSummary attackSummary = null;
+    private final FlowKey probe = new FlowKey(); // reused for lookups
+    // one open attack per target
+    private final AttackTable<FlowKey, Void> attacks;
 
-    private boolean isPingOfDeath(Packet packet) {
-        return (((packet.getRawData() != null) && (packet.getRawData().length > MAX_PING_LENGTH)) ||
-                ((packet.getPayload() != null) && (packet.getPayload().getRawData() != null) &&
-                        (packet.getPayload().getRawData().length > MAX_PING_PAYLOAD)));
+    public PingOfDeathDetector(int maxIncidents) {
+        this.attacks = new AttackTable<>(maxIncidents);
     }
 
-    public boolean detect(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
+    private boolean isPingOfDeath(PacketInfo packetInfo) {
+        return ((packetInfo.transportLength > MAX_PING_LENGTH) || (packetInfo.payloadLength > MAX_PING_PAYLOAD));
+    }
 
-        if (isPingOfDeath(packet) && !attackInProgress) { // attack first detected
-            log.trace("*** PING OF DEATH detected!");
-            attackInProgress = true;
-            attackSummary = new AttackSummary();
-            attackSummary.setAttackName("PING OF DEATH");
-            attackSummary.addSourceIpAndPort(sourceAddress);
-            attackSummary.addTargetIpAndPort(destinationAddress);
-            attackSummary.setStartTimestamp(packetInfo.get(PacketInfo.TIMESTAMP));
-        } else if (isPingOfDeath(packet) && attackInProgress) { // add more details while attack in progress
-            attackSummary.addSourceIpAndPort(sourceAddress);
-            attackSummary.addTargetIpAndPort(destinationAddress);
-        } else if (!isPingOfDeath(packet) && attackInProgress) { // attack ended, close out attack details
-            attackInProgress = false;
-            attackSummary.setEndTimestamp(packetInfo.get(PacketInfo.TIMESTAMP));
-            pcapFileSummary.attackSummaries.add(attackSummary);
-            this.attackSummary = null;
+    // returns true if this packet is part of a Ping of Death
+    public boolean detect(PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        FlowKey targetKey = probe.setDestination(packetInfo);
+        AttackSummary attackSummary = attacks.get(targetKey);
+        if (isPingOfDeath(packetInfo)) {
+            if (attackSummary == null) { // attack first detected
+                log.trace("*** PING OF DEATH detected!");
+                attackSummary = attacks.open(targetKey.copy(), null, "PING OF DEATH", packetInfo.getTimestamp());
+            }
+            if (attackSummary != null) { // add more details while attack in progress
+                attackSummary.addSourceIpAndPort(packetInfo.getSourceAddress());
+                attackSummary.addTargetIpAndPort(packetInfo.getDestinationAddress());
+            }
+            return true;
+        }
+        if (attackSummary != null) { // attack ended, close out attack details
+            attacks.close(targetKey, packetInfo.getTimestamp(), pcapFileSummary);
+        } else {
+            attacks.forget(targetKey);
         }
-        return this.attackInProgress;
+        return false;
+    }
+
+    // close the attacks that are still open at the end of the file
+    public void closeAll(long timestampNanos, PcapFileSummary pcapFileSummary) {
+        attacks.closeAll(PacketInfoUtils.toTimestamp(timestampNanos).toString(), pcapFileSummary);
     }
 }
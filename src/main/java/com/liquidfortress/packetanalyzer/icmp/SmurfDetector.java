@@ -22,15 +22,16 @@ package com.liquidfortress.packetanalyzer.icmp;
 
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.AttackTable;
+import com.liquidfortress.packetanalyzer.pcap_file.FlowKey;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import com.liquidfortress.packetanalyzer.statistics.SlidingWindow;
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
 import org.apache.logging.log4j.core.Logger;
 
-import java.sql.Timestamp;
-import java.time.Instant;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
 
 /**
  * SmurfDetector
@@ -40,64 +41,101 @@ import java.util.LinkedHashSet;
 public class SmurfDetector {
     private static final int DETECTION_SCORE = 21;
     private static final long LOOKBACK_WINDOW = 600; //milliseconds
+    private static final long LOOKBACK_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(LOOKBACK_WINDOW);
     private static Logger log = Main.log;
-    private final HashMap<String, LinkedHashSet<PacketInfo>> recentEchoReplies = new HashMap<>();
-    private boolean attackInProgress = false;
-    private AttackSummary attackSummary = null;
+    // one window per destination address; an event's value is its source address
+    private final HashMap<FlowKey, SlidingWindow<Void>> recentEchoReplies = new HashMap<>();
+    private final FlowKey probe = new FlowKey(); // reused for lookups
+    // one open attack per target
+    private final AttackTable<FlowKey, SlidingWindow<Void>> attacks;
+    private final AttackTable.IncidentVisitor<FlowKey, SlidingWindow<Void>> attackOver = this::isOver;
+    private long currentTime = 0;
+    private long nextPurge = Long.MIN_VALUE;
+
+    public SmurfDetector(int maxIncidents) {
+        this.attacks = new AttackTable<>(maxIncidents);
+    }
 
     public void add(PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
         if (packetInfo == null) {
             throw new IllegalArgumentException("packetInfo cannot be null!");
         }
-        // add the packetInfo
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        Instant currentTime = Timestamp.valueOf(packetInfo.get(PacketInfo.TIMESTAMP)).toInstant();
-        Instant lookbackStart = currentTime.minusMillis(LOOKBACK_WINDOW);
+        // add the echo reply to its destination's window
+        currentTime = packetInfo.timestampNanos;
+        purge();
+        long lookbackStart = currentTime - LOOKBACK_WINDOW_NANOS;
 
-        LinkedHashSet<PacketInfo> packetInfos = recentEchoReplies.get(destinationAddress);
-        if (packetInfos == null) {
-            packetInfos = new LinkedHashSet<>();
-            packetInfos.add(packetInfo);
-        } else {
-            // prune packetInfos that are beyond the lookback window
-            LinkedHashSet<PacketInfo> keep = new LinkedHashSet<>();
-            for (PacketInfo pi : packetInfos) {
-                Instant packetTime = Timestamp.valueOf(pi.get(PacketInfo.TIMESTAMP)).toInstant();
-                if (packetTime.isAfter(lookbackStart)) {
-                    keep.add(pi);
-                }
-            }
-            keep.add(packetInfo);
-            packetInfos = keep;
+        FlowKey targetKey = probe.setDestination(packetInfo);
+        SlidingWindow<Void> window = recentEchoReplies.get(targetKey);
+        if (window == null) {
+            window = new SlidingWindow<>(LOOKBACK_WINDOW_NANOS, true);
+            recentEchoReplies.put(targetKey.copy(), window);
         }
-        recentEchoReplies.put(destinationAddress, packetInfos);
+        window.add(currentTime, packetInfo.sourceIpv4, 0);
 
-        // calculate detection score
-        HashSet<String> sourceAddressSet = new HashSet<>();
-        for (PacketInfo recentPi : packetInfos) {
-            String sourceAddress = recentPi.get(PacketInfo.SOURCE_ADDRESS);
-            sourceAddressSet.add(sourceAddress);
-        }
-        if (sourceAddressSet.size() >= DETECTION_SCORE && !attackInProgress) { // attack first detected
-            log.trace("*** SMURF ATTACK detected!");
-            attackInProgress = true;
-            attackSummary = new AttackSummary();
-            attackSummary.setAttackName("SMURF ATTACK");
-            attackSummary.setStartTimestamp(lookbackStart.toString());
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS));
+        // the detection score is the number of distinct source addresses in the window
+        AttackSummary attackSummary = attacks.get(targetKey);
+        if (window.distinct() >= DETECTION_SCORE) {
+            if (attackSummary == null) { // attack first detected
+                log.trace("*** SMURF ATTACK detected!");
+                attackSummary = attacks.open(targetKey.copy(), window, "SMURF ATTACK",
+                        PacketInfoUtils.toInstant(lookbackStart).toString());
             }
-        } else if (sourceAddressSet.size() >= DETECTION_SCORE && attackInProgress) { // add more details while attack in progress
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS));
+            if (attackSummary != null) { // add more details while attack in progress
+                report(window, packetInfo, attackSummary);
             }
-        } else if (sourceAddressSet.size() < DETECTION_SCORE && attackInProgress) { // attack ended, close out attack details
-            attackInProgress = false;
-            attackSummary.setEndTimestamp(currentTime.toString());
-            pcapFileSummary.attackSummaries.add(attackSummary);
-            this.attackSummary = null;
+        } else if (attackSummary != null) { // attack ended, close out attack details
+            attacks.close(targetKey, PacketInfoUtils.toInstant(currentTime).toString(), pcapFileSummary);
+        } else {
+            attacks.forget(targetKey);
         }
+        // close the attacks on targets that no longer receive replies
+        attacks.sweep(pcapFileSummary, attackOver);
+    }
+
+    // the number of targets with recent echo replies or an open attack
+    int targetCount() {
+        return recentEchoReplies.size();
+    }
+
+    // close the attacks that are still open at the end of the file
+    public void closeAll(long timestampNanos, PcapFileSummary pcapFileSummary) {
+        attacks.closeAll(PacketInfoUtils.toInstant(timestampNanos).toString(), pcapFileSummary);
+    }
+
+    // drop the windows that have emptied and have no open attack
+    private void purge() {
+        if (currentTime < nextPurge) {
+            return;
+        }
+        if (nextPurge != Long.MIN_VALUE) {
+            recentEchoReplies.entrySet().removeIf(entry -> {
+                entry.getValue().expire(currentTime);
+                if (!entry.getValue().isEmpty() || (attacks.get(entry.getKey()) != null)) {
+                    return false;
+                }
+                attacks.forget(entry.getKey());
+                return true;
+            });
+        }
+        nextPurge = currentTime + LOOKBACK_WINDOW_NANOS;
+    }
+
+    private boolean isOver(FlowKey targetKey, SlidingWindow<Void> window, AttackSummary attackSummary) {
+        window.expire(currentTime);
+        if (window.distinct() >= DETECTION_SCORE) {
+            return false;
+        }
+        attackSummary.setEndTimestamp(PacketInfoUtils.toInstant(currentTime).toString());
+        return true;
+    }
+
+    // add the addresses of the window's events that the attack summary has not seen yet
+    private void report(SlidingWindow<Void> window, PacketInfo packetInfo, AttackSummary attackSummary) {
+        String destinationAddress = packetInfo.getDestinationAddress();
+        window.report(attackSummary, (timestampNanos, sourceAddress, data, attachment) -> {
+            attackSummary.addSourceIpAndPort(PacketInfoUtils.formatIpv4Address((int) sourceAddress));
+            attackSummary.addTargetIpAndPort(destinationAddress);
+        });
     }
 }
@@ -20,40 +20,237 @@
 
 package com.liquidfortress.packetanalyzer.ip;
 
-import org.pcap4j.packet.IpV4Packet;
-import org.pcap4j.util.IpV4Helper;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 /**
  * IpDefragmenter
  * <p/>
- * Tracks and assembles fragmented IP packets
+ * Tracks and assembles fragmented IPv4 packets.  Fragments belong to the
+ * same datagram when they share source, destination, protocol and
+ * identification (RFC 791).  Each datagram is reassembled in one buffer:
+ * fragment payloads are written at their offsets as they arrive, in any
+ * order, and the header of the first fragment is put in front once every
+ * byte is there.
+ * <p/>
+ * Time is taken from the packet timestamps.  A datagram that is still
+ * incomplete after the timeout is dropped, and when the buffers of all
+ * incomplete datagrams would exceed the memory limit, the oldest ones are
+ * dropped to make room.
  */
 public class IpDefragmenter {
+    public static final long DEFAULT_TIMEOUT = 30L * 1000000000L; // nanoseconds, as Linux ipfrag_time
+    public static final long DEFAULT_MEMORY_LIMIT = 4L * 1024 * 1024; // bytes, as Linux ipfrag_high_thresh
+    private static final int MAX_HEADER_LENGTH = 60; // bytes; room kept in front of the payload
+    private static final int BLOCK = 8; // fragment offsets count 8-byte blocks
+
+    // source, destination, protocol and identification of a datagram
+    private static class DatagramKey {
+        long addresses;
+        int protocolAndIdentification;
+        int hash;
+
+        DatagramKey set(PacketInfo packetInfo) {
+            addresses = ((long) packetInfo.sourceIpv4 << 32) | (packetInfo.destinationIpv4 & 0xffffffffL);
+            protocolAndIdentification = ((packetInfo.ipProtocol & 0xff) << 16) | packetInfo.ipIdentification;
+            long mixed = (addresses ^ ((long) protocolAndIdentification << 7)) * 0x9e3779b97f4a7c15L;
+            hash = (int) (mixed ^ (mixed >>> 32));
+            return this;
+        }
+
+        DatagramKey copy() {
+            DatagramKey copy = new DatagramKey();
+            copy.addresses = addresses;
+            copy.protocolAndIdentification = protocolAndIdentification;
+            copy.hash = hash;
+            return copy;
+        }
 
-    private final HashMap<Integer, List<IpV4Packet>> fragments = new HashMap<>();
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            DatagramKey that = (DatagramKey) o;
+
+            return (addresses == that.addresses) && (protocolAndIdentification == that.protocolAndIdentification);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // one datagram being reassembled
+    private static class Datagram {
+        final long firstSeen;
+        byte[] buffer;
+        int headerLength = 0; // 0 until the first fragment arrives
+        int payloadLength = -1; // -1 until the last fragment arrives
+        final BitSet blocks = new BitSet(); // 8-byte blocks of payload received
+
+        Datagram(long firstSeen, int capacity) {
+            this.firstSeen = firstSeen;
+            this.buffer = new byte[capacity];
+        }
+
+        boolean isComplete() {
+            return (headerLength > 0) && (payloadLength >= 0) &&
+                    (blocks.nextClearBit(0) * BLOCK >= payloadLength);
+        }
+    }
+
+    private final long timeout;
+    private final long memoryLimit;
+    private final DatagramKey probe = new DatagramKey();
+    private final LinkedHashMap<DatagramKey, Datagram> datagrams = new LinkedHashMap<>(); // oldest first
+    private long memory = 0; // bytes in datagram buffers
+    private long reassembledCount = 0;
+    private long timedOutCount = 0;
+    private long evictedCount = 0;
+    private long unfinishedCount = 0; // still incomplete at the end of merged inputs
 
     public IpDefragmenter() {
+        this(DEFAULT_TIMEOUT, DEFAULT_MEMORY_LIMIT);
+    }
+
+    public IpDefragmenter(long timeout, long memoryLimit) {
+        if ((timeout <= 0) || (memoryLimit <= 0)) {
+            throw new IllegalArgumentException("IpDefragmenter timeout and memory limit must be positive!");
+        }
+        this.timeout = timeout;
+        this.memoryLimit = memoryLimit;
+    }
+
+    // add the IPv4 fragment decoded into packetInfo; returns the whole datagram once it is complete, otherwise null
+    public ByteBuffer addFragment(ByteBuffer packetData, PacketInfo packetInfo) {
+        long now = packetInfo.timestampNanos;
+        expire(now);
+        int headerLength = packetInfo.transportOffset - packetInfo.networkOffset;
+        int offset = packetInfo.fragmentOffset;
+        int length = packetInfo.transportLength;
+        boolean last = !packetInfo.hasFlag(PacketInfo.MORE_FRAGMENTS);
+        int end = MAX_HEADER_LENGTH + offset + length;
+        Datagram datagram = datagrams.get(probe.set(packetInfo));
+        if (datagram == null) {
+            int capacity = last ? end : Math.max(end, MAX_HEADER_LENGTH + 2 * (offset + length));
+            if (!makeRoom(capacity, null)) {
+                return null;
+            }
+            datagram = new Datagram(now, capacity);
+            datagrams.put(probe.copy(), datagram);
+            memory += capacity;
+        } else if (end > datagram.buffer.length) {
+            int capacity = Math.max(end, 2 * datagram.buffer.length);
+            if (!makeRoom(capacity - datagram.buffer.length, datagram)) {
+                return null;
+            }
+            memory += capacity - datagram.buffer.length;
+            datagram.buffer = Arrays.copyOf(datagram.buffer, capacity);
+        }
+        copy(packetData, packetInfo.transportOffset, datagram.buffer, MAX_HEADER_LENGTH + offset, length);
+        datagram.blocks.set(offset / BLOCK, (offset + length + BLOCK - 1) / BLOCK);
+        if (offset == 0) {
+            datagram.headerLength = headerLength;
+            copy(packetData, packetInfo.networkOffset, datagram.buffer, MAX_HEADER_LENGTH - headerLength, headerLength);
+        }
+        if (last) {
+            datagram.payloadLength = offset + length;
+        }
+        if (!datagram.isComplete()) {
+            return null;
+        }
+        datagrams.remove(probe);
+        memory -= datagram.buffer.length;
+        reassembledCount++;
+        return reassembled(datagram);
+    }
+
+    // the datagram as if it had never been fragmented
+    private static ByteBuffer reassembled(Datagram datagram) {
+        int start = MAX_HEADER_LENGTH - datagram.headerLength;
+        int totalLength = datagram.headerLength + datagram.payloadLength;
+        ByteBuffer reassembled = ByteBuffer.wrap(datagram.buffer, start, totalLength).slice();
+        // an oversized datagram (e.g. a Ping of Death) cannot state its length; 0 means the whole buffer
+        reassembled.putShort(2, (short) ((totalLength > 0xffff) ? 0 : totalLength));
+        reassembled.putShort(6, (short) (reassembled.getShort(6) & 0x4000)); // keep DF, clear MF and the offset
+        return reassembled;
+    }
+
+    private static void copy(ByteBuffer source, int sourceOffset, byte[] destination, int destinationOffset, int length) {
+        ByteBuffer from = source.duplicate();
+        from.position(sourceOffset);
+        from.get(destination, destinationOffset, length);
     }
 
-    public void addFragment(int identification, IpV4Packet fragment) {
-        List<IpV4Packet> collected = fragments.get(identification);
-        if (collected == null) {
-            collected = new LinkedList<IpV4Packet>();
+    // drop the oldest datagrams until bytes more fit under the limit; false if growing was itself dropped
+    private boolean makeRoom(long bytes, Datagram growing) {
+        Iterator<Datagram> oldest = datagrams.values().iterator();
+        while ((memory + bytes > memoryLimit) && oldest.hasNext()) {
+            Datagram datagram = oldest.next();
+            oldest.remove();
+            memory -= datagram.buffer.length;
+            evictedCount++;
+            if (datagram == growing) {
+                return false;
+            }
         }
-        collected.add(fragment);
-        fragments.put(identification, collected);
+        return memory + bytes <= memoryLimit;
     }
 
-    public IpV4Packet defragment(int identification) {
-        List<IpV4Packet> collected = fragments.get(identification);
-        if (collected == null) {
-            throw new IllegalArgumentException("No fragments collected for ID: " + identification);
+    // drop datagrams that have been incomplete for longer than the timeout
+    private void expire(long now) {
+        Iterator<Datagram> oldest = datagrams.values().iterator();
+        while (oldest.hasNext()) {
+            Datagram datagram = oldest.next();
+            if (now - datagram.firstSeen <= timeout) {
+                break;
+            }
+            oldest.remove();
+            memory -= datagram.buffer.length;
+            timedOutCount++;
         }
-        fragments.remove(identification);
-        return IpV4Helper.defragment(collected);
+    }
+
+    public long getReassembledCount() {
+        return reassembledCount;
+    }
+
+    public long getTimedOutCount() {
+        return timedOutCount;
+    }
+
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    // datagrams that were never completed: timed out, or waiting at the end of the input
+    public long getIncompleteCount() {
+        return timedOutCount + unfinishedCount + datagrams.size();
+    }
+
+    public long getMemory() {
+        return memory;
+    }
+
+    // add the other defragmenter's counts; its incomplete datagrams stay with it
+    public void merge(IpDefragmenter other) {
+        reassembledCount += other.reassembledCount;
+        timedOutCount += other.timedOutCount;
+        evictedCount += other.evictedCount;
+        unfinishedCount += other.unfinishedCount + other.datagrams.size();
+    }
+
+    @Override
+    public String toString() {
+        return "IP datagrams reassembled: " + reassembledCount +
+                ", incomplete: " + getIncompleteCount() + " (" + timedOutCount + " timed out)" +
+                ", evicted for memory: " + evictedCount;
     }
 }
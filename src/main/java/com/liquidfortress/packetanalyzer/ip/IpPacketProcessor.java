@@ -23,19 +23,15 @@ package com.liquidfortress.packetanalyzer.ip;
 import com.liquidfortress.packetanalyzer.icmp.IcmpPacketProcessor;
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.main.Mode;
+import com.liquidfortress.packetanalyzer.pcap_file.DecodePlan;
+import com.liquidfortress.packetanalyzer.pcap_file.FrameDecoder;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import com.liquidfortress.packetanalyzer.tcp.TcpPacketProcessor;
 import com.liquidfortress.packetanalyzer.udp.UdpPacketProcessor;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.IllegalRawDataException;
-import org.pcap4j.packet.IpV4Packet;
-import org.pcap4j.packet.IpV6Packet;
-import org.pcap4j.packet.Packet;
-import org.pcap4j.packet.namednumber.IpNumber;
 
-import java.net.Inet4Address;
-import java.net.Inet6Address;
+import java.nio.ByteBuffer;
 
 /**
  * IpPacketProcessor
@@ -46,98 +42,85 @@ public class IpPacketProcessor {
     private static Logger log = Main.log;
 
 
-    public static void processIpv4Packet(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
-            return; // skip empty packets
+    public static void processIpv4Packet(ByteBuffer packetData, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
+        if (!packetInfo.isDecoded(PacketInfo.NETWORK_LAYER)) {
+            log.error("Exception occurred while processing a packet. Exception was: invalid IPv4 header");
+            return;
         }
-        try {
-            log.trace("Converting to IPv4 packet");
-            IpV4Packet ipV4Packet = IpV4Packet.newPacket(packet.getRawData(), 0, packet.length());
-            IpV4Packet.IpV4Header ipV4Header = ipV4Packet.getHeader();
-            boolean fragmented = ipV4Header.getMoreFragmentFlag() || (ipV4Header.getFragmentOffset() > 0);
-            try {
-                if (fragmented) {
-                    int identification = ipV4Header.getIdentificationAsInt();
-                    pcapFileSummary.ipDefragmenter.addFragment(identification, ipV4Packet);
-                    if ((!ipV4Header.getMoreFragmentFlag()) && (ipV4Header.getFragmentOffset() > 0)) {
-                        ipV4Packet = pcapFileSummary.ipDefragmenter.defragment(identification);
-                        ipV4Header = ipV4Packet.getHeader();
-                        packetInfo.put(PacketInfo.IP_IDENTIFICATION, Integer.toString(identification));
-                        packetInfo.put(PacketInfo.WAS_FRAGMENTED, Boolean.TRUE.toString());
-                    } else {
-                        return; // we need all the fragments before this packet can be processed further
-                    }
-                }
-            } catch (IllegalArgumentException e) {
-                log.trace("Exception occurred while processing a packet. Exception was: " + e);
+        boolean moreFragments = packetInfo.hasFlag(PacketInfo.MORE_FRAGMENTS);
+        if (moreFragments || (packetInfo.fragmentOffset > 0)) {
+            ByteBuffer reassembled = pcapFileSummary.ipDefragmenter.addFragment(packetData, packetInfo);
+            if (reassembled == null) {
+                return; // we need all the fragments before this packet can be processed further
+            }
+            packetData = reassembled;
+            if (!FrameDecoder.decodeIpv4(packetData, 0, reassembled.limit(), packetInfo)) {
                 return;
             }
-            Inet4Address sourceAddress = ipV4Header.getSrcAddr();
-            Inet4Address destAddress = ipV4Header.getDstAddr();
-
-            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                //pcapFileSummary.ipMacTracker.query(sourceAddress.getHostAddress(), sourceMac.toString());
+            if (DecodePlan.forMode(mode).decodes(packetInfo.getIpProtocol())) {
+                FrameDecoder.decodeTransport(packetData, packetInfo);
             }
-            packetInfo.put(PacketInfo.SOURCE_ADDRESS, sourceAddress.getHostAddress());
-            packetInfo.put(PacketInfo.DESTINATION_ADDRESS, destAddress.getHostAddress());
-            log.trace("Adding IPv4 addresses to set:  source: " + sourceAddress.getHostAddress() + ", dest: " + destAddress.getHostAddress());
-            pcapFileSummary.uniqueIpAddresses.add(sourceAddress.getHostAddress());
-            pcapFileSummary.uniqueIpAddresses.add(destAddress.getHostAddress());
-            IpNumber ipNumber = ipV4Header.getProtocol();
-            packetInfo.put(PacketInfo.IP_PROTOCOL, ipNumber.toString());
-            pcapFileSummary.ipProtocolCounter.increment(ipNumber);
-            Packet payload = ipV4Packet.getPayload();
-            if (ipNumber == IpNumber.ICMPV4) {
-                IcmpPacketProcessor.processIcmpv4Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.ICMPV6) {
-                IcmpPacketProcessor.processIcmpv6Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.TCP) {
-                TcpPacketProcessor.processTcpPacket(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.UDP) {
-                UdpPacketProcessor.processUdpPacket(payload, pcapFileSummary, packetInfo, mode);
-            } else {
-                log.trace("Skipping packet: " + payload);
-            }
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
+            packetInfo.setFlag(PacketInfo.WAS_FRAGMENTED, true);
+        }
+        if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+            //pcapFileSummary.ipMacTracker.query(sourceAddress.getHostAddress(), sourceMac.toString());
         }
+        processIpPayload(packetData, pcapFileSummary, packetInfo, mode);
     }
 
-    public static void processIpv6Packet(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
-            return; // skip empty packets
+    public static void processIpv6Packet(ByteBuffer packetData, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
+        if (!packetInfo.isDecoded(PacketInfo.NETWORK_LAYER)) {
+            log.error("Exception occurred while processing a packet. Exception was: invalid IPv6 header");
+            return;
+        }
+        if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+            //pcapFileSummary.ipMacTracker.query(sourceAddress.getHostAddress(), sourceMac.toString());
         }
-        try {
-            log.trace("Converting to IPv6 packet");
-            IpV6Packet ipV6Packet = IpV6Packet.newPacket(packet.getRawData(), 0, packet.length());
-            IpV6Packet.IpV6Header ipV6Header = ipV6Packet.getHeader();
-            Inet6Address sourceAddress = ipV6Header.getSrcAddr();
-            Inet6Address destAddress = ipV6Header.getDstAddr();
-            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                //pcapFileSummary.ipMacTracker.query(sourceAddress.getHostAddress(), sourceMac.toString());
+        processIpPayload(packetData, pcapFileSummary, packetInfo, mode);
+    }
+
+    private static void processIpPayload(ByteBuffer packetData, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
+        DecodePlan decodePlan = DecodePlan.forMode(mode);
+        if (decodePlan.uniqueIpAddresses) {
+            if (log.isTraceEnabled()) {
+                log.trace("Adding IPv" + packetInfo.ipVersion + " addresses to set:  source: " + packetInfo.getSourceAddress() +
+                        ", dest: " + packetInfo.getDestinationAddress());
             }
-            packetInfo.put(PacketInfo.SOURCE_ADDRESS, sourceAddress.getHostAddress());
-            packetInfo.put(PacketInfo.DESTINATION_ADDRESS, destAddress.getHostAddress());
-            log.trace("Adding IPv6 addresses to set:  source: " + sourceAddress.getHostAddress() + ", dest: " + destAddress.getHostAddress());
-            pcapFileSummary.uniqueIpAddresses.add(sourceAddress.getHostAddress());
-            pcapFileSummary.uniqueIpAddresses.add(destAddress.getHostAddress());
-            IpNumber ipNumber = ipV6Header.getProtocol();
-            packetInfo.put(PacketInfo.IP_PROTOCOL, ipNumber.toString());
-            pcapFileSummary.ipProtocolCounter.increment(ipNumber);
-            Packet payload = ipV6Packet.getPayload();
-            if (ipNumber == IpNumber.ICMPV4) {
-                IcmpPacketProcessor.processIcmpv4Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.ICMPV6) {
-                IcmpPacketProcessor.processIcmpv6Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.TCP) {
-                TcpPacketProcessor.processTcpPacket(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.UDP) {
-                UdpPacketProcessor.processUdpPacket(payload, pcapFileSummary, packetInfo, mode);
+            if (packetInfo.ipVersion == PacketInfo.IPV4) {
+                pcapFileSummary.uniqueIpAddresses.addIpv4(packetInfo.sourceIpv4);
+                pcapFileSummary.uniqueIpAddresses.addIpv4(packetInfo.destinationIpv4);
             } else {
-                log.trace("Skipping packet: " + payload);
+                pcapFileSummary.uniqueIpAddresses.addIpv6(packetInfo.sourceIpv6High, packetInfo.sourceIpv6Low);
+                pcapFileSummary.uniqueIpAddresses.addIpv6(packetInfo.destinationIpv6High, packetInfo.destinationIpv6Low);
             }
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
+        }
+        if (decodePlan.ipProtocolCounts) {
+            // the length on the wire, so a snaplen-truncated capture does not under-count the bytes
+            pcapFileSummary.ipProtocolCounter.increment(packetInfo.getIpProtocol(), packetInfo.ipLength);
+        }
+        if (!decodePlan.decodes(packetInfo.getIpProtocol())) {
+            if (log.isTraceEnabled()) {
+                log.trace("Skipping packet with IP protocol: " + packetInfo.getIpProtocol());
+            }
+            return;
+        }
+        switch (packetInfo.getIpProtocol()) {
+            case FrameDecoder.PROTOCOL_ICMPV4:
+                IcmpPacketProcessor.processIcmpv4Packet(packetData, pcapFileSummary, packetInfo, mode);
+                break;
+            case FrameDecoder.PROTOCOL_ICMPV6:
+                IcmpPacketProcessor.processIcmpv6Packet(packetData, pcapFileSummary, packetInfo, mode);
+                break;
+            case FrameDecoder.PROTOCOL_TCP:
+                TcpPacketProcessor.processTcpPacket(packetData, pcapFileSummary, packetInfo, mode);
+                break;
+            case FrameDecoder.PROTOCOL_UDP:
+                UdpPacketProcessor.processUdpPacket(packetData, pcapFileSummary, packetInfo, mode);
+                break;
+            default:
+                if (log.isTraceEnabled()) {
+                    log.trace("Skipping packet with IP protocol: " + packetInfo.getIpProtocol());
+                }
         }
     }
 }
@@ -58,6 +58,8 @@ public class LoggerFactory {
         // configuration files and simplifies writing results to the console and the output file
         // Silence StatusLogger
         System.setProperty("org.apache.logging.log4j.simplelog.StatusLogger.level", "FATAL");
+        // Keep logging through JVM shutdown, so --follow can print its summary after Ctrl-C
+        System.setProperty("log4j.shutdownHookEnabled", "false");
         // Setup context
         LoggerContext loggerContext = (LoggerContext) LogManager.getContext(false);
         Configuration configuration = loggerContext.getConfiguration();
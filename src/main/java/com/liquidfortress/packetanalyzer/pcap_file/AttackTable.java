@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * AttackTable
+ * <p/>
+ * A detector's open incidents, keyed by attack source or target, so that
+ * simultaneous attacks are opened, updated and closed independently.  Keys,
+ * detector state and summaries are kept in parallel dense arrays, found
+ * through an open-addressing index with linear probing; closing an incident
+ * moves the last one into its place and shifts later index entries back
+ * instead of leaving a tombstone, so open, get and close are O(1).
+ * <p/>
+ * At most maxIncidents are open at once; an incident that would go past the
+ * limit is not opened, only counted, once per key: the key is remembered
+ * until its detector forget()s it, when it falls below its threshold or its
+ * state is purged, so a later attack from it is counted again.  sweep()
+ * checks SWEEP_INCIDENTS open incidents per call from a rotating cursor, so
+ * a detector notices an incident whose attacker went quiet without scanning
+ * the whole table.  closeAll() closes every open incident at the end of a
+ * file, in the order they were opened.
+ */
+public class AttackTable<K, S> {
+    public static final int DEFAULT_MAX_INCIDENTS = 1024;
+    private static final int INITIAL_CAPACITY = 8; // incidents; the index has twice as many slots
+    private static final int SWEEP_INCIDENTS = 2; // incidents checked per sweep()
+
+    /**
+     * IncidentVisitor
+     * <p/>
+     * Checks an open incident; returns true to close it, after setting its end timestamp
+     */
+    public interface IncidentVisitor<K, S> {
+        boolean isOver(K key, S state, AttackSummary attackSummary);
+    }
+
+    private final int maxIncidents;
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+    private Object[] states = new Object[INITIAL_CAPACITY];
+    private AttackSummary[] summaries = new AttackSummary[INITIAL_CAPACITY];
+    private long[] openedAt = new long[INITIAL_CAPACITY]; // opening order, for closeAll()
+    private int[] index = new int[2 * INITIAL_CAPACITY]; // position + 1 in the dense arrays; 0 marks an empty slot
+    private final HashSet<Object> droppedKeys = new HashSet<>(); // keys whose incident was not opened
+    private int size = 0;
+    private int cursor = 0;
+    private long opened = 0;
+    private long droppedCount = 0;
+
+    public AttackTable(int maxIncidents) {
+        if (maxIncidents <= 0) {
+            throw new IllegalArgumentException("AttackTable needs room for at least one incident!");
+        }
+        this.maxIncidents = maxIncidents;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // incidents that were not opened because maxIncidents were already open; each key counts once until forgotten
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    // the key's open incident, or null
+    public AttackSummary get(K key) {
+        int slot = find(key);
+        return (slot < 0) ? null : summaries[index[slot] - 1];
+    }
+
+    // open an incident for a key that has none; returns null if maxIncidents are already open
+    public AttackSummary open(K key, S state, String attackName, String startTimestamp) {
+        if (size >= maxIncidents) {
+            if (droppedKeys.add(key)) {
+                droppedCount++;
+            }
+            return null;
+        }
+        if (size == keys.length) {
+            grow();
+        }
+        AttackSummary attackSummary = new AttackSummary();
+        attackSummary.setAttackName(attackName);
+        attackSummary.setStartTimestamp(startTimestamp);
+        keys[size] = key;
+        states[size] = state;
+        summaries[size] = attackSummary;
+        openedAt[size] = opened++;
+        size++;
+        index[emptySlot(key)] = size;
+        return attackSummary;
+    }
+
+    // close the key's open incident, if any, and add it to the file's attack summaries
+    public void close(K key, String endTimestamp, PcapFileSummary pcapFileSummary) {
+        int slot = find(key);
+        if (slot >= 0) {
+            AttackSummary attackSummary = summaries[index[slot] - 1];
+            attackSummary.setEndTimestamp(endTimestamp);
+            pcapFileSummary.attackSummaries.add(attackSummary);
+            remove(slot);
+        }
+    }
+
+    // the key is no longer attacking (or being attacked); if it was dropped, a later incident counts again
+    public void forget(K key) {
+        if (!droppedKeys.isEmpty()) {
+            droppedKeys.remove(key);
+        }
+    }
+
+    // check the next few open incidents, closing those the visitor says are over
+    @SuppressWarnings("unchecked")
+    public void sweep(PcapFileSummary pcapFileSummary, IncidentVisitor<K, S> visitor) {
+        for (int i = 0; (i < SWEEP_INCIDENTS) && (size > 0); i++) {
+            if (cursor >= size) {
+                cursor = 0;
+            }
+            int position = cursor;
+            if (visitor.isOver((K) keys[position], (S) states[position], summaries[position])) {
+                pcapFileSummary.attackSummaries.add(summaries[position]);
+                remove(find(keys[position])); // the last incident moves here; look at it next time
+            } else {
+                cursor++;
+            }
+        }
+    }
+
+    // close every open incident; one that already has an end timestamp keeps it.  The dropped count is
+    // added to the file's and starts again
+    public void closeAll(String endTimestamp, PcapFileSummary pcapFileSummary) {
+        pcapFileSummary.droppedAttackCount += droppedCount;
+        droppedCount = 0;
+        Integer[] order = new Integer[size];
+        for (int position = 0; position < size; position++) {
+            order[position] = position;
+        }
+        Arrays.sort(order, (first, second) -> Long.compare(openedAt[first], openedAt[second]));
+        for (int position : order) {
+            if (summaries[position].getEndTimestamp() == null) {
+                summaries[position].setEndTimestamp(endTimestamp);
+            }
+            pcapFileSummary.attackSummaries.add(summaries[position]);
+        }
+        Arrays.fill(keys, null);
+        Arrays.fill(states, null);
+        Arrays.fill(summaries, null);
+        Arrays.fill(index, 0);
+        droppedKeys.clear();
+        size = 0;
+        cursor = 0;
+    }
+
+    // the index slot of the key, or -1
+    private int find(Object key) {
+        int mask = index.length - 1;
+        int slot = home(key, mask);
+        while (index[slot] != 0) {
+            if (keys[index[slot] - 1].equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int emptySlot(Object key) {
+        int mask = index.length - 1;
+        int slot = home(key, mask);
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // drop the incident at the index slot: the last incident takes its position, and
+    // later index entries shift back into the gap so probes still find their keys
+    private void remove(int gap) {
+        int position = index[gap] - 1;
+        int last = size - 1;
+        if (position != last) {
+            index[find(keys[last])] = position + 1;
+            keys[position] = keys[last];
+            states[position] = states[last];
+            summaries[position] = summaries[last];
+            openedAt[position] = openedAt[last];
+        }
+        keys[last] = null;
+        states[last] = null;
+        summaries[last] = null;
+        size--;
+        int mask = index.length - 1;
+        index[gap] = 0;
+        int slot = (gap + 1) & mask;
+        while (index[slot] != 0) {
+            int home = home(keys[index[slot] - 1], mask);
+            // move the entry unless its home lies cyclically in (gap, slot]
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                index[gap] = index[slot];
+                index[slot] = 0;
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        states = Arrays.copyOf(states, capacity);
+        summaries = Arrays.copyOf(summaries, capacity);
+        openedAt = Arrays.copyOf(openedAt, capacity);
+        index = new int[2 * capacity];
+        for (int position = 0; position < size; position++) {
+            index[emptySlot(keys[position])] = position + 1;
+        }
+    }
+
+    private static int home(Object key, int mask) {
+        int hash = key.hashCode() * 0x9e3779b9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression
+ * <p/>
+ * Compression formats accepted for capture files and streams.  The format
+ * is detected from the first bytes of the input, not from its name.
+ */
+public enum Compression {
+    NONE,
+    GZIP,
+    ZSTD;
+
+    private static final int GZIP_MAGIC = 0x1f8b; // first two bytes
+    private static final int ZSTD_MAGIC = 0x28b52ffd; // first four bytes
+    private static final int STREAM_BUFFER_SIZE = 256 * 1024; // bytes
+
+    public static Compression of(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return of(new BufferedInputStream(in, 4));
+        }
+    }
+
+    // peek at the first bytes of a stream that supports mark / reset, without consuming them
+    public static Compression of(InputStream in) throws IOException {
+        byte[] magic = new byte[4];
+        int length = 0;
+        in.mark(magic.length);
+        int read;
+        while ((length < magic.length) && ((read = in.read(magic, length, magic.length - length)) > 0)) {
+            length += read;
+        }
+        in.reset();
+        if ((length >= 2) && ((((magic[0] & 0xff) << 8) | (magic[1] & 0xff)) == GZIP_MAGIC)) {
+            return GZIP;
+        }
+        if ((length == 4) && ((((magic[0] & 0xff) << 24) | ((magic[1] & 0xff) << 16) | ((magic[2] & 0xff) << 8) | (magic[3] & 0xff)) == ZSTD_MAGIC)) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    // the decompressed contents of the file, decompressed ahead of the reader on a prefetch thread
+    public InputStream open(File file) throws IOException {
+        return open(new FileInputStream(file), file.getName());
+    }
+
+    // a pipe or stdin, which may or may not be compressed; it is read ahead on a prefetch thread
+    public static InputStream openStream(InputStream in, String name) throws IOException {
+        BufferedInputStream bufferedInputStream = new BufferedInputStream(in, STREAM_BUFFER_SIZE);
+        return of(bufferedInputStream).open(bufferedInputStream, name);
+    }
+
+    private InputStream open(InputStream in, String name) throws IOException {
+        try {
+            switch (this) {
+                case GZIP:
+                    in = new GZIPInputStream(in, STREAM_BUFFER_SIZE);
+                    break;
+                case ZSTD:
+                    in = new ZstdInputStream(in);
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new PrefetchInputStream(in, name);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.main.Mode;
+
+/**
+ * DecodePlan
+ * <p/>
+ * Which layers and statistics a mode actually consumes.  Everything a mode
+ * does not report is neither decoded nor collected.  TCP is always decoded,
+ * since every mode tracks the handshake.  No mode reports MAC addresses, so
+ * they are only decoded for trace output.
+ */
+public class DecodePlan {
+
+    // Mode 1: unique IPs, handshakes, UDP sources and non-IP counts
+    public static final DecodePlan BASIC_ANALYSIS = new DecodePlan(false, true, false, false, true, true, false);
+    // Mode 2: Mode 1 plus connection details and IP protocol counts
+    public static final DecodePlan DETAILED_ANALYSIS = new DecodePlan(false, true, false, false, true, true, true);
+    // Mode 3: attack detectors only
+    public static final DecodePlan POSSIBLE_ATTACKS_ANALYSIS = new DecodePlan(false, true, true, true, false, false, false);
+    public static final DecodePlan EVERYTHING = new DecodePlan(true, true, true, true, true, true, true);
+
+    public final boolean macAddresses;
+    public final boolean udp;
+    public final boolean icmp;
+    public final boolean arp;
+    public final boolean uniqueIpAddresses;
+    public final boolean udpSources;
+    public final boolean ipProtocolCounts;
+
+    public DecodePlan(boolean macAddresses, boolean udp, boolean icmp, boolean arp,
+                      boolean uniqueIpAddresses, boolean udpSources, boolean ipProtocolCounts) {
+        this.macAddresses = macAddresses;
+        this.udp = udp;
+        this.icmp = icmp;
+        this.arp = arp;
+        this.uniqueIpAddresses = uniqueIpAddresses;
+        this.udpSources = udpSources;
+        this.ipProtocolCounts = ipProtocolCounts;
+    }
+
+    public static DecodePlan forMode(Mode mode) {
+        switch (mode) {
+            case BASIC_ANALYSIS:
+                return BASIC_ANALYSIS;
+            case DETAILED_ANALYSIS:
+                return DETAILED_ANALYSIS;
+            default:
+                return POSSIBLE_ATTACKS_ANALYSIS;
+        }
+    }
+
+    // is the transport header for this IP protocol needed?
+    public boolean decodes(int ipProtocol) {
+        switch (ipProtocol) {
+            case FrameDecoder.PROTOCOL_TCP:
+                return true;
+            case FrameDecoder.PROTOCOL_UDP:
+                return udp;
+            case FrameDecoder.PROTOCOL_ICMPV4:
+            case FrameDecoder.PROTOCOL_ICMPV6:
+                return icmp;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DecodePlan{" +
+                "macAddresses=" + macAddresses +
+                ", udp=" + udp +
+                ", icmp=" + icmp +
+                ", arp=" + arp +
+                ", uniqueIpAddresses=" + uniqueIpAddresses +
+                ", udpSources=" + udpSources +
+                ", ipProtocolCounts=" + ipProtocolCounts +
+                '}';
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.filter.PacketFilter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * FilteredPcapReader
+ * <p/>
+ * Passes on only the records of another reader whose raw frame matches a
+ * PacketFilter, so that the others are never decoded.
+ */
+public class FilteredPcapReader implements PcapReader {
+    private final PcapReader pcapReader;
+    private final PacketFilter packetFilter;
+
+    public FilteredPcapReader(PcapReader pcapReader, PacketFilter packetFilter) {
+        this.pcapReader = pcapReader;
+        this.packetFilter = packetFilter;
+    }
+
+    @Override
+    public int getLinkType() {
+        return pcapReader.getLinkType();
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (pcapReader.next()) {
+            if (packetFilter.test(pcapReader.getPacketData())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return pcapReader.getTimestampNanos();
+    }
+
+    @Override
+    public int getCapturedLength() {
+        return pcapReader.getCapturedLength();
+    }
+
+    @Override
+    public int getOriginalLength() {
+        return pcapReader.getOriginalLength();
+    }
+
+    @Override
+    public ByteBuffer getPacketData() {
+        return pcapReader.getPacketData();
+    }
+
+    @Override
+    public void close() throws IOException {
+        pcapReader.close();
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FlowKey
+ * <p/>
+ * Direction-independent key of a flow (addresses, ports and IP protocol), of
+ * a host pair (addresses only) or of a single address, packed into
+ * primitives.  Both endpoints are held as 128-bit addresses, IPv4 in its
+ * IPv4-mapped IPv6 form, and the lower endpoint always comes first, so both
+ * directions of a flow give the same key.  The hash is computed once when
+ * the key is set.
+ * <p/>
+ * Keys are mutable so that a detector can keep one probe key, set it from
+ * each packet and look it up without allocating; only a key that is stored
+ * in a map is copied.  A key can also be written to and compared against
+ * BYTES bytes of a ByteBuffer, for flow tables kept off the heap.
+ */
+public class FlowKey {
+    public static final int BYTES = 40; // written size: four address longs, the ports and the protocol
+    private static final long IPV4_MAPPED = 0xffffL << 32;
+
+    private long lowerHigh;
+    private long lowerLow;
+    private long upperHigh;
+    private long upperLow;
+    private int ports; // lower endpoint's port in the high 16 bits, upper endpoint's in the low 16 bits
+    private int protocol;
+    private int hash;
+    private boolean reversed; // the packet's source is the upper endpoint; not part of the key
+
+    public FlowKey() {
+    }
+
+    // addresses, ports and IP protocol of the packet
+    public FlowKey setFlow(PacketInfo packetInfo) {
+        return set(packetInfo, packetInfo.sourcePort, packetInfo.destinationPort, packetInfo.getIpProtocol());
+    }
+
+    // addresses of the packet only
+    public FlowKey setHostPair(PacketInfo packetInfo) {
+        return set(packetInfo, 0, 0, 0);
+    }
+
+    // source address of the packet only; it is the lower endpoint
+    public FlowKey setSource(PacketInfo packetInfo) {
+        if (packetInfo.ipVersion == PacketInfo.IPV4) {
+            return setAddress(0, IPV4_MAPPED | (packetInfo.sourceIpv4 & 0xffffffffL));
+        }
+        return setAddress(packetInfo.sourceIpv6High, packetInfo.sourceIpv6Low);
+    }
+
+    // destination address of the packet only; it is the lower endpoint
+    public FlowKey setDestination(PacketInfo packetInfo) {
+        if (packetInfo.ipVersion == PacketInfo.IPV4) {
+            return setAddress(0, IPV4_MAPPED | (packetInfo.destinationIpv4 & 0xffffffffL));
+        }
+        return setAddress(packetInfo.destinationIpv6High, packetInfo.destinationIpv6Low);
+    }
+
+    private FlowKey setAddress(long high, long low) {
+        lowerHigh = high;
+        lowerLow = low;
+        upperHigh = 0;
+        upperLow = 0;
+        ports = 0;
+        protocol = 0;
+        reversed = false;
+        hash = computeHash();
+        return this;
+    }
+
+    private FlowKey set(PacketInfo packetInfo, int sourcePort, int destinationPort, int protocol) {
+        long sourceHigh;
+        long sourceLow;
+        long destinationHigh;
+        long destinationLow;
+        if (packetInfo.ipVersion == PacketInfo.IPV4) {
+            sourceHigh = 0;
+            sourceLow = IPV4_MAPPED | (packetInfo.sourceIpv4 & 0xffffffffL);
+            destinationHigh = 0;
+            destinationLow = IPV4_MAPPED | (packetInfo.destinationIpv4 & 0xffffffffL);
+        } else {
+            sourceHigh = packetInfo.sourceIpv6High;
+            sourceLow = packetInfo.sourceIpv6Low;
+            destinationHigh = packetInfo.destinationIpv6High;
+            destinationLow = packetInfo.destinationIpv6Low;
+        }
+        int order = Long.compareUnsigned(sourceHigh, destinationHigh);
+        if (order == 0) {
+            order = Long.compareUnsigned(sourceLow, destinationLow);
+        }
+        if (order == 0) {
+            order = Integer.compare(sourcePort, destinationPort);
+        }
+        reversed = order > 0;
+        if (order <= 0) {
+            lowerHigh = sourceHigh;
+            lowerLow = sourceLow;
+            upperHigh = destinationHigh;
+            upperLow = destinationLow;
+            ports = (sourcePort << 16) | (destinationPort & 0xffff);
+        } else {
+            lowerHigh = destinationHigh;
+            lowerLow = destinationLow;
+            upperHigh = sourceHigh;
+            upperLow = sourceLow;
+            ports = (destinationPort << 16) | (sourcePort & 0xffff);
+        }
+        this.protocol = protocol;
+        this.hash = computeHash();
+        return this;
+    }
+
+    public FlowKey copy() {
+        FlowKey copy = new FlowKey();
+        copy.lowerHigh = lowerHigh;
+        copy.lowerLow = lowerLow;
+        copy.upperHigh = upperHigh;
+        copy.upperLow = upperLow;
+        copy.ports = ports;
+        copy.protocol = protocol;
+        copy.hash = hash;
+        copy.reversed = reversed;
+        return copy;
+    }
+
+    public boolean isReversed() {
+        return reversed;
+    }
+
+    // address of the lower or upper endpoint
+    public String getAddress(boolean upper) {
+        return upper ? formatAddress(upperHigh, upperLow) : formatAddress(lowerHigh, lowerLow);
+    }
+
+    public void writeTo(ByteBuffer buffer, int offset) {
+        buffer.putLong(offset, lowerHigh);
+        buffer.putLong(offset + 8, lowerLow);
+        buffer.putLong(offset + 16, upperHigh);
+        buffer.putLong(offset + 24, upperLow);
+        buffer.putInt(offset + 32, ports);
+        buffer.putInt(offset + 36, protocol);
+    }
+
+    // is this the key written at offset?
+    public boolean matches(ByteBuffer buffer, int offset) {
+        return (buffer.getLong(offset + 8) == lowerLow) &&
+                (buffer.getLong(offset + 24) == upperLow) &&
+                (buffer.getLong(offset) == lowerHigh) &&
+                (buffer.getLong(offset + 16) == upperHigh) &&
+                (buffer.getInt(offset + 32) == ports) &&
+                (buffer.getInt(offset + 36) == protocol);
+    }
+
+    public static FlowKey readFrom(ByteBuffer buffer, int offset) {
+        FlowKey flowKey = new FlowKey();
+        flowKey.lowerHigh = buffer.getLong(offset);
+        flowKey.lowerLow = buffer.getLong(offset + 8);
+        flowKey.upperHigh = buffer.getLong(offset + 16);
+        flowKey.upperLow = buffer.getLong(offset + 24);
+        flowKey.ports = buffer.getInt(offset + 32);
+        flowKey.protocol = buffer.getInt(offset + 36);
+        flowKey.hash = flowKey.computeHash();
+        return flowKey;
+    }
+
+    // address of the lower or upper endpoint of the key written at offset
+    public static String readAddress(ByteBuffer buffer, int offset, boolean upper) {
+        int address = upper ? offset + 16 : offset;
+        return formatAddress(buffer.getLong(address), buffer.getLong(address + 8));
+    }
+
+    // port of the lower or upper endpoint of the key written at offset
+    public static int readPort(ByteBuffer buffer, int offset, boolean upper) {
+        int ports = buffer.getInt(offset + 32);
+        return upper ? (ports & 0xffff) : (ports >>> 16);
+    }
+
+    private int computeHash() {
+        long hash = mix(lowerHigh ^ (((long) ports << 8) | protocol));
+        hash = mix(hash ^ lowerLow);
+        hash = mix(hash ^ upperHigh);
+        hash = mix(hash ^ upperLow);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    // 64-bit finalizer from MurmurHash3
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        FlowKey that = (FlowKey) o;
+
+        return (hash == that.hash) &&
+                (lowerLow == that.lowerLow) &&
+                (upperLow == that.upperLow) &&
+                (lowerHigh == that.lowerHigh) &&
+                (upperHigh == that.upperHigh) &&
+                (ports == that.ports) &&
+                (protocol == that.protocol);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    private static String formatAddress(long high, long low) {
+        if ((high == 0) && ((low & 0xffffffff00000000L) == IPV4_MAPPED)) {
+            return PacketInfoUtils.formatIpv4Address((int) low);
+        }
+        return PacketInfoUtils.formatIpv6Address(high, low);
+    }
+
+    @Override
+    public String toString() {
+        return "FlowKey{" +
+                formatAddress(lowerHigh, lowerLow) + ":" + (ports >>> 16) +
+                " <-> " + formatAddress(upperHigh, upperLow) + ":" + (ports & 0xffff) +
+                ", protocol=" + protocol +
+                '}';
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FrameDecoder
+ * <p/>
+ * Zero-allocation header decoder for Ethernet, IPv4, IPv6, TCP, UDP and
+ * ICMP.  Header fields are read straight out of the packet buffer at
+ * computed offsets and stored in the PacketInfo, together with the offsets
+ * of each layer so that later stages can find the payload without parsing
+ * the headers again.  All offsets are absolute indexes into the buffer.
+ */
+public class FrameDecoder {
+
+    public static final int ETHERNET_HEADER_LENGTH = 14;
+    public static final int IPV4_MIN_HEADER_LENGTH = 20;
+    public static final int IPV6_HEADER_LENGTH = 40;
+    public static final int TCP_MIN_HEADER_LENGTH = 20;
+    public static final int UDP_HEADER_LENGTH = 8;
+    public static final int ICMP_HEADER_LENGTH = 4;
+
+    public static final int ETHERTYPE_IPV4 = 0x0800;
+    public static final int ETHERTYPE_ARP = 0x0806;
+    public static final int ETHERTYPE_IPV6 = 0x86dd;
+
+    public static final int PROTOCOL_ICMPV4 = 1;
+    public static final int PROTOCOL_TCP = 6;
+    public static final int PROTOCOL_UDP = 17;
+    public static final int PROTOCOL_ICMPV6 = 58;
+
+    // decode every layer that is present; returns the PacketInfo.decodedLayers bits
+    public static int decode(ByteBuffer frame, PacketInfo packetInfo) {
+        return decode(frame, packetInfo, DecodePlan.EVERYTHING);
+    }
+
+    // decode the layers present that the plan asks for; returns the PacketInfo.decodedLayers bits
+    public static int decode(ByteBuffer frame, PacketInfo packetInfo, DecodePlan decodePlan) {
+        if (!decodeEthernet(frame, packetInfo, decodePlan.macAddresses)) {
+            return packetInfo.decodedLayers;
+        }
+        int networkLength = frame.limit() - packetInfo.networkOffset;
+        boolean decoded = false;
+        if (packetInfo.etherType == ETHERTYPE_IPV4) {
+            decoded = decodeIpv4(frame, packetInfo.networkOffset, networkLength, packetInfo);
+        } else if (packetInfo.etherType == ETHERTYPE_IPV6) {
+            decoded = decodeIpv6(frame, packetInfo.networkOffset, networkLength, packetInfo);
+        }
+        if (decoded && !packetInfo.hasFlag(PacketInfo.MORE_FRAGMENTS) && (packetInfo.fragmentOffset == 0) &&
+                decodePlan.decodes(packetInfo.getIpProtocol())) {
+            decodeTransport(frame, packetInfo);
+        }
+        return packetInfo.decodedLayers;
+    }
+
+    public static boolean decodeEthernet(ByteBuffer frame, PacketInfo packetInfo, boolean macAddresses) {
+        int offset = frame.position();
+        if (frame.limit() - offset < ETHERNET_HEADER_LENGTH) {
+            return false;
+        }
+        if (macAddresses) {
+            decodeMacAddresses(frame, packetInfo);
+        }
+        packetInfo.etherType = frame.getShort(offset + 12) & 0xffff;
+        packetInfo.networkOffset = offset + ETHERNET_HEADER_LENGTH;
+        packetInfo.decodedLayers |= PacketInfo.LINK_LAYER;
+        return true;
+    }
+
+    public static void decodeMacAddresses(ByteBuffer frame, PacketInfo packetInfo) {
+        packetInfo.destinationMac = getMac(frame, frame.position());
+        packetInfo.sourceMac = getMac(frame, frame.position() + 6);
+    }
+
+    public static boolean decodeIpv4(ByteBuffer packet, int offset, int length, PacketInfo packetInfo) {
+        if (length < IPV4_MIN_HEADER_LENGTH) {
+            return false;
+        }
+        int versionAndLength = packet.get(offset) & 0xff;
+        int headerLength = (versionAndLength & 0x0f) * 4;
+        if (((versionAndLength >>> 4) != 4) || (headerLength < IPV4_MIN_HEADER_LENGTH) || (headerLength > length)) {
+            return false;
+        }
+        int totalLength = packet.getShort(offset + 2) & 0xffff;
+        if (totalLength == 0) { // TCP segmentation offload leaves the total length unset
+            totalLength = length;
+        } else if (totalLength < headerLength) {
+            return false;
+        }
+        int flagsAndFragmentOffset = packet.getShort(offset + 6) & 0xffff;
+        packetInfo.ipVersion = PacketInfo.IPV4;
+        packetInfo.ipIdentification = packet.getShort(offset + 4) & 0xffff;
+        packetInfo.setFlag(PacketInfo.MORE_FRAGMENTS, (flagsAndFragmentOffset & 0x2000) != 0);
+        packetInfo.fragmentOffset = (flagsAndFragmentOffset & 0x1fff) * 8;
+        packetInfo.ipProtocol = packet.get(offset + 9);
+        packetInfo.sourceIpv4 = packet.getInt(offset + 12);
+        packetInfo.destinationIpv4 = packet.getInt(offset + 16);
+        packetInfo.networkOffset = offset;
+        packetInfo.transportOffset = offset + headerLength;
+        packetInfo.transportLength = Math.min(totalLength, length) - headerLength;
+        packetInfo.ipLength = totalLength;
+        packetInfo.decodedLayers |= PacketInfo.NETWORK_LAYER;
+        return true;
+    }
+
+    public static boolean decodeIpv6(ByteBuffer packet, int offset, int length, PacketInfo packetInfo) {
+        if ((length < IPV6_HEADER_LENGTH) || (((packet.get(offset) & 0xff) >>> 4) != 6)) {
+            return false;
+        }
+        int payloadLength = packet.getShort(offset + 4) & 0xffff;
+        if (payloadLength == 0) { // jumbogram or offloaded segment
+            payloadLength = length - IPV6_HEADER_LENGTH;
+        }
+        packetInfo.ipVersion = PacketInfo.IPV6;
+        packetInfo.ipProtocol = packet.get(offset + 6);
+        packetInfo.sourceIpv6High = packet.getLong(offset + 8);
+        packetInfo.sourceIpv6Low = packet.getLong(offset + 16);
+        packetInfo.destinationIpv6High = packet.getLong(offset + 24);
+        packetInfo.destinationIpv6Low = packet.getLong(offset + 32);
+        packetInfo.networkOffset = offset;
+        packetInfo.transportOffset = offset + IPV6_HEADER_LENGTH;
+        packetInfo.transportLength = Math.min(payloadLength, length - IPV6_HEADER_LENGTH);
+        packetInfo.ipLength = IPV6_HEADER_LENGTH + payloadLength;
+        packetInfo.decodedLayers |= PacketInfo.NETWORK_LAYER;
+        return true;
+    }
+
+    // decode the TCP, UDP or ICMP header found at packetInfo.transportOffset
+    public static boolean decodeTransport(ByteBuffer packet, PacketInfo packetInfo) {
+        switch (packetInfo.getIpProtocol()) {
+            case PROTOCOL_TCP:
+                return decodeTcp(packet, packetInfo);
+            case PROTOCOL_UDP:
+                return decodeUdp(packet, packetInfo);
+            case PROTOCOL_ICMPV4:
+            case PROTOCOL_ICMPV6:
+                return decodeIcmp(packet, packetInfo);
+            default:
+                return false;
+        }
+    }
+
+    public static boolean decodeTcp(ByteBuffer packet, PacketInfo packetInfo) {
+        int offset = packetInfo.transportOffset;
+        int length = packetInfo.transportLength;
+        if (length < TCP_MIN_HEADER_LENGTH) {
+            return false;
+        }
+        int headerLength = ((packet.get(offset + 12) & 0xff) >>> 4) * 4;
+        if ((headerLength < TCP_MIN_HEADER_LENGTH) || (headerLength > length)) {
+            return false;
+        }
+        packetInfo.sourcePort = packet.getShort(offset) & 0xffff;
+        packetInfo.destinationPort = packet.getShort(offset + 2) & 0xffff;
+        packetInfo.sequenceNumber = packet.getInt(offset + 4) & 0xffffffffL;
+        packetInfo.acknowledgementNumber = packet.getInt(offset + 8) & 0xffffffffL;
+        packetInfo.flags = (packetInfo.flags & ~PacketInfo.TCP_FLAGS) | (packet.get(offset + 13) & PacketInfo.TCP_FLAGS);
+        packetInfo.payloadOffset = offset + headerLength;
+        packetInfo.payloadLength = length - headerLength;
+        packetInfo.decodedLayers |= PacketInfo.TRANSPORT_LAYER;
+        return true;
+    }
+
+    public static boolean decodeUdp(ByteBuffer packet, PacketInfo packetInfo) {
+        int offset = packetInfo.transportOffset;
+        int length = packetInfo.transportLength;
+        if (length < UDP_HEADER_LENGTH) {
+            return false;
+        }
+        packetInfo.sourcePort = packet.getShort(offset) & 0xffff;
+        packetInfo.destinationPort = packet.getShort(offset + 2) & 0xffff;
+        packetInfo.payloadOffset = offset + UDP_HEADER_LENGTH;
+        packetInfo.payloadLength = length - UDP_HEADER_LENGTH;
+        packetInfo.decodedLayers |= PacketInfo.TRANSPORT_LAYER;
+        return true;
+    }
+
+    public static boolean decodeIcmp(ByteBuffer packet, PacketInfo packetInfo) {
+        int offset = packetInfo.transportOffset;
+        int length = packetInfo.transportLength;
+        if (length < ICMP_HEADER_LENGTH) {
+            return false;
+        }
+        packetInfo.icmpType = packet.get(offset) & 0xff;
+        packetInfo.icmpCode = packet.get(offset + 1) & 0xff;
+        packetInfo.payloadOffset = offset + ICMP_HEADER_LENGTH;
+        packetInfo.payloadLength = length - ICMP_HEADER_LENGTH;
+        packetInfo.decodedLayers |= PacketInfo.TRANSPORT_LAYER;
+        return true;
+    }
+
+    private static long getMac(ByteBuffer frame, int offset) {
+        return ((frame.getShort(offset) & 0xffffL) << 32) | (frame.getInt(offset + 2) & 0xffffffffL);
+    }
+}
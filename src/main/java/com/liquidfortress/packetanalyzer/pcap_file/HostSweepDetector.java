@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.statistics.HyperLogLog;
+import com.liquidfortress.packetanalyzer.statistics.WindowedLinearCounter;
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
+import org.apache.logging.log4j.core.Logger;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HostSweepDetector
+ * <p/>
+ * Detects horizontal scans: one source probing many destination hosts, such
+ * as a ping sweep or one port swept across a subnet.  PortScanDetector
+ * counts ports per source, so it does not see these.
+ * <p/>
+ * Each source gets a WindowedLinearCounter of the destination addresses it
+ * probed, which stays a few hundred bytes however many hosts it touches.
+ * Sources that have been idle for a whole window are purged once per
+ * window.  The sketches do not keep the addresses, so an attack summary
+ * lists the targets probed after the sweep was detected, up to
+ * MAX_REPORTED_TARGETS.
+ */
+public class HostSweepDetector {
+    private static final int DETECTION_THRESHOLD = 128; // distinct destination hosts
+    private static final long LOOKBACK_WINDOW = 5000; // milliseconds
+    private static final long LOOKBACK_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(LOOKBACK_WINDOW);
+    private static final int BUCKETS = 5;
+    private static final int MAX_REPORTED_TARGETS = 256;
+    private static final long IPV4_TAG = 4L << 32;
+    private static Logger log = Main.log;
+
+    private final HashMap<FlowKey, WindowedLinearCounter> sources = new HashMap<>();
+    private final FlowKey probe = new FlowKey(); // reused for lookups
+    // one open attack per sweeping source
+    private final AttackTable<FlowKey, WindowedLinearCounter> attacks;
+    private final AttackTable.IncidentVisitor<FlowKey, WindowedLinearCounter> attackOver = this::isOver;
+    private long currentTime = 0;
+    private long nextPurge = Long.MIN_VALUE;
+
+    public HostSweepDetector(int maxIncidents) {
+        this.attacks = new AttackTable<>(maxIncidents);
+    }
+
+    // TCP, UDP and ICMP echo request packets
+    public void add(PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+        if (packetInfo == null) {
+            throw new IllegalArgumentException("packetInfo cannot be null!");
+        }
+        currentTime = packetInfo.timestampNanos;
+        purge();
+        if (PortScanDetector.isProbe(packetInfo)) {
+            addProbe(packetInfo, pcapFileSummary);
+        }
+        // close the attacks whose sources have gone quiet
+        attacks.sweep(pcapFileSummary, attackOver);
+    }
+
+    // close the attacks that are still open at the end of the file
+    public void closeAll(long timestampNanos, PcapFileSummary pcapFileSummary) {
+        attacks.closeAll(PacketInfoUtils.toInstant(timestampNanos).toString(), pcapFileSummary);
+    }
+
+    private void addProbe(PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+        FlowKey sourceKey = probe.setSource(packetInfo);
+        WindowedLinearCounter destinations = sources.get(sourceKey);
+        if (destinations == null) {
+            destinations = new WindowedLinearCounter(LOOKBACK_WINDOW_NANOS, BUCKETS);
+            sources.put(sourceKey.copy(), destinations);
+        }
+        if (packetInfo.ipVersion == PacketInfo.IPV4) {
+            destinations.add(currentTime, HyperLogLog.hash(IPV4_TAG | (packetInfo.destinationIpv4 & 0xffffffffL)));
+        } else {
+            destinations.add(currentTime, HyperLogLog.hash(packetInfo.destinationIpv6High, packetInfo.destinationIpv6Low));
+        }
+
+        AttackSummary attackSummary = attacks.get(sourceKey);
+        if (destinations.estimate() >= DETECTION_THRESHOLD) {
+            if (attackSummary == null) { // attack first detected
+                log.trace("*** HOST SWEEP detected!");
+                attackSummary = attacks.open(sourceKey.copy(), destinations, "HOST SWEEP",
+                        PacketInfoUtils.toInstant(currentTime - LOOKBACK_WINDOW_NANOS).toString());
+                if (attackSummary == null) {
+                    return; // too many attacks open
+                }
+            }
+            // add more details while attack in progress
+            attackSummary.addSourceIpAndPort(packetInfo.getSourceAddress());
+            if (attackSummary.getTargetIpAndPorts().size() < MAX_REPORTED_TARGETS) {
+                boolean hasPorts = packetInfo.getIpProtocol() == FrameDecoder.PROTOCOL_TCP ||
+                        packetInfo.getIpProtocol() == FrameDecoder.PROTOCOL_UDP;
+                attackSummary.addTargetIpAndPort(hasPorts ?
+                        packetInfo.getDestinationAddress() + ":" + packetInfo.destinationPort :
+                        packetInfo.getDestinationAddress());
+            }
+        } else if (attackSummary != null) { // attack ended, close out attack details
+            attacks.close(sourceKey, PacketInfoUtils.toInstant(currentTime).toString(), pcapFileSummary);
+        } else {
+            attacks.forget(sourceKey);
+        }
+    }
+
+    private boolean isOver(FlowKey sourceKey, WindowedLinearCounter destinations, AttackSummary attackSummary) {
+        destinations.expire(currentTime);
+        if (destinations.estimate() >= DETECTION_THRESHOLD) {
+            return false;
+        }
+        attackSummary.setEndTimestamp(PacketInfoUtils.toInstant(currentTime).toString());
+        return true;
+    }
+
+    // drop the sources that have not probed anything for a whole window and have no open attack
+    private void purge() {
+        if (currentTime < nextPurge) {
+            return;
+        }
+        if (nextPurge != Long.MIN_VALUE) {
+            sources.entrySet().removeIf(entry -> {
+                entry.getValue().expire(currentTime);
+                if (!entry.getValue().isEmpty() || (attacks.get(entry.getKey()) != null)) {
+                    return false;
+                }
+                attacks.forget(entry.getKey());
+                return true;
+            });
+        }
+        nextPurge = currentTime + LOOKBACK_WINDOW_NANOS;
+    }
+}
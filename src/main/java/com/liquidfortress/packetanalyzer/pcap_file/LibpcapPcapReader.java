@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNativeException;
+import org.pcap4j.core.Pcaps;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+
+/**
+ * LibpcapPcapReader
+ * <p/>
+ * Reads pcap files through libpcap using Pcap4j.  This is the fallback
+ * for captures that the built-in MappedPcapReader cannot handle.
+ */
+public class LibpcapPcapReader implements PcapReader {
+
+    private final PcapHandle pcapHandle;
+    private final int linkType;
+
+    private long timestampNanos;
+    private int capturedLength;
+    private int originalLength;
+    private ByteBuffer packetData;
+
+    public LibpcapPcapReader(File pcapFile) throws IOException {
+        try {
+            this.pcapHandle = Pcaps.openOffline(pcapFile.getAbsolutePath());
+        } catch (PcapNativeException e) {
+            throw new IOException("Could not open pcap file: " + pcapFile, e);
+        }
+        this.linkType = pcapHandle.getDlt().value();
+    }
+
+    @Override
+    public int getLinkType() {
+        return linkType;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        byte[] rawData;
+        try {
+            rawData = pcapHandle.getNextRawPacket();
+        } catch (NotOpenException e) {
+            throw new IOException(e);
+        }
+        if (rawData == null) {
+            return false;
+        }
+        Timestamp timestamp = pcapHandle.getTimestamp();
+        timestampNanos = (Math.floorDiv(timestamp.getTime(), 1000L) * 1000000000L) + timestamp.getNanos();
+        capturedLength = rawData.length;
+        Integer original = pcapHandle.getOriginalLength();
+        originalLength = (original != null) ? original : rawData.length;
+        packetData = ByteBuffer.wrap(rawData);
+        return true;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    @Override
+    public int getCapturedLength() {
+        return capturedLength;
+    }
+
+    @Override
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    @Override
+    public ByteBuffer getPacketData() {
+        return packetData;
+    }
+
+    @Override
+    public void close() {
+        pcapHandle.close();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.main.Main;
+import org.apache.logging.log4j.core.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedPcapReader
+ * <p/>
+ * Pure Java pcap reader that memory-maps the capture file and walks the
+ * global and record headers in place.  Packet data is handed out as
+ * zero-copy slices of the mapping.  Files larger than a single mapping
+ * are mapped in windows that are moved forward as the records are read.
+ */
+public class MappedPcapReader implements PcapReader {
+    public static final int GLOBAL_HEADER_LENGTH = 24;
+    public static final int RECORD_HEADER_LENGTH = 16;
+    public static final int MAGIC_MICROSECONDS = 0xa1b2c3d4;
+    public static final int MAGIC_NANOSECONDS = 0xa1b23c4d;
+    // no sane capture has records this large; treat them as corruption
+    public static final int MAX_CAPTURED_LENGTH = 64 * 1024 * 1024;
+    private static final long MAX_MAPPING_SIZE = 1L << 30; // bytes
+    private static Logger log = Main.log;
+
+    private final File pcapFile;
+    private final FileChannel fileChannel;
+    private final long fileSize;
+    private final ByteOrder byteOrder;
+    private final boolean nanosecondResolution;
+    private final int linkType;
+
+    private MappedByteBuffer mapping = null;
+    private long mappingStart = 0;
+    private long position = GLOBAL_HEADER_LENGTH;
+    private long recordOffset = 0;
+
+    private long timestampNanos;
+    private int capturedLength;
+    private int originalLength;
+    private ByteBuffer packetData;
+
+    public MappedPcapReader(File pcapFile) throws IOException {
+        this.pcapFile = pcapFile;
+        this.fileChannel = FileChannel.open(pcapFile.toPath(), StandardOpenOption.READ);
+        try {
+            this.fileSize = fileChannel.size();
+            if (!ensureMapped(0, GLOBAL_HEADER_LENGTH)) {
+                throw new IOException(pcapFile + " is too short to be a pcap file");
+            }
+            int magic = mapping.order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+            if ((magic == MAGIC_MICROSECONDS) || (magic == MAGIC_NANOSECONDS)) {
+                byteOrder = ByteOrder.LITTLE_ENDIAN;
+            } else if ((Integer.reverseBytes(magic) == MAGIC_MICROSECONDS) || (Integer.reverseBytes(magic) == MAGIC_NANOSECONDS)) {
+                byteOrder = ByteOrder.BIG_ENDIAN;
+                magic = Integer.reverseBytes(magic);
+            } else {
+                throw new IOException(pcapFile + " is not a pcap file; magic number was: " + Integer.toHexString(magic));
+            }
+            nanosecondResolution = (magic == MAGIC_NANOSECONDS);
+            mapping.order(byteOrder);
+            linkType = mapping.getInt(20);
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    // make sure [start, start + length) lies within the current mapping, moving the mapping window if necessary
+    private boolean ensureMapped(long start, int length) throws IOException {
+        if (start + length > fileSize) {
+            return false;
+        }
+        if ((mapping == null) || (start < mappingStart) || (start + length > mappingStart + mapping.capacity())) {
+            long size = Math.max(Math.min(MAX_MAPPING_SIZE, fileSize - start), length);
+            mapping = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            mapping.order(byteOrder == null ? ByteOrder.LITTLE_ENDIAN : byteOrder);
+            mappingStart = start;
+        }
+        return true;
+    }
+
+    @Override
+    public int getLinkType() {
+        return linkType;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (!ensureMapped(position, RECORD_HEADER_LENGTH)) {
+            if (position < fileSize) {
+                log.trace("Truncated record header at offset " + position + " in pcap file: " + pcapFile);
+            }
+            return false;
+        }
+        int recordStart = (int) (position - mappingStart);
+        long seconds = mapping.getInt(recordStart) & 0xffffffffL;
+        long fraction = mapping.getInt(recordStart + 4) & 0xffffffffL;
+        int captured = mapping.getInt(recordStart + 8);
+        int original = mapping.getInt(recordStart + 12);
+        if ((captured < 0) || (captured > MAX_CAPTURED_LENGTH)) {
+            throw new IOException("Corrupt record at offset " + position + " in pcap file: " + pcapFile +
+                    "; captured length was: " + captured);
+        }
+        if (!ensureMapped(position, RECORD_HEADER_LENGTH + captured)) {
+            log.trace("Truncated record at offset " + position + " in pcap file: " + pcapFile);
+            return false;
+        }
+        recordStart = (int) (position - mappingStart);
+        ByteBuffer view = mapping.duplicate();
+        view.limit(recordStart + RECORD_HEADER_LENGTH + captured);
+        view.position(recordStart + RECORD_HEADER_LENGTH);
+        packetData = view.slice();
+        recordOffset = position;
+        timestampNanos = (seconds * 1000000000L) + (nanosecondResolution ? fraction : fraction * 1000L);
+        capturedLength = captured;
+        originalLength = original;
+        position += RECORD_HEADER_LENGTH + captured;
+        return true;
+    }
+
+    // byte offset of the current record's header in the file
+    public long getRecordOffset() {
+        return recordOffset;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    @Override
+    public int getCapturedLength() {
+        return capturedLength;
+    }
+
+    @Override
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    @Override
+    public ByteBuffer getPacketData() {
+        return packetData;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapping = null;
+        packetData = null;
+        fileChannel.close();
+    }
+}
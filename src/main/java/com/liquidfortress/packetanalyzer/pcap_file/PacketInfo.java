@@ -20,46 +20,190 @@
 
 package com.liquidfortress.packetanalyzer.pcap_file;
 
-import java.util.HashMap;
-import java.util.Map;
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
 
 /**
  * PacketInfo
  * <p/>
- * Stores information gathered about the current packet being processed
+ * Stores information gathered about the current packet being processed.
+ * A single instance is reused for every packet in a file, so anything that
+ * keeps a PacketInfo beyond the current packet must keep a copy().
  */
 public class PacketInfo {
 
-    public static final String TIMESTAMP = "TIMESTAMP";
-    public static final String SOURCE_MAC = "SOURCE_MAC";
-    public static final String DESTINATION_MAC = "DESTINATION_MAC";
-    public static final String ETHERTYPE = "ETHERTYPE";
-    public static final String SOURCE_ADDRESS = "SOURCE_ADDRESS";
-    public static final String SOURCE_PORT = "SOURCE_PORT";
-    public static final String DESTINATION_ADDRESS = "DESTINATION_ADDRESS";
-    public static final String DESTINATION_PORT = "DESTINATION_PORT";
-    public static final String IP_PROTOCOL = "IP_PROTOCOL";
-    public static final String IP_IDENTIFICATION = "IP_IDENTIFICATION";
-    public static final String WAS_FRAGMENTED = "WAS_FRAGMENTED";
-    public static final String SYN = "SYN";
-    public static final String ACK = "ACK";
-    public static final String FIN = "FIN";
-
-    private final HashMap<String, String> info = new HashMap<>();
+    // flag bits; the TCP flags use the same bit positions as the TCP header
+    public static final int FIN = 0x01;
+    public static final int SYN = 0x02;
+    public static final int RST = 0x04;
+    public static final int PSH = 0x08;
+    public static final int ACK = 0x10;
+    public static final int URG = 0x20;
+    public static final int TCP_FLAGS = 0x3f;
+    public static final int WAS_FRAGMENTED = 0x100;
+    public static final int MORE_FRAGMENTS = 0x200;
+
+    // decodedLayers bits, set by FrameDecoder as each header is decoded
+    public static final int LINK_LAYER = 0x1;
+    public static final int NETWORK_LAYER = 0x2;
+    public static final int TRANSPORT_LAYER = 0x4;
+
+    public static final int NOT_IP = 0;
+    public static final int IPV4 = 4;
+    public static final int IPV6 = 6;
+
+    public long packetNumber;
+    public long timestampNanos;
+    public long sourceMac;
+    public long destinationMac;
+    public int etherType;
+    public int ipVersion;
+    public int sourceIpv4;
+    public int destinationIpv4;
+    public long sourceIpv6High;
+    public long sourceIpv6Low;
+    public long destinationIpv6High;
+    public long destinationIpv6Low;
+    public byte ipProtocol;
+    public int ipIdentification;
+    public int fragmentOffset;
+    public int sourcePort;
+    public int destinationPort;
+    public long sequenceNumber;
+    public long acknowledgementNumber;
+    public int icmpType;
+    public int icmpCode;
+    public int flags;
+    public int ipLength; // IP datagram length stated by its header, even when the capture is truncated
+
+    // absolute offsets into the buffer the headers were decoded from
+    public int decodedLayers;
+    public int networkOffset;
+    public int transportOffset;
+    public int transportLength;
+    public int payloadOffset;
+    public int payloadLength;
+
+    // formatted addresses are only built when asked for
+    private String sourceAddress;
+    private String destinationAddress;
 
     public PacketInfo() {
     }
 
-    public String get(Object o) {
-        return info.get(o);
+    public void reset() {
+        packetNumber = 0;
+        timestampNanos = 0;
+        sourceMac = 0;
+        destinationMac = 0;
+        etherType = 0;
+        ipVersion = NOT_IP;
+        sourceIpv4 = 0;
+        destinationIpv4 = 0;
+        sourceIpv6High = 0;
+        sourceIpv6Low = 0;
+        destinationIpv6High = 0;
+        destinationIpv6Low = 0;
+        ipProtocol = 0;
+        ipIdentification = 0;
+        fragmentOffset = 0;
+        sourcePort = 0;
+        destinationPort = 0;
+        sequenceNumber = 0;
+        acknowledgementNumber = 0;
+        icmpType = 0;
+        icmpCode = 0;
+        flags = 0;
+        ipLength = 0;
+        decodedLayers = 0;
+        networkOffset = 0;
+        transportOffset = 0;
+        transportLength = 0;
+        payloadOffset = 0;
+        payloadLength = 0;
+        sourceAddress = null;
+        destinationAddress = null;
     }
 
-    public boolean containsKey(Object o) {
-        return info.containsKey(o);
+    public PacketInfo copy() {
+        PacketInfo copy = new PacketInfo();
+        copy.packetNumber = packetNumber;
+        copy.timestampNanos = timestampNanos;
+        copy.sourceMac = sourceMac;
+        copy.destinationMac = destinationMac;
+        copy.etherType = etherType;
+        copy.ipVersion = ipVersion;
+        copy.sourceIpv4 = sourceIpv4;
+        copy.destinationIpv4 = destinationIpv4;
+        copy.sourceIpv6High = sourceIpv6High;
+        copy.sourceIpv6Low = sourceIpv6Low;
+        copy.destinationIpv6High = destinationIpv6High;
+        copy.destinationIpv6Low = destinationIpv6Low;
+        copy.ipProtocol = ipProtocol;
+        copy.ipIdentification = ipIdentification;
+        copy.fragmentOffset = fragmentOffset;
+        copy.sourcePort = sourcePort;
+        copy.destinationPort = destinationPort;
+        copy.sequenceNumber = sequenceNumber;
+        copy.acknowledgementNumber = acknowledgementNumber;
+        copy.icmpType = icmpType;
+        copy.icmpCode = icmpCode;
+        copy.flags = flags;
+        copy.ipLength = ipLength;
+        copy.decodedLayers = decodedLayers;
+        copy.networkOffset = networkOffset;
+        copy.transportOffset = transportOffset;
+        copy.transportLength = transportLength;
+        copy.payloadOffset = payloadOffset;
+        copy.payloadLength = payloadLength;
+        copy.sourceAddress = sourceAddress;
+        copy.destinationAddress = destinationAddress;
+        return copy;
     }
 
-    public void put(String s, String s2) {
-        info.put(s, s2);
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public void setFlag(int flag, boolean value) {
+        if (value) {
+            flags |= flag;
+        } else {
+            flags &= ~flag;
+        }
+    }
+
+    public boolean isDecoded(int layer) {
+        return (decodedLayers & layer) != 0;
+    }
+
+    public int getIpProtocol() {
+        return ipProtocol & 0xff;
+    }
+
+    public String getSourceAddress() {
+        if (sourceAddress == null) {
+            if (ipVersion == IPV4) {
+                sourceAddress = PacketInfoUtils.formatIpv4Address(sourceIpv4);
+            } else if (ipVersion == IPV6) {
+                sourceAddress = PacketInfoUtils.formatIpv6Address(sourceIpv6High, sourceIpv6Low);
+            }
+        }
+        return sourceAddress;
+    }
+
+    public String getDestinationAddress() {
+        if (destinationAddress == null) {
+            if (ipVersion == IPV4) {
+                destinationAddress = PacketInfoUtils.formatIpv4Address(destinationIpv4);
+            } else if (ipVersion == IPV6) {
+                destinationAddress = PacketInfoUtils.formatIpv6Address(destinationIpv6High, destinationIpv6Low);
+            }
+        }
+        return destinationAddress;
+    }
+
+    public String getTimestamp() {
+        return PacketInfoUtils.toTimestamp(timestampNanos).toString();
     }
 
     @Override
@@ -69,23 +213,66 @@ public class PacketInfo {
 
         PacketInfo that = (PacketInfo) o;
 
-        return info.equals(that.info);
+        return timestampNanos == that.timestampNanos &&
+                sourceMac == that.sourceMac &&
+                destinationMac == that.destinationMac &&
+                etherType == that.etherType &&
+                ipVersion == that.ipVersion &&
+                sourceIpv4 == that.sourceIpv4 &&
+                destinationIpv4 == that.destinationIpv4 &&
+                sourceIpv6High == that.sourceIpv6High &&
+                sourceIpv6Low == that.sourceIpv6Low &&
+                destinationIpv6High == that.destinationIpv6High &&
+                destinationIpv6Low == that.destinationIpv6Low &&
+                ipProtocol == that.ipProtocol &&
+                ipIdentification == that.ipIdentification &&
+                fragmentOffset == that.fragmentOffset &&
+                sourcePort == that.sourcePort &&
+                destinationPort == that.destinationPort &&
+                sequenceNumber == that.sequenceNumber &&
+                acknowledgementNumber == that.acknowledgementNumber &&
+                icmpType == that.icmpType &&
+                icmpCode == that.icmpCode &&
+                flags == that.flags;
     }
 
     @Override
     public int hashCode() {
-        return info.hashCode();
+        int result = Long.hashCode(timestampNanos);
+        result = 31 * result + Long.hashCode(sourceMac);
+        result = 31 * result + Long.hashCode(destinationMac);
+        result = 31 * result + etherType;
+        result = 31 * result + ipVersion;
+        result = 31 * result + sourceIpv4;
+        result = 31 * result + destinationIpv4;
+        result = 31 * result + Long.hashCode(sourceIpv6High);
+        result = 31 * result + Long.hashCode(sourceIpv6Low);
+        result = 31 * result + Long.hashCode(destinationIpv6High);
+        result = 31 * result + Long.hashCode(destinationIpv6Low);
+        result = 31 * result + ipProtocol;
+        result = 31 * result + ipIdentification;
+        result = 31 * result + fragmentOffset;
+        result = 31 * result + sourcePort;
+        result = 31 * result + destinationPort;
+        result = 31 * result + Long.hashCode(sequenceNumber);
+        result = 31 * result + Long.hashCode(acknowledgementNumber);
+        result = 31 * result + icmpType;
+        result = 31 * result + icmpCode;
+        result = 31 * result + flags;
+        return result;
     }
 
     public String toString() {
-        StringBuilder builder = new StringBuilder("PacketInfo {\n");
-        for (Map.Entry<String, String> entry : info.entrySet()) {
-            builder.append(entry.getKey());
-            builder.append(" => ");
-            builder.append(entry.getValue());
-            builder.append("\n");
-        }
-        builder.append("}");
-        return builder.toString();
+        return "PacketInfo{" +
+                "timestamp=" + getTimestamp() +
+                ", etherType=0x" + Integer.toHexString(etherType) +
+                ", sourceAddress=" + getSourceAddress() +
+                ", sourcePort=" + sourcePort +
+                ", destinationAddress=" + getDestinationAddress() +
+                ", destinationPort=" + destinationPort +
+                ", ipProtocol=" + getIpProtocol() +
+                ", ipIdentification=" + ipIdentification +
+                ", flags=0x" + Integer.toHexString(flags) +
+                '}';
     }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PacketRing
+ * <p/>
+ * Bounded, lock-free ring of preallocated packet slots shared by one
+ * producer and a fixed chain of consumer stages, each stage run by a single
+ * thread.  A slot is handed from the producer to stage 1, from stage 1 to
+ * stage 2 and so on without being copied; the producer only reuses a slot
+ * once the last stage has released it, which gives backpressure.  Each
+ * party publishes its progress through a sequence counter, so slots move
+ * through the ring in order.
+ */
+public class PacketRing {
+    private static final int INITIAL_DATA_LENGTH = 2048; // bytes; enough for an Ethernet frame
+    private static final int SPINS_BEFORE_YIELD = 100;
+    private static final int YIELDS_BEFORE_PARK = 100;
+    private static final long PARK_NANOS = 50000;
+
+    /**
+     * Slot
+     * <p/>
+     * One packet: its bytes, and the PacketInfo that is decoded from them
+     */
+    public static class Slot {
+        public final PacketInfo packetInfo = new PacketInfo();
+        public boolean endOfStream = false;
+        private byte[] data = new byte[INITIAL_DATA_LENGTH];
+        private ByteBuffer packetData = ByteBuffer.wrap(data);
+
+        // copy the packet bytes into this slot's reusable buffer
+        public void setPacketData(ByteBuffer source) {
+            int length = source.remaining();
+            if (data.length < length) {
+                data = new byte[Math.max(length, 2 * data.length)];
+                packetData = ByteBuffer.wrap(data);
+            }
+            source.duplicate().get(data, 0, length);
+            packetData.clear();
+            packetData.limit(length);
+        }
+
+        public ByteBuffer getPacketData() {
+            return packetData;
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    // sequences[0] counts slots published by the producer; sequences[i] counts slots released by stage i
+    private final AtomicLong[] sequences;
+    private final long[] positions; // each party's own position, only touched by that party's thread
+
+    public PacketRing(int capacity, int stages) {
+        if ((capacity <= 0) || (Integer.bitCount(capacity) != 1)) {
+            throw new IllegalArgumentException("PacketRing capacity must be a power of two!");
+        }
+        if (stages <= 0) {
+            throw new IllegalArgumentException("PacketRing needs at least one stage!");
+        }
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLong[stages + 1];
+        for (int i = 0; i <= stages; i++) {
+            sequences[i] = new AtomicLong(0);
+        }
+        this.positions = new long[stages + 1];
+    }
+
+    public int getStages() {
+        return sequences.length - 1;
+    }
+
+    // producer: wait for a free slot and return it; publish() hands it to the first stage
+    public Slot claim() {
+        long next = positions[0];
+        long wrapPoint = next - slots.length;
+        AtomicLong lastStage = sequences[sequences.length - 1];
+        int idle = 0;
+        while (lastStage.get() <= wrapPoint) {
+            idle = backOff(idle);
+        }
+        Slot slot = slots[(int) (next & mask)];
+        slot.endOfStream = false;
+        return slot;
+    }
+
+    public void publish() {
+        positions[0]++;
+        sequences[0].lazySet(positions[0]);
+    }
+
+    // stage: wait until at least one slot is available and return how many are; they are read with get()
+    public int available(int stage) {
+        long next = positions[stage];
+        AtomicLong previous = sequences[stage - 1];
+        long published;
+        int idle = 0;
+        while ((published = previous.get()) <= next) {
+            idle = backOff(idle);
+        }
+        return (int) Math.min(published - next, Integer.MAX_VALUE);
+    }
+
+    // stage: the slot at the given offset from the stage's current position
+    public Slot get(int stage, int offset) {
+        return slots[(int) ((positions[stage] + offset) & mask)];
+    }
+
+    // stage: hand the given number of slots on to the next stage (or back to the producer)
+    public void release(int stage, int count) {
+        positions[stage] += count;
+        sequences[stage].lazySet(positions[stage]);
+    }
+
+    private static int backOff(int idle) {
+        if (idle < SPINS_BEFORE_YIELD) {
+            return idle + 1;
+        } else if (idle < SPINS_BEFORE_YIELD + YIELDS_BEFORE_PARK) {
+            Thread.yield();
+            return idle + 1;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        return idle;
+    }
+}
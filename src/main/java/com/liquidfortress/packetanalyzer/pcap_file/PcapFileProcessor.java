@@ -21,116 +21,256 @@
 package com.liquidfortress.packetanalyzer.pcap_file;
 
 import com.liquidfortress.packetanalyzer.arp.ArpPacketProcessor;
+import com.liquidfortress.packetanalyzer.cli_args.CommandLineOptions;
 import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
 import com.liquidfortress.packetanalyzer.ip.IpPacketProcessor;
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.main.Mode;
 import com.liquidfortress.packetanalyzer.tcp.TcpConnectionTracker;
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.core.NotOpenException;
-import org.pcap4j.core.PcapHandle;
-import org.pcap4j.core.PcapNativeException;
-import org.pcap4j.core.Pcaps;
-import org.pcap4j.packet.EthernetPacket;
-import org.pcap4j.packet.IllegalRawDataException;
-import org.pcap4j.packet.Packet;
 import org.pcap4j.packet.namednumber.DataLinkType;
-import org.pcap4j.packet.namednumber.EtherType;
-import org.pcap4j.util.MacAddress;
 
 import java.io.File;
-import java.sql.Timestamp;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class PcapFileProcessor {
+    public static final String COMBINED_SUMMARY_NAME = "all input files";
     private static Logger log = Main.log;
 
 
-    public static void processEthernetPacket(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
+    public static void processEthernetPacket(ByteBuffer packetData, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
+        if ((packetData == null) || (!packetData.hasRemaining())) {
             return; // skip empty packets
         }
-        try {
-            log.trace("Converting to ethernet packet");
-            EthernetPacket ethernetPacket = EthernetPacket.newPacket(packet.getRawData(), 0, packet.length());
-            EthernetPacket.EthernetHeader ethernetHeader = ethernetPacket.getHeader();
-            MacAddress sourceMac = ethernetHeader.getSrcAddr();
-            log.trace("Source MAC: " + sourceMac);
-            packetInfo.put(PacketInfo.SOURCE_MAC, sourceMac.toString());
-            MacAddress destMac = ethernetHeader.getDstAddr();
-            log.trace("Destination MAC: " + destMac);
-            packetInfo.put(PacketInfo.DESTINATION_MAC, destMac.toString());
-            EtherType etherType = ethernetHeader.getType();
-            log.trace("EtherType: " + etherType.toString());
-            packetInfo.put(PacketInfo.ETHERTYPE, etherType.toString());
-            Packet payload = ethernetPacket.getPayload();
-            if (etherType == EtherType.IPV4) {
-                IpPacketProcessor.processIpv4Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if (etherType == EtherType.IPV6) {
-                IpPacketProcessor.processIpv6Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if ((mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) && (etherType == EtherType.ARP)) {
-                pcapFileSummary.nonIpPacketCount++;
-                ArpPacketProcessor.processArpPacket(payload, pcapFileSummary);
-            } else {
-                pcapFileSummary.nonIpPacketCount++;
-                log.trace("Skipping packet with EtherType: " + etherType);
+        FrameDecoder.decode(packetData, packetInfo, DecodePlan.forMode(mode));
+        processDecodedPacket(packetData, pcapFileSummary, packetInfo, mode);
+    }
+
+    // the headers the mode needs have already been decoded into packetInfo
+    public static void processDecodedPacket(ByteBuffer packetData, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
+        if ((packetData == null) || (!packetData.hasRemaining())) {
+            return; // skip empty packets
+        }
+        if (!packetInfo.isDecoded(PacketInfo.LINK_LAYER)) {
+            log.error("Exception occurred while processing a packet. Exception was: truncated Ethernet header of " +
+                    packetData.remaining() + " bytes");
+            return;
+        }
+        int etherType = packetInfo.etherType;
+        if (log.isTraceEnabled()) {
+            FrameDecoder.decodeMacAddresses(packetData, packetInfo);
+            log.trace("Source MAC: " + PacketInfoUtils.formatMacAddress(packetInfo.sourceMac));
+            log.trace("Destination MAC: " + PacketInfoUtils.formatMacAddress(packetInfo.destinationMac));
+            log.trace("EtherType: 0x" + Integer.toHexString(etherType));
+        }
+        if (etherType == FrameDecoder.ETHERTYPE_IPV4) {
+            IpPacketProcessor.processIpv4Packet(packetData, pcapFileSummary, packetInfo, mode);
+        } else if (etherType == FrameDecoder.ETHERTYPE_IPV6) {
+            IpPacketProcessor.processIpv6Packet(packetData, pcapFileSummary, packetInfo, mode);
+        } else if (DecodePlan.forMode(mode).arp && (etherType == FrameDecoder.ETHERTYPE_ARP)) {
+            pcapFileSummary.nonIpPacketCount++;
+            ArpPacketProcessor.processArpPacket(packetData, pcapFileSummary, packetInfo);
+        } else {
+            pcapFileSummary.nonIpPacketCount++;
+            if (log.isTraceEnabled()) {
+                log.trace("Skipping packet with EtherType: 0x" + Integer.toHexString(etherType));
             }
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
         }
     }
 
-    public static PcapFileSummary processPcapFile(File pcapFile, Mode mode) {
-        PcapFileSummary pcapFileSummary = new PcapFileSummary(pcapFile.getAbsolutePath());
-        try {
-            log.trace("Opening pcap file: " + pcapFile.getAbsolutePath());
-            PcapHandle pcapHandle = Pcaps.openOffline(pcapFile.getAbsolutePath());
-            DataLinkType dataLinkType = pcapHandle.getDlt();
+    public static boolean isStandardInput(File pcapFile) {
+        return CommandLineOptions.STANDARD_INPUT.equals(pcapFile.getPath());
+    }
+
+    // the name used for an input in the reports
+    public static String nameOf(File pcapFile) {
+        return isStandardInput(pcapFile) ? "standard input" : pcapFile.getAbsolutePath();
+    }
+
+    public static PcapReader openPcapReader(File pcapFile, boolean useLibpcap) throws IOException {
+        if (isStandardInput(pcapFile)) {
+            return new StreamPcapReader(Compression.openStream(System.in, "stdin"), nameOf(pcapFile));
+        }
+        if (!pcapFile.isFile()) { // named pipe; it cannot be mapped or read twice
+            return new StreamPcapReader(Compression.openStream(new FileInputStream(pcapFile), pcapFile.getName()), nameOf(pcapFile));
+        }
+        Compression compression = Compression.of(pcapFile);
+        if (compression != Compression.NONE) {
+            log.trace("Decompressing " + compression + " pcap file: " + pcapFile.getAbsolutePath());
+            return new StreamPcapReader(compression.open(pcapFile), pcapFile.getAbsolutePath());
+        }
+        if (useLibpcap) {
+            return new LibpcapPcapReader(pcapFile);
+        }
+        return new MappedPcapReader(pcapFile);
+    }
+
+    // the reader for the input with the options applied; a time range in a plain capture file is read through its index
+    public static PcapReader openPcapReader(File pcapFile, ValidatedArgs validatedArgs) throws IOException {
+        PcapReader pcapReader;
+        if ((validatedArgs.fromNanos == Long.MIN_VALUE) && (validatedArgs.toNanos == Long.MAX_VALUE)) {
+            pcapReader = openPcapReader(pcapFile, validatedArgs.useLibpcap);
+        } else if (!isStandardInput(pcapFile) && pcapFile.isFile() && (Compression.of(pcapFile) == Compression.NONE)) {
+            pcapReader = PcapIndex.openTimeRange(pcapFile, validatedArgs.fromNanos, validatedArgs.toNanos);
+        } else {
+            pcapReader = new TimeRangePcapReader(openPcapReader(pcapFile, validatedArgs.useLibpcap), validatedArgs.fromNanos, validatedArgs.toNanos);
+        }
+        if (validatedArgs.packetFilter != null) {
+            pcapReader = new FilteredPcapReader(pcapReader, validatedArgs.packetFilter);
+        }
+        return pcapReader;
+    }
+
+    public static PcapFileSummary analyzePcapFile(File pcapFile, Mode mode, boolean useLibpcap) {
+        ValidatedArgs validatedArgs = new ValidatedArgs();
+        validatedArgs.mode = mode;
+        validatedArgs.useLibpcap = useLibpcap;
+        return analyzePcapFile(pcapFile, validatedArgs);
+    }
+
+    public static PcapFileSummary analyzePcapFile(File pcapFile, ValidatedArgs validatedArgs) {
+        // progress reports need a single up-to-date summary, so they disable sharding
+        if ((validatedArgs.shards > 1) && (validatedArgs.reportInterval == 0) && ShardedPcapFileProcessor.supports(validatedArgs.mode)) {
+            return ShardedPcapFileProcessor.analyzePcapFile(pcapFile, validatedArgs);
+        }
+        Mode mode = validatedArgs.mode;
+        long reportInterval = validatedArgs.reportInterval;
+        PcapFileSummary pcapFileSummary = new PcapFileSummary(nameOf(pcapFile), validatedArgs);
+        log.trace("Opening pcap file: " + nameOf(pcapFile));
+        try (PcapReader pcapReader = openPcapReader(pcapFile, validatedArgs)) {
+            DataLinkType dataLinkType = DataLinkType.getInstance(pcapReader.getLinkType());
             log.trace("DataLinkType is: " + dataLinkType);
             if (dataLinkType == DataLinkType.EN10MB) { // Ethernet
-                Timestamp timestamp;
-                Packet packet = pcapHandle.getNextPacket();
-                while (packet != null) {
-                    PacketInfo packetInfo = new PacketInfo();
-                    timestamp = pcapHandle.getTimestamp();
-                    packetInfo.put(PacketInfo.TIMESTAMP, timestamp.toString());
-                    pcapFileSummary.packetCount++;
-                    log.trace("======= Processing packet " + pcapFileSummary.packetCount + " =======");
-                    log.trace("Packet capture timestamp: " + timestamp);
-                    processEthernetPacket(packet, pcapFileSummary, packetInfo, mode);
-                    try {
-                        packet = pcapHandle.getNextPacket();
-                    } catch (ArrayIndexOutOfBoundsException e) {
-                        log.trace("Exception occurred while processing pcapFile: " + pcapFile + ".  Exception was: " + e);
-                        packet = pcapHandle.getNextPacket();
+                PacketInfo packetInfo = new PacketInfo();
+                while (pcapReader.next()) {
+                    processRecord(pcapReader, pcapFileSummary, packetInfo, mode);
+                    if ((reportInterval > 0) && (pcapFileSummary.packetCount % reportInterval == 0)) {
+                        printProgress(pcapFileSummary, mode);
                     }
                 }
-
-                if (mode == Mode.BASIC_ANALYSIS) {
-                    printMode1Output(pcapFileSummary);
-                } else if (mode == Mode.DETAILED_ANALYSIS) {
-                    printMode1Output(pcapFileSummary);
-                    printMode2Output(pcapFileSummary);
-                } else if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                    printMode3Output(pcapFileSummary);
-                }
+                pcapFileSummary.closeAttacks();
             }
-        } catch (PcapNativeException | NotOpenException e) {
+        } catch (IOException e) {
             log.error("Exception occurred while processing pcapFile: " + pcapFile + ".  Exception was: " + e);
         }
         return pcapFileSummary;
     }
 
+    // process the reader's current record into the summary, reusing packetInfo
+    public static void processRecord(PcapReader pcapReader, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
+        packetInfo.reset();
+        packetInfo.timestampNanos = pcapReader.getTimestampNanos();
+        pcapFileSummary.latestTimestampNanos = packetInfo.timestampNanos;
+        pcapFileSummary.packetCount++;
+        packetInfo.packetNumber = pcapFileSummary.packetCount;
+        if (log.isTraceEnabled()) {
+            log.trace("======= Processing packet " + pcapFileSummary.packetCount + " =======");
+            log.trace("Packet capture timestamp: " + packetInfo.getTimestamp());
+        }
+        processEthernetPacket(pcapReader.getPacketData(), pcapFileSummary, packetInfo, mode);
+    }
+
+    public static PcapFileSummary processPcapFile(File pcapFile, Mode mode, boolean useLibpcap) {
+        PcapFileSummary pcapFileSummary = analyzePcapFile(pcapFile, mode, useLibpcap);
+        printSummary(pcapFileSummary, mode);
+        return pcapFileSummary;
+    }
+
     public static void processPcapFiles(ValidatedArgs validatedArgs) {
-        for (File pcapFile : validatedArgs.inputFiles) {
-            processPcapFile(pcapFile, validatedArgs.mode);
+        if (validatedArgs.follow) {
+            printSummary(PcapFollower.follow(validatedArgs.inputFiles.getFirst(), validatedArgs), validatedArgs.mode);
+            return;
+        }
+        PcapFileSummary combinedSummary = validatedArgs.combined ? new PcapFileSummary(COMBINED_SUMMARY_NAME, validatedArgs) : null;
+        int threads = Math.min(validatedArgs.threads, validatedArgs.inputFiles.size());
+        if (threads <= 1) {
+            for (File pcapFile : validatedArgs.inputFiles) {
+                PcapFileSummary pcapFileSummary = analyzePcapFile(pcapFile, validatedArgs);
+                printSummary(pcapFileSummary, validatedArgs.mode);
+                if (combinedSummary != null) {
+                    combinedSummary.merge(pcapFileSummary);
+                }
+            }
+        } else {
+            log.trace("Processing " + validatedArgs.inputFiles.size() + " pcap files with " + threads + " threads");
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                LinkedList<Future<PcapFileSummary>> results = new LinkedList<>();
+                for (File pcapFile : validatedArgs.inputFiles) {
+                    results.add(executorService.submit(() -> analyzePcapFile(pcapFile, validatedArgs)));
+                }
+                // report in input order, whichever file finishes first
+                Iterator<File> pcapFiles = validatedArgs.inputFiles.iterator();
+                while (!results.isEmpty()) {
+                    File pcapFile = pcapFiles.next();
+                    try {
+                        PcapFileSummary pcapFileSummary = results.removeFirst().get();
+                        printSummary(pcapFileSummary, validatedArgs.mode);
+                        if (combinedSummary != null) {
+                            combinedSummary.merge(pcapFileSummary);
+                        }
+                    } catch (ExecutionException e) {
+                        log.error("Exception occurred while processing pcapFile: " + pcapFile + ".  Exception was: " + e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.error("Interrupted while processing pcap files");
+                Thread.currentThread().interrupt();
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+        if (combinedSummary != null) {
+            printSummary(combinedSummary, validatedArgs.mode);
+        }
+    }
+
+    public static void printSummary(PcapFileSummary pcapFileSummary, Mode mode) {
+        if (mode == Mode.BASIC_ANALYSIS) {
+            printMode1Output(pcapFileSummary);
+        } else if (mode == Mode.DETAILED_ANALYSIS) {
+            printMode1Output(pcapFileSummary);
+            printMode2Output(pcapFileSummary);
+        } else if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+            printMode3Output(pcapFileSummary);
+        }
+    }
+
+    // the counts so far, and in Mode 3 the attacks detected since the last progress report
+    public static synchronized void printProgress(PcapFileSummary pcapFileSummary, Mode mode) {
+        if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+            Iterator<AttackSummary> newAttacks = pcapFileSummary.attackSummaries.listIterator(pcapFileSummary.reportedAttackCount);
+            if (newAttacks.hasNext()) {
+                log.info("==== New attacks in: " + pcapFileSummary.filename + " after " + pcapFileSummary.packetCount + " packets ====");
+            }
+            while (newAttacks.hasNext()) {
+                log.info(newAttacks.next().toString());
+                pcapFileSummary.reportedAttackCount++;
+            }
+        } else {
+            log.info("==== Progress for: " + pcapFileSummary.filename + " ====");
+            log.info("Unique IP addresses: " + pcapFileSummary.uniqueIpAddresses.describeSize());
+            log.info("TCP Handshakes: " + pcapFileSummary.tcpConnectionCount);
+            log.info("UDP Sources: " + pcapFileSummary.udpSources.describeSize());
+            log.info("Non-IP Packet count: " + pcapFileSummary.nonIpPacketCount);
+            log.info("Packets processed: " + pcapFileSummary.packetCount);
         }
     }
 
     private static void printMode1Output(PcapFileSummary pcapFileSummary) {
         log.info("==== Summary for: " + pcapFileSummary.filename + " ====");
-        log.info("Unique IP addresses: " + pcapFileSummary.uniqueIpAddresses.size());
+        log.info("Unique IP addresses: " + pcapFileSummary.uniqueIpAddresses.describeSize());
         log.info("TCP Handshakes: " + pcapFileSummary.tcpConnectionCount);
-        log.info("UDP Sources: " + pcapFileSummary.udpSources.size());
+        log.info("UDP Sources: " + pcapFileSummary.udpSources.describeSize());
         log.info("Non-IP Packet count: " + pcapFileSummary.nonIpPacketCount);
         log.info("Total Packet count: " + pcapFileSummary.packetCount);
     }
@@ -140,11 +280,16 @@ public class PcapFileProcessor {
         pcapFileSummary.closedTcpConnections.forEach((TcpConnectionTracker tracker) -> {
             log.info(tracker.toString());
         });
+        log.info("==== Expired TCP Connections (idle or open too long, or evicted from a full flow table) ====");
+        pcapFileSummary.expiredTcpConnections.forEach((TcpConnectionTracker tracker) -> {
+            log.info(tracker.toString());
+        });
         log.info("==== Opened TCP Connections (opened but not closed) ====");
         pcapFileSummary.activeTcpConnections.values().forEach((TcpConnectionTracker tracker) -> {
             log.info(tracker.toString());
         });
         log.info(pcapFileSummary.ipProtocolCounter.toString());
+        log.info(pcapFileSummary.ipDefragmenter.toString());
     }
 
     private static void printMode3Output(PcapFileSummary pcapFileSummary) {
@@ -152,5 +297,9 @@ public class PcapFileProcessor {
         pcapFileSummary.attackSummaries.forEach((AttackSummary attackSummary) -> {
             log.info(attackSummary.toString());
         });
+        if (pcapFileSummary.droppedAttackCount > 0) {
+            log.info("Attacks not tracked because too many attacks were open (see --max-incidents): " +
+                    pcapFileSummary.droppedAttackCount);
+        }
     }
 }
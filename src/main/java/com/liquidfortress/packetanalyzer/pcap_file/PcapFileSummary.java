@@ -21,15 +21,19 @@
 package com.liquidfortress.packetanalyzer.pcap_file;
 
 import com.liquidfortress.packetanalyzer.arp.IpMacTracker;
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
 import com.liquidfortress.packetanalyzer.icmp.PingOfDeathDetector;
 import com.liquidfortress.packetanalyzer.icmp.SmurfDetector;
 import com.liquidfortress.packetanalyzer.ip.IpDefragmenter;
+import com.liquidfortress.packetanalyzer.main.Mode;
+import com.liquidfortress.packetanalyzer.statistics.ArrayIpProtocolCounter;
 import com.liquidfortress.packetanalyzer.statistics.IpProtocolCounter;
 import com.liquidfortress.packetanalyzer.statistics.UdpSources;
 import com.liquidfortress.packetanalyzer.statistics.UniqueIpAddresses;
 import com.liquidfortress.packetanalyzer.tcp.AccountBruteForceDetector;
 import com.liquidfortress.packetanalyzer.tcp.ActiveTcpConnections;
 import com.liquidfortress.packetanalyzer.tcp.ClosedTcpConnections;
+import com.liquidfortress.packetanalyzer.tcp.FlowStore;
 import com.liquidfortress.packetanalyzer.tcp.SynFloodDetector;
 
 import java.util.LinkedList;
@@ -45,21 +49,82 @@ public class PcapFileSummary {
     public long packetCount = 0;
     public long nonIpPacketCount = 0;
     public long tcpConnectionCount = 0;
-    public final UniqueIpAddresses uniqueIpAddresses = new UniqueIpAddresses();
-    public final UdpSources udpSources = new UdpSources();
-    public final ActiveTcpConnections activeTcpConnections = new ActiveTcpConnections();
-    public final ClosedTcpConnections closedTcpConnections = new ClosedTcpConnections();
-    public final IpProtocolCounter ipProtocolCounter = new IpProtocolCounter();
+    public final UniqueIpAddresses uniqueIpAddresses;
+    public final UdpSources udpSources;
+    public final ClosedTcpConnections closedTcpConnections;
+    public final ClosedTcpConnections expiredTcpConnections; // timed out or evicted
+    public final ActiveTcpConnections activeTcpConnections;
+    public final IpProtocolCounter ipProtocolCounter;
     public final IpMacTracker ipMacTracker = new IpMacTracker();
     public final IpDefragmenter ipDefragmenter = new IpDefragmenter();
-    public final PortScanDetector portScanDetector = new PortScanDetector();
-    public final PingOfDeathDetector pingOfDeathDetector = new PingOfDeathDetector();
-    public final SmurfDetector smurfDetector = new SmurfDetector();
-    public final SynFloodDetector synFloodDetector = new SynFloodDetector();
-    public final AccountBruteForceDetector accountBruteForceDetector = new AccountBruteForceDetector();
+    public final PortScanDetector portScanDetector;
+    public final PortScanDetector udpPortScanDetector;
+    public final HostSweepDetector hostSweepDetector;
+    public final PingOfDeathDetector pingOfDeathDetector;
+    public final SmurfDetector smurfDetector;
+    public final SynFloodDetector synFloodDetector;
+    public final AccountBruteForceDetector accountBruteForceDetector;
     public final LinkedList<AttackSummary> attackSummaries = new LinkedList<>();
+    public int reportedAttackCount = 0; // attackSummaries already printed in progress reports
+    public long droppedAttackCount = 0; // attack detections not tracked because too many attacks were open
+    public long latestTimestampNanos = 0; // capture time of the last packet read
 
     public PcapFileSummary(String filename) {
+        this(filename, new ValidatedArgs());
+    }
+
+    // the approximate counting, flow table, flow store and connection spooling settings are taken from validatedArgs
+    public PcapFileSummary(String filename, ValidatedArgs validatedArgs) {
+        this(filename, validatedArgs, new ArrayIpProtocolCounter());
+    }
+
+    // summaries filled by several threads can share one StripedIpProtocolCounter
+    public PcapFileSummary(String filename, ValidatedArgs validatedArgs, IpProtocolCounter ipProtocolCounter) {
         this.filename = filename;
+        this.uniqueIpAddresses = new UniqueIpAddresses(validatedArgs.approximatePrecision);
+        this.udpSources = new UdpSources(validatedArgs.approximatePrecision);
+        this.ipProtocolCounter = ipProtocolCounter;
+        // only Mode 2 reports the connections, so only Mode 2 spools them
+        boolean spooled = (validatedArgs.mode == Mode.DETAILED_ANALYSIS) && !validatedArgs.bufferConnections;
+        this.closedTcpConnections = new ClosedTcpConnections(spooled);
+        this.expiredTcpConnections = new ClosedTcpConnections(spooled);
+        this.activeTcpConnections = new ActiveTcpConnections(validatedArgs.flowCapacity, validatedArgs.idleTimeoutNanos,
+                validatedArgs.absoluteTimeoutNanos, FlowStore.create(validatedArgs.flowStorage), expiredTcpConnections);
+        int maxIncidents = validatedArgs.maxIncidents;
+        this.portScanDetector = new PortScanDetector(FrameDecoder.PROTOCOL_TCP, maxIncidents);
+        this.udpPortScanDetector = new PortScanDetector(FrameDecoder.PROTOCOL_UDP, maxIncidents);
+        this.hostSweepDetector = new HostSweepDetector(maxIncidents);
+        this.pingOfDeathDetector = new PingOfDeathDetector(maxIncidents);
+        this.smurfDetector = new SmurfDetector(maxIncidents);
+        this.synFloodDetector = new SynFloodDetector(maxIncidents);
+        this.accountBruteForceDetector = new AccountBruteForceDetector(maxIncidents);
+    }
+
+    // close the attacks still open at the end of the input, as of its last packet
+    public void closeAttacks() {
+        portScanDetector.closeAll(latestTimestampNanos, this);
+        udpPortScanDetector.closeAll(latestTimestampNanos, this);
+        hostSweepDetector.closeAll(latestTimestampNanos, this);
+        pingOfDeathDetector.closeAll(latestTimestampNanos, this);
+        smurfDetector.closeAll(latestTimestampNanos, this);
+        synFloodDetector.closeAll(latestTimestampNanos, this);
+        accountBruteForceDetector.closeAll(latestTimestampNanos, this);
+    }
+
+    // fold the results of another file into this summary; in-progress detector
+    // and defragmenter state belongs to its own file, only the defragmenter counts are merged
+    public void merge(PcapFileSummary other) {
+        packetCount += other.packetCount;
+        nonIpPacketCount += other.nonIpPacketCount;
+        tcpConnectionCount += other.tcpConnectionCount;
+        uniqueIpAddresses.merge(other.uniqueIpAddresses);
+        udpSources.merge(other.udpSources);
+        activeTcpConnections.merge(other.activeTcpConnections);
+        closedTcpConnections.merge(other.closedTcpConnections);
+        expiredTcpConnections.merge(other.expiredTcpConnections);
+        ipProtocolCounter.merge(other.ipProtocolCounter);
+        ipDefragmenter.merge(other.ipDefragmenter);
+        attackSummaries.addAll(other.attackSummaries);
+        droppedAttackCount += other.droppedAttackCount;
     }
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.filter.PacketFilter;
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.main.Mode;
+import org.apache.logging.log4j.core.Logger;
+import org.pcap4j.packet.namednumber.DataLinkType;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * PcapFollower
+ * <p/>
+ * Follow mode: tails a capture file while it is being written, or the
+ * newest capture in a directory that tcpdump rotates files into (-G / -C)
+ * and then each newer file as it appears.  All files feed one
+ * PcapFileSummary, so TCP connections, detector state and partially
+ * reassembled datagrams carry over from one file to the next.  Attacks are
+ * reported as soon as they are detected; the full summary is printed when
+ * the analyzer is stopped.
+ * <p/>
+ * In a directory, only files that start with a pcap magic number are
+ * captures, so index sidecars, compressed rotations and other files are
+ * passed over.  A capture that turns out to be corrupt is logged and
+ * skipped, and following goes on with the next one.  The --from / --to
+ * time range and the packet filter apply to every record read.
+ */
+public class PcapFollower {
+    private static final long POLL_INTERVAL_MILLIS = 200;
+    private static final Comparator<File> CAPTURE_ORDER = Comparator.comparingLong(File::lastModified).thenComparing(File::getName);
+    private static Logger log = Main.log;
+
+    // runs until the JVM is shut down (e.g. Ctrl-C), then returns the summary of everything read
+    public static PcapFileSummary follow(File target, ValidatedArgs validatedArgs) {
+        Mode mode = validatedArgs.mode;
+        PcapFileSummary pcapFileSummary = new PcapFileSummary(PcapFileProcessor.nameOf(target), validatedArgs);
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        Thread followThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopped.set(true);
+            try {
+                followThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        log.trace("Following: " + pcapFileSummary.filename);
+        PacketInfo packetInfo = new PacketInfo();
+        HashMap<File, Boolean> verdicts = new HashMap<>(); // which directory entries are pcap files
+        File current = null; // the capture being read, or the last one that was skipped
+        TailingPcapReader pcapReader = null;
+        try {
+            while (!stopped.get()) {
+                try {
+                    if (pcapReader == null) {
+                        File first = (current == null) ? newestCapture(target, verdicts) : nextCapture(target, current, verdicts);
+                        if (first != null) {
+                            current = first;
+                            pcapReader = open(first);
+                        }
+                    }
+                    boolean readAny = false;
+                    if ((pcapReader != null) && pcapReader.hasHeader()) {
+                        readAny = readAvailable(pcapReader, validatedArgs, pcapFileSummary, packetInfo, stopped);
+                    }
+                    if ((mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) && (pcapFileSummary.attackSummaries.size() > pcapFileSummary.reportedAttackCount)) {
+                        PcapFileProcessor.printProgress(pcapFileSummary, mode);
+                    }
+                    if (readAny || (pcapReader == null)) {
+                        if (pcapReader == null) {
+                            sleep(stopped);
+                        }
+                        continue;
+                    }
+                    File next = nextCapture(target, current, verdicts);
+                    if (next != null) {
+                        // pick up whatever was written to the old file before it was rotated
+                        if (pcapReader.hasHeader()) {
+                            readAvailable(pcapReader, validatedArgs, pcapFileSummary, packetInfo, stopped);
+                        }
+                        pcapReader.close();
+                        pcapReader = null;
+                        current = next;
+                        pcapReader = open(next);
+                    } else if (pcapReader.wasTruncated()) {
+                        log.trace("Pcap file was truncated; reading it from the start: " + current);
+                        pcapReader.close();
+                        pcapReader = null;
+                        pcapReader = open(current);
+                    } else {
+                        sleep(stopped);
+                    }
+                } catch (IOException e) {
+                    if (target.isFile()) {
+                        throw e; // no other capture will appear
+                    }
+                    // a file that is not a pcap file, or is corrupt: go on with the next capture
+                    log.error("Skipping: " + current + ".  Exception was: " + e);
+                    verdicts.put(current, false);
+                    closeQuietly(pcapReader);
+                    pcapReader = null;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Exception occurred while following: " + target + ".  Exception was: " + e);
+        } finally {
+            closeQuietly(pcapReader);
+        }
+        pcapFileSummary.closeAttacks();
+        return pcapFileSummary;
+    }
+
+    private static TailingPcapReader open(File pcapFile) throws IOException {
+        log.trace("Opening pcap file: " + pcapFile.getAbsolutePath());
+        return new TailingPcapReader(pcapFile);
+    }
+
+    private static void closeQuietly(TailingPcapReader pcapReader) {
+        if (pcapReader != null) {
+            try {
+                pcapReader.close();
+            } catch (IOException e) {
+                // nothing left to read from it
+            }
+        }
+    }
+
+    // process every complete record that is on disk; returns true if there were any
+    private static boolean readAvailable(TailingPcapReader pcapReader, ValidatedArgs validatedArgs, PcapFileSummary pcapFileSummary,
+                                         PacketInfo packetInfo, AtomicBoolean stopped) throws IOException {
+        if (DataLinkType.getInstance(pcapReader.getLinkType()) != DataLinkType.EN10MB) { // Ethernet
+            return false;
+        }
+        PacketFilter packetFilter = validatedArgs.packetFilter;
+        long reportInterval = validatedArgs.reportInterval;
+        boolean readAny = false;
+        while (!stopped.get() && pcapReader.next()) {
+            readAny = true;
+            long timestampNanos = pcapReader.getTimestampNanos();
+            if ((timestampNanos < validatedArgs.fromNanos) || (timestampNanos >= validatedArgs.toNanos)) {
+                continue;
+            }
+            if ((packetFilter != null) && !packetFilter.test(pcapReader.getPacketData())) {
+                continue;
+            }
+            PcapFileProcessor.processRecord(pcapReader, pcapFileSummary, packetInfo, validatedArgs.mode);
+            if ((reportInterval > 0) && (pcapFileSummary.packetCount % reportInterval == 0)) {
+                PcapFileProcessor.printProgress(pcapFileSummary, validatedArgs.mode);
+            }
+        }
+        return readAny;
+    }
+
+    // the captures in a directory, oldest first; a single file is its own list
+    static List<File> captures(File target, Map<File, Boolean> verdicts) {
+        if (target.isFile()) {
+            return Arrays.asList(target);
+        }
+        File[] files = target.listFiles((File file) -> file.isFile() && !file.getName().startsWith(".") &&
+                !file.getName().endsWith(PcapIndex.SUFFIX) && isCapture(file, verdicts));
+        if (files == null) {
+            return Arrays.asList();
+        }
+        Arrays.sort(files, CAPTURE_ORDER);
+        return Arrays.asList(files);
+    }
+
+    // starts with a pcap magic number, in either byte order; a file too short to tell may still be being
+    // written, so it is a candidate until it has its magic number
+    static boolean isCapture(File file, Map<File, Boolean> verdicts) {
+        Boolean verdict = verdicts.get(file);
+        if (verdict != null) {
+            return verdict;
+        }
+        byte[] magic = new byte[4];
+        int length = 0;
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            int read;
+            while ((length < magic.length) && ((read = inputStream.read(magic, length, magic.length - length)) > 0)) {
+                length += read;
+            }
+        } catch (IOException e) {
+            return false; // removed or unreadable; look again next time
+        }
+        if (length < magic.length) {
+            return true;
+        }
+        int value = ByteBuffer.wrap(magic).getInt();
+        verdict = (value == MappedPcapReader.MAGIC_MICROSECONDS) || (value == MappedPcapReader.MAGIC_NANOSECONDS) ||
+                (Integer.reverseBytes(value) == MappedPcapReader.MAGIC_MICROSECONDS) ||
+                (Integer.reverseBytes(value) == MappedPcapReader.MAGIC_NANOSECONDS);
+        verdicts.put(file, verdict);
+        return verdict;
+    }
+
+    private static File newestCapture(File target, Map<File, Boolean> verdicts) {
+        List<File> captures = captures(target, verdicts);
+        return captures.isEmpty() ? null : captures.get(captures.size() - 1);
+    }
+
+    // the capture rotated in after the current one, or null if the current one is still the newest
+    static File nextCapture(File target, File current, Map<File, Boolean> verdicts) {
+        List<File> captures = captures(target, verdicts);
+        int index = captures.indexOf(current);
+        if (index >= 0) {
+            return (index + 1 < captures.size()) ? captures.get(index + 1) : null;
+        }
+        if (!current.exists()) {
+            return newestCapture(target, verdicts); // the current file was removed
+        }
+        // the current file was skipped; the first capture after it
+        for (File capture : captures) {
+            if (CAPTURE_ORDER.compare(capture, current) > 0) {
+                return capture;
+            }
+        }
+        return null;
+    }
+
+    private static void sleep(AtomicBoolean stopped) {
+        if (!stopped.get()) {
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                stopped.set(true);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.main.Main;
+import org.apache.logging.log4j.core.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * PcapIndex
+ * <p/>
+ * Sidecar index of a pcap file, stored next to it as &lt;capture&gt;.lfpaidx.
+ * Each entry covers a run of consecutive records within one time bucket
+ * (at most MAX_RECORDS_PER_ENTRY of them): the byte offset of the first
+ * record, the number of records, and their earliest and latest capture
+ * times.  A time range can then be read by seeking straight to the first
+ * entry that can contain it.  The index is rebuilt in one sequential pass
+ * whenever the capture's size or modification time no longer match.
+ */
+public class PcapIndex {
+    public static final String SUFFIX = ".lfpaidx";
+    public static final long BUCKET_NANOS = 1000000000L; // 1 second
+    public static final int MAX_RECORDS_PER_ENTRY = 4096;
+    private static final int MAGIC = 0x4c465049; // "LFPI"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 8 + 4;
+    private static final int ENTRY_LENGTH = 8 + 4 + 8 + 8;
+    private static Logger log = Main.log;
+
+    private final long captureSize;
+    private final long captureLastModified;
+    private int entryCount = 0;
+    private long[] offsets = new long[64];
+    private int[] counts = new int[64];
+    private long[] minTimestamps = new long[64];
+    private long[] maxTimestamps = new long[64];
+
+    private PcapIndex(long captureSize, long captureLastModified) {
+        this.captureSize = captureSize;
+        this.captureLastModified = captureLastModified;
+    }
+
+    public static File sidecarOf(File pcapFile) {
+        return new File(pcapFile.getPath() + SUFFIX);
+    }
+
+    // the up-to-date index of the capture, read from its sidecar or built (and saved) if necessary
+    public static PcapIndex of(File pcapFile) throws IOException {
+        File sidecar = sidecarOf(pcapFile);
+        if (sidecar.isFile()) {
+            PcapIndex pcapIndex = read(sidecar);
+            if ((pcapIndex != null) && (pcapIndex.captureSize == pcapFile.length()) &&
+                    (pcapIndex.captureLastModified == pcapFile.lastModified())) {
+                return pcapIndex;
+            }
+            log.trace("Pcap index is out of date: " + sidecar);
+        }
+        PcapIndex pcapIndex = build(pcapFile);
+        try {
+            pcapIndex.write(sidecar);
+        } catch (IOException e) {
+            log.trace("Could not save pcap index: " + sidecar + ".  Exception was: " + e);
+        }
+        return pcapIndex;
+    }
+
+    // one sequential pass over the capture
+    public static PcapIndex build(File pcapFile) throws IOException {
+        log.trace("Building pcap index for: " + pcapFile.getAbsolutePath());
+        PcapIndex pcapIndex = new PcapIndex(pcapFile.length(), pcapFile.lastModified());
+        try (MappedPcapReader pcapReader = new MappedPcapReader(pcapFile)) {
+            long bucket = Long.MIN_VALUE;
+            int last = -1;
+            while (pcapReader.next()) {
+                long timestampNanos = pcapReader.getTimestampNanos();
+                long recordBucket = Math.floorDiv(timestampNanos, BUCKET_NANOS);
+                if ((last < 0) || (recordBucket != bucket) || (pcapIndex.counts[last] == MAX_RECORDS_PER_ENTRY)) {
+                    last = pcapIndex.addEntry(pcapReader.getRecordOffset(), timestampNanos);
+                    bucket = recordBucket;
+                }
+                pcapIndex.counts[last]++;
+                pcapIndex.minTimestamps[last] = Math.min(pcapIndex.minTimestamps[last], timestampNanos);
+                pcapIndex.maxTimestamps[last] = Math.max(pcapIndex.maxTimestamps[last], timestampNanos);
+            }
+        }
+        return pcapIndex;
+    }
+
+    private int addEntry(long offset, long timestampNanos) {
+        if (entryCount == offsets.length) {
+            int capacity = 2 * entryCount;
+            offsets = Arrays.copyOf(offsets, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            minTimestamps = Arrays.copyOf(minTimestamps, capacity);
+            maxTimestamps = Arrays.copyOf(maxTimestamps, capacity);
+        }
+        offsets[entryCount] = offset;
+        counts[entryCount] = 0;
+        minTimestamps[entryCount] = timestampNanos;
+        maxTimestamps[entryCount] = timestampNanos;
+        return entryCount++;
+    }
+
+    private static PcapIndex read(File sidecar) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(sidecar.toPath(), StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+            if ((size < HEADER_LENGTH) || (size > Integer.MAX_VALUE)) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && (fileChannel.read(buffer, buffer.position()) > 0)) {
+                // positional reads until the whole index is in memory
+            }
+            buffer.flip();
+            if ((buffer.remaining() < HEADER_LENGTH) || (buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+                return null;
+            }
+            PcapIndex pcapIndex = new PcapIndex(buffer.getLong(), buffer.getLong());
+            int entryCount = buffer.getInt();
+            if ((entryCount < 0) || (buffer.remaining() != (long) entryCount * ENTRY_LENGTH)) {
+                return null;
+            }
+            for (int i = 0; i < entryCount; i++) {
+                int entry = pcapIndex.addEntry(buffer.getLong(), 0);
+                pcapIndex.counts[entry] = buffer.getInt();
+                pcapIndex.minTimestamps[entry] = buffer.getLong();
+                pcapIndex.maxTimestamps[entry] = buffer.getLong();
+            }
+            return pcapIndex;
+        }
+    }
+
+    public void write(File sidecar) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + entryCount * ENTRY_LENGTH);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(captureSize).putLong(captureLastModified).putInt(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            buffer.putLong(offsets[i]).putInt(counts[i]).putLong(minTimestamps[i]).putLong(maxTimestamps[i]);
+        }
+        buffer.flip();
+        try (FileChannel fileChannel = FileChannel.open(sidecar.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                fileChannel.write(buffer);
+            }
+        }
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public long getPacketCount() {
+        long packetCount = 0;
+        for (int i = 0; i < entryCount; i++) {
+            packetCount += counts[i];
+        }
+        return packetCount;
+    }
+
+    // byte offsets [start, end) of the records that can lie in [fromNanos, toNanos)
+    public long[] byteRange(long fromNanos, long toNanos) {
+        int first = 0;
+        while ((first < entryCount) && (maxTimestamps[first] < fromNanos)) {
+            first++;
+        }
+        int last = entryCount - 1;
+        while ((last >= first) && (minTimestamps[last] >= toNanos)) {
+            last--;
+        }
+        if (last < first) {
+            return new long[]{captureSize, captureSize};
+        }
+        long end = (last + 1 < entryCount) ? offsets[last + 1] : captureSize;
+        return new long[]{offsets[first], end};
+    }
+
+    // the records of the capture in [fromNanos, toNanos), read with positional reads from the indexed offsets
+    public static PcapReader openTimeRange(File pcapFile, long fromNanos, long toNanos) throws IOException {
+        long[] byteRange = of(pcapFile).byteRange(fromNanos, toNanos);
+        log.trace("Reading bytes " + byteRange[0] + " to " + byteRange[1] + " of pcap file: " + pcapFile.getAbsolutePath());
+        TailingPcapReader pcapReader = new TailingPcapReader(pcapFile);
+        try {
+            pcapReader.seek(byteRange[0], byteRange[1]);
+        } catch (IOException e) {
+            pcapReader.close();
+            throw e;
+        }
+        return new TimeRangePcapReader(pcapReader, fromNanos, toNanos);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PcapReader
+ * <p/>
+ * Iterates over the records of a pcap capture.  After next() returns true,
+ * the accessors describe the current record until next() is called again.
+ */
+public interface PcapReader extends Closeable {
+
+    // link-layer header type from the pcap global header
+    int getLinkType();
+
+    // advance to the next record; returns false when no more records are available
+    boolean next() throws IOException;
+
+    // capture time of the current record in nanoseconds since the epoch
+    long getTimestampNanos();
+
+    // number of bytes of the current packet present in the capture
+    int getCapturedLength();
+
+    // length of the current packet on the wire
+    int getOriginalLength();
+
+    // the captured bytes of the current record in network byte order; only valid until next() is called
+    ByteBuffer getPacketData();
+}
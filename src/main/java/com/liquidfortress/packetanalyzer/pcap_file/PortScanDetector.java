@@ -21,14 +21,14 @@
 package com.liquidfortress.packetanalyzer.pcap_file;
 
 import com.liquidfortress.packetanalyzer.main.Main;
-import com.liquidfortress.packetanalyzer.tcp.IpAddressPair;
+import com.liquidfortress.packetanalyzer.statistics.PortCounter;
+import com.liquidfortress.packetanalyzer.statistics.SlidingWindow;
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
 import org.apache.logging.log4j.core.Logger;
 
-import java.sql.Timestamp;
-import java.time.Instant;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
 
 /**
  * PortScanDetector
@@ -44,71 +44,193 @@ public class PortScanDetector {
      * Scan of a TCP destination port greater or equal 1024: 1 point
      * Scan of ports 11, 12, 13, 2000: 10 points"
      * Source: https://community.sophos.com/kb/en-us/115153
+     * Both the score and the time range are doubled here.  Only TCP segments
+     * without ACK count as probes, so replies and established traffic from a
+     * busy server do not score.
+     *
+     * UDP scans get their own thresholds.  Closed UDP ports answer with ICMP
+     * port unreachable messages, which hosts rate limit, so UDP scanners pace
+     * themselves and the time range is five times as long.  Echo and chargen
+     * are classic UDP probes and score 10 points.  Datagrams from a port
+     * below 1024 to a port at or above it are service replies, not probes.
      */
-    private static final int DETECTION_SCORE = 42;
-    private static final long LOOKBACK_WINDOW = 600; //milliseconds
+    private static final int TCP_DETECTION_SCORE = 42;
+    private static final long TCP_LOOKBACK_WINDOW = 600; //milliseconds
+    private static final int UDP_DETECTION_SCORE = 42;
+    private static final long UDP_LOOKBACK_WINDOW = 3000; //milliseconds
+    private static final int WELL_KNOWN_PORTS = 1024;
     private static Logger log = Main.log;
 
-    private boolean attackInProgress = false;
-    private AttackSummary attackSummary = null;
-    private final HashMap<IpAddressPair, LinkedHashSet<PacketInfo>> traffic = new HashMap<>();
+    /**
+     * Source
+     * <p/>
+     * One source address's recent probes.  An event's value is its
+     * destination port; its data holds the destination IPv4 address in the
+     * high 32 bits, then the source and destination ports.  An IPv6
+     * destination address is attached instead.
+     */
+    private static class Source {
+        final SlidingWindow<String> window;
+        final PortCounter ports;
+
+        Source(IntUnaryOperator weights, long lookbackWindowNanos) {
+            ports = new PortCounter(weights);
+            window = new SlidingWindow<>(lookbackWindowNanos, ports);
+        }
+    }
+
+    private final String attackName;
+    private final int detectionScore;
+    private final long lookbackWindowNanos;
+    private final IntUnaryOperator points;
+    private final HashMap<FlowKey, Source> sources = new HashMap<>();
+    private final FlowKey probe = new FlowKey(); // reused for lookups
+    // one open attack per scanning source
+    private final AttackTable<FlowKey, Source> attacks;
+    private final AttackTable.IncidentVisitor<FlowKey, Source> attackOver = this::isOver;
+    private long currentTime = 0;
+    private long nextPurge = Long.MIN_VALUE;
+
+    // ipProtocol is FrameDecoder.PROTOCOL_TCP or FrameDecoder.PROTOCOL_UDP
+    public PortScanDetector(int ipProtocol, int maxIncidents) {
+        this.attacks = new AttackTable<>(maxIncidents);
+        if (ipProtocol == FrameDecoder.PROTOCOL_TCP) {
+            this.attackName = "PORT SCANNING";
+            this.detectionScore = TCP_DETECTION_SCORE;
+            this.lookbackWindowNanos = TimeUnit.MILLISECONDS.toNanos(TCP_LOOKBACK_WINDOW);
+            this.points = PortScanDetector::tcpPoints;
+        } else if (ipProtocol == FrameDecoder.PROTOCOL_UDP) {
+            this.attackName = "UDP PORT SCANNING";
+            this.detectionScore = UDP_DETECTION_SCORE;
+            this.lookbackWindowNanos = TimeUnit.MILLISECONDS.toNanos(UDP_LOOKBACK_WINDOW);
+            this.points = PortScanDetector::udpPoints;
+        } else {
+            throw new IllegalArgumentException("PortScanDetector only supports TCP and UDP!");
+        }
+    }
+
+    // points for a newly probed TCP destination port
+    static int tcpPoints(int port) {
+        if ((port == 11) || (port == 12) || (port == 13) || (port == 2000)) {
+            return 10;
+        }
+        return (port < WELL_KNOWN_PORTS) ? 3 : 1;
+    }
+
+    // points for a newly probed UDP destination port
+    static int udpPoints(int port) {
+        if ((port == 7) || (port == 19)) {
+            return 10;
+        }
+        return (port < WELL_KNOWN_PORTS) ? 3 : 1;
+    }
+
+    // replies and established traffic are not probes
+    static boolean isProbe(PacketInfo packetInfo) {
+        switch (packetInfo.getIpProtocol()) {
+            case FrameDecoder.PROTOCOL_TCP:
+                return !packetInfo.hasFlag(PacketInfo.ACK);
+            case FrameDecoder.PROTOCOL_UDP:
+                return (packetInfo.sourcePort >= WELL_KNOWN_PORTS) || (packetInfo.destinationPort < WELL_KNOWN_PORTS);
+            default:
+                return true;
+        }
+    }
 
     public void add(PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
         if (packetInfo == null) {
             throw new IllegalArgumentException("packetInfo cannot be null!");
         }
-        // add the packetInfo
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        Instant currentTime = Timestamp.valueOf(packetInfo.get(PacketInfo.TIMESTAMP)).toInstant();
-        Instant lookbackStart = currentTime.minusMillis(LOOKBACK_WINDOW);
-
-        IpAddressPair ipAddressPair = new IpAddressPair(sourceAddress, destinationAddress);
-        LinkedHashSet<PacketInfo> packetInfos = traffic.get(ipAddressPair);
-        if (packetInfos == null) {
-            packetInfos = new LinkedHashSet<>();
-            packetInfos.add(packetInfo);
-        } else {
-            // prune packetInfos that are beyond the lookback window
-            LinkedHashSet<PacketInfo> keep = new LinkedHashSet<>();
-            for (PacketInfo pi : packetInfos) {
-                Instant packetTime = Timestamp.valueOf(pi.get(PacketInfo.TIMESTAMP)).toInstant();
-                if (packetTime.isAfter(lookbackStart)) {
-                    keep.add(pi);
-                }
-            }
-            keep.add(packetInfo);
-            packetInfos = keep;
+        currentTime = packetInfo.timestampNanos;
+        purge();
+        if (isProbe(packetInfo)) {
+            addProbe(packetInfo, pcapFileSummary);
         }
-        traffic.put(ipAddressPair, packetInfos);
+        // close the attacks whose sources have gone quiet
+        attacks.sweep(pcapFileSummary, attackOver);
+    }
+
+    // close the attacks that are still open at the end of the file
+    public void closeAll(long timestampNanos, PcapFileSummary pcapFileSummary) {
+        attacks.closeAll(PacketInfoUtils.toInstant(timestampNanos).toString(), pcapFileSummary);
+    }
+
+    // the number of source addresses with recent probes or an open attack
+    int sourceCount() {
+        return sources.size();
+    }
+
+    private void addProbe(PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+        // add the probe to its source's window
+        long lookbackStart = currentTime - lookbackWindowNanos;
 
-        // calculate detection score
-        HashSet<String> portSet = new HashSet<>();
-        for (PacketInfo recentPi : packetInfos) {
-            String destinationPort = recentPi.get(PacketInfo.DESTINATION_PORT);
-            portSet.add(destinationPort);
+        FlowKey sourceKey = probe.setSource(packetInfo);
+        Source source = sources.get(sourceKey);
+        if (source == null) {
+            source = new Source(points, lookbackWindowNanos);
+            sources.put(sourceKey.copy(), source);
         }
-        if (portSet.size() >= DETECTION_SCORE && !attackInProgress) { // attack first detected
-            log.trace("*** PORT SCANNING detected!");
-            attackInProgress = true;
-            attackSummary = new AttackSummary();
-            attackSummary.setAttackName("PORT SCANNING");
-            attackSummary.setStartTimestamp(lookbackStart.toString());
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
+        long data = ((long) packetInfo.sourcePort << 16) | packetInfo.destinationPort;
+        String destinationAddress = null;
+        if (packetInfo.ipVersion == PacketInfo.IPV4) {
+            data |= (packetInfo.destinationIpv4 & 0xffffffffL) << 32;
+        } else {
+            destinationAddress = packetInfo.getDestinationAddress();
+        }
+        source.window.add(currentTime, packetInfo.destinationPort, data, destinationAddress);
+
+        AttackSummary attackSummary = attacks.get(sourceKey);
+        if (source.ports.getScore() >= detectionScore) {
+            if (attackSummary == null) { // attack first detected
+                log.trace("*** " + attackName + " detected!");
+                attackSummary = attacks.open(sourceKey.copy(), source, attackName,
+                        PacketInfoUtils.toInstant(lookbackStart).toString());
             }
-        } else if (portSet.size() >= DETECTION_SCORE && attackInProgress) { // add more details while attack in progress
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
+            if (attackSummary != null) { // add more details while attack in progress
+                report(source, sourceKey, attackSummary);
             }
-        } else if (portSet.size() < DETECTION_SCORE && attackInProgress) { // attack ended, close out attack details
-            attackInProgress = false;
-            attackSummary.setEndTimestamp(currentTime.toString());
-            pcapFileSummary.attackSummaries.add(attackSummary);
-            this.attackSummary = null;
+        } else if (attackSummary != null) { // attack ended, close out attack details
+            attacks.close(sourceKey, PacketInfoUtils.toInstant(currentTime).toString(), pcapFileSummary);
+        } else {
+            attacks.forget(sourceKey);
+        }
+    }
+
+    private boolean isOver(FlowKey sourceKey, Source source, AttackSummary attackSummary) {
+        source.window.expire(currentTime);
+        if (source.ports.getScore() >= detectionScore) {
+            return false;
+        }
+        attackSummary.setEndTimestamp(PacketInfoUtils.toInstant(currentTime).toString());
+        return true;
+    }
+
+    // drop the sources that have not probed anything for a whole window and have no open attack
+    private void purge() {
+        if (currentTime < nextPurge) {
+            return;
         }
+        if (nextPurge != Long.MIN_VALUE) {
+            sources.entrySet().removeIf(entry -> {
+                entry.getValue().window.expire(currentTime);
+                if (!entry.getValue().window.isEmpty() || (attacks.get(entry.getKey()) != null)) {
+                    return false;
+                }
+                attacks.forget(entry.getKey());
+                return true;
+            });
+        }
+        nextPurge = currentTime + lookbackWindowNanos;
+    }
 
+    // add the endpoints of the source's probes that the attack summary has not seen yet
+    private void report(Source source, FlowKey sourceKey, AttackSummary attackSummary) {
+        String sourceAddress = sourceKey.getAddress(false);
+        source.window.report(attackSummary, (timestampNanos, destinationPort, data, destinationAddress) -> {
+            String targetAddress = (destinationAddress != null) ? destinationAddress :
+                    PacketInfoUtils.formatIpv4Address((int) (data >>> 32));
+            attackSummary.addSourceIpAndPort(sourceAddress + ":" + ((data >>> 16) & 0xffff));
+            attackSummary.addTargetIpAndPort(targetAddress + ":" + destinationPort);
+        });
     }
 }
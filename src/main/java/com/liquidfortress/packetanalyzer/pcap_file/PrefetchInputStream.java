@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * PrefetchInputStream
+ * <p/>
+ * Reads an underlying stream (typically a decompressor) on a dedicated
+ * thread into a small pool of large reusable buffers, so the consumer
+ * decodes one buffer while the next ones are being filled.  Each read is
+ * handed over as soon as it returns, so packets from a slow pipe are seen
+ * as they arrive; an error is raised after the bytes read before it.
+ */
+public class PrefetchInputStream extends InputStream {
+    public static final int BUFFER_SIZE = 1024 * 1024; // bytes
+    public static final int BUFFER_COUNT = 4;
+
+    // one buffer; length is -1 once the underlying stream is exhausted, 0 when it carries an error
+    private static class Chunk {
+        final byte[] data = new byte[BUFFER_SIZE];
+        int length = 0;
+        IOException error = null;
+    }
+
+    private final InputStream source;
+    private final BlockingQueue<Chunk> emptyChunks = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final BlockingQueue<Chunk> filledChunks = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final Thread prefetchThread;
+    private Chunk current = null;
+    private int position = 0;
+    private boolean closed = false;
+
+    public PrefetchInputStream(InputStream source, String name) {
+        this.source = source;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            emptyChunks.add(new Chunk());
+        }
+        this.prefetchThread = new Thread(this::prefetch, "lfpa-prefetch-" + name);
+        prefetchThread.setDaemon(true);
+        prefetchThread.start();
+    }
+
+    private void prefetch() {
+        try {
+            boolean endOfStream = false;
+            while (!endOfStream) {
+                Chunk chunk = emptyChunks.take();
+                try {
+                    // hand over whatever one read returns, so a slow pipe is not held back until a buffer fills
+                    chunk.length = source.read(chunk.data, 0, BUFFER_SIZE);
+                } catch (IOException e) {
+                    // the bytes read before the error have already been handed over
+                    chunk.length = 0;
+                    chunk.error = e;
+                }
+                if ((chunk.length == 0) && (chunk.error == null)) {
+                    emptyChunks.put(chunk);
+                    continue;
+                }
+                endOfStream = chunk.length <= 0;
+                filledChunks.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        }
+    }
+
+    // make sure the current chunk has unread bytes; returns false at the end of the stream
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while ((current == null) || (position >= current.length)) {
+            if ((current != null) && (current.length < 0)) {
+                return false;
+            }
+            if (current != null) {
+                emptyChunks.add(current);
+            }
+            try {
+                current = filledChunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for data");
+            }
+            position = 0;
+            if (current.error != null) {
+                IOException error = current.error;
+                current.error = null;
+                current.length = -1;
+                throw error;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current.data, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            prefetchThread.interrupt();
+            source.close();
+        }
+    }
+}
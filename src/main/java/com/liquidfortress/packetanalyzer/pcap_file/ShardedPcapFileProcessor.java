@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.main.Mode;
+import com.liquidfortress.packetanalyzer.statistics.StripedIpProtocolCounter;
+import org.apache.logging.log4j.core.Logger;
+import org.pcap4j.packet.namednumber.DataLinkType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * ShardedPcapFileProcessor
+ * <p/>
+ * Processes a single pcap file on several cores.  The calling thread reads
+ * the records and routes each packet by a symmetric hash of its IP address
+ * pair to one of N shards.  Every shard has its own PacketRing, a decode
+ * thread and a processing thread with its own PcapFileSummary, so all of a
+ * flow's packets (and all fragments of a datagram) are handled by one
+ * thread, in capture order.  The shard summaries are merged at the end,
+ * except for the IP protocol counts, which all shards add to one
+ * StripedIpProtocolCounter.
+ * <p/>
+ * Mode 3 detectors correlate packets across flows (SYN floods, port scans,
+ * smurf attacks), so Mode 3 is always processed sequentially.
+ */
+public class ShardedPcapFileProcessor {
+    private static final int RING_CAPACITY = 1024; // slots per shard
+    private static final int DECODE_STAGE = 1;
+    private static final int PROCESS_STAGE = 2;
+    private static Logger log = Main.log;
+
+    public static boolean supports(Mode mode) {
+        return mode != Mode.POSSIBLE_ATTACKS_ANALYSIS;
+    }
+
+    public static PcapFileSummary analyzePcapFile(File pcapFile, ValidatedArgs validatedArgs) {
+        Mode mode = validatedArgs.mode;
+        int shards = validatedArgs.shards;
+        if ((shards <= 1) || (validatedArgs.reportInterval > 0) || !supports(mode)) {
+            return PcapFileProcessor.analyzePcapFile(pcapFile, validatedArgs);
+        }
+        StripedIpProtocolCounter ipProtocolCounter = new StripedIpProtocolCounter();
+        PcapFileSummary pcapFileSummary = new PcapFileSummary(PcapFileProcessor.nameOf(pcapFile), validatedArgs, ipProtocolCounter);
+        log.trace("Opening pcap file: " + pcapFileSummary.filename + " with " + shards + " shards");
+        try (PcapReader pcapReader = PcapFileProcessor.openPcapReader(pcapFile, validatedArgs)) {
+            DataLinkType dataLinkType = DataLinkType.getInstance(pcapReader.getLinkType());
+            log.trace("DataLinkType is: " + dataLinkType);
+            if (dataLinkType != DataLinkType.EN10MB) { // Ethernet
+                return pcapFileSummary;
+            }
+            PacketRing[] rings = new PacketRing[shards];
+            PcapFileSummary[] shardSummaries = new PcapFileSummary[shards];
+            Thread[] threads = new Thread[2 * shards];
+            for (int i = 0; i < shards; i++) {
+                rings[i] = new PacketRing(RING_CAPACITY, PROCESS_STAGE);
+                shardSummaries[i] = new PcapFileSummary(pcapFileSummary.filename, validatedArgs, ipProtocolCounter);
+                threads[2 * i] = new Thread(decodeWorker(rings[i], mode), "lfpa-decode-" + i);
+                threads[2 * i + 1] = new Thread(processWorker(rings[i], shardSummaries[i], mode), "lfpa-shard-" + i);
+            }
+            for (Thread thread : threads) {
+                thread.setDaemon(true);
+                thread.start();
+            }
+            IOException readError = null;
+            try {
+                while (pcapReader.next()) {
+                    pcapFileSummary.packetCount++;
+                    ByteBuffer packetData = pcapReader.getPacketData();
+                    PacketRing ring = rings[shardOf(packetData, shards)];
+                    PacketRing.Slot slot = ring.claim();
+                    slot.packetInfo.reset();
+                    slot.packetInfo.packetNumber = pcapFileSummary.packetCount;
+                    slot.packetInfo.timestampNanos = pcapReader.getTimestampNanos();
+                    slot.setPacketData(packetData);
+                    ring.publish();
+                }
+            } catch (IOException e) {
+                readError = e; // like the sequential path, keep what was read before the error
+            } finally {
+                for (PacketRing ring : rings) {
+                    ring.claim().endOfStream = true;
+                    ring.publish();
+                }
+                for (Thread thread : threads) {
+                    joinUninterruptibly(thread);
+                }
+            }
+            for (PcapFileSummary shardSummary : shardSummaries) {
+                pcapFileSummary.merge(shardSummary);
+            }
+            pcapFileSummary.closedTcpConnections.sortByClosingPacketNumber();
+            pcapFileSummary.expiredTcpConnections.sortByClosingPacketNumber();
+            if (readError != null) {
+                throw readError;
+            }
+        } catch (IOException e) {
+            log.error("Exception occurred while processing pcapFile: " + pcapFile + ".  Exception was: " + e);
+        }
+        return pcapFileSummary;
+    }
+
+    // symmetric in source and destination, and independent of ports so IP fragments stay together
+    static int shardOf(ByteBuffer packetData, int shards) {
+        int start = packetData.position();
+        int length = packetData.limit() - start;
+        if (length < FrameDecoder.ETHERNET_HEADER_LENGTH) {
+            return 0;
+        }
+        int etherType = packetData.getShort(start + 12) & 0xffff;
+        int network = start + FrameDecoder.ETHERNET_HEADER_LENGTH;
+        int hash;
+        if ((etherType == FrameDecoder.ETHERTYPE_IPV4) && (length >= FrameDecoder.ETHERNET_HEADER_LENGTH + FrameDecoder.IPV4_MIN_HEADER_LENGTH)) {
+            hash = packetData.getInt(network + 12) ^ packetData.getInt(network + 16);
+        } else if ((etherType == FrameDecoder.ETHERTYPE_IPV6) && (length >= FrameDecoder.ETHERNET_HEADER_LENGTH + FrameDecoder.IPV6_HEADER_LENGTH)) {
+            long mixed = packetData.getLong(network + 8) ^ packetData.getLong(network + 16) ^
+                    packetData.getLong(network + 24) ^ packetData.getLong(network + 32);
+            hash = (int) (mixed ^ (mixed >>> 32));
+        } else {
+            return 0;
+        }
+        hash *= 0x9e3779b9;
+        hash ^= hash >>> 16;
+        return (hash & 0x7fffffff) % shards;
+    }
+
+    private static Runnable decodeWorker(PacketRing ring, Mode mode) {
+        DecodePlan decodePlan = DecodePlan.forMode(mode);
+        return () -> {
+            boolean running = true;
+            while (running) {
+                int available = ring.available(DECODE_STAGE);
+                for (int i = 0; i < available; i++) {
+                    PacketRing.Slot slot = ring.get(DECODE_STAGE, i);
+                    if (slot.endOfStream) {
+                        running = false;
+                    } else {
+                        try {
+                            FrameDecoder.decode(slot.getPacketData(), slot.packetInfo, decodePlan);
+                        } catch (RuntimeException e) {
+                            log.error("Exception occurred while decoding packet " + slot.packetInfo.packetNumber +
+                                    ". Exception was: " + e);
+                        }
+                    }
+                }
+                ring.release(DECODE_STAGE, available);
+            }
+        };
+    }
+
+    private static Runnable processWorker(PacketRing ring, PcapFileSummary shardSummary, Mode mode) {
+        return () -> {
+            boolean running = true;
+            while (running) {
+                int available = ring.available(PROCESS_STAGE);
+                for (int i = 0; i < available; i++) {
+                    PacketRing.Slot slot = ring.get(PROCESS_STAGE, i);
+                    if (slot.endOfStream) {
+                        running = false;
+                    } else {
+                        try {
+                            PcapFileProcessor.processDecodedPacket(slot.getPacketData(), shardSummary, slot.packetInfo, mode);
+                        } catch (RuntimeException e) {
+                            log.error("Exception occurred while processing packet " + slot.packetInfo.packetNumber +
+                                    ". Exception was: " + e);
+                        }
+                    }
+                }
+                ring.release(PROCESS_STAGE, available);
+            }
+        };
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
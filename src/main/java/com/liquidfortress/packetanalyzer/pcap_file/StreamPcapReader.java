@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.main.Main;
+import org.apache.logging.log4j.core.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * StreamPcapReader
+ * <p/>
+ * Pure Java pcap reader for inputs that can only be read front to back,
+ * such as decompressed captures.  Each record is read into a reusable
+ * buffer, so packet data is only valid until next() is called again.
+ */
+public class StreamPcapReader implements PcapReader {
+    private static final int INITIAL_DATA_LENGTH = 65536; // bytes
+    private static Logger log = Main.log;
+
+    private final InputStream inputStream;
+    private final String name;
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(MappedPcapReader.RECORD_HEADER_LENGTH);
+    private final boolean nanosecondResolution;
+    private final int linkType;
+
+    private byte[] data = new byte[INITIAL_DATA_LENGTH];
+    private ByteBuffer packetData = ByteBuffer.wrap(data);
+    private long timestampNanos;
+    private int capturedLength;
+    private int originalLength;
+
+    public StreamPcapReader(InputStream inputStream, String name) throws IOException {
+        this.inputStream = inputStream;
+        this.name = name;
+        try {
+            ByteBuffer globalHeader = ByteBuffer.allocate(MappedPcapReader.GLOBAL_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            if (readFully(globalHeader.array(), MappedPcapReader.GLOBAL_HEADER_LENGTH) < MappedPcapReader.GLOBAL_HEADER_LENGTH) {
+                throw new IOException(name + " is too short to be a pcap file");
+            }
+            int magic = globalHeader.getInt(0);
+            if ((Integer.reverseBytes(magic) == MappedPcapReader.MAGIC_MICROSECONDS) ||
+                    (Integer.reverseBytes(magic) == MappedPcapReader.MAGIC_NANOSECONDS)) {
+                globalHeader.order(ByteOrder.BIG_ENDIAN);
+                magic = Integer.reverseBytes(magic);
+            } else if ((magic != MappedPcapReader.MAGIC_MICROSECONDS) && (magic != MappedPcapReader.MAGIC_NANOSECONDS)) {
+                throw new IOException(name + " is not a pcap file; magic number was: " + Integer.toHexString(magic));
+            }
+            nanosecondResolution = (magic == MappedPcapReader.MAGIC_NANOSECONDS);
+            recordHeader.order(globalHeader.order());
+            linkType = globalHeader.getInt(20);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    // read until length bytes are in the buffer or the stream ends; returns the number of bytes read
+    private int readFully(byte[] buffer, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = inputStream.read(buffer, total, length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public int getLinkType() {
+        return linkType;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        int headerLength = readFully(recordHeader.array(), MappedPcapReader.RECORD_HEADER_LENGTH);
+        if (headerLength < MappedPcapReader.RECORD_HEADER_LENGTH) {
+            if (headerLength > 0) {
+                log.trace("Truncated record header at the end of pcap input: " + name);
+            }
+            return false;
+        }
+        long seconds = recordHeader.getInt(0) & 0xffffffffL;
+        long fraction = recordHeader.getInt(4) & 0xffffffffL;
+        int captured = recordHeader.getInt(8);
+        int original = recordHeader.getInt(12);
+        if ((captured < 0) || (captured > MappedPcapReader.MAX_CAPTURED_LENGTH)) {
+            throw new IOException("Corrupt record in pcap input: " + name + "; captured length was: " + captured);
+        }
+        if (data.length < captured) {
+            data = new byte[Math.max(captured, 2 * data.length)];
+            packetData = ByteBuffer.wrap(data);
+        }
+        if (readFully(data, captured) < captured) {
+            log.trace("Truncated record at the end of pcap input: " + name);
+            return false;
+        }
+        packetData.clear();
+        packetData.limit(captured);
+        timestampNanos = (seconds * 1000000000L) + (nanosecondResolution ? fraction : fraction * 1000L);
+        capturedLength = captured;
+        originalLength = original;
+        return true;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    @Override
+    public int getCapturedLength() {
+        return capturedLength;
+    }
+
+    @Override
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    @Override
+    public ByteBuffer getPacketData() {
+        return packetData;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
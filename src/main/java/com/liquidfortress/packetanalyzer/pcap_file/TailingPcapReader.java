@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TailingPcapReader
+ * <p/>
+ * Pcap reader for a capture file that is still being written.  Records are
+ * read with positional reads, and next() returns false as soon as the next
+ * record is not completely on disk yet; calling next() again later picks
+ * up the records that have been appended since.  It can also be limited to
+ * a byte range of a complete capture, as found in its PcapIndex.
+ */
+public class TailingPcapReader implements PcapReader {
+    private static final int INITIAL_DATA_LENGTH = 65536; // bytes
+
+    private final File pcapFile;
+    private final FileChannel fileChannel;
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(MappedPcapReader.RECORD_HEADER_LENGTH);
+    private boolean nanosecondResolution;
+    private int linkType = -1;
+    private long position = 0;
+    private long endPosition = Long.MAX_VALUE;
+
+    private byte[] data = new byte[INITIAL_DATA_LENGTH];
+    private ByteBuffer packetData = ByteBuffer.wrap(data);
+    private long timestampNanos;
+    private int capturedLength;
+    private int originalLength;
+
+    public TailingPcapReader(File pcapFile) throws IOException {
+        this.pcapFile = pcapFile;
+        this.fileChannel = FileChannel.open(pcapFile.toPath(), StandardOpenOption.READ);
+    }
+
+    // fill the buffer up to its limit from the given file position; returns false if the bytes are not all in the file yet
+    private boolean readAt(ByteBuffer buffer, long start) throws IOException {
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, start + buffer.position()) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the global header may not have been written yet when the file is first seen
+    public boolean hasHeader() throws IOException {
+        if (linkType >= 0) {
+            return true;
+        }
+        ByteBuffer globalHeader = ByteBuffer.allocate(MappedPcapReader.GLOBAL_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readAt(globalHeader, 0)) {
+            return false;
+        }
+        int magic = globalHeader.getInt(0);
+        if ((Integer.reverseBytes(magic) == MappedPcapReader.MAGIC_MICROSECONDS) ||
+                (Integer.reverseBytes(magic) == MappedPcapReader.MAGIC_NANOSECONDS)) {
+            globalHeader.order(ByteOrder.BIG_ENDIAN);
+            magic = Integer.reverseBytes(magic);
+        } else if ((magic != MappedPcapReader.MAGIC_MICROSECONDS) && (magic != MappedPcapReader.MAGIC_NANOSECONDS)) {
+            throw new IOException(pcapFile + " is not a pcap file; magic number was: " + Integer.toHexString(magic));
+        }
+        nanosecondResolution = (magic == MappedPcapReader.MAGIC_NANOSECONDS);
+        recordHeader.order(globalHeader.order());
+        linkType = globalHeader.getInt(20);
+        position = MappedPcapReader.GLOBAL_HEADER_LENGTH;
+        return true;
+    }
+
+    // read only the records in [start, end); start must be the offset of a record
+    public void seek(long start, long end) throws IOException {
+        if (!hasHeader()) {
+            throw new IOException(pcapFile + " is too short to be a pcap file");
+        }
+        position = Math.max(start, MappedPcapReader.GLOBAL_HEADER_LENGTH);
+        endPosition = end;
+    }
+
+    public File getPcapFile() {
+        return pcapFile;
+    }
+
+    // the file is shorter than what has been read already, so it was truncated and is being rewritten
+    public boolean wasTruncated() throws IOException {
+        return fileChannel.size() < position;
+    }
+
+    @Override
+    public int getLinkType() {
+        return linkType;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (!hasHeader() || (position >= endPosition) || !readAt(recordHeader, position)) {
+            return false;
+        }
+        long seconds = recordHeader.getInt(0) & 0xffffffffL;
+        long fraction = recordHeader.getInt(4) & 0xffffffffL;
+        int captured = recordHeader.getInt(8);
+        int original = recordHeader.getInt(12);
+        if ((captured < 0) || (captured > MappedPcapReader.MAX_CAPTURED_LENGTH)) {
+            throw new IOException("Corrupt record at offset " + position + " in pcap file: " + pcapFile +
+                    "; captured length was: " + captured);
+        }
+        if (data.length < captured) {
+            data = new byte[Math.max(captured, 2 * data.length)];
+            packetData = ByteBuffer.wrap(data);
+        }
+        packetData.clear();
+        packetData.limit(captured);
+        if (!readAt(packetData, position + MappedPcapReader.RECORD_HEADER_LENGTH)) {
+            return false; // only part of the record has been written; try again later
+        }
+        packetData.flip();
+        timestampNanos = (seconds * 1000000000L) + (nanosecondResolution ? fraction : fraction * 1000L);
+        capturedLength = captured;
+        originalLength = original;
+        position += MappedPcapReader.RECORD_HEADER_LENGTH + captured;
+        return true;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    @Override
+    public int getCapturedLength() {
+        return capturedLength;
+    }
+
+    @Override
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    @Override
+    public ByteBuffer getPacketData() {
+        return packetData;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+/**
+ * ArrayIpProtocolCounter
+ * <p/>
+ * IpProtocolCounter for a single thread, with plain arrays of packet and
+ * byte counts
+ */
+public class ArrayIpProtocolCounter extends IpProtocolCounter {
+
+    private final long[] packetCounts = new long[PROTOCOLS];
+    private final long[] byteCounts = new long[PROTOCOLS];
+
+    @Override
+    public void increment(int protocol, long bytes) {
+        packetCounts[protocol]++;
+        byteCounts[protocol] += bytes;
+    }
+
+    @Override
+    public long getPacketCount(int protocol) {
+        return packetCounts[protocol];
+    }
+
+    @Override
+    public long getByteCount(int protocol) {
+        return byteCounts[protocol];
+    }
+
+    @Override
+    protected void add(int protocol, long packets, long bytes) {
+        packetCounts[protocol] += packets;
+        byteCounts[protocol] += bytes;
+    }
+}
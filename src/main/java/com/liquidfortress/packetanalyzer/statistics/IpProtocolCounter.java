@@ -22,43 +22,71 @@ package com.liquidfortress.packetanalyzer.statistics;
 
 import org.pcap4j.packet.namednumber.IpNumber;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * IpProtocolCounter
  * <p/>
- * Count packets for all observed IP protocols
+ * Count packets and bytes for all observed IP protocols.  The counts are
+ * indexed by the 8-bit protocol number; IpNumber is only used to name the
+ * protocols in reports.  Subclasses decide how the counts are stored:
+ * ArrayIpProtocolCounter for one thread, StripedIpProtocolCounter for
+ * several.
  */
-public class IpProtocolCounter {
+public abstract class IpProtocolCounter {
+    public static final int PROTOCOLS = 256;
 
-    private HashMap<IpNumber, Integer> protocolCounts = new HashMap<>();
-
-    public IpProtocolCounter() {
+    public void increment(IpNumber ipNumber) {
+        increment(ipNumber.value() & 0xff, 0);
     }
 
-    public void increment(IpNumber ipNumber) {
-        Integer count = protocolCounts.get(ipNumber);
-        if (count == null) {
-            count = new Integer(1);
-        } else {
-            count++;
+    // one packet of the given IP protocol, with the length of its IP datagram
+    public abstract void increment(int protocol, long bytes);
+
+    public abstract long getPacketCount(int protocol);
+
+    public abstract long getByteCount(int protocol);
+
+    protected abstract void add(int protocol, long packets, long bytes);
+
+    public void merge(IpProtocolCounter other) {
+        if (other == this) {
+            return; // shards can share one counter
+        }
+        for (int protocol = 0; protocol < PROTOCOLS; protocol++) {
+            long packets = other.getPacketCount(protocol);
+            if (packets != 0) {
+                add(protocol, packets, other.getByteCount(protocol));
+            }
         }
-        protocolCounts.put(ipNumber, count);
     }
 
+    // packet counts of the observed protocols, in protocol number order
     public Set<Map.Entry<IpNumber, Integer>> entrySet() {
+        LinkedHashMap<IpNumber, Integer> protocolCounts = new LinkedHashMap<>();
+        for (int protocol = 0; protocol < PROTOCOLS; protocol++) {
+            long packets = getPacketCount(protocol);
+            if (packets != 0) {
+                protocolCounts.put(IpNumber.getInstance((byte) protocol), (int) Math.min(packets, Integer.MAX_VALUE));
+            }
+        }
         return protocolCounts.entrySet();
     }
 
     public String toString() {
         StringBuilder builder = new StringBuilder("=== IP Protocol Counts ===\n");
-        for (Map.Entry<IpNumber, Integer> entry : entrySet()) {
-            builder.append(entry.getKey());
-            builder.append(": ");
-            builder.append(entry.getValue());
-            builder.append("\n");
+        for (int protocol = 0; protocol < PROTOCOLS; protocol++) {
+            long packets = getPacketCount(protocol);
+            if (packets != 0) {
+                builder.append(IpNumber.getInstance((byte) protocol));
+                builder.append(": ");
+                builder.append(packets);
+                builder.append(" packets, ");
+                builder.append(getByteCount(protocol));
+                builder.append(" bytes\n");
+            }
         }
         return builder.toString();
     }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+import com.liquidfortress.packetanalyzer.util.LongIntHashMap;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * PortCounter
+ * <p/>
+ * Reference counts of the ports in a SlidingWindow, with the number of
+ * distinct ports and their total weight updated in O(1) as events come and
+ * go.  A port adds its weight when its count goes from zero to one and takes
+ * it away when the count drops back to zero.
+ * <p/>
+ * Counts start in a small hash map.  Once a window holds more than
+ * DENSE_THRESHOLD distinct ports they move to an array indexed by port, in
+ * which a nonzero count is the port's bit, and they move back once the
+ * window is empty.
+ */
+public class PortCounter implements SlidingWindow.ValueCounter {
+    private static final int PORTS = 65536;
+    private static final int DENSE_THRESHOLD = 4096; // distinct ports
+
+    private final IntUnaryOperator weights; // port -> points
+    private LongIntHashMap sparseCounts = new LongIntHashMap();
+    private int[] denseCounts = null;
+    private int distinct = 0;
+    private int score = 0;
+
+    public PortCounter(IntUnaryOperator weights) {
+        this.weights = weights;
+    }
+
+    @Override
+    public void add(long value) {
+        int port = (int) value & (PORTS - 1);
+        int count = (denseCounts != null) ? ++denseCounts[port] : sparseCounts.increment(port);
+        if (count == 1) {
+            distinct++;
+            score += weights.applyAsInt(port);
+            if ((denseCounts == null) && (distinct > DENSE_THRESHOLD)) {
+                int[] counts = new int[PORTS];
+                sparseCounts.forEach((key, keyCount) -> counts[(int) key] = keyCount);
+                denseCounts = counts;
+                sparseCounts = null;
+            }
+        }
+    }
+
+    @Override
+    public void remove(long value) {
+        int port = (int) value & (PORTS - 1);
+        int count = (denseCounts != null) ? --denseCounts[port] : sparseCounts.decrement(port);
+        if (count == 0) {
+            distinct--;
+            score -= weights.applyAsInt(port);
+            if ((denseCounts != null) && (distinct == 0)) {
+                denseCounts = null;
+                sparseCounts = new LongIntHashMap();
+            }
+        }
+    }
+
+    @Override
+    public int distinct() {
+        return distinct;
+    }
+
+    // total weight of the distinct ports in the window
+    public int getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+import com.liquidfortress.packetanalyzer.util.LongIntHashMap;
+
+/**
+ * SlidingWindow
+ * <p/>
+ * Event-time window over one key's recent events, kept in a circular buffer
+ * of primitive timestamps, values and data words.  Events are appended in
+ * capture order and expired from the head, so each event is added and dropped
+ * exactly once.  A ValueCounter is told about every value that enters or
+ * leaves the window, so the number of distinct values (or any other score of
+ * them) is kept incrementally, and an event may carry an attachment.
+ * <p/>
+ * Every event gets a sequence number, the count of events appended before
+ * it.  report() uses these to hand each event to an incident only once.
+ */
+public class SlidingWindow<T> {
+    private static final int INITIAL_CAPACITY = 4; // events; always a power of two
+
+    /**
+     * EventConsumer
+     * <p/>
+     * Receives the events of a window, oldest first
+     */
+    public interface EventConsumer<T> {
+        void accept(long timestampNanos, long value, long data, T attachment);
+    }
+
+    /**
+     * ValueCounter
+     * <p/>
+     * Told about every value that enters or leaves a window
+     */
+    public interface ValueCounter {
+        void add(long value);
+
+        void remove(long value);
+
+        int distinct();
+    }
+
+    /**
+     * DistinctValues
+     * <p/>
+     * Counts the events per value in a window
+     */
+    private static class DistinctValues implements ValueCounter {
+        private final LongIntHashMap counts = new LongIntHashMap(); // value -> events in the window
+
+        @Override
+        public void add(long value) {
+            counts.increment(value);
+        }
+
+        @Override
+        public void remove(long value) {
+            counts.decrement(value);
+        }
+
+        @Override
+        public int distinct() {
+            return counts.size();
+        }
+    }
+
+    private final long lengthNanos;
+    private final ValueCounter counter; // null when values are not counted
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private long[] data = new long[INITIAL_CAPACITY];
+    private Object[] attachments = null; // allocated by the first event with an attachment
+    private boolean[] removed = null; // allocated by the first remove()
+    private long head = 0; // sequence of the oldest buffered event
+    private long tail = 0; // sequence of the next event
+    private int size = 0; // buffered events that have not been removed
+    private Object reportedTo = null; // incident that last received events from report()
+    private long reported = 0; // sequence up to which reportedTo has received events
+
+    // events older than lengthNanos before the latest timestamp are expired
+    public SlidingWindow(long lengthNanos, boolean countDistinct) {
+        this(lengthNanos, countDistinct ? new DistinctValues() : null);
+    }
+
+    public SlidingWindow(long lengthNanos, ValueCounter counter) {
+        this.lengthNanos = lengthNanos;
+        this.counter = counter;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // number of distinct values among the events in the window
+    public int distinct() {
+        if (counter == null) {
+            throw new IllegalStateException("This SlidingWindow does not count distinct values!");
+        }
+        return counter.distinct();
+    }
+
+    // expire old events, then append this one and return its sequence number
+    public long add(long timestampNanos, long value, long data, T attachment) {
+        expire(timestampNanos);
+        if (tail - head == timestamps.length) {
+            grow();
+        }
+        int index = index(tail);
+        timestamps[index] = timestampNanos;
+        values[index] = value;
+        this.data[index] = data;
+        if (removed != null) {
+            removed[index] = false;
+        }
+        if (attachment != null) {
+            if (attachments == null) {
+                attachments = new Object[timestamps.length];
+            }
+            attachments[index] = attachment;
+        }
+        if (counter != null) {
+            counter.add(value);
+        }
+        size++;
+        return tail++;
+    }
+
+    public long add(long timestampNanos, long value, long data) {
+        return add(timestampNanos, value, data, null);
+    }
+
+    // drop the events at or before lengthNanos before now; stops at the first newer event
+    public void expire(long nowNanos) {
+        long cutoff = nowNanos - lengthNanos;
+        while ((head < tail) && ((timestamps[index(head)] <= cutoff) || isRemoved(head))) {
+            dropHead();
+        }
+    }
+
+    // remove the event with this value; values must have been added in increasing order
+    public boolean remove(long value) {
+        long low = head;
+        long high = tail - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long middleValue = values[index(middle)];
+            if (middleValue < value) {
+                low = middle + 1;
+            } else if (middleValue > value) {
+                high = middle - 1;
+            } else {
+                if (isRemoved(middle)) {
+                    return false;
+                }
+                int index = index(middle);
+                if (removed == null) {
+                    removed = new boolean[timestamps.length];
+                }
+                removed[index] = true;
+                if (attachments != null) {
+                    attachments[index] = null;
+                }
+                if (counter != null) {
+                    counter.remove(value);
+                }
+                size--;
+                while ((head < tail) && isRemoved(head)) {
+                    dropHead();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // timestamp of the oldest event in the window
+    public long getEarliest() {
+        if (size == 0) {
+            throw new IllegalStateException("Cannot get earliest of an empty SlidingWindow!");
+        }
+        return timestamps[index(head)];
+    }
+
+    // timestamp of the newest event in the window
+    public long getLatest() {
+        if (size == 0) {
+            throw new IllegalStateException("Cannot get latest of an empty SlidingWindow!");
+        }
+        long sequence = tail - 1;
+        while (isRemoved(sequence)) {
+            sequence--;
+        }
+        return timestamps[index(sequence)];
+    }
+
+    public void forEach(EventConsumer<T> consumer) {
+        forEachSince(head, consumer);
+    }
+
+    // visit the events with a sequence number of at least the given one
+    @SuppressWarnings("unchecked")
+    public void forEachSince(long sequence, EventConsumer<T> consumer) {
+        for (long i = Math.max(sequence, head); i < tail; i++) {
+            if (!isRemoved(i)) {
+                int index = index(i);
+                T attachment = (attachments == null) ? null : (T) attachments[index];
+                consumer.accept(timestamps[index], values[index], data[index], attachment);
+            }
+        }
+    }
+
+    // visit the events in the window that have not been reported to this incident yet
+    public void report(Object incident, EventConsumer<T> consumer) {
+        forEachSince((incident == reportedTo) ? reported : head, consumer);
+        reportedTo = incident;
+        reported = tail;
+    }
+
+    private void dropHead() {
+        int index = index(head);
+        if (!isRemoved(head)) {
+            if (counter != null) {
+                counter.remove(values[index]);
+            }
+            size--;
+        }
+        if (attachments != null) {
+            attachments[index] = null;
+        }
+        head++;
+    }
+
+    private boolean isRemoved(long sequence) {
+        return (removed != null) && removed[index(sequence)];
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & (timestamps.length - 1);
+    }
+
+    private void grow() {
+        long[] oldTimestamps = timestamps;
+        long[] oldValues = values;
+        long[] oldData = data;
+        Object[] oldAttachments = attachments;
+        boolean[] oldRemoved = removed;
+        int oldMask = oldTimestamps.length - 1;
+        int capacity = oldTimestamps.length * 2;
+        timestamps = new long[capacity];
+        values = new long[capacity];
+        data = new long[capacity];
+        attachments = (oldAttachments == null) ? null : new Object[capacity];
+        removed = (oldRemoved == null) ? null : new boolean[capacity];
+        for (long i = head; i < tail; i++) {
+            int from = (int) i & oldMask;
+            int to = index(i);
+            timestamps[to] = oldTimestamps[from];
+            values[to] = oldValues[from];
+            data[to] = oldData[from];
+            if (oldAttachments != null) {
+                attachments[to] = oldAttachments[from];
+            }
+            if (oldRemoved != null) {
+                removed[to] = oldRemoved[from];
+            }
+        }
+    }
+}
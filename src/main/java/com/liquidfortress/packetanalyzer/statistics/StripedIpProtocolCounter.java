@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StripedIpProtocolCounter
+ * <p/>
+ * IpProtocolCounter that several threads can increment at once.  Each
+ * protocol's packet and byte counts are LongAdders, which spread contended
+ * updates over per-thread cells instead of retrying on one shared value.
+ * Reads sum the cells, so they are only exact once the writers are done.
+ */
+public class StripedIpProtocolCounter extends IpProtocolCounter {
+
+    private final LongAdder[] packetCounts = new LongAdder[PROTOCOLS];
+    private final LongAdder[] byteCounts = new LongAdder[PROTOCOLS];
+
+    public StripedIpProtocolCounter() {
+        for (int protocol = 0; protocol < PROTOCOLS; protocol++) {
+            packetCounts[protocol] = new LongAdder();
+            byteCounts[protocol] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void increment(int protocol, long bytes) {
+        packetCounts[protocol].increment();
+        byteCounts[protocol].add(bytes);
+    }
+
+    @Override
+    public long getPacketCount(int protocol) {
+        return packetCounts[protocol].sum();
+    }
+
+    @Override
+    public long getByteCount(int protocol) {
+        return byteCounts[protocol].sum();
+    }
+
+    @Override
+    protected void add(int protocol, long packets, long bytes) {
+        packetCounts[protocol].add(packets);
+        byteCounts[protocol].add(bytes);
+    }
+}
@@ -20,30 +20,134 @@
 
 package com.liquidfortress.packetanalyzer.statistics;
 
-import java.util.HashSet;
+import com.liquidfortress.packetanalyzer.util.LongHashSet;
+import com.liquidfortress.packetanalyzer.util.LongPairIntHashSet;
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
 
 /**
  * UdpSources
  * <p/>
- * HashSet used to track unique UDP sources
+ * Track unique UDP sources (source address and port).  An IPv4 source is
+ * packed into one long, the address in bits 16 to 47 and the port in bits 0
+ * to 15; an IPv6 source is kept as its two address longs and the port.  Both
+ * go into primitive hash sets, so no strings are built per packet.  In
+ * approximate mode they are counted with a HyperLogLog sketch instead.
  */
 public class UdpSources {
+    // keeps IPv4 and IPv6 hashes apart in the sketch
+    private static final long IPV4_TAG = 4L << 48;
 
-    // UDP sources are stored in "IP Address:port" format
-    private HashSet<String> sources = new HashSet<>();
+    private LongHashSet ipv4Sources = new LongHashSet(); // null once approximate
+    private LongPairIntHashSet ipv6Sources = new LongPairIntHashSet();
+    private HyperLogLog sketch = null; // only in approximate mode
 
     public UdpSources() {
     }
 
+    // approximatePrecision is the HyperLogLog precision, or 0 to count exactly
+    public UdpSources(int approximatePrecision) {
+        if (approximatePrecision > 0) {
+            sketch = new HyperLogLog(approximatePrecision);
+        }
+    }
+
+    public boolean isApproximate() {
+        return sketch != null;
+    }
+
     public int size() {
-        return sources.size();
+        if (sketch != null) {
+            return (int) Math.min(sketch.estimate(), Integer.MAX_VALUE);
+        }
+        return ipv4Sources.size() + ipv6Sources.size();
+    }
+
+    // the count for reports, with the error bound in approximate mode
+    public String describeSize() {
+        return (sketch != null) ? sketch.describe() : String.valueOf(size());
+    }
+
+    static long packIpv4(int address, int port) {
+        return ((address & 0xffffffffL) << 16) | (port & 0xffff);
+    }
+
+    // in approximate mode the return value is always true
+    public boolean addIpv4(int address, int port) {
+        long source = packIpv4(address, port);
+        if (sketch != null) {
+            sketch.add(HyperLogLog.hash(IPV4_TAG | source));
+            return true;
+        }
+        return ipv4Sources.add(source);
+    }
+
+    public boolean addIpv6(long high, long low, int port) {
+        if (sketch != null) {
+            sketch.add(HyperLogLog.hash(HyperLogLog.hash(high, low) ^ (port & 0xffff)));
+            return true;
+        }
+        return ipv6Sources.add(high, low, port & 0xffff);
+    }
+
+    // UDP sources in "IP Address:port" format
+    public boolean add(String source) {
+        int separator = source.lastIndexOf(':');
+        byte[] bytes = parse(source, separator);
+        int port = Integer.parseInt(source.substring(separator + 1));
+        if (bytes.length == 4) {
+            return addIpv4((int) PacketInfoUtils.toLong(bytes, 0, 4), port);
+        }
+        return addIpv6(PacketInfoUtils.toLong(bytes, 0, 8), PacketInfoUtils.toLong(bytes, 8, 8), port);
     }
 
+    // always false in approximate mode, which keeps no members
     public boolean contains(Object o) {
-        return sources.contains(o);
+        if ((sketch != null) || !(o instanceof String)) {
+            return false;
+        }
+        String source = (String) o;
+        int separator = source.lastIndexOf(':');
+        int port;
+        byte[] bytes;
+        try {
+            port = Integer.parseInt(source.substring(separator + 1));
+            bytes = parse(source, separator);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (bytes.length == 4) {
+            return ipv4Sources.contains(packIpv4((int) PacketInfoUtils.toLong(bytes, 0, 4), port));
+        }
+        return ipv6Sources.contains(PacketInfoUtils.toLong(bytes, 0, 8), PacketInfoUtils.toLong(bytes, 8, 8), port & 0xffff);
+    }
+
+    private static byte[] parse(String source, int separator) {
+        if (separator <= 0) {
+            throw new IllegalArgumentException(source + " is not an IP address and port");
+        }
+        try {
+            return PacketInfoUtils.parseIpAddress(source.substring(0, separator));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(source + " is not an IP address and port");
+        }
+    }
+
+    public void merge(UdpSources other) {
+        if ((sketch == null) && (other.sketch != null)) {
+            sketch = new HyperLogLog(other.sketch.getPrecision());
+            addAllTo(this);
+            ipv4Sources = null; // the sketch counts them now
+            ipv6Sources = null;
+        }
+        if (other.sketch != null) {
+            sketch.merge(other.sketch);
+        } else {
+            other.addAllTo(this);
+        }
     }
 
-    public boolean add(String s) {
-        return sources.add(s);
+    private void addAllTo(UdpSources target) {
+        ipv4Sources.forEach((long source) -> target.addIpv4((int) (source >>> 16), (int) source & 0xffff));
+        ipv6Sources.forEach(target::addIpv6);
     }
 }
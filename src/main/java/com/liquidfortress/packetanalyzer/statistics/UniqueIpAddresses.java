@@ -18,29 +18,112 @@
  * If not, see <http://www.gnu.org/licenses/>.
  */
 
+
 package com.liquidfortress.packetanalyzer.statistics;
 
-import java.util.HashSet;
+import com.liquidfortress.packetanalyzer.util.IntHashSet;
+import com.liquidfortress.packetanalyzer.util.LongPairHashSet;
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
 
 /**
  * UniqueIpAddresses
  * <p/>
- * Track unique IP addresses
+ * Track unique IP addresses.  Addresses are kept in binary form, IPv4 as
+ * an int and IPv6 as two longs, in primitive hash sets; they are only
+ * formatted as text when they are listed.  In approximate mode they are
+ * counted with a HyperLogLog sketch instead, which has a fixed size.
  */
 public class UniqueIpAddresses {
+    // keeps IPv4 and IPv6 hashes apart in the sketch
+    private static final long IPV4_TAG = 4L << 32;
 
-    private HashSet<String> uniqueIpAddresses = new HashSet<>();
+    private IntHashSet ipv4Addresses = new IntHashSet(); // null once approximate
+    private LongPairHashSet ipv6Addresses = new LongPairHashSet();
+    private HyperLogLog sketch = null; // only in approximate mode
 
     public UniqueIpAddresses() {
     }
 
+    // approximatePrecision is the HyperLogLog precision, or 0 to count exactly
+    public UniqueIpAddresses(int approximatePrecision) {
+        if (approximatePrecision > 0) {
+            sketch = new HyperLogLog(approximatePrecision);
+        }
+    }
+
+    public boolean isApproximate() {
+        return sketch != null;
+    }
+
     public int size() {
-        return uniqueIpAddresses.size();
+        if (sketch != null) {
+            return (int) Math.min(sketch.estimate(), Integer.MAX_VALUE);
+        }
+        return ipv4Addresses.size() + ipv6Addresses.size();
+    }
+
+    // the count for reports, with the error bound in approximate mode
+    public String describeSize() {
+        return (sketch != null) ? sketch.describe() : String.valueOf(size());
+    }
+
+    // in approximate mode the return value is always true
+    public boolean addIpv4(int address) {
+        if (sketch != null) {
+            sketch.add(HyperLogLog.hash(IPV4_TAG | (address & 0xffffffffL)));
+            return true;
+        }
+        return ipv4Addresses.add(address);
     }
 
+    public boolean addIpv6(long high, long low) {
+        if (sketch != null) {
+            sketch.add(HyperLogLog.hash(high, low));
+            return true;
+        }
+        return ipv6Addresses.add(high, low);
+    }
+
+    // a textual IPv4 or IPv6 address literal
     public boolean add(String hostAddress) {
-        return uniqueIpAddresses.add(hostAddress);
+        byte[] bytes = PacketInfoUtils.parseIpAddress(hostAddress);
+        if (bytes.length == 4) {
+            return addIpv4((int) PacketInfoUtils.toLong(bytes, 0, 4));
+        }
+        return addIpv6(PacketInfoUtils.toLong(bytes, 0, 8), PacketInfoUtils.toLong(bytes, 8, 8));
+    }
+
+    // an exact set merged into an approximate one is added to its sketch, and the other way round this set becomes approximate
+    public void merge(UniqueIpAddresses other) {
+        if ((sketch == null) && (other.sketch != null)) {
+            sketch = new HyperLogLog(other.sketch.getPrecision());
+            addAllTo(this);
+            ipv4Addresses = null; // the sketch counts them now
+            ipv6Addresses = null;
+        }
+        if (other.sketch != null) {
+            sketch.merge(other.sketch);
+        } else {
+            other.addAllTo(this);
+        }
     }
-}
 
+    private void addAllTo(UniqueIpAddresses target) {
+        ipv4Addresses.forEach(target::addIpv4);
+        ipv6Addresses.forEach(target::addIpv6);
+    }
 
+    @Override
+    public String toString() {
+        if (sketch != null) {
+            return "UniqueIpAddresses{" + sketch.describe() + '}';
+        }
+        StringBuilder builder = new StringBuilder("UniqueIpAddresses{");
+        ipv4Addresses.forEach((int address) -> builder.append(PacketInfoUtils.formatIpv4Address(address)).append(", "));
+        ipv6Addresses.forEach((long high, long low) -> builder.append(PacketInfoUtils.formatIpv6Address(high, low)).append(", "));
+        if (size() > 0) {
+            builder.setLength(builder.length() - 2);
+        }
+        return builder.append('}').toString();
+    }
+}
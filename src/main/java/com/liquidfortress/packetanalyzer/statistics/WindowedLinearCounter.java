@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+/**
+ * WindowedLinearCounter
+ * <p/>
+ * Approximate number of distinct values seen in a sliding time window, in
+ * bounded memory however many values there are.  The window is split into
+ * buckets of equal length, and each bucket is a linear-counting sketch: a
+ * BITS-bit bitmap in which every value sets the bit its hash picks.  The
+ * estimate ORs the live buckets together and counts the bits still clear.
+ * <p/>
+ * The window covers the current bucket and the ones before it, so it is
+ * between one bucket and the whole window length long.  A bucket's bitmap
+ * is only allocated by its first value and is dropped once it expires.
+ */
+public class WindowedLinearCounter {
+    public static final int BITS = 1024; // per bucket; about 2% standard error at 128 values
+    private static final int WORDS = BITS / 64;
+    private static final int INDEX_BITS = Integer.numberOfTrailingZeros(BITS);
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final long bucketNanos;
+    private final long[][] buckets; // ring of bitmaps indexed by bucket number; null while empty
+    private long latestBucket = NONE; // number of the newest bucket, timestamp / bucketNanos
+
+    public WindowedLinearCounter(long windowNanos, int bucketCount) {
+        if ((bucketCount <= 0) || (windowNanos < bucketCount)) {
+            throw new IllegalArgumentException("WindowedLinearCounter needs at least one bucket of at least one nanosecond!");
+        }
+        this.bucketNanos = windowNanos / bucketCount;
+        this.buckets = new long[bucketCount][];
+    }
+
+    // the hash must be well mixed in its high bits; see HyperLogLog.hash()
+    public void add(long timestampNanos, long hash) {
+        long bucket = Math.floorDiv(timestampNanos, bucketNanos);
+        advance(bucket);
+        if (latestBucket - bucket >= buckets.length) {
+            return; // older than the window
+        }
+        int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+        if (buckets[slot] == null) {
+            buckets[slot] = new long[WORDS];
+        }
+        int bit = (int) (hash >>> (64 - INDEX_BITS));
+        buckets[slot][bit >>> 6] |= 1L << bit;
+    }
+
+    // drop the buckets that are out of the window at this time
+    public void expire(long timestampNanos) {
+        advance(Math.floorDiv(timestampNanos, bucketNanos));
+    }
+
+    public boolean isEmpty() {
+        for (long[] bitmap : buckets) {
+            if (bitmap != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int estimate() {
+        int ones = 0;
+        for (int word = 0; word < WORDS; word++) {
+            long union = 0;
+            for (long[] bitmap : buckets) {
+                if (bitmap != null) {
+                    union |= bitmap[word];
+                }
+            }
+            ones += Long.bitCount(union);
+        }
+        int zeros = BITS - ones;
+        if (zeros == 0) {
+            zeros = 1; // saturated; the sketch cannot tell any more
+        }
+        return (int) Math.round(BITS * Math.log((double) BITS / zeros));
+    }
+
+    private void advance(long bucket) {
+        if (latestBucket == NONE) {
+            latestBucket = bucket;
+            return;
+        }
+        if (bucket <= latestBucket) {
+            return;
+        }
+        long steps = Math.min(bucket - latestBucket, buckets.length);
+        for (long i = 1; i <= steps; i++) {
+            buckets[(int) Math.floorMod(latestBucket + i, (long) buckets.length)] = null;
+        }
+        latestBucket = bucket;
+    }
+}
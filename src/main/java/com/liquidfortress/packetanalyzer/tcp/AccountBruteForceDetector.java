@@ -22,16 +22,17 @@ package com.liquidfortress.packetanalyzer.tcp;
 
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.AttackTable;
+import com.liquidfortress.packetanalyzer.pcap_file.FlowKey;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.Packet;
 
-import java.sql.Timestamp;
-import java.time.Instant;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
 import java.util.LinkedList;
 
 /**
@@ -45,40 +46,45 @@ public class AccountBruteForceDetector {
     private static final int DETECTION_SCORE = 4;
     private static Logger log = Main.log;
     // watchList tracks which IP address pairs we are watching and the PacketInfos since we started watching
-    private HashMap<IpAddressPair, LinkedHashSet<PacketInfo>> watchList = new HashMap<>();
+    private HashMap<FlowKey, LinkedHashSet<PacketInfo>> watchList = new HashMap<>();
     // packetData stores the captured packet data from telnet; we will assemble this data into usernames and passwords
     // since there could be multiple ports active simultaneously, we store data per port
-    private HashMap<IpAddressPair, HashMap<Integer, String>> packetData = new HashMap<>();
+    private HashMap<FlowKey, HashMap<Integer, String>> packetData = new HashMap<>();
     // telnetLoginsInProgress stores the captured username data on a per source port basis
     // after the telnet daemon response is captured, the username data is either cleared or
     // matched with the password and transferred to failedAttempts
-    private HashMap<IpAddressPair, HashMap<Integer, TelnetLoginAttempt>> telnetLoginsInProgress = new HashMap<>();
+    private HashMap<FlowKey, HashMap<Integer, TelnetLoginAttempt>> telnetLoginsInProgress = new HashMap<>();
     // failedAttempts stores the data from past failed telnet login attempts and counts how many failed attempts have occurred
     // if more than DETECTION_SCORE attempts have occurred, the alert is triggered
-    private HashMap<IpAddressPair, LinkedList<TelnetLoginAttempt>> failedAttempts = new HashMap<>();
-    private boolean attackInProgress = false;
-    private AttackSummary attackSummary = null;
+    private HashMap<FlowKey, LinkedList<TelnetLoginAttempt>> failedAttempts = new HashMap<>();
+    // one open attack per host pair
+    private final AttackTable<FlowKey, Void> attacks;
+    private final FlowKey probe = new FlowKey(); // reused for lookups; copied when a new host pair is stored
 
-    private boolean underAttack(IpAddressPair ipAddressPair) {
-        LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(ipAddressPair);
+    public AccountBruteForceDetector(int maxIncidents) {
+        this.attacks = new AttackTable<>(maxIncidents);
+    }
+
+    private boolean underAttack(FlowKey hostPair) {
+        LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(hostPair);
         return ((attempts != null) && (attempts.size() >= DETECTION_SCORE));
     }
 
-    private void addToWatchList(IpAddressPair ipAddressPair, PacketInfo packetInfo) {
-        LinkedHashSet<PacketInfo> packetInfos = watchList.get(ipAddressPair);
+    private void addToWatchList(FlowKey hostPair, PacketInfo packetInfo) {
+        LinkedHashSet<PacketInfo> packetInfos = watchList.get(hostPair);
         if (packetInfos == null) {
             packetInfos = new LinkedHashSet<>();
+            watchList.put(hostPair.copy(), packetInfos);
         }
-        packetInfos.add(packetInfo);
-        watchList.put(ipAddressPair, packetInfos);
+        packetInfos.add(packetInfo.copy());
     }
 
-    private void removeFromWatchList(IpAddressPair ipAddressPair) {
-        watchList.remove(ipAddressPair);
+    private void removeFromWatchList(FlowKey hostPair) {
+        watchList.remove(hostPair);
     }
 
-    private boolean onWatchlist(IpAddressPair ipAddressPair) {
-        return watchList.containsKey(ipAddressPair);
+    private boolean onWatchlist(FlowKey hostPair) {
+        return watchList.containsKey(hostPair);
     }
 
     private String processBackspace(String input) {
@@ -99,10 +105,11 @@ public class AccountBruteForceDetector {
         return processBackspace(str).replaceAll("\\p{Cntrl}", "");
     }
 
-    private void capturePacketData(IpAddressPair ipAddressPair, int senderPort, String payloadStr) {
-        HashMap<Integer, String> portsData = packetData.get(ipAddressPair);
+    private void capturePacketData(FlowKey hostPair, int senderPort, String payloadStr) {
+        HashMap<Integer, String> portsData = packetData.get(hostPair);
         if (portsData == null) {
             portsData = new HashMap<>();
+            packetData.put(hostPair.copy(), portsData);
         }
         // clean up payloadStr
 
@@ -113,11 +120,10 @@ public class AccountBruteForceDetector {
             data += payloadStr;
         }
         portsData.put(senderPort, data);
-        packetData.put(ipAddressPair, portsData);
     }
 
-    private String getCapturedPacketData(IpAddressPair ipAddressPair, int senderPort) {
-        HashMap<Integer, String> portsData = packetData.get(ipAddressPair);
+    private String getCapturedPacketData(FlowKey hostPair, int senderPort) {
+        HashMap<Integer, String> portsData = packetData.get(hostPair);
         if (portsData != null) {
             return cleanStr(portsData.get(senderPort));
         } else {
@@ -125,18 +131,19 @@ public class AccountBruteForceDetector {
         }
     }
 
-    private void clearCapturedPacketData(IpAddressPair ipAddressPair, int senderPort) {
-        HashMap<Integer, String> portsData = packetData.get(ipAddressPair);
+    private void clearCapturedPacketData(FlowKey hostPair, int senderPort) {
+        HashMap<Integer, String> portsData = packetData.get(hostPair);
         if (portsData != null) {
             portsData.remove(senderPort);
         }
     }
 
-    private void storeUsername(IpAddressPair ipAddressPair, int senderPort, String username) {
+    private void storeUsername(FlowKey hostPair, int senderPort, String username) {
         // store the captured username in telnetLoginsInProgress
-        HashMap<Integer, TelnetLoginAttempt> portsUsernames = telnetLoginsInProgress.get(ipAddressPair);
+        HashMap<Integer, TelnetLoginAttempt> portsUsernames = telnetLoginsInProgress.get(hostPair);
         if (portsUsernames == null) {
             portsUsernames = new HashMap<>();
+            telnetLoginsInProgress.put(hostPair.copy(), portsUsernames);
         }
         TelnetLoginAttempt loginAttempt = portsUsernames.get(senderPort);
         if (loginAttempt == null) {
@@ -144,174 +151,181 @@ public class AccountBruteForceDetector {
         }
         loginAttempt.username = username;
         portsUsernames.put(senderPort, loginAttempt);
-        telnetLoginsInProgress.put(ipAddressPair, portsUsernames);
     }
 
-    private void storePassword(IpAddressPair ipAddressPair, int senderPort, String password, String timestamp) {
+    private void storePassword(FlowKey hostPair, int senderPort, String password, long timestampNanos) {
         // store the captured password in telnetLoginsInProgress
-        HashMap<Integer, TelnetLoginAttempt> portsUsernames = telnetLoginsInProgress.get(ipAddressPair);
+        HashMap<Integer, TelnetLoginAttempt> portsUsernames = telnetLoginsInProgress.get(hostPair);
         if (portsUsernames == null) {
             portsUsernames = new HashMap<>();
+            telnetLoginsInProgress.put(hostPair.copy(), portsUsernames);
         }
         TelnetLoginAttempt loginAttempt = portsUsernames.get(senderPort);
         if (loginAttempt == null) {
             loginAttempt = new TelnetLoginAttempt();
         }
         loginAttempt.password = password;
-        loginAttempt.timestamp = timestamp;
+        loginAttempt.timestampNanos = timestampNanos;
         portsUsernames.put(senderPort, loginAttempt);
-        telnetLoginsInProgress.put(ipAddressPair, portsUsernames);
     }
 
-    private void moveTelnetLoginAttemptToFailedAttempts(IpAddressPair ipAddressPair, int senderPort) {
-        HashMap<Integer, TelnetLoginAttempt> portsUsernames = telnetLoginsInProgress.get(ipAddressPair);
+    private void moveTelnetLoginAttemptToFailedAttempts(FlowKey hostPair, int senderPort) {
+        HashMap<Integer, TelnetLoginAttempt> portsUsernames = telnetLoginsInProgress.get(hostPair);
         TelnetLoginAttempt loginAttempt = portsUsernames.get(senderPort);
 
-        LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(ipAddressPair);
+        LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(hostPair);
         if (attempts == null) {
             attempts = new LinkedList<>();
+            failedAttempts.put(hostPair.copy(), attempts);
         }
         attempts.add(loginAttempt);
-        failedAttempts.put(ipAddressPair, attempts);
         portsUsernames.remove(senderPort);
     }
 
-    private void removeTelnetLoginAttempt(IpAddressPair ipAddressPair, int senderPort) {
-        HashMap<Integer, TelnetLoginAttempt> portsUsernames = telnetLoginsInProgress.get(ipAddressPair);
+    private void removeTelnetLoginAttempt(FlowKey hostPair, int senderPort) {
+        HashMap<Integer, TelnetLoginAttempt> portsUsernames = telnetLoginsInProgress.get(hostPair);
         if (portsUsernames != null) {
             portsUsernames.remove(senderPort);
         }
     }
 
 
-    public void detect(Packet packet, PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+    // close the attacks that are still open at the end of the file
+    public void closeAll(long timestampNanos, PcapFileSummary pcapFileSummary) {
+        attacks.closeAll(PacketInfoUtils.toTimestamp(timestampNanos).toString(), pcapFileSummary);
+    }
+
+    public void detect(ByteBuffer packetData, PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
         if (packetInfo == null) {
             throw new IllegalArgumentException("packetInfo cannot be null!");
         }
         // extract common data
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        int sourcePort = Integer.parseInt(packetInfo.get(PacketInfo.SOURCE_PORT));
-        int destinationPort = Integer.parseInt(packetInfo.get(PacketInfo.DESTINATION_PORT));
-        Instant currentTime = Timestamp.valueOf(packetInfo.get(PacketInfo.TIMESTAMP)).toInstant();
-        Instant lookbackStart = currentTime.minusMillis(LOOKBACK_WINDOW);
-        IpAddressPair ipAddressPair = new IpAddressPair(sourceAddress, destinationAddress);
-        String str = null;
-        if (packet != null && packet.getRawData() != null) {
-            str = new String(packet.getRawData());
-        } else {
+        int sourcePort = packetInfo.sourcePort;
+        int destinationPort = packetInfo.destinationPort;
+        long currentTime = packetInfo.timestampNanos;
+        long lookbackStart = currentTime - TimeUnit.MILLISECONDS.toNanos(LOOKBACK_WINDOW);
+        FlowKey hostPair = probe.setHostPair(packetInfo);
+        if ((packetData == null) || (packetInfo.payloadLength == 0)) {
             return; // if there is no packet data, stop processing
         }
 
-        if (onWatchlist(ipAddressPair)) {
+        if (onWatchlist(hostPair)) {
             // prune failedAttempts and watchList packetInfos that are beyond the lookback window
             //// first prune watchList packetInfos
-            LinkedHashSet<PacketInfo> wlPacketInfos = watchList.get(ipAddressPair);
+            LinkedHashSet<PacketInfo> wlPacketInfos = watchList.get(hostPair);
             if (wlPacketInfos != null && !wlPacketInfos.isEmpty()) {
                 LinkedHashSet<PacketInfo> keep = new LinkedHashSet<>();
                 for (PacketInfo pi : wlPacketInfos) {
-                    Instant packetTime = Timestamp.valueOf(pi.get(PacketInfo.TIMESTAMP)).toInstant();
-                    if (packetTime.isAfter(lookbackStart)) {
+                    if (pi.timestampNanos > lookbackStart) {
                         keep.add(pi);
                     }
                 }
                 if (keep.isEmpty()) {
-                    removeFromWatchList(ipAddressPair);
+                    removeFromWatchList(hostPair);
                 } else {
-                    watchList.put(ipAddressPair, keep);
+                    watchList.replace(hostPair, keep);
                 }
             }
             //// next prune failedAttempts
-            LinkedList<TelnetLoginAttempt> ipFailedAttempts = failedAttempts.get(ipAddressPair);
+            LinkedList<TelnetLoginAttempt> ipFailedAttempts = failedAttempts.get(hostPair);
             if (ipFailedAttempts != null && !ipFailedAttempts.isEmpty()) {
                 LinkedList<TelnetLoginAttempt> keepAttempts = new LinkedList<>();
                 for (TelnetLoginAttempt attempt : ipFailedAttempts) {
-                    Instant attemptTime = Timestamp.valueOf(attempt.timestamp).toInstant();
-                    if (attemptTime.isAfter(lookbackStart)) {
+                    if (attempt.timestampNanos > lookbackStart) {
                         keepAttempts.add(attempt);
                     }
                 }
                 if (keepAttempts.isEmpty()) {
-                    failedAttempts.remove(ipAddressPair);
+                    failedAttempts.remove(hostPair);
                 } else {
-                    failedAttempts.put(ipAddressPair, keepAttempts);
+                    failedAttempts.replace(hostPair, keepAttempts);
                 }
             }
             // trigger if beyond threshold
-            if (underAttack(ipAddressPair) && !attackInProgress) {
+            AttackSummary attackSummary = attacks.get(hostPair);
+            if (underAttack(hostPair) && (attackSummary == null)) {
                 log.trace("*** BRUTE FORCE / DICTIONARY ATTACK detected!");
-                attackInProgress = true;
-                attackSummary = new AttackSummary();
-                attackSummary.setAttackName("BRUTE FORCE / DICTIONARY ATTACK");
-                attackSummary.setStartTimestamp(PacketInfoUtils.getEarliest(watchList.get(ipAddressPair)).get(PacketInfo.TIMESTAMP));
-                LinkedHashSet<PacketInfo> packetInfos = watchList.get(ipAddressPair);
-                for (PacketInfo info : packetInfos) {
-                    attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                    attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
-                }
-                LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(ipAddressPair);
-                for (TelnetLoginAttempt attempt : attempts) {
-                    attackSummary.addUsernameAndPassword(attempt.username + ":" + attempt.password);
+                attackSummary = attacks.open(hostPair.copy(), null, "BRUTE FORCE / DICTIONARY ATTACK",
+                        PacketInfoUtils.getEarliest(watchList.get(hostPair)).getTimestamp());
+                if (attackSummary != null) {
+                    LinkedHashSet<PacketInfo> packetInfos = watchList.get(hostPair);
+                    for (PacketInfo info : packetInfos) {
+                        attackSummary.addSourceIpAndPort(info.getSourceAddress() + ":" + info.sourcePort);
+                        attackSummary.addTargetIpAndPort(info.getDestinationAddress() + ":" + info.destinationPort);
+                    }
+                    LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(hostPair);
+                    for (TelnetLoginAttempt attempt : attempts) {
+                        attackSummary.addUsernameAndPassword(attempt.username + ":" + attempt.password);
+                    }
                 }
-            } else if (underAttack(ipAddressPair) && attackInProgress) {
-                LinkedHashSet<PacketInfo> packetInfos = watchList.get(ipAddressPair);
+            } else if (underAttack(hostPair)) {
+                LinkedHashSet<PacketInfo> packetInfos = watchList.get(hostPair);
                 for (PacketInfo info : packetInfos) {
-                    attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                    attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
+                    attackSummary.addSourceIpAndPort(info.getSourceAddress() + ":" + info.sourcePort);
+                    attackSummary.addTargetIpAndPort(info.getDestinationAddress() + ":" + info.destinationPort);
                 }
-                attackSummary.setEndTimestamp(PacketInfoUtils.getLatest(watchList.get(ipAddressPair)).get(PacketInfo.TIMESTAMP));
-                LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(ipAddressPair);
+                attackSummary.setEndTimestamp(PacketInfoUtils.getLatest(watchList.get(hostPair)).getTimestamp());
+                LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(hostPair);
                 for (TelnetLoginAttempt attempt : attempts) {
                     attackSummary.addUsernameAndPassword(attempt.username + ":" + attempt.password);
                 }
-            } else if (!underAttack(ipAddressPair) && attackInProgress) {
-                attackInProgress = false;
-                if (watchList.get(ipAddressPair) != null) {
-                    attackSummary.setEndTimestamp(PacketInfoUtils.getLatest(watchList.get(ipAddressPair)).get(PacketInfo.TIMESTAMP));
+            } else if (attackSummary != null) { // attack ended, close out attack details
+                String endTimestamp = attackSummary.getEndTimestamp();
+                if (watchList.get(hostPair) != null) {
+                    endTimestamp = PacketInfoUtils.getLatest(watchList.get(hostPair)).getTimestamp();
                 }
-                pcapFileSummary.attackSummaries.add(attackSummary);
-                this.attackSummary = null;
+                attacks.close(hostPair, endTimestamp, pcapFileSummary);
+            } else {
+                attacks.forget(hostPair);
             }
         }
         // filter out packets that are not to / from telnet port 23
+        if ((sourcePort != TELNET_PORT) && (destinationPort != TELNET_PORT)) {
+            return;
+        }
+        byte[] payload = new byte[packetInfo.payloadLength];
+        ByteBuffer payloadData = packetData.duplicate();
+        payloadData.position(packetInfo.payloadOffset);
+        payloadData.get(payload);
+        String str = new String(payload);
         if (sourcePort == TELNET_PORT) { // the telnet server is sending
             if (str.contains("login:")) {
                 // Add this IP pair to the watch list, log the data to monitor the login for failure
-                addToWatchList(ipAddressPair, packetInfo);
+                addToWatchList(hostPair, packetInfo);
 
-            } else if (onWatchlist(ipAddressPair) && str.contains("Password:")) {
+            } else if (onWatchlist(hostPair) && str.contains("Password:")) {
                 // capture the username and start capturing the password
-                String username = getCapturedPacketData(ipAddressPair, destinationPort);
+                String username = getCapturedPacketData(hostPair, destinationPort);
                 log.trace("Captured username: " + username);
-                storeUsername(ipAddressPair, destinationPort, username);
+                storeUsername(hostPair, destinationPort, username);
                 // clear the captured data
-                clearCapturedPacketData(ipAddressPair, destinationPort);
+                clearCapturedPacketData(hostPair, destinationPort);
 
-            } else if (onWatchlist(ipAddressPair) && str.contains("Login incorrect")) {
+            } else if (onWatchlist(hostPair) && str.contains("Login incorrect")) {
                 // the login was a failure, capture username and password
-                String password = getCapturedPacketData(ipAddressPair, destinationPort);
+                String password = getCapturedPacketData(hostPair, destinationPort);
                 log.trace("Captured password: " + password);
                 // get the captured username from telnetLoginsInProgress
-                storePassword(ipAddressPair, destinationPort, password, packetInfo.get(PacketInfo.TIMESTAMP));
-                // add the failure record for the IpAddressPair in failedAttempts
-                moveTelnetLoginAttemptToFailedAttempts(ipAddressPair, destinationPort);
+                storePassword(hostPair, destinationPort, password, packetInfo.timestampNanos);
+                // add the failure record for the host pair in failedAttempts
+                moveTelnetLoginAttemptToFailedAttempts(hostPair, destinationPort);
                 // clear the packetData
-                clearCapturedPacketData(ipAddressPair, destinationPort);
+                clearCapturedPacketData(hostPair, destinationPort);
 
-            } else if (onWatchlist(ipAddressPair) && str.contains("Connected to")) {
+            } else if (onWatchlist(hostPair) && str.contains("Connected to")) {
                 // the login was a success, clear the captured data and records
                 // clear the watchList, packetData, and telnetLoginsInProgress records
-                clearCapturedPacketData(ipAddressPair, destinationPort);
-                removeTelnetLoginAttempt(ipAddressPair, destinationPort);
-                removeFromWatchList(ipAddressPair);
+                clearCapturedPacketData(hostPair, destinationPort);
+                removeTelnetLoginAttempt(hostPair, destinationPort);
+                removeFromWatchList(hostPair);
             }
 
-        } else if (onWatchlist(ipAddressPair) && destinationPort == TELNET_PORT) { // the possible attacker is sending
+        } else if (onWatchlist(hostPair) && destinationPort == TELNET_PORT) { // the possible attacker is sending
             // if the IP Address pair in on the watchList, capture the data
             // capture the PacketInfo
-            addToWatchList(ipAddressPair, packetInfo);
+            addToWatchList(hostPair, packetInfo);
             // capture the data
-            capturePacketData(ipAddressPair, sourcePort, str);
+            capturePacketData(hostPair, sourcePort, str);
 
         }
 
@@ -20,46 +20,268 @@
 
 package com.liquidfortress.packetanalyzer.tcp;
 
+import com.liquidfortress.packetanalyzer.pcap_file.FlowKey;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * ActiveTcpConnections
  * <p/>
  * Tracks the state of multiple TCP connections
- * until each connection is closed
+ * until each connection is closed or times out.  Connections live in an
+ * open-addressing table keyed by FlowKey, with linear probing and
+ * backward-shift deletion, so removals leave no tombstones.  Lookups by
+ * packet reuse one probe key and do not allocate.  The table only holds
+ * hashes, timestamps and FlowStore refs; the keys and connection state are
+ * kept by the FlowStore, on or off the heap.
+ * <p/>
+ * Time is taken from the packet timestamps.  A connection expires when it
+ * has been idle for longer than the idle timeout, or has been open for
+ * longer than the absolute timeout; expired connections are moved to the
+ * expired list.  When the table holds its capacity of connections, the
+ * least recently seen of a small sample is expired to make room.
  */
 public class ActiveTcpConnections {
+    public static final int DEFAULT_CAPACITY = 1 << 20; // connections
+    public static final long DEFAULT_IDLE_TIMEOUT = 300L * 1000000000L; // nanoseconds
+    public static final long DEFAULT_ABSOLUTE_TIMEOUT = 7200L * 1000000000L; // nanoseconds
+    private static final int INITIAL_SLOTS = 64; // always a power of two
+    private static final int MAX_LOAD_PERCENT = 60;
+    private static final long SWEEP_INTERVAL = 1000000000L; // nanoseconds of capture time between timeout sweeps
+    private static final int EVICTION_SAMPLE = 16; // connections compared when the table is full
+
+    private final int capacity;
+    private final long idleTimeout;
+    private final long absoluteTimeout;
+    private final FlowStore flowStore;
+    private final ClosedTcpConnections expiredConnections;
+    private final FlowKey probe = new FlowKey();
+
+    private int[] refs = new int[INITIAL_SLOTS]; // FlowStore refs; 0 is an empty slot
+    private int[] hashes = new int[INITIAL_SLOTS];
+    private long[] firstSeen = new long[INITIAL_SLOTS]; // packet timestamps, in nanoseconds
+    private long[] lastSeen = new long[INITIAL_SLOTS];
+    private int size = 0;
+    private long nextSweep = Long.MIN_VALUE;
+    private int evictionHand = 0; // where the next eviction sample starts
+
+    public ActiveTcpConnections() {
+        this(DEFAULT_CAPACITY, DEFAULT_IDLE_TIMEOUT, DEFAULT_ABSOLUTE_TIMEOUT, new ClosedTcpConnections());
+    }
+
+    public ActiveTcpConnections(int capacity, long idleTimeout, long absoluteTimeout, ClosedTcpConnections expiredConnections) {
+        this(capacity, idleTimeout, absoluteTimeout, new HeapFlowStore(), expiredConnections);
+    }
 
-    private HashMap<IpAddressPair, TcpConnectionTracker> connections = new HashMap<>();
+    public ActiveTcpConnections(int capacity, long idleTimeout, long absoluteTimeout, FlowStore flowStore,
+                                ClosedTcpConnections expiredConnections) {
+        if ((capacity <= 0) || (idleTimeout <= 0) || (absoluteTimeout <= 0)) {
+            throw new IllegalArgumentException("ActiveTcpConnections capacity and timeouts must be positive!");
+        }
+        this.capacity = capacity;
+        this.idleTimeout = idleTimeout;
+        this.absoluteTimeout = absoluteTimeout;
+        this.flowStore = flowStore;
+        this.expiredConnections = expiredConnections;
+    }
 
     public int size() {
-        return connections.size();
+        return size;
+    }
+
+    // the connection the packet belongs to, in either direction; the packet counts as activity on it
+    public TcpConnectionTracker get(PacketInfo packetInfo) {
+        int slot = find(probe.setFlow(packetInfo));
+        if (slot < 0) {
+            return null;
+        }
+        lastSeen[slot] = Math.max(lastSeen[slot], packetInfo.timestampNanos);
+        return flowStore.getTracker(refs[slot]);
+    }
+
+    // start tracking the packet's connection, with the packet's source as the client, and return its tracker
+    public TcpConnectionTracker open(PacketInfo packetInfo) {
+        int slot = find(probe.setFlow(packetInfo));
+        if (slot >= 0) {
+            return flowStore.getTracker(refs[slot]);
+        }
+        return flowStore.getTracker(add(packetInfo));
     }
 
-    public TcpConnectionTracker get(Object o) {
-        return connections.get(o);
+    // start tracking the packet's connection with the given state, making room if the table is full
+    public void put(PacketInfo packetInfo, TcpConnectionTracker tcpConnectionTracker) {
+        int slot = find(probe.setFlow(packetInfo));
+        flowStore.set((slot >= 0) ? refs[slot] : add(packetInfo), tcpConnectionTracker);
     }
 
-    public TcpConnectionTracker put(IpAddressPair ipAddressPair, TcpConnectionTracker tcpConnectionTracker) {
-        return connections.put(ipAddressPair, tcpConnectionTracker);
+    // stop tracking the packet's connection; the tracker returned stays valid
+    public TcpConnectionTracker remove(PacketInfo packetInfo) {
+        int slot = find(probe.setFlow(packetInfo));
+        if (slot < 0) {
+            return null;
+        }
+        TcpConnectionTracker tcpConnectionTracker = flowStore.detach(refs[slot]);
+        delete(slot);
+        return tcpConnectionTracker;
     }
 
-    public Set<IpAddressPair> keySet() {
-        return connections.keySet();
+    // expire timed out connections; sweeps at most once per SWEEP_INTERVAL of capture time
+    public void expire(PacketInfo packetInfo) {
+        if (packetInfo.timestampNanos >= nextSweep) {
+            nextSweep = packetInfo.timestampNanos + SWEEP_INTERVAL;
+            sweep(packetInfo);
+        }
     }
 
     public Collection<TcpConnectionTracker> values() {
-        return connections.values();
+        ArrayList<TcpConnectionTracker> values = new ArrayList<>(size);
+        forEach(values::add);
+        return values;
+    }
+
+    public void forEach(Consumer<? super TcpConnectionTracker> consumer) {
+        for (int ref : refs) {
+            if (ref != 0) {
+                consumer.accept(flowStore.getTracker(ref));
+            }
+        }
+    }
+
+    // connections already tracked here win over the same flow in other; merging does not evict
+    public void merge(ActiveTcpConnections other) {
+        for (int slot = 0; slot < other.refs.length; slot++) {
+            int ref = other.refs[slot];
+            if ((ref != 0) && (find(other.flowStore.getKey(ref)) < 0)) {
+                insert(flowStore.adopt(other.flowStore, ref), other.hashes[slot], other.firstSeen[slot], other.lastSeen[slot]);
+            }
+        }
+    }
+
+    // add the probe key's connection, making room if the table is full
+    private int add(PacketInfo packetInfo) {
+        if (size >= capacity) {
+            evict(packetInfo); // timed out connections are already gone, see expire()
+        }
+        int ref = flowStore.add(probe, packetInfo);
+        insert(ref, probe.hashCode(), packetInfo.timestampNanos, packetInfo.timestampNanos);
+        return ref;
+    }
+
+    private int find(FlowKey flowKey) {
+        int mask = refs.length - 1;
+        int hash = flowKey.hashCode();
+        int slot = hash & mask;
+        while (refs[slot] != 0) {
+            if ((hashes[slot] == hash) && flowStore.matches(refs[slot], flowKey)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(int ref, int hash, long first, long last) {
+        int mask = refs.length - 1;
+        int slot = hash & mask;
+        while (refs[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        refs[slot] = ref;
+        hashes[slot] = hash;
+        firstSeen[slot] = first;
+        lastSeen[slot] = last;
+        size++;
+        if (size * 100 > refs.length * MAX_LOAD_PERCENT) {
+            grow();
+        }
+    }
+
+    // free the connection, then backward-shift deletion: pull later entries of the probe run into the hole
+    private void delete(int slot) {
+        flowStore.free(refs[slot]);
+        int mask = refs.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (refs[next] != 0) {
+            int home = hashes[next] & mask;
+            // the entry can move back into the hole unless its home lies after the hole, up to its own slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                refs[hole] = refs[next];
+                hashes[hole] = hashes[next];
+                firstSeen[hole] = firstSeen[next];
+                lastSeen[hole] = lastSeen[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        refs[hole] = 0;
+        size--;
+    }
+
+    private void grow() {
+        int[] oldRefs = refs;
+        int[] oldHashes = hashes;
+        long[] oldFirstSeen = firstSeen;
+        long[] oldLastSeen = lastSeen;
+        refs = new int[oldRefs.length * 2];
+        hashes = new int[oldRefs.length * 2];
+        firstSeen = new long[oldRefs.length * 2];
+        lastSeen = new long[oldRefs.length * 2];
+        size = 0;
+        for (int slot = 0; slot < oldRefs.length; slot++) {
+            if (oldRefs[slot] != 0) {
+                insert(oldRefs[slot], oldHashes[slot], oldFirstSeen[slot], oldLastSeen[slot]);
+            }
+        }
+    }
+
+    private boolean isTimedOut(int slot, long now) {
+        return ((now - lastSeen[slot]) > idleTimeout) || ((now - firstSeen[slot]) > absoluteTimeout);
+    }
+
+    private void sweep(PacketInfo packetInfo) {
+        int mask = refs.length - 1;
+        // start right after an empty slot, so no probe run wraps past the start and
+        // entries shifted back by a deletion are always at or after the current slot
+        int start = 0;
+        while (refs[start] != 0) {
+            start++;
+        }
+        for (int i = 1; i <= refs.length; i++) {
+            int slot = (start + i) & mask;
+            while ((refs[slot] != 0) && isTimedOut(slot, packetInfo.timestampNanos)) {
+                expireSlot(slot, packetInfo);
+            }
+        }
     }
 
-    public Set<Map.Entry<IpAddressPair, TcpConnectionTracker>> entrySet() {
-        return connections.entrySet();
+    // expire the least recently seen of the next EVICTION_SAMPLE connections
+    private void evict(PacketInfo packetInfo) {
+        int mask = refs.length - 1;
+        int oldest = -1;
+        int sampled = 0;
+        int slot = evictionHand & mask;
+        while (sampled < EVICTION_SAMPLE && sampled < size) {
+            if (refs[slot] != 0) {
+                if ((oldest < 0) || (lastSeen[slot] < lastSeen[oldest])) {
+                    oldest = slot;
+                }
+                sampled++;
+            }
+            slot = (slot + 1) & mask;
+        }
+        evictionHand = slot;
+        if (oldest >= 0) {
+            expireSlot(oldest, packetInfo);
+        }
     }
 
-    public TcpConnectionTracker remove(Object o) {
-        return connections.remove(o);
+    private void expireSlot(int slot, PacketInfo packetInfo) {
+        flowStore.getTracker(refs[slot]).setClosingPacketNumber(packetInfo.packetNumber);
+        expiredConnections.add(flowStore.detach(refs[slot]));
+        delete(slot);
     }
 }
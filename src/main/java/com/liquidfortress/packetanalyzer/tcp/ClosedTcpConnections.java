@@ -20,42 +20,261 @@
 
 package com.liquidfortress.packetanalyzer.tcp;
 
+import com.liquidfortress.packetanalyzer.main.Main;
+import org.apache.logging.log4j.core.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * ClosedTcpConnections
  * <p/>
- * Stores closed TCP Connection data
+ * Stores closed TCP Connection data.  By default the connections are kept
+ * in memory.  A spooled instance instead streams each connection through a
+ * TcpConnectionWriter to temporary files as it is added, so memory stays
+ * bounded however many connections a capture has, and reads them back
+ * whenever it is iterated.
+ * <p/>
+ * The spool is a list of runs, each a file of connections in the order they
+ * closed.  Merging moves the other instance's runs over without copying,
+ * and sorting merges the runs into one.
  */
 public class ClosedTcpConnections {
+    private static final int READ_BUFFER_SIZE = 64 * 1024; // bytes
+    private static Logger log = Main.log;
+
+    // one spool file and the number of connections in it
+    private static class Run {
+        final File file;
+        int count = 0;
+
+        Run(File file) {
+            this.file = file;
+        }
+    }
 
     private final LinkedList<TcpConnectionTracker> closedConnections = new LinkedList<>();
+    private final boolean spooled;
+    private final LinkedList<Run> runs = new LinkedList<>();
+    private TcpConnectionWriter writer = null; // writing the last run
+    private long lastClosingPacketNumber = Long.MIN_VALUE;
+    private int size = 0;
+
+    public ClosedTcpConnections() {
+        this(false);
+    }
+
+    public ClosedTcpConnections(boolean spooled) {
+        this.spooled = spooled;
+    }
+
+    public boolean isSpooled() {
+        return spooled;
+    }
 
     public boolean add(TcpConnectionTracker tcpConnectionTracker) {
-        return closedConnections.add(tcpConnectionTracker);
+        if (!spooled) {
+            return closedConnections.add(tcpConnectionTracker);
+        }
+        long closingPacketNumber = tcpConnectionTracker.getClosingPacketNumber();
+        try {
+            if ((writer == null) || (closingPacketNumber < lastClosingPacketNumber)) {
+                finishRun(); // keep every run in closing order
+                Run run = new Run(File.createTempFile("lfpa-connections", ".spool"));
+                run.file.deleteOnExit();
+                writer = new TcpConnectionWriter(run.file);
+                runs.add(run);
+            }
+            writer.write(tcpConnectionTracker);
+        } catch (IOException e) {
+            log.error("Exception occurred while spooling a closed TCP connection.  Exception was: " + e);
+            return false;
+        }
+        lastClosingPacketNumber = closingPacketNumber;
+        runs.getLast().count++;
+        size++;
+        return true;
+    }
+
+    // a spooled instance takes over the other instance's connections, leaving it empty
+    public void merge(ClosedTcpConnections other) {
+        if (spooled && other.spooled) {
+            finishRun();
+            other.finishRun();
+            runs.addAll(other.runs);
+            size += other.size;
+            other.runs.clear();
+            other.size = 0;
+        } else if (!spooled && !other.spooled) {
+            closedConnections.addAll(other.closedConnections);
+        } else {
+            other.forEach(this::add);
+        }
+    }
+
+    // put connections back in the order they closed in the capture, e.g. after merging flow shards
+    public void sortByClosingPacketNumber() {
+        if (!spooled) {
+            closedConnections.sort(Comparator.comparingLong(TcpConnectionTracker::getClosingPacketNumber));
+            return;
+        }
+        finishRun();
+        if (runs.size() <= 1) {
+            return;
+        }
+        LinkedList<Run> sortedRuns = new LinkedList<>(runs);
+        runs.clear();
+        size = 0;
+        lastClosingPacketNumber = Long.MIN_VALUE;
+        // the runs are each in closing order; ties stay in run order
+        PriorityQueue<RunIterator> heads = new PriorityQueue<>(Comparator
+                .comparingLong((RunIterator runIterator) -> runIterator.peek().getClosingPacketNumber())
+                .thenComparingInt(runIterator -> runIterator.index));
+        int index = 0;
+        for (Run run : sortedRuns) {
+            RunIterator runIterator = new RunIterator(run, index++);
+            if (runIterator.hasNext()) {
+                heads.add(runIterator);
+            }
+        }
+        while (!heads.isEmpty()) {
+            RunIterator head = heads.poll();
+            add(head.next());
+            if (head.hasNext()) {
+                heads.add(head);
+            }
+        }
+        finishRun();
+        for (Run run : sortedRuns) {
+            run.file.delete();
+        }
     }
 
     public int size() {
-        return closedConnections.size();
+        return spooled ? size : closedConnections.size();
     }
 
     public Iterator<TcpConnectionTracker> iterator() {
-        return closedConnections.iterator();
-    }
+        if (!spooled) {
+            return closedConnections.iterator();
+        }
+        finishRun();
+        Iterator<Run> runIterators = new LinkedList<>(runs).iterator();
+        return new Iterator<TcpConnectionTracker>() {
+            private RunIterator current = null;
 
-    public ListIterator<TcpConnectionTracker> listIterator() {
-        return closedConnections.listIterator();
+            @Override
+            public boolean hasNext() {
+                while ((current == null) || !current.hasNext()) {
+                    if (!runIterators.hasNext()) {
+                        return false;
+                    }
+                    current = new RunIterator(runIterators.next(), 0);
+                }
+                return true;
+            }
+
+            @Override
+            public TcpConnectionTracker next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
     }
 
     public Stream<TcpConnectionTracker> stream() {
-        return closedConnections.stream();
+        if (!spooled) {
+            return closedConnections.stream();
+        }
+        return StreamSupport.stream(Spliterators.spliterator(iterator(), size, Spliterator.ORDERED), false);
     }
 
     public void forEach(Consumer<? super TcpConnectionTracker> consumer) {
-        closedConnections.forEach(consumer);
+        if (!spooled) {
+            closedConnections.forEach(consumer);
+            return;
+        }
+        iterator().forEachRemaining(consumer);
+    }
+
+    // close the run being written, so it can be read
+    private void finishRun() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.error("Exception occurred while spooling closed TCP connections.  Exception was: " + e);
+        }
+        writer = null;
+    }
+
+    // reads the connections of one run back, closing the file after the last one
+    private static class RunIterator implements Iterator<TcpConnectionTracker> {
+        final int index;
+        private final Run run;
+        private DataInputStream in = null;
+        private int read = 0;
+        private TcpConnectionTracker next = null;
+
+        RunIterator(Run run, int index) {
+            this.run = run;
+            this.index = index;
+        }
+
+        TcpConnectionTracker peek() {
+            return hasNext() ? next : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (read >= run.count) {
+                return false;
+            }
+            try {
+                if (in == null) {
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file), READ_BUFFER_SIZE));
+                }
+                next = TcpConnectionTracker.readFrom(in);
+                read++;
+                if (read == run.count) {
+                    in.close();
+                }
+            } catch (IOException e) {
+                log.error("Exception occurred while reading spooled TCP connections.  Exception was: " + e);
+                read = run.count;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public TcpConnectionTracker next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TcpConnectionTracker tcpConnectionTracker = next;
+            next = null;
+            return tcpConnectionTracker;
+        }
     }
 }
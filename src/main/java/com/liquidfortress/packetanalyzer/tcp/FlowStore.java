@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.FlowKey;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+
+import java.util.Arrays;
+
+/**
+ * FlowStore
+ * <p/>
+ * Holds the key and state of each connection in a flow table.  A
+ * connection is addressed by a positive int ref, which stays the same until
+ * the connection is freed; freed refs are reused.  The flow table itself
+ * only keeps refs, hashes and timestamps.
+ */
+public abstract class FlowStore {
+    private int nextRef = 1; // refs start at 1, so a table can use 0 for an empty slot
+    private int[] freeRefs = new int[16];
+    private int freeCount = 0;
+
+    public static FlowStore create(FlowStorage flowStorage) {
+        switch (flowStorage) {
+            case DIRECT:
+                return new OffHeapFlowStore(false);
+            case MAPPED:
+                return new OffHeapFlowStore(true);
+            default:
+                return new HeapFlowStore();
+        }
+    }
+
+    // a new connection under flowKey, with the packet's source as the client
+    public abstract int add(FlowKey flowKey, PacketInfo packetInfo);
+
+    // replace the state of a connection with that of tcpConnectionTracker
+    public abstract void set(int ref, TcpConnectionTracker tcpConnectionTracker);
+
+    public abstract boolean matches(int ref, FlowKey flowKey);
+
+    public abstract FlowKey getKey(int ref);
+
+    // the connection's tracker; only valid until the connection is freed
+    public abstract TcpConnectionTracker getTracker(int ref);
+
+    // the connection's tracker, still valid after the connection is freed
+    public abstract TcpConnectionTracker detach(int ref);
+
+    // copy a connection from another store of the same kind, returning its ref here
+    public abstract int adopt(FlowStore other, int ref);
+
+    public void free(int ref) {
+        if (freeCount == freeRefs.length) {
+            freeRefs = Arrays.copyOf(freeRefs, freeCount * 2);
+        }
+        freeRefs[freeCount++] = ref;
+    }
+
+    protected int allocate() {
+        if (freeCount > 0) {
+            return freeRefs[--freeCount];
+        }
+        if (nextRef == Integer.MAX_VALUE) {
+            throw new IllegalStateException("FlowStore is full!");
+        }
+        return nextRef++;
+    }
+}
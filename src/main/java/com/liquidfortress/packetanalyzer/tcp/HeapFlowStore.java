@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.FlowKey;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import org.pcap4j.packet.namednumber.TcpPort;
+
+import java.util.Arrays;
+
+/**
+ * HeapFlowStore
+ * <p/>
+ * Keeps each connection as a FlowKey and a TcpConnectionTracker object
+ */
+public class HeapFlowStore extends FlowStore {
+    private static final int INITIAL_REFS = 64;
+
+    private FlowKey[] keys = new FlowKey[INITIAL_REFS];
+    private TcpConnectionTracker[] trackers = new TcpConnectionTracker[INITIAL_REFS];
+
+    @Override
+    public int add(FlowKey flowKey, PacketInfo packetInfo) {
+        return add(flowKey.copy(), new TcpConnectionTracker(
+                packetInfo.getSourceAddress() + ":" + TcpPort.getInstance((short) packetInfo.sourcePort),
+                packetInfo.getDestinationAddress() + ":" + TcpPort.getInstance((short) packetInfo.destinationPort)));
+    }
+
+    @Override
+    public void set(int ref, TcpConnectionTracker tcpConnectionTracker) {
+        trackers[ref] = tcpConnectionTracker;
+    }
+
+    @Override
+    public boolean matches(int ref, FlowKey flowKey) {
+        return keys[ref].equals(flowKey);
+    }
+
+    @Override
+    public FlowKey getKey(int ref) {
+        return keys[ref];
+    }
+
+    @Override
+    public TcpConnectionTracker getTracker(int ref) {
+        return trackers[ref];
+    }
+
+    @Override
+    public TcpConnectionTracker detach(int ref) {
+        return trackers[ref];
+    }
+
+    // the tracker object itself is shared
+    @Override
+    public int adopt(FlowStore other, int ref) {
+        if (!(other instanceof HeapFlowStore)) {
+            throw new IllegalArgumentException("HeapFlowStore can only adopt connections from another HeapFlowStore!");
+        }
+        HeapFlowStore heapFlowStore = (HeapFlowStore) other;
+        return add(heapFlowStore.keys[ref], heapFlowStore.trackers[ref]);
+    }
+
+    @Override
+    public void free(int ref) {
+        keys[ref] = null;
+        trackers[ref] = null;
+        super.free(ref);
+    }
+
+    private int add(FlowKey flowKey, TcpConnectionTracker tcpConnectionTracker) {
+        int ref = allocate();
+        if (ref >= keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            trackers = Arrays.copyOf(trackers, trackers.length * 2);
+        }
+        keys[ref] = flowKey;
+        trackers[ref] = tcpConnectionTracker;
+        return ref;
+    }
+}
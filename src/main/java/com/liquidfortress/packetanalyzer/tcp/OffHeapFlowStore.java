@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.FlowKey;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import org.pcap4j.packet.namednumber.TcpPort;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * OffHeapFlowStore
+ * <p/>
+ * Keeps each connection in a fixed-size slot of a direct or memory-mapped
+ * ByteBuffer slab: its FlowKey, followed by the TcpConnectionTracker state
+ * fields.  Slabs are added as the store grows and are never given back, so a
+ * large flow table costs a few buffers instead of millions of small objects
+ * for the garbage collector to trace.  The trackers handed out are
+ * OffHeapTcpConnectionTracker views over the slots.
+ * <p/>
+ * A mapped slab's temporary file is deleted as soon as it is mapped, so the
+ * operating system can page flow state out to disk but nothing is left
+ * behind.  Only the SYN packet kept for SYN flood detection in Mode 3 stays
+ * on the heap.
+ */
+public class OffHeapFlowStore extends FlowStore {
+    public static final int SLOT_SIZE = FlowKey.BYTES + TcpConnectionTracker.STATE_FIELDS * 8; // bytes
+    private static final int SLAB_SHIFT = 12;
+    private static final int SLAB_SLOTS = 1 << SLAB_SHIFT; // slots per slab
+
+    private final boolean mapped;
+    private final ArrayList<ByteBuffer> slabs = new ArrayList<>();
+    private final HashMap<Integer, PacketInfo> step1PacketInfos = new HashMap<>();
+
+    public OffHeapFlowStore(boolean mapped) {
+        this.mapped = mapped;
+    }
+
+    @Override
+    public int add(FlowKey flowKey, PacketInfo packetInfo) {
+        int ref = allocateSlot();
+        flowKey.writeTo(getSlab(ref), getOffset(ref));
+        OffHeapTcpConnectionTracker tcpConnectionTracker = getTracker(ref);
+        tcpConnectionTracker.initialize();
+        tcpConnectionTracker.setFlag(TcpConnectionTracker.CLIENT_IS_UPPER, flowKey.isReversed());
+        return ref;
+    }
+
+    // the client and server stay those of the key the connection was added with
+    @Override
+    public void set(int ref, TcpConnectionTracker tcpConnectionTracker) {
+        OffHeapTcpConnectionTracker slot = getTracker(ref);
+        boolean clientIsUpper = slot.hasFlag(TcpConnectionTracker.CLIENT_IS_UPPER);
+        slot.copyFrom(tcpConnectionTracker);
+        slot.setFlag(TcpConnectionTracker.CLIENT_IS_UPPER, clientIsUpper);
+    }
+
+    @Override
+    public boolean matches(int ref, FlowKey flowKey) {
+        return flowKey.matches(getSlab(ref), getOffset(ref));
+    }
+
+    @Override
+    public FlowKey getKey(int ref) {
+        return FlowKey.readFrom(getSlab(ref), getOffset(ref));
+    }
+
+    @Override
+    public OffHeapTcpConnectionTracker getTracker(int ref) {
+        return new OffHeapTcpConnectionTracker(this, ref);
+    }
+
+    // copy the slot to an ordinary tracker
+    @Override
+    public TcpConnectionTracker detach(int ref) {
+        OffHeapTcpConnectionTracker slot = getTracker(ref);
+        TcpConnectionTracker tcpConnectionTracker = new TcpConnectionTracker(slot.getClientAddress(), slot.getServerAddress());
+        tcpConnectionTracker.copyFrom(slot);
+        return tcpConnectionTracker;
+    }
+
+    @Override
+    public int adopt(FlowStore other, int ref) {
+        if (!(other instanceof OffHeapFlowStore)) {
+            throw new IllegalArgumentException("OffHeapFlowStore can only adopt connections from another OffHeapFlowStore!");
+        }
+        OffHeapFlowStore offHeapFlowStore = (OffHeapFlowStore) other;
+        int adopted = allocateSlot();
+        ByteBuffer source = offHeapFlowStore.getSlab(ref);
+        int sourceOffset = offHeapFlowStore.getOffset(ref);
+        ByteBuffer destination = getSlab(adopted);
+        int destinationOffset = getOffset(adopted);
+        for (int i = 0; i < SLOT_SIZE; i += 8) {
+            destination.putLong(destinationOffset + i, source.getLong(sourceOffset + i));
+        }
+        PacketInfo step1PacketInfo = offHeapFlowStore.step1PacketInfos.get(ref);
+        if (step1PacketInfo != null) {
+            step1PacketInfos.put(adopted, step1PacketInfo);
+        }
+        return adopted;
+    }
+
+    @Override
+    public void free(int ref) {
+        step1PacketInfos.remove(ref);
+        super.free(ref);
+    }
+
+    // state field of a connection
+    long getField(int ref, int field) {
+        return getSlab(ref).getLong(getOffset(ref) + FlowKey.BYTES + field * 8);
+    }
+
+    void setField(int ref, int field, long value) {
+        getSlab(ref).putLong(getOffset(ref) + FlowKey.BYTES + field * 8, value);
+    }
+
+    // address:port of the lower or upper endpoint of a connection
+    String getEndpoint(int ref, boolean upper) {
+        ByteBuffer slab = getSlab(ref);
+        int offset = getOffset(ref);
+        return FlowKey.readAddress(slab, offset, upper) + ":" +
+                TcpPort.getInstance((short) FlowKey.readPort(slab, offset, upper));
+    }
+
+    PacketInfo getStep1PacketInfo(int ref) {
+        return step1PacketInfos.get(ref);
+    }
+
+    void setStep1PacketInfo(int ref, PacketInfo step1PacketInfo) {
+        if (step1PacketInfo == null) {
+            step1PacketInfos.remove(ref);
+        } else {
+            step1PacketInfos.put(ref, step1PacketInfo);
+        }
+    }
+
+    private ByteBuffer getSlab(int ref) {
+        return slabs.get(ref >>> SLAB_SHIFT);
+    }
+
+    private int getOffset(int ref) {
+        return (ref & (SLAB_SLOTS - 1)) * SLOT_SIZE;
+    }
+
+    private int allocateSlot() {
+        int ref = allocate();
+        while ((ref >>> SLAB_SHIFT) >= slabs.size()) {
+            slabs.add(newSlab());
+        }
+        return ref;
+    }
+
+    private ByteBuffer newSlab() {
+        int size = SLAB_SLOTS * SLOT_SIZE;
+        if (!mapped) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        try {
+            File file = File.createTempFile("lfpa-flows", ".slab");
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(size);
+                return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not map a flow store slab!  Exception was: " + e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+
+/**
+ * OffHeapTcpConnectionTracker
+ * <p/>
+ * View of a connection kept in a slot of an OffHeapFlowStore.  Views are
+ * cheap and hold no state of their own; a view is only valid until its
+ * connection is freed, see OffHeapFlowStore.detach().
+ */
+public class OffHeapTcpConnectionTracker extends TcpConnectionTracker {
+    private final OffHeapFlowStore flowStore;
+    private final int ref;
+
+    OffHeapTcpConnectionTracker(OffHeapFlowStore flowStore, int ref) {
+        this.flowStore = flowStore;
+        this.ref = ref;
+    }
+
+    @Override
+    public String getClientAddress() {
+        return flowStore.getEndpoint(ref, hasFlag(CLIENT_IS_UPPER));
+    }
+
+    @Override
+    public String getServerAddress() {
+        return flowStore.getEndpoint(ref, !hasFlag(CLIENT_IS_UPPER));
+    }
+
+    @Override
+    protected long get(int field) {
+        return flowStore.getField(ref, field);
+    }
+
+    @Override
+    protected void set(int field, long value) {
+        flowStore.setField(ref, field, value);
+    }
+
+    @Override
+    protected PacketInfo getStep1PacketInfo() {
+        return flowStore.getStep1PacketInfo(ref);
+    }
+
+    @Override
+    protected void setStep1PacketInfo(PacketInfo step1PacketInfo) {
+        flowStore.setStep1PacketInfo(ref, step1PacketInfo);
+    }
+}
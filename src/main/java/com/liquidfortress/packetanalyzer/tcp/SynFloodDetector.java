@@ -22,15 +22,15 @@ package com.liquidfortress.packetanalyzer.tcp;
 
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.AttackTable;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import com.liquidfortress.packetanalyzer.statistics.SlidingWindow;
 import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
 import org.apache.logging.log4j.core.Logger;
 
-import java.sql.Timestamp;
-import java.time.Instant;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
 
 /**
  * SynFloodDetector
@@ -39,63 +39,101 @@ import java.util.LinkedHashSet;
  */
 public class SynFloodDetector {
     private static final long LOOKBACK_WINDOW = 600; // milliseconds
+    private static final long LOOKBACK_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(LOOKBACK_WINDOW);
     private static final int MAX_UNACKED_SYNS = 14;
     private static Logger log = Main.log;
-    private final HashMap<String, LinkedHashSet<PacketInfo>> syns = new HashMap<>();
+    // one window of unACKed SYNs per server address; an event's value is the SYN's packet number
+    private final HashMap<String, SlidingWindow<PacketInfo>> syns = new HashMap<>();
+    // one open attack per server
+    private final AttackTable<String, SlidingWindow<PacketInfo>> attacks;
+    private final AttackTable.IncidentVisitor<String, SlidingWindow<PacketInfo>> attackOver = this::isOver;
+    private long currentTime = 0;
+    private long nextPurge = Long.MIN_VALUE;
 
-    private boolean attackInProgress = false;
-    private AttackSummary attackSummary = null;
+    public SynFloodDetector(int maxIncidents) {
+        this.attacks = new AttackTable<>(maxIncidents);
+    }
 
     public void detect(String serverAddress, PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
         // add the step1PacketInfo to the unACKed SYN packets for this IP address
-        Instant currentTime = Timestamp.valueOf(packetInfo.get(PacketInfo.TIMESTAMP)).toInstant();
-        Instant lookbackStart = currentTime.minusMillis(LOOKBACK_WINDOW);
-        LinkedHashSet<PacketInfo> packetInfos = syns.get(serverAddress);
-        if (packetInfos == null) {
-            packetInfos = new LinkedHashSet<>();
-            packetInfos.add(packetInfo);
-        } else {
-            // prune packetInfos that are beyond the lookback window
-            LinkedHashSet<PacketInfo> keep = new LinkedHashSet<>();
-            for (PacketInfo pi : packetInfos) {
-                Instant packetTime = Timestamp.valueOf(pi.get(PacketInfo.TIMESTAMP)).toInstant();
-                if (packetTime.isAfter(lookbackStart)) {
-                    keep.add(pi);
-                }
-            }
-            keep.add(packetInfo);
-            packetInfos = keep;
+        currentTime = packetInfo.timestampNanos;
+        purge();
+        SlidingWindow<PacketInfo> window = syns.get(serverAddress);
+        if (window == null) {
+            window = new SlidingWindow<>(LOOKBACK_WINDOW_NANOS, false);
+            syns.put(serverAddress, window);
         }
-        syns.put(serverAddress, packetInfos);
+        window.add(currentTime, packetInfo.packetNumber, 0, packetInfo);
 
-        if (packetInfos.size() > MAX_UNACKED_SYNS && !attackInProgress) { // attack first detected
-            log.trace("*** SYN FLOOD attack detected!");
-            attackInProgress = true;
-            attackSummary = new AttackSummary();
-            attackSummary.setAttackName("SYN FLOOD");
-            attackSummary.setStartTimestamp(PacketInfoUtils.getEarliest(packetInfos).get(PacketInfo.TIMESTAMP));
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
+        AttackSummary attackSummary = attacks.get(serverAddress);
+        if (window.size() > MAX_UNACKED_SYNS) {
+            if (attackSummary == null) { // attack first detected
+                log.trace("*** SYN FLOOD attack detected!");
+                attackSummary = attacks.open(serverAddress, window, "SYN FLOOD",
+                        PacketInfoUtils.toTimestamp(window.getEarliest()).toString());
             }
-        } else if (packetInfos.size() > MAX_UNACKED_SYNS && attackInProgress) { // add more details while attack in progress
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
+            if (attackSummary != null) { // add more details while attack in progress
+                report(window, attackSummary);
             }
-        } else if (packetInfos.size() <= MAX_UNACKED_SYNS && attackInProgress) { // attack ended, close out attack details
-            attackInProgress = false;
-            attackSummary.setEndTimestamp(PacketInfoUtils.getLatest(packetInfos).get(PacketInfo.TIMESTAMP));
-            pcapFileSummary.attackSummaries.add(attackSummary);
-            this.attackSummary = null;
+        } else if (attackSummary != null) { // attack ended, close out attack details
+            attacks.close(serverAddress, PacketInfoUtils.toTimestamp(window.getLatest()).toString(), pcapFileSummary);
+        } else {
+            attacks.forget(serverAddress);
         }
+        // close the attacks on servers that no longer receive SYNs
+        attacks.sweep(pcapFileSummary, attackOver);
     }
 
     public void ackReceived(String serverAddress, PacketInfo step1PacketInfo) {
-        LinkedHashSet<PacketInfo> synPacketInfos = syns.get(serverAddress);
-        if (synPacketInfos != null) {
-            synPacketInfos.remove(step1PacketInfo);
+        SlidingWindow<PacketInfo> window = syns.get(serverAddress);
+        if ((window != null) && (step1PacketInfo != null)) {
+            window.remove(step1PacketInfo.packetNumber);
+        }
+    }
+
+    // the number of servers with recent unACKed SYNs or an open attack
+    int serverCount() {
+        return syns.size();
+    }
 
+    // close the attacks that are still open at the end of the file
+    public void closeAll(long timestampNanos, PcapFileSummary pcapFileSummary) {
+        attacks.closeAll(PacketInfoUtils.toTimestamp(timestampNanos).toString(), pcapFileSummary);
+    }
+
+    // drop the windows that have emptied and have no open attack
+    private void purge() {
+        if (currentTime < nextPurge) {
+            return;
         }
+        if (nextPurge != Long.MIN_VALUE) {
+            syns.entrySet().removeIf(entry -> {
+                entry.getValue().expire(currentTime);
+                if (!entry.getValue().isEmpty() || (attacks.get(entry.getKey()) != null)) {
+                    return false;
+                }
+                attacks.forget(entry.getKey());
+                return true;
+            });
+        }
+        nextPurge = currentTime + LOOKBACK_WINDOW_NANOS;
+    }
+
+    private boolean isOver(String serverAddress, SlidingWindow<PacketInfo> window, AttackSummary attackSummary) {
+        window.expire(currentTime);
+        if (window.size() > MAX_UNACKED_SYNS) {
+            return false;
+        }
+        long end = window.isEmpty() ? currentTime : window.getLatest();
+        attackSummary.setEndTimestamp(PacketInfoUtils.toTimestamp(end).toString());
+        return true;
+    }
+
+    // add the endpoints of the window's SYNs that the attack summary has not seen yet
+    private void report(SlidingWindow<PacketInfo> window, AttackSummary attackSummary) {
+        window.report(attackSummary, (timestampNanos, packetNumber, data, info) -> {
+            attackSummary.addSourceIpAndPort(info.getSourceAddress() + ":" + info.sourcePort);
+            attackSummary.addTargetIpAndPort(info.getDestinationAddress() + ":" + info.destinationPort);
+        });
     }
 }
@@ -26,37 +26,120 @@ import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import org.apache.logging.log4j.core.Logger;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * TcpConnectionTracker
  * <p/>
- * Records the progress of a single TCP connection
+ * Records the progress of a single TCP connection.  The handshake and close
+ * sequence numbers, byte count and flags are STATE_FIELDS longs, which
+ * subclasses may keep outside the tracker, see OffHeapTcpConnectionTracker.
  */
 public class TcpConnectionTracker {
 
     public static final int NOT_DEFINED = -1;
     private static Logger log = Main.log;
 
+    // state fields, one long each
+    protected static final int STEP1_CLIENT_SEQUENCE_NUMBER = 0; // chosen by client
+    protected static final int STEP2_SERVER_ACK_NUMBER = 1;      // should be step1ClientSequenceNumber + 1
+    protected static final int STEP2_SERVER_SEQUENCE_NUMBER = 2; // chosen by server
+    protected static final int STEP3_CLIENT_SEQUENCE_NUMBER = 3; // should be step1ClientSequenceNumber + 1
+    protected static final int STEP3_CLIENT_ACK_NUMBER = 4;      // should be step2ServerSequenceNumber + 1
+    protected static final int STEP4_CLOSE_REQUEST_SEQUENCE_NUMBER = 5;
+    protected static final int STEP5_CLOSE_REQUEST_ACK_NUMBER = 6;
+    protected static final int STEP6_CLOSE_REQUEST_SEQUENCE_NUMBER = 7;
+    protected static final int STEP7_CLOSE_REQUEST_ACK_NUMBER = 8;
+    protected static final int TOTAL_BYTES_IN_FLOW = 9;
+    protected static final int CLOSING_PACKET_NUMBER = 10; // position of the final ACK in the capture
+    protected static final int FLAGS = 11;
+    public static final int STATE_FIELDS = 12;
+
+    // bits of the FLAGS field
+    protected static final long CONNECTED = 1; // only set if the connection has been established and is open
+    protected static final long CLOSED = 2;    // only set after the connection has been closed
+    protected static final long CLIENT_IS_UPPER = 4; // the client is the upper endpoint of the flow's FlowKey
+
     private final String clientAddress;
     private final String serverAddress;
-
-    private long step1ClientSequenceNumber = NOT_DEFINED; // chosen by client
-    private long step2ServerAckNumber = NOT_DEFINED;      // should be step1ClientSequenceNumber + 1
-    private long step2ServerSequenceNumber = NOT_DEFINED; // chosen by server
-    private long step3ClientSequenceNumber = NOT_DEFINED; // should be step1ClientSequenceNumber + 1
-    private long step3ClientAckNumber = NOT_DEFINED;      // should be step2ServerSequenceNumber + 1
-    private long step4CloseRequestSequenceNumber = NOT_DEFINED;
-    private long step5CloseRequestAckNumber = NOT_DEFINED;
-    private long step6CloseRequestSequenceNumber = NOT_DEFINED;
-    private long step7CloseRequestAckNumber = NOT_DEFINED;
-    private boolean connected = false;  // only true if the connection has been established and is open
-    private boolean closed = false; // only true after the connection has been closed
-    private long totalBytesInFlow = 0;
+    private final long[] state;
 
     private PacketInfo step1PacketInfo;
 
     public TcpConnectionTracker(String clientAddress, String serverAddress) {
         this.clientAddress = clientAddress;
         this.serverAddress = serverAddress;
+        this.state = new long[STATE_FIELDS];
+        initialize();
+    }
+
+    // for subclasses that keep their state somewhere else
+    protected TcpConnectionTracker() {
+        this.clientAddress = null;
+        this.serverAddress = null;
+        this.state = null;
+    }
+
+    // the state of a connection that has seen nothing yet
+    protected void initialize() {
+        for (int field = 0; field < TOTAL_BYTES_IN_FLOW; field++) {
+            set(field, NOT_DEFINED);
+        }
+        set(TOTAL_BYTES_IN_FLOW, 0);
+        set(CLOSING_PACKET_NUMBER, NOT_DEFINED);
+        set(FLAGS, 0);
+    }
+
+    protected long get(int field) {
+        return state[field];
+    }
+
+    protected void set(int field, long value) {
+        state[field] = value;
+    }
+
+    protected boolean hasFlag(long flag) {
+        return (get(FLAGS) & flag) != 0;
+    }
+
+    protected void setFlag(long flag, boolean value) {
+        long flags = get(FLAGS);
+        set(FLAGS, value ? (flags | flag) : (flags & ~flag));
+    }
+
+    // take over the whole state of another tracker
+    protected void copyFrom(TcpConnectionTracker other) {
+        for (int field = 0; field < STATE_FIELDS; field++) {
+            set(field, other.get(field));
+        }
+        setStep1PacketInfo(other.getStep1PacketInfo());
+    }
+
+    // the addresses and state, without the SYN packet kept for SYN flood detection
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(getClientAddress());
+        out.writeUTF(getServerAddress());
+        for (int field = 0; field < STATE_FIELDS; field++) {
+            out.writeLong(get(field));
+        }
+    }
+
+    public static TcpConnectionTracker readFrom(DataInput in) throws IOException {
+        TcpConnectionTracker tcpConnectionTracker = new TcpConnectionTracker(in.readUTF(), in.readUTF());
+        for (int field = 0; field < STATE_FIELDS; field++) {
+            tcpConnectionTracker.set(field, in.readLong());
+        }
+        return tcpConnectionTracker;
+    }
+
+    protected PacketInfo getStep1PacketInfo() {
+        return step1PacketInfo;
+    }
+
+    protected void setStep1PacketInfo(PacketInfo step1PacketInfo) {
+        this.step1PacketInfo = step1PacketInfo;
     }
 
     // Accessors
@@ -70,209 +153,224 @@ public class TcpConnectionTracker {
     }
 
     public long getStep1ClientSequenceNumber() {
-        return step1ClientSequenceNumber;
+        return get(STEP1_CLIENT_SEQUENCE_NUMBER);
     }
 
     public long getStep2ServerAckNumber() {
-        return step2ServerAckNumber;
+        return get(STEP2_SERVER_ACK_NUMBER);
     }
 
     public long getStep2ServerSequenceNumber() {
-        return step2ServerSequenceNumber;
+        return get(STEP2_SERVER_SEQUENCE_NUMBER);
     }
 
     public long getStep3ClientSequenceNumber() {
-        return step3ClientSequenceNumber;
+        return get(STEP3_CLIENT_SEQUENCE_NUMBER);
     }
 
     public long getStep3ClientAckNumber() {
-        return step3ClientAckNumber;
+        return get(STEP3_CLIENT_ACK_NUMBER);
     }
 
     public long getStep4CloseRequestSequenceNumber() {
-        return step4CloseRequestSequenceNumber;
+        return get(STEP4_CLOSE_REQUEST_SEQUENCE_NUMBER);
     }
 
     public long getStep5CloseRequestAckNumber() {
-        return step5CloseRequestAckNumber;
+        return get(STEP5_CLOSE_REQUEST_ACK_NUMBER);
     }
 
     public long getStep6CloseRequestSequenceNumber() {
-        return step6CloseRequestSequenceNumber;
+        return get(STEP6_CLOSE_REQUEST_SEQUENCE_NUMBER);
     }
 
     public long getStep7CloseRequestAckNumber() {
-        return step7CloseRequestAckNumber;
+        return get(STEP7_CLOSE_REQUEST_ACK_NUMBER);
     }
 
     public void setStep1ClientSequenceNumber(long step1ClientSequenceNumber, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (this.closed) {
+        if (hasFlag(CLOSED)) {
             log.trace("This connection was previously closed!");
             return;
         }
-        if (this.connected) {
+        if (hasFlag(CONNECTED)) {
             log.trace("This connection was previously made!");
             return;
         }
-        this.step1ClientSequenceNumber = step1ClientSequenceNumber;
+        set(STEP1_CLIENT_SEQUENCE_NUMBER, step1ClientSequenceNumber);
         if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-            this.step1PacketInfo = packetInfo;
-            pcapFileSummary.synFloodDetector.detect(serverAddress, this.step1PacketInfo, pcapFileSummary);
+            PacketInfo step1PacketInfo = packetInfo.copy();
+            setStep1PacketInfo(step1PacketInfo);
+            pcapFileSummary.synFloodDetector.detect(getServerAddress(), step1PacketInfo, pcapFileSummary);
         }
     }
 
     public void setStep2Numbers(long step2ServerAckNumber, long step2ServerSequenceNumber, PcapFileSummary pcapFileSummary, Mode mode) {
-        if (this.closed) {
+        if (hasFlag(CLOSED)) {
             log.trace("This connection was previously closed!");
             return;
         }
-        if (this.connected) {
+        if (hasFlag(CONNECTED)) {
             log.trace("This connection was previously made!");
             return;
         }
-        if (step1ClientSequenceNumber == NOT_DEFINED) {
+        if (get(STEP1_CLIENT_SEQUENCE_NUMBER) == NOT_DEFINED) {
             log.trace("Step 1 Client Sequence Number not yet set!");
             return;
         }
-        if (step2ServerAckNumber != (step1ClientSequenceNumber + 1)) {
-            log.trace("Step 2 Server Ack Number should be Step 1 Client Sequence Number + 1!" +
-                    "step1ClientSequenceNumber is: " + step1ClientSequenceNumber +
-                    "step2ServerAckNumber argument is: " + step2ServerAckNumber);
+        if (step2ServerAckNumber != (get(STEP1_CLIENT_SEQUENCE_NUMBER) + 1)) {
+            if (log.isTraceEnabled()) {
+                log.trace("Step 2 Server Ack Number should be Step 1 Client Sequence Number + 1!" +
+                        "step1ClientSequenceNumber is: " + get(STEP1_CLIENT_SEQUENCE_NUMBER) +
+                        "step2ServerAckNumber argument is: " + step2ServerAckNumber);
+            }
             return;
         }
-        this.step2ServerAckNumber = step2ServerAckNumber;
-        this.step2ServerSequenceNumber = step2ServerSequenceNumber;
+        set(STEP2_SERVER_ACK_NUMBER, step2ServerAckNumber);
+        set(STEP2_SERVER_SEQUENCE_NUMBER, step2ServerSequenceNumber);
         if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-            pcapFileSummary.synFloodDetector.ackReceived(serverAddress, this.step1PacketInfo);
-            this.step1PacketInfo = null;
+            pcapFileSummary.synFloodDetector.ackReceived(getServerAddress(), getStep1PacketInfo());
+            setStep1PacketInfo(null);
         }
 
     }
 
     public void setStep3Numbers(long step3ClientAckNumber, long step3ClientSequenceNumber) {
-        if (this.closed) {
+        if (hasFlag(CLOSED)) {
             log.trace("This connection was previously closed!");
             return;
         }
-        if (this.connected) {
+        if (hasFlag(CONNECTED)) {
             log.trace("This connection was previously made!");
             return;
         }
-        if (step1ClientSequenceNumber == NOT_DEFINED) {
+        if (get(STEP1_CLIENT_SEQUENCE_NUMBER) == NOT_DEFINED) {
             log.trace("Step 1 Client Sequence Number not yet set!");
             return;
         }
-        if (step2ServerAckNumber == NOT_DEFINED) {
+        if (get(STEP2_SERVER_ACK_NUMBER) == NOT_DEFINED) {
             log.trace("Step 2 Server Ack Number not yet set!");
             return;
         }
-        if (step2ServerSequenceNumber == NOT_DEFINED) {
+        if (get(STEP2_SERVER_SEQUENCE_NUMBER) == NOT_DEFINED) {
             log.trace("Step 2 Server Sequence Number not yet set!");
             return;
         }
-        if (step3ClientAckNumber != (step2ServerSequenceNumber + 1)) {
-            log.trace("Step 3 Client Ack Number should be Step 2 Server Sequence Number + 1!" +
-                    "step2ServerSequenceNumber is: " + step2ServerSequenceNumber +
-                    "step3ClientAckNumber argument is: " + step3ClientAckNumber);
+        if (step3ClientAckNumber != (get(STEP2_SERVER_SEQUENCE_NUMBER) + 1)) {
+            if (log.isTraceEnabled()) {
+                log.trace("Step 3 Client Ack Number should be Step 2 Server Sequence Number + 1!" +
+                        "step2ServerSequenceNumber is: " + get(STEP2_SERVER_SEQUENCE_NUMBER) +
+                        "step3ClientAckNumber argument is: " + step3ClientAckNumber);
+            }
             return;
         }
-        if (step3ClientSequenceNumber != (step1ClientSequenceNumber + 1)) {
-            log.trace("Step 3 Client Sequence Number should be Step 1 Client Sequence Number + 1!" +
-                    "step1ClientSequenceNumber is: " + step1ClientSequenceNumber +
-                    "step3ClientSequenceNumber argument is: " + step3ClientSequenceNumber);
+        if (step3ClientSequenceNumber != (get(STEP1_CLIENT_SEQUENCE_NUMBER) + 1)) {
+            if (log.isTraceEnabled()) {
+                log.trace("Step 3 Client Sequence Number should be Step 1 Client Sequence Number + 1!" +
+                        "step1ClientSequenceNumber is: " + get(STEP1_CLIENT_SEQUENCE_NUMBER) +
+                        "step3ClientSequenceNumber argument is: " + step3ClientSequenceNumber);
+            }
             return;
         }
-        this.step3ClientAckNumber = step3ClientAckNumber;
-        this.step3ClientSequenceNumber = step3ClientSequenceNumber;
-        this.connected = true;
+        set(STEP3_CLIENT_ACK_NUMBER, step3ClientAckNumber);
+        set(STEP3_CLIENT_SEQUENCE_NUMBER, step3ClientSequenceNumber);
+        setFlag(CONNECTED, true);
     }
 
     public void setStep4CloseRequestSequenceNumber(long step4CloseRequestSequenceNumber) {
-        if (this.closed) {
+        if (hasFlag(CLOSED)) {
             log.trace("This connection was previously closed!");
             return;
         }
-        if (!connected) {
+        if (!hasFlag(CONNECTED)) {
             log.trace("TCP connection was never made!");
             return;
         }
-        this.step4CloseRequestSequenceNumber = step4CloseRequestSequenceNumber;
+        set(STEP4_CLOSE_REQUEST_SEQUENCE_NUMBER, step4CloseRequestSequenceNumber);
     }
 
     public void setStep5CloseRequestAckNumber(long step5CloseRequestAckNumber) {
-        if (this.closed) {
+        if (hasFlag(CLOSED)) {
             log.trace("This connection was previously closed!");
             return;
         }
-        if (!connected) {
+        if (!hasFlag(CONNECTED)) {
             log.trace("TCP connection was never made!");
             return;
         }
-        if (this.step4CloseRequestSequenceNumber == NOT_DEFINED) {
+        if (get(STEP4_CLOSE_REQUEST_SEQUENCE_NUMBER) == NOT_DEFINED) {
             log.trace("step4CloseRequestSequenceNumber was not set!");
             return;
         }
-        this.step5CloseRequestAckNumber = step5CloseRequestAckNumber;
+        set(STEP5_CLOSE_REQUEST_ACK_NUMBER, step5CloseRequestAckNumber);
     }
 
     public void setStep6CloseRequestSequenceNumber(long step6CloseRequestSequenceNumber) {
-        if (this.closed) {
+        if (hasFlag(CLOSED)) {
             log.trace("This connection was previously closed!");
             return;
         }
-        if (!connected) {
+        if (!hasFlag(CONNECTED)) {
             log.trace("TCP connection was never made!");
             return;
         }
-        if (this.step4CloseRequestSequenceNumber == NOT_DEFINED) {
+        if (get(STEP4_CLOSE_REQUEST_SEQUENCE_NUMBER) == NOT_DEFINED) {
             log.trace("step4CloseRequestSequenceNumber was not set!");
             return;
         }
-        if (this.step5CloseRequestAckNumber == NOT_DEFINED) {
+        if (get(STEP5_CLOSE_REQUEST_ACK_NUMBER) == NOT_DEFINED) {
             log.trace("step5CloseRequestAckNumber was not set!");
             return;
         }
-        this.step6CloseRequestSequenceNumber = step6CloseRequestSequenceNumber;
+        set(STEP6_CLOSE_REQUEST_SEQUENCE_NUMBER, step6CloseRequestSequenceNumber);
     }
 
     public void setStep7CloseRequestAckNumber(long step7CloseRequestAckNumber) {
-        if (this.closed) {
+        if (hasFlag(CLOSED)) {
             log.trace("This connection was previously closed!");
             return;
         }
-        if (!connected) {
+        if (!hasFlag(CONNECTED)) {
             log.trace("TCP connection was never made!");
             return;
         }
-        if (this.step4CloseRequestSequenceNumber == NOT_DEFINED) {
+        if (get(STEP4_CLOSE_REQUEST_SEQUENCE_NUMBER) == NOT_DEFINED) {
             log.trace("step4CloseRequestSequenceNumber was not set!");
             return;
         }
-        if (this.step5CloseRequestAckNumber == NOT_DEFINED) {
+        if (get(STEP5_CLOSE_REQUEST_ACK_NUMBER) == NOT_DEFINED) {
             log.trace("step5CloseRequestAckNumber was not set!");
             return;
         }
-        if (this.step6CloseRequestSequenceNumber == NOT_DEFINED) {
+        if (get(STEP6_CLOSE_REQUEST_SEQUENCE_NUMBER) == NOT_DEFINED) {
             log.trace("step6CloseRequestSequenceNumber was not set!");
             return;
         }
-        this.step7CloseRequestAckNumber = step7CloseRequestAckNumber;
-        this.connected = false;
-        this.closed = true;
+        set(STEP7_CLOSE_REQUEST_ACK_NUMBER, step7CloseRequestAckNumber);
+        setFlag(CONNECTED, false);
+        setFlag(CLOSED, true);
     }
 
     public boolean isConnected() {
-        return connected;
+        return hasFlag(CONNECTED);
     }
 
     // Mutators
 
     public boolean isClosed() {
-        return closed;
+        return hasFlag(CLOSED);
+    }
+
+    public long getClosingPacketNumber() {
+        return get(CLOSING_PACKET_NUMBER);
+    }
+
+    public void setClosingPacketNumber(long closingPacketNumber) {
+        set(CLOSING_PACKET_NUMBER, closingPacketNumber);
     }
 
     public long getTotalBytesInFlow() {
-        return totalBytesInFlow;
+        return get(TOTAL_BYTES_IN_FLOW);
     }
 
     public void addFlowBytes(long additionalBytes) {
@@ -280,56 +378,56 @@ public class TcpConnectionTracker {
             log.trace("additionalBytes must be non-negative!");
             return;
         }
-        this.totalBytesInFlow += additionalBytes;
+        set(TOTAL_BYTES_IN_FLOW, get(TOTAL_BYTES_IN_FLOW) + additionalBytes);
     }
 
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        builder.append("TCP Flow Details: " + clientAddress + " => " + serverAddress + "\n");
+        builder.append("TCP Flow Details: " + getClientAddress() + " => " + getServerAddress() + "\n");
         builder.append("=== Connection Establishment Handshake Details ===\n");
-        builder.append("Client SYN Sequence Number: " + step1ClientSequenceNumber + "\n");
-        if (step2ServerAckNumber != NOT_DEFINED) {
-            builder.append("Server SYN-ACK Acknowledge Number: " + step2ServerAckNumber + "\n");
+        builder.append("Client SYN Sequence Number: " + get(STEP1_CLIENT_SEQUENCE_NUMBER) + "\n");
+        if (get(STEP2_SERVER_ACK_NUMBER) != NOT_DEFINED) {
+            builder.append("Server SYN-ACK Acknowledge Number: " + get(STEP2_SERVER_ACK_NUMBER) + "\n");
         } else {
             builder.append("Server SYN-ACK Acknowledge Number: TCP Connection Handshake Not Completed\n");
         }
-        if (step2ServerSequenceNumber != NOT_DEFINED) {
-            builder.append("Server SYN-ACK Sequence Number: " + step2ServerSequenceNumber + "\n");
+        if (get(STEP2_SERVER_SEQUENCE_NUMBER) != NOT_DEFINED) {
+            builder.append("Server SYN-ACK Sequence Number: " + get(STEP2_SERVER_SEQUENCE_NUMBER) + "\n");
         } else {
             builder.append("Server SYN-ACK Sequence Number: TCP Connection Handshake Not Completed\n");
         }
-        if (step3ClientAckNumber != NOT_DEFINED) {
-            builder.append("Client ACK Acknowledge Number: " + step3ClientAckNumber + "\n");
+        if (get(STEP3_CLIENT_ACK_NUMBER) != NOT_DEFINED) {
+            builder.append("Client ACK Acknowledge Number: " + get(STEP3_CLIENT_ACK_NUMBER) + "\n");
         } else {
             builder.append("Client ACK Acknowledge Number: TCP Connection Handshake Not Completed\n");
         }
-        if (step3ClientSequenceNumber != NOT_DEFINED) {
-            builder.append("Client ACK Sequence Number: " + step3ClientSequenceNumber + "\n");
+        if (get(STEP3_CLIENT_SEQUENCE_NUMBER) != NOT_DEFINED) {
+            builder.append("Client ACK Sequence Number: " + get(STEP3_CLIENT_SEQUENCE_NUMBER) + "\n");
         } else {
             builder.append("Client ACK Sequence Number: TCP Connection Handshake Not Completed\n");
         }
         builder.append("=== Connection Termination Details ===\n");
-        if (step4CloseRequestSequenceNumber != NOT_DEFINED) {
-            builder.append("Initiator FIN Sequence Number: " + step4CloseRequestSequenceNumber + "\n");
+        if (get(STEP4_CLOSE_REQUEST_SEQUENCE_NUMBER) != NOT_DEFINED) {
+            builder.append("Initiator FIN Sequence Number: " + get(STEP4_CLOSE_REQUEST_SEQUENCE_NUMBER) + "\n");
         } else {
             builder.append("Initiator FIN Sequence Number: TCP Connection Not Closed\n");
         }
-        if (step5CloseRequestAckNumber != NOT_DEFINED) {
-            builder.append("Receiver ACK Acknowledge Number: " + step5CloseRequestAckNumber + "\n");
+        if (get(STEP5_CLOSE_REQUEST_ACK_NUMBER) != NOT_DEFINED) {
+            builder.append("Receiver ACK Acknowledge Number: " + get(STEP5_CLOSE_REQUEST_ACK_NUMBER) + "\n");
         } else {
             builder.append("Receiver ACK Acknowledge Number: TCP Connection Not Closed\n");
         }
-        if (step6CloseRequestSequenceNumber != NOT_DEFINED) {
-            builder.append("Receiver FIN Sequence Number: " + step6CloseRequestSequenceNumber + "\n");
+        if (get(STEP6_CLOSE_REQUEST_SEQUENCE_NUMBER) != NOT_DEFINED) {
+            builder.append("Receiver FIN Sequence Number: " + get(STEP6_CLOSE_REQUEST_SEQUENCE_NUMBER) + "\n");
         } else {
             builder.append("Receiver FIN Sequence Number: TCP Connection Not Closed\n");
         }
-        if (step7CloseRequestAckNumber != NOT_DEFINED) {
-            builder.append("Initiator ACK Acknowledge Number: " + step7CloseRequestAckNumber + "\n");
+        if (get(STEP7_CLOSE_REQUEST_ACK_NUMBER) != NOT_DEFINED) {
+            builder.append("Initiator ACK Acknowledge Number: " + get(STEP7_CLOSE_REQUEST_ACK_NUMBER) + "\n");
         } else {
             builder.append("Initiator ACK Acknowledge Number: TCP Connection Not Closed\n");
         }
-        builder.append("=== Total Bytes in Flow: " + totalBytesInFlow + " ===\n");
+        builder.append("=== Total Bytes in Flow: " + get(TOTAL_BYTES_IN_FLOW) + " ===\n");
         return builder.toString();
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * TcpConnectionWriter
+ * <p/>
+ * Appends TcpConnectionTrackers to a file without making the caller wait
+ * for the disk.  Each tracker is serialized into one of a small pool of
+ * reusable buffers as soon as it is written, so it can be released right
+ * away; a dedicated thread writes the filled buffers to the file.  When all
+ * buffers are waiting to be written, writing a tracker blocks, so memory
+ * stays bounded however many connections are written.
+ */
+public class TcpConnectionWriter {
+    public static final int BUFFER_SIZE = 64 * 1024; // bytes
+    public static final int BUFFER_COUNT = 4;
+
+    // one buffer; length is -1 for the end of the file
+    private static class Chunk {
+        final byte[] data = new byte[BUFFER_SIZE];
+        int length = 0;
+    }
+
+    private final OutputStream file;
+    private final BlockingQueue<Chunk> emptyChunks = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final BlockingQueue<Chunk> filledChunks = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final Thread writerThread;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private Chunk current;
+    private volatile IOException error = null;
+    private boolean closed = false;
+
+    public TcpConnectionWriter(File file) throws IOException {
+        this.file = new FileOutputStream(file);
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            emptyChunks.add(new Chunk());
+        }
+        this.current = emptyChunks.poll();
+        this.writerThread = new Thread(this::writeChunks, "lfpa-writer-" + file.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private void writeChunks() {
+        try {
+            while (true) {
+                Chunk chunk = filledChunks.take();
+                if (chunk.length < 0) {
+                    break;
+                }
+                if (error == null) {
+                    try {
+                        file.write(chunk.data, 0, chunk.length);
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+                chunk.length = 0;
+                emptyChunks.put(chunk);
+            }
+            file.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        } catch (InterruptedException e) {
+            // only the writer itself ends the thread
+        }
+    }
+
+    public void write(TcpConnectionTracker tcpConnectionTracker) throws IOException {
+        if (closed) {
+            throw new IOException("Writer closed");
+        }
+        record.reset();
+        tcpConnectionTracker.writeTo(recordOut);
+        if (current.length + record.size() > BUFFER_SIZE) {
+            handOver(emptyChunk());
+        }
+        byte[] bytes = record.toByteArray();
+        System.arraycopy(bytes, 0, current.data, current.length, bytes.length);
+        current.length += bytes.length;
+    }
+
+    // write out what is buffered, wait for the file to be closed and report any write error
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Chunk end = emptyChunk();
+        handOver(end);
+        end.length = -1;
+        handOver(null);
+        boolean interrupted = false;
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // queue the current chunk for writing and continue in next
+    private void handOver(Chunk next) throws IOException {
+        try {
+            filledChunks.put(current);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing connections");
+        }
+        current = next;
+    }
+
+    private Chunk emptyChunk() throws IOException {
+        try {
+            return emptyChunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing connections");
+        }
+    }
+}
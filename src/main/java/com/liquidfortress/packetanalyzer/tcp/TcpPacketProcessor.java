@@ -25,10 +25,8 @@ import com.liquidfortress.packetanalyzer.main.Mode;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.IllegalRawDataException;
-import org.pcap4j.packet.Packet;
-import org.pcap4j.packet.TcpPacket;
-import org.pcap4j.packet.namednumber.TcpPort;
+
+import java.nio.ByteBuffer;
 
 /**
  * TcpPacketProcessor
@@ -38,109 +36,98 @@ import org.pcap4j.packet.namednumber.TcpPort;
 public class TcpPacketProcessor {
     private static Logger log = Main.log;
 
-    public static void processTcpPacket(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
+    public static void processTcpPacket(ByteBuffer packetData, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
+        if (packetInfo.transportLength == 0) {
             return; // skip empty packets
         }
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        try {
-            log.trace("Converting to TCP packet");
-            TcpPacket tcpPacket = TcpPacket.newPacket(packet.getRawData(), 0, packet.length());
-            TcpPacket.TcpHeader tcpHeader = tcpPacket.getHeader();
-            TcpPort sourcePort = tcpHeader.getSrcPort();
-            TcpPort destinationPort = tcpHeader.getDstPort();
-            packetInfo.put(PacketInfo.SOURCE_PORT, sourcePort.valueAsString());
-            packetInfo.put(PacketInfo.DESTINATION_PORT, destinationPort.valueAsString());
-            String tcpSource = sourceAddress + ":" + sourcePort;
-            String tcpDestination = destinationAddress + ":" + destinationPort;
-            boolean syn = tcpHeader.getSyn();
-            boolean ack = tcpHeader.getAck();
-            boolean fin = tcpHeader.getFin();
-            packetInfo.put(PacketInfo.SYN, Boolean.toString(syn));
-            packetInfo.put(PacketInfo.ACK, Boolean.toString(ack));
-            packetInfo.put(PacketInfo.FIN, Boolean.toString(fin));
-            long sequenceNumber = tcpHeader.getSequenceNumberAsLong();
-            long acknowledgementNumber = tcpHeader.getAcknowledgmentNumberAsLong();
-            log.trace("TCP{ source: " + tcpSource + ", destination: " + tcpDestination +
+        if (!packetInfo.isDecoded(PacketInfo.TRANSPORT_LAYER)) {
+            log.trace("Exception occurred while processing a packet. Exception was: invalid TCP header");
+            return;
+        }
+        boolean syn = packetInfo.hasFlag(PacketInfo.SYN);
+        boolean ack = packetInfo.hasFlag(PacketInfo.ACK);
+        boolean fin = packetInfo.hasFlag(PacketInfo.FIN);
+        long sequenceNumber = packetInfo.sequenceNumber;
+        long acknowledgementNumber = packetInfo.acknowledgementNumber;
+        long segmentLength = packetInfo.transportLength;
+        if (log.isTraceEnabled()) {
+            log.trace("TCP{ source: " + packetInfo.getSourceAddress() + ":" + packetInfo.sourcePort +
+                    ", destination: " + packetInfo.getDestinationAddress() + ":" + packetInfo.destinationPort +
                     ", SYN: " + syn + ", ACK: " + ack + ", FIN: " + fin +
                     ", seq number: " + sequenceNumber + ", ack number: " + acknowledgementNumber + " }");
+        }
 
-            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                // check for port scanning
-                pcapFileSummary.portScanDetector.add(packetInfo, pcapFileSummary);
-            }
+        if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+            // check for port scanning and host sweeps
+            pcapFileSummary.portScanDetector.add(packetInfo, pcapFileSummary);
+            pcapFileSummary.hostSweepDetector.add(packetInfo, pcapFileSummary);
+        }
 
-            // Track TCP connection state
-            //// Track connection handshake
-            IpAddressPair addressPair = new IpAddressPair(tcpSource, tcpDestination);
-            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                // check for brute force / dictionary telnet attack
-                TcpConnectionTracker tcpConnectionTracker = pcapFileSummary.activeTcpConnections.get(addressPair);
-                if (tcpConnectionTracker != null && tcpConnectionTracker.isConnected()) {
-                    pcapFileSummary.accountBruteForceDetector.detect(packet.getPayload(), packetInfo, pcapFileSummary);
-                }
+        // Track TCP connection state
+        //// Expire connections that timed out, then track connection handshake
+        pcapFileSummary.activeTcpConnections.expire(packetInfo);
+        TcpConnectionTracker tcpConnectionTracker = pcapFileSummary.activeTcpConnections.get(packetInfo);
+        if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+            // check for brute force / dictionary telnet attack
+            if (tcpConnectionTracker != null && tcpConnectionTracker.isConnected()) {
+                pcapFileSummary.accountBruteForceDetector.detect(packetData, packetInfo, pcapFileSummary);
+            }
+        }
+        if (tcpConnectionTracker == null) {
+            if (syn) { // step 1: Client SYN
+                tcpConnectionTracker = pcapFileSummary.activeTcpConnections.open(packetInfo);
+                tcpConnectionTracker.setStep1ClientSequenceNumber(sequenceNumber, pcapFileSummary, packetInfo, mode);
+                tcpConnectionTracker.addFlowBytes(segmentLength);
+            }
+        } else if (!tcpConnectionTracker.isConnected() && !tcpConnectionTracker.isClosed()) {
+            if (syn && ack) { // step 2: Server SYN-ACK
+                tcpConnectionTracker.setStep2Numbers(acknowledgementNumber, sequenceNumber, pcapFileSummary, mode);
+                tcpConnectionTracker.addFlowBytes(segmentLength);
+            } else if (ack) { // step 3: Client ACK
+                tcpConnectionTracker.setStep3Numbers(acknowledgementNumber, sequenceNumber);
+                tcpConnectionTracker.addFlowBytes(segmentLength);
+                pcapFileSummary.tcpConnectionCount++;
             }
-            TcpConnectionTracker tcpConnectionTracker = pcapFileSummary.activeTcpConnections.get(addressPair);
-            if (tcpConnectionTracker == null) {
-                tcpConnectionTracker = new TcpConnectionTracker(tcpSource, tcpDestination);
-                if (syn) { // step 1: Client SYN
-                    tcpConnectionTracker.setStep1ClientSequenceNumber(sequenceNumber, pcapFileSummary, packetInfo, mode);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                    pcapFileSummary.activeTcpConnections.put(addressPair, tcpConnectionTracker);
-                }
-            } else if (!tcpConnectionTracker.isConnected() && !tcpConnectionTracker.isClosed()) {
-                if (syn && ack) { // step 2: Server SYN-ACK
-                    tcpConnectionTracker.setStep2Numbers(acknowledgementNumber, sequenceNumber, pcapFileSummary, mode);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                } else if (ack) { // step 3: Client ACK
-                    tcpConnectionTracker.setStep3Numbers(acknowledgementNumber, sequenceNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                    pcapFileSummary.tcpConnectionCount++;
-                }
-            } else if (tcpConnectionTracker.isConnected() && !tcpConnectionTracker.isClosed()) {
-                // check for password guessing brute force / dictionary attacks while the connection is open
-                // Track connection closing steps
-                if (fin && tcpConnectionTracker.getStep4CloseRequestSequenceNumber() == TcpConnectionTracker.NOT_DEFINED) {
-                    // step 4: Initiator FIN_WAIT_1
-                    tcpConnectionTracker.setStep4CloseRequestSequenceNumber(sequenceNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                } else if (ack && !fin &&
-                        tcpConnectionTracker.getStep4CloseRequestSequenceNumber() != TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep5CloseRequestAckNumber() == TcpConnectionTracker.NOT_DEFINED) {
-                    // step 5: Receiver ACK
-                    tcpConnectionTracker.setStep5CloseRequestAckNumber(acknowledgementNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                } else if (fin && !ack &&
-                        tcpConnectionTracker.getStep5CloseRequestAckNumber() != TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep6CloseRequestSequenceNumber() == TcpConnectionTracker.NOT_DEFINED) {
-                    // step 6: Receiver FIN
-                    tcpConnectionTracker.setStep6CloseRequestSequenceNumber(sequenceNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                } else if (fin && ack &&
-                        tcpConnectionTracker.getStep4CloseRequestSequenceNumber() != TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep5CloseRequestAckNumber() == TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep6CloseRequestSequenceNumber() == TcpConnectionTracker.NOT_DEFINED) {
-                    // combined step 5 and 6: Receiver FIN and ACK
-                    tcpConnectionTracker.setStep5CloseRequestAckNumber(acknowledgementNumber);
-                    tcpConnectionTracker.setStep6CloseRequestSequenceNumber(sequenceNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                } else if (ack && !fin &&
-                        tcpConnectionTracker.getStep5CloseRequestAckNumber() != TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep6CloseRequestSequenceNumber() != TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep7CloseRequestAckNumber() == TcpConnectionTracker.NOT_DEFINED) {
-                    // step 7: Initiator ACK
-                    tcpConnectionTracker.setStep7CloseRequestAckNumber(acknowledgementNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                    // remove the closed TCP connection from tracking
-                    pcapFileSummary.closedTcpConnections.add(tcpConnectionTracker);
-                    pcapFileSummary.activeTcpConnections.remove(addressPair);
-                } else { // add to flow tracking
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                }
+        } else if (tcpConnectionTracker.isConnected() && !tcpConnectionTracker.isClosed()) {
+            // check for password guessing brute force / dictionary attacks while the connection is open
+            // Track connection closing steps
+            if (fin && tcpConnectionTracker.getStep4CloseRequestSequenceNumber() == TcpConnectionTracker.NOT_DEFINED) {
+                // step 4: Initiator FIN_WAIT_1
+                tcpConnectionTracker.setStep4CloseRequestSequenceNumber(sequenceNumber);
+                tcpConnectionTracker.addFlowBytes(segmentLength);
+            } else if (ack && !fin &&
+                    tcpConnectionTracker.getStep4CloseRequestSequenceNumber() != TcpConnectionTracker.NOT_DEFINED &&
+                    tcpConnectionTracker.getStep5CloseRequestAckNumber() == TcpConnectionTracker.NOT_DEFINED) {
+                // step 5: Receiver ACK
+                tcpConnectionTracker.setStep5CloseRequestAckNumber(acknowledgementNumber);
+                tcpConnectionTracker.addFlowBytes(segmentLength);
+            } else if (fin && !ack &&
+                    tcpConnectionTracker.getStep5CloseRequestAckNumber() != TcpConnectionTracker.NOT_DEFINED &&
+                    tcpConnectionTracker.getStep6CloseRequestSequenceNumber() == TcpConnectionTracker.NOT_DEFINED) {
+                // step 6: Receiver FIN
+                tcpConnectionTracker.setStep6CloseRequestSequenceNumber(sequenceNumber);
+                tcpConnectionTracker.addFlowBytes(segmentLength);
+            } else if (fin && ack &&
+                    tcpConnectionTracker.getStep4CloseRequestSequenceNumber() != TcpConnectionTracker.NOT_DEFINED &&
+                    tcpConnectionTracker.getStep5CloseRequestAckNumber() == TcpConnectionTracker.NOT_DEFINED &&
+                    tcpConnectionTracker.getStep6CloseRequestSequenceNumber() == TcpConnectionTracker.NOT_DEFINED) {
+                // combined step 5 and 6: Receiver FIN and ACK
+                tcpConnectionTracker.setStep5CloseRequestAckNumber(acknowledgementNumber);
+                tcpConnectionTracker.setStep6CloseRequestSequenceNumber(sequenceNumber);
+                tcpConnectionTracker.addFlowBytes(segmentLength);
+            } else if (ack && !fin &&
+                    tcpConnectionTracker.getStep5CloseRequestAckNumber() != TcpConnectionTracker.NOT_DEFINED &&
+                    tcpConnectionTracker.getStep6CloseRequestSequenceNumber() != TcpConnectionTracker.NOT_DEFINED &&
+                    tcpConnectionTracker.getStep7CloseRequestAckNumber() == TcpConnectionTracker.NOT_DEFINED) {
+                // step 7: Initiator ACK
+                tcpConnectionTracker.setStep7CloseRequestAckNumber(acknowledgementNumber);
+                tcpConnectionTracker.addFlowBytes(segmentLength);
+                // remove the closed TCP connection from tracking
+                tcpConnectionTracker.setClosingPacketNumber(packetInfo.packetNumber);
+                pcapFileSummary.closedTcpConnections.add(pcapFileSummary.activeTcpConnections.remove(packetInfo));
+            } else { // add to flow tracking
+                tcpConnectionTracker.addFlowBytes(segmentLength);
             }
-        } catch (IllegalRawDataException e) {
-            log.trace("Exception occurred while processing a packet. Exception was: " + e);
         }
     }
 }
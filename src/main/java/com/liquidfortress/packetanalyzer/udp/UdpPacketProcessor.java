@@ -22,13 +22,12 @@ package com.liquidfortress.packetanalyzer.udp;
 
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.main.Mode;
+import com.liquidfortress.packetanalyzer.pcap_file.DecodePlan;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.IllegalRawDataException;
-import org.pcap4j.packet.Packet;
-import org.pcap4j.packet.UdpPacket;
-import org.pcap4j.packet.namednumber.UdpPort;
+
+import java.nio.ByteBuffer;
 
 /**
  * UdpPacketProcessor
@@ -39,30 +38,32 @@ public class UdpPacketProcessor {
     private static Logger log = Main.log;
 
 
-    public static void processUdpPacket(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
+    public static void processUdpPacket(ByteBuffer packetData, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
+        if (packetInfo.transportLength == 0) {
             return; // skip empty packets
         }
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        try {
-            log.trace("Converting to UDP packet");
-            UdpPacket udpPacket = UdpPacket.newPacket(packet.getRawData(), 0, packet.length());
-            UdpPacket.UdpHeader udpHeader = udpPacket.getHeader();
-            UdpPort sourcePort = udpHeader.getSrcPort();
-            UdpPort destinationPort = udpHeader.getDstPort();
-            packetInfo.put(PacketInfo.SOURCE_PORT, sourcePort.valueAsString());
-            packetInfo.put(PacketInfo.DESTINATION_PORT, destinationPort.valueAsString());
-            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                //pcapFileSummary.portScanDetector.add(packetInfo);
-            }
-            String udpSource = sourceAddress + ":" + sourcePort.toString();
-            String udpDestination = destinationAddress + ":" + destinationPort.toString();
-            log.trace("Adding UDP source to set: " + udpSource);
-            pcapFileSummary.udpSources.add(udpSource);
-            log.trace("UDP{ source: " + udpSource + ", destination: " + udpDestination + " }");
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
+        if (!packetInfo.isDecoded(PacketInfo.TRANSPORT_LAYER)) {
+            log.error("Exception occurred while processing a packet. Exception was: invalid UDP header");
+            return;
+        }
+        if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+            pcapFileSummary.udpPortScanDetector.add(packetInfo, pcapFileSummary);
+            pcapFileSummary.hostSweepDetector.add(packetInfo, pcapFileSummary);
+        }
+        if (!DecodePlan.forMode(mode).udpSources) {
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Adding UDP source to set: " + packetInfo.getSourceAddress() + ":" + packetInfo.sourcePort);
+        }
+        if (packetInfo.ipVersion == PacketInfo.IPV4) {
+            pcapFileSummary.udpSources.addIpv4(packetInfo.sourceIpv4, packetInfo.sourcePort);
+        } else {
+            pcapFileSummary.udpSources.addIpv6(packetInfo.sourceIpv6High, packetInfo.sourceIpv6Low, packetInfo.sourcePort);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("UDP{ source: " + packetInfo.getSourceAddress() + ":" + packetInfo.sourcePort + ", destination: " +
+                    packetInfo.getDestinationAddress() + ":" + packetInfo.destinationPort + " }");
         }
     }
 }
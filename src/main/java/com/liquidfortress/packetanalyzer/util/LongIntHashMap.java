@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import java.util.Arrays;
+
+/**
+ * LongIntHashMap
+ * <p/>
+ * Map from long keys to int counts in open-addressing arrays with linear
+ * probing.  A count of zero marks an empty slot, so keys are removed as soon
+ * as their count drops to zero; removal shifts later entries back instead of
+ * leaving tombstones.
+ */
+public class LongIntHashMap {
+    private static final int INITIAL_CAPACITY = 8; // slots; always a power of two
+    private static final int MAX_LOAD_PERCENT = 60;
+
+    /**
+     * EntryConsumer
+     * <p/>
+     * Receives the keys of a map with their counts
+     */
+    public interface EntryConsumer {
+        void accept(long key, int count);
+    }
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public int get(long key) {
+        int mask = keys.length - 1;
+        int slot = LongHashSet.mix(key) & mask;
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    // add one to the key's count and return the new count
+    public int increment(long key) {
+        int mask = keys.length - 1;
+        int slot = LongHashSet.mix(key) & mask;
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                return ++counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        counts[slot] = 1;
+        size++;
+        if (size * 100 > keys.length * MAX_LOAD_PERCENT) {
+            grow();
+        }
+        return 1;
+    }
+
+    // subtract one from the key's count and return the new count; the key is removed at zero
+    public int decrement(long key) {
+        int mask = keys.length - 1;
+        int slot = LongHashSet.mix(key) & mask;
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                int count = --counts[slot];
+                if (count == 0) {
+                    size--;
+                    shiftBack(slot);
+                }
+                return count;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] != 0) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    // close the gap at the emptied slot so later probes still find their keys
+    private void shiftBack(int gap) {
+        int mask = keys.length - 1;
+        int slot = (gap + 1) & mask;
+        while (counts[slot] != 0) {
+            int home = LongHashSet.mix(keys[slot]) & mask;
+            // move the entry unless its home lies cyclically in (gap, slot]
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                counts[gap] = counts[slot];
+                counts[slot] = 0;
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                int slot = LongHashSet.mix(oldKeys[i]) & mask;
+                while (counts[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.util;
+
+/**
+ * LongPairHashSet
+ * <p/>
+ * Set of 128-bit values, each held as a high and a low long, in a single
+ * open-addressing array with linear probing; slot i uses elements 2i and
+ * 2i + 1.  The all-zero value marks an empty slot, so it is tracked by a
+ * separate flag.
+ */
+public class LongPairHashSet {
+    private static final int INITIAL_CAPACITY = 16; // slots; always a power of two
+    private static final int MAX_LOAD_PERCENT = 60;
+
+    /**
+     * LongPairConsumer
+     * <p/>
+     * Receives each value of the set
+     */
+    @FunctionalInterface
+    public interface LongPairConsumer {
+        void accept(long high, long low);
+    }
+
+    private long[] slots = new long[2 * INITIAL_CAPACITY];
+    private int size = 0; // values in slots, not counting zero
+    private boolean containsZero = false;
+
+    public int size() {
+        return size + (containsZero ? 1 : 0);
+    }
+
+    public boolean add(long high, long low) {
+        if ((high == 0) && (low == 0)) {
+            boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+        int mask = (slots.length / 2) - 1;
+        int slot = mix(high, low) & mask;
+        while ((slots[2 * slot] != 0) || (slots[2 * slot + 1] != 0)) {
+            if ((slots[2 * slot] == high) && (slots[2 * slot + 1] == low)) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[2 * slot] = high;
+        slots[2 * slot + 1] = low;
+        size++;
+        if (size * 100 > (slots.length / 2) * MAX_LOAD_PERCENT) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(long high, long low) {
+        if ((high == 0) && (low == 0)) {
+            return containsZero;
+        }
+        int mask = (slots.length / 2) - 1;
+        int slot = mix(high, low) & mask;
+        while ((slots[2 * slot] != 0) || (slots[2 * slot + 1] != 0)) {
+            if ((slots[2 * slot] == high) && (slots[2 * slot + 1] == low)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public void forEach(LongPairConsumer consumer) {
+        if (containsZero) {
+            consumer.accept(0, 0);
+        }
+        for (int i = 0; i < slots.length; i += 2) {
+            if ((slots[i] != 0) || (slots[i + 1] != 0)) {
+                consumer.accept(slots[i], slots[i + 1]);
+            }
+        }
+    }
+
+    public void addAll(LongPairHashSet other) {
+        other.forEach(this::add);
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        size = 0;
+        for (int i = 0; i < old.length; i += 2) {
+            if ((old[i] != 0) || (old[i + 1] != 0)) {
+                add(old[i], old[i + 1]);
+            }
+        }
+    }
+
+    static int mix(long high, long low) {
+        long hash = (high * 0x9e3779b97f4a7c15L) ^ low;
+        hash *= 0xc2b2ae3d27d4eb4fL;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+/**
+ * LongPairIntHashSet
+ * <p/>
+ * Set of (long, long, int) values, such as an IPv6 address with a port, in
+ * a single open-addressing array with linear probing; slot i uses elements
+ * 3i to 3i + 2.  The int is stored with bit 32 set, so a used slot is never
+ * all zero and no value needs a separate flag.
+ */
+public class LongPairIntHashSet {
+    private static final int INITIAL_CAPACITY = 16; // slots; always a power of two
+    private static final int MAX_LOAD_PERCENT = 60;
+    private static final long USED = 1L << 32;
+
+    /**
+     * LongPairIntConsumer
+     * <p/>
+     * Receives each value of the set
+     */
+    @FunctionalInterface
+    public interface LongPairIntConsumer {
+        void accept(long high, long low, int value);
+    }
+
+    private long[] slots = new long[3 * INITIAL_CAPACITY];
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean add(long high, long low, int value) {
+        long tagged = USED | (value & 0xffffffffL);
+        int mask = (slots.length / 3) - 1;
+        int slot = mix(high, low, value) & mask;
+        while (slots[3 * slot + 2] != 0) {
+            if ((slots[3 * slot] == high) && (slots[3 * slot + 1] == low) && (slots[3 * slot + 2] == tagged)) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[3 * slot] = high;
+        slots[3 * slot + 1] = low;
+        slots[3 * slot + 2] = tagged;
+        size++;
+        if (size * 100 > (slots.length / 3) * MAX_LOAD_PERCENT) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(long high, long low, int value) {
+        long tagged = USED | (value & 0xffffffffL);
+        int mask = (slots.length / 3) - 1;
+        int slot = mix(high, low, value) & mask;
+        while (slots[3 * slot + 2] != 0) {
+            if ((slots[3 * slot] == high) && (slots[3 * slot + 1] == low) && (slots[3 * slot + 2] == tagged)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public void forEach(LongPairIntConsumer consumer) {
+        for (int i = 0; i < slots.length; i += 3) {
+            if (slots[i + 2] != 0) {
+                consumer.accept(slots[i], slots[i + 1], (int) slots[i + 2]);
+            }
+        }
+    }
+
+    public void addAll(LongPairIntHashSet other) {
+        other.forEach(this::add);
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        size = 0;
+        for (int i = 0; i < old.length; i += 3) {
+            if (old[i + 2] != 0) {
+                add(old[i], old[i + 1], (int) old[i + 2]);
+            }
+        }
+    }
+
+    static int mix(long high, long low, int value) {
+        long hash = (((high * 0x9e3779b97f4a7c15L) ^ low) * 0xc2b2ae3d27d4eb4fL) ^ value;
+        hash *= 0x9e3779b97f4a7c15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
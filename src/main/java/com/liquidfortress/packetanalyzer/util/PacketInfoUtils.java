@@ -22,7 +22,10 @@ package com.liquidfortress.packetanalyzer.util;
 
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.LinkedHashSet;
 
 /**
@@ -32,23 +35,81 @@ import java.util.LinkedHashSet;
  */
 public class PacketInfoUtils {
 
+    // convert a capture time in nanoseconds since the epoch to a Timestamp
+    public static Timestamp toTimestamp(long timestampNanos) {
+        Timestamp timestamp = new Timestamp(Math.floorDiv(timestampNanos, 1000000000L) * 1000L);
+        timestamp.setNanos((int) Math.floorMod(timestampNanos, 1000000000L));
+        return timestamp;
+    }
+
+    // convert a capture time in nanoseconds since the epoch to an Instant
+    public static Instant toInstant(long timestampNanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(timestampNanos, 1000000000L), Math.floorMod(timestampNanos, 1000000000L));
+    }
+
+    // pack up to eight address bytes (a MAC or IPv4 address, or half of an IPv6 address) into a long
+    public static long toLong(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    // the bytes of an IPv4 or IPv6 address literal; anything else is rejected before it can cause a name lookup
+    public static byte[] parseIpAddress(String address) {
+        if (address.isEmpty() || !address.matches("[0-9a-fA-F:.]+")) {
+            throw new IllegalArgumentException(address + " is not an IP address");
+        }
+        try {
+            return InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(address + " is not an IP address");
+        }
+    }
+
+    // format a MAC address held in the low 48 bits of a long as colon separated hex
+    public static String formatMacAddress(long address) {
+        StringBuilder builder = new StringBuilder(17);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            int octet = (int) ((address >>> shift) & 0xff);
+            if (shift < 40) {
+                builder.append(':');
+            }
+            builder.append(Character.forDigit(octet >>> 4, 16)).append(Character.forDigit(octet & 0x0f, 16));
+        }
+        return builder.toString();
+    }
+
+    // format an IPv4 address held in an int as dotted decimal
+    public static String formatIpv4Address(int address) {
+        return ((address >>> 24) & 0xff) + "." + ((address >>> 16) & 0xff) + "." +
+                ((address >>> 8) & 0xff) + "." + (address & 0xff);
+    }
+
+    // format an IPv6 address held in two longs the same way Inet6Address.getHostAddress() does
+    public static String formatIpv6Address(long high, long low) {
+        StringBuilder builder = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            long half = (i < 4) ? high : low;
+            int group = (int) ((half >>> (48 - 16 * (i % 4))) & 0xffff);
+            if (i > 0) {
+                builder.append(':');
+            }
+            builder.append(Integer.toHexString(group));
+        }
+        return builder.toString();
+    }
+
     // get the earliest PacketInfo in the set based on timestamp
     public static PacketInfo getEarliest(LinkedHashSet<PacketInfo> packetInfos) {
         if ((packetInfos == null) || (packetInfos.isEmpty())) {
             throw new IllegalArgumentException("Cannot get earliest of null or empty PacketInfo set!");
         }
         PacketInfo earliest = null;
-        Timestamp earliestTimestamp = null;
         for (PacketInfo current : packetInfos) {
-            if (earliest == null) {
+            if ((earliest == null) || (current.timestampNanos < earliest.timestampNanos)) {
                 earliest = current;
-                earliestTimestamp = Timestamp.valueOf(current.get(PacketInfo.TIMESTAMP));
-            } else {
-                Timestamp currentTimestamp = Timestamp.valueOf(current.get(PacketInfo.TIMESTAMP));
-                if (currentTimestamp.before(earliestTimestamp)) {
-                    earliest = current;
-                    earliestTimestamp = currentTimestamp;
-                }
             }
         }
         return earliest;
@@ -60,17 +121,9 @@ public class PacketInfoUtils {
             throw new IllegalArgumentException("Cannot get latest of null or empty PacketInfo set!");
         }
         PacketInfo latest = null;
-        Timestamp latestTimestamp = null;
         for (PacketInfo current : packetInfos) {
-            if (latest == null) {
+            if ((latest == null) || (current.timestampNanos > latest.timestampNanos)) {
                 latest = current;
-                latestTimestamp = Timestamp.valueOf(current.get(PacketInfo.TIMESTAMP));
-            } else {
-                Timestamp currentTimestamp = Timestamp.valueOf(current.get(PacketInfo.TIMESTAMP));
-                if (currentTimestamp.after(latestTimestamp)) {
-                    latest = current;
-                    latestTimestamp = currentTimestamp;
-                }
             }
         }
         return latest;
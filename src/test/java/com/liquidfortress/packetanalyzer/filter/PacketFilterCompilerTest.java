@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.filter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PacketFilterCompilerTest
+ * <p/>
+ * Tests for PacketFilterCompiler
+ */
+public class PacketFilterCompilerTest {
+
+    // Ethernet + IPv4 + TCP from 10.0.0.1:40000 to 192.168.1.10:80
+    private static ByteBuffer tcpFrame() {
+        ByteBuffer frame = ByteBuffer.allocate(14 + 20 + 20);
+        frame.put(new byte[12]).putShort((short) 0x0800);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) 40).putShort((short) 0).putShort((short) 0)
+                .put((byte) 64).put((byte) 6).putShort((short) 0)
+                .put(new byte[]{10, 0, 0, 1}).put(new byte[]{(byte) 192, (byte) 168, 1, 10});
+        frame.putShort((short) 40000).putShort((short) 80).put(new byte[16]);
+        frame.flip();
+        return frame;
+    }
+
+    private static boolean matches(String expression) {
+        return PacketFilterCompiler.compile(expression).test(tcpFrame());
+    }
+
+    @Test
+    public void termsTest() {
+        Assert.assertTrue(matches("ip"));
+        Assert.assertFalse(matches("ip6"));
+        Assert.assertTrue(matches("tcp port 80"));
+        Assert.assertFalse(matches("udp port 80"));
+        Assert.assertTrue(matches("src port 40000 and dst port 80"));
+        Assert.assertFalse(matches("src port 80"));
+        Assert.assertTrue(matches("dst portrange 1-1023"));
+        Assert.assertTrue(matches("src host 10.0.0.1"));
+        Assert.assertTrue(matches("dst net 192.168.0.0/16"));
+        Assert.assertFalse(matches("net 172.16.0.0/12"));
+        Assert.assertTrue(matches("net 0.0.0.0/0"));
+        Assert.assertTrue(matches("proto 6 && ether proto 0x0800"));
+    }
+
+    @Test
+    public void operatorsTest() {
+        Assert.assertTrue(matches("not udp"));
+        Assert.assertTrue(matches("udp or (tcp and !port 22)"));
+        Assert.assertFalse(matches("icmp or arp or host 10.0.0.2"));
+    }
+
+    @Test
+    public void fragmentHasNoPortsTest() {
+        ByteBuffer frame = tcpFrame();
+        frame.putShort(20, (short) 0x0010); // fragment offset 16
+        Assert.assertFalse(PacketFilterCompiler.compile("port 80").test(frame));
+        Assert.assertTrue(PacketFilterCompiler.compile("tcp").test(frame));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unbalancedParenthesesTest() {
+        PacketFilterCompiler.compile("(tcp or udp");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hostNameTest() {
+        PacketFilterCompiler.compile("host example.com");
+    }
+}
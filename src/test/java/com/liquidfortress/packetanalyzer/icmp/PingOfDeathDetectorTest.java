@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.icmp;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.logging.LoggerFactory;
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * PingOfDeathDetectorTest
+ * <p/>
+ * Tests for PingOfDeathDetector
+ */
+public class PingOfDeathDetectorTest {
+
+    @BeforeClass
+    public static void setUpLogger() {
+        Main.log = LoggerFactory.getLogger(new ValidatedArgs());
+    }
+
+    private static PacketInfo ping(int source, int destination, int length, long timestampNanos) {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.timestampNanos = timestampNanos;
+        packetInfo.ipVersion = PacketInfo.IPV4;
+        packetInfo.ipProtocol = 1;
+        packetInfo.sourceIpv4 = source;
+        packetInfo.destinationIpv4 = destination;
+        packetInfo.transportLength = length;
+        return packetInfo;
+    }
+
+    // oversized pings open an attack on their target, which a normal ping to it closes
+    @Test
+    public void pingOfDeathTest() {
+        PingOfDeathDetector detector = new PingOfDeathDetector(10);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        Assert.assertFalse(detector.detect(pcapFileSummary, ping(0x0a000001, 0xc0a80101, 64, 1)));
+        Assert.assertTrue(detector.detect(pcapFileSummary, ping(0x0a000001, 0xc0a80101, 70000, 2)));
+        Assert.assertTrue(detector.detect(pcapFileSummary, ping(0x0a000002, 0xc0a80101, 70000, 3)));
+        Assert.assertFalse(detector.detect(pcapFileSummary, ping(0x0a000001, 0xc0a80102, 64, 4))); // another target
+        Assert.assertEquals(0, pcapFileSummary.attackSummaries.size());
+        Assert.assertFalse(detector.detect(pcapFileSummary, ping(0x0a000003, 0xc0a80101, 64, 5)));
+        Assert.assertEquals(1, pcapFileSummary.attackSummaries.size());
+        AttackSummary attackSummary = pcapFileSummary.attackSummaries.getFirst();
+        Assert.assertEquals("PING OF DEATH", attackSummary.getAttackName());
+        Assert.assertEquals(2, attackSummary.getSourceIpAndPorts().size());
+        Assert.assertTrue(attackSummary.getTargetIpAndPorts().contains("192.168.1.1"));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.icmp;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.logging.LoggerFactory;
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * SmurfDetectorTest
+ * <p/>
+ * Tests for SmurfDetector
+ */
+public class SmurfDetectorTest {
+    private static final long MILLISECOND = 1000000L;
+
+    @BeforeClass
+    public static void setUpLogger() {
+        Main.log = LoggerFactory.getLogger(new ValidatedArgs());
+    }
+
+    private static PacketInfo echoReply(int source, int destination, long timestampNanos) {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.timestampNanos = timestampNanos;
+        packetInfo.ipVersion = PacketInfo.IPV4;
+        packetInfo.ipProtocol = 1;
+        packetInfo.sourceIpv4 = source;
+        packetInfo.destinationIpv4 = destination;
+        return packetInfo;
+    }
+
+    // replies from many hosts to one target are a smurf attack, many replies from one host are not
+    @Test
+    public void smurfTest() {
+        SmurfDetector detector = new SmurfDetector(10);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        long time = 0;
+        for (int i = 0; i < 100; i++) {
+            time += MILLISECOND;
+            detector.add(echoReply(0x0a000000 + i, 0xc0a80101, time), pcapFileSummary);
+            detector.add(echoReply(0x0a000001, 0xc0a80102, time), pcapFileSummary);
+        }
+        detector.closeAll(time, pcapFileSummary);
+        Assert.assertEquals(1, pcapFileSummary.attackSummaries.size());
+        Assert.assertEquals("SMURF ATTACK", pcapFileSummary.attackSummaries.getFirst().getAttackName());
+        Assert.assertTrue(pcapFileSummary.attackSummaries.getFirst().getTargetIpAndPorts().contains("192.168.1.1"));
+    }
+
+    // replies to many destinations, as with spoofed sources, are dropped once they expire
+    @Test
+    public void purgeTest() {
+        SmurfDetector detector = new SmurfDetector(10);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        long time = 0;
+        for (int i = 1; i <= 1000; i++) {
+            time += MILLISECOND / 10;
+            detector.add(echoReply(0x0a000001, 0xc0a80000 + i, time), pcapFileSummary);
+        }
+        Assert.assertEquals(1000, detector.targetCount());
+        // two lookback windows later only the latest target is left
+        for (int i = 0; i < 2; i++) {
+            time += 1200 * MILLISECOND;
+            detector.add(echoReply(0x0a000001, 0x0a090909, time), pcapFileSummary);
+        }
+        Assert.assertEquals(1, detector.targetCount());
+        Assert.assertEquals(0, pcapFileSummary.attackSummaries.size());
+    }
+}
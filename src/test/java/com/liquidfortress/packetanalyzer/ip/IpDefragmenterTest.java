@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.ip;
+
+import com.liquidfortress.packetanalyzer.pcap_file.FrameDecoder;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * IpDefragmenterTest
+ * <p/>
+ * Tests for IpDefragmenter
+ */
+public class IpDefragmenterTest {
+    private static final long SECOND = 1000000000L;
+
+    // Ethernet + IPv4 fragment of an ICMP datagram whose payload byte i is (byte) i
+    private static ByteBuffer fragment(int source, int identification, int offset, int length, boolean more) {
+        ByteBuffer frame = ByteBuffer.allocate(14 + 20 + length);
+        frame.put(new byte[12]).putShort((short) 0x0800);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) (20 + length)).putShort((short) identification)
+                .putShort((short) ((more ? 0x2000 : 0) | (offset / 8)))
+                .put((byte) 64).put((byte) 1).putShort((short) 0)
+                .putInt(source).putInt(0x0a000001);
+        for (int i = 0; i < length; i++) {
+            frame.put((byte) (offset + i));
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static ByteBuffer add(IpDefragmenter defragmenter, ByteBuffer frame, long timestampNanos) {
+        PacketInfo packetInfo = new PacketInfo();
+        FrameDecoder.decode(frame, packetInfo);
+        packetInfo.timestampNanos = timestampNanos;
+        return defragmenter.addFragment(frame, packetInfo);
+    }
+
+    @Test
+    public void outOfOrderTest() {
+        IpDefragmenter defragmenter = new IpDefragmenter();
+        // the same identification from another source is another datagram
+        Assert.assertNull(add(defragmenter, fragment(0x0a000003, 7, 0, 1480, true), 0));
+        Assert.assertNull(add(defragmenter, fragment(0x0a000002, 7, 2960, 100, false), 0));
+        Assert.assertNull(add(defragmenter, fragment(0x0a000002, 7, 0, 1480, true), 0));
+        ByteBuffer datagram = add(defragmenter, fragment(0x0a000002, 7, 1480, 1480, true), 0);
+        Assert.assertNotNull(datagram);
+        PacketInfo packetInfo = new PacketInfo();
+        Assert.assertTrue(FrameDecoder.decodeIpv4(datagram, 0, datagram.limit(), packetInfo));
+        Assert.assertFalse(packetInfo.hasFlag(PacketInfo.MORE_FRAGMENTS));
+        Assert.assertEquals(0, packetInfo.fragmentOffset);
+        Assert.assertEquals(3060, packetInfo.transportLength);
+        for (int i = 0; i < 3060; i++) {
+            Assert.assertEquals((byte) i, datagram.get(20 + i));
+        }
+        Assert.assertEquals(1, defragmenter.getReassembledCount());
+        Assert.assertEquals(1, defragmenter.getIncompleteCount());
+    }
+
+    @Test
+    public void oversizedTest() {
+        IpDefragmenter defragmenter = new IpDefragmenter();
+        for (int offset = 0; offset < 66000; offset += 1480) {
+            ByteBuffer datagram = add(defragmenter, fragment(0x0a000002, 1, offset, 1480, offset + 1480 < 66000), 0);
+            if (datagram != null) {
+                PacketInfo packetInfo = new PacketInfo();
+                Assert.assertTrue(FrameDecoder.decodeIpv4(datagram, 0, datagram.limit(), packetInfo));
+                Assert.assertTrue(packetInfo.transportLength > 65535);
+            }
+        }
+        Assert.assertEquals(1, defragmenter.getReassembledCount());
+    }
+
+    @Test
+    public void timeoutAndMemoryTest() {
+        IpDefragmenter defragmenter = new IpDefragmenter(10 * SECOND, 64 * 1024);
+        Assert.assertNull(add(defragmenter, fragment(0x0a000002, 1, 0, 1480, true), 0));
+        Assert.assertNull(add(defragmenter, fragment(0x0a000002, 2, 0, 1480, true), 5 * SECOND));
+        // the first datagram times out before its last fragment arrives
+        Assert.assertNull(add(defragmenter, fragment(0x0a000002, 1, 1480, 100, false), 11 * SECOND));
+        Assert.assertEquals(1, defragmenter.getTimedOutCount());
+        // many incomplete datagrams stay under the memory limit
+        for (int identification = 100; identification < 200; identification++) {
+            add(defragmenter, fragment(0x0a000002, identification, 0, 1480, true), 12 * SECOND);
+            Assert.assertTrue(defragmenter.getMemory() <= 64 * 1024);
+        }
+        Assert.assertTrue(defragmenter.getEvictedCount() > 0);
+        Assert.assertEquals(0, defragmenter.getReassembledCount());
+    }
+}
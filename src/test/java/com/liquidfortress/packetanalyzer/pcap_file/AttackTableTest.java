@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.logging.LoggerFactory;
+import com.liquidfortress.packetanalyzer.main.Main;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * AttackTableTest
+ * <p/>
+ * Tests for AttackTable
+ */
+public class AttackTableTest {
+
+    @BeforeClass
+    public static void setUpLogger() {
+        Main.log = LoggerFactory.getLogger(new ValidatedArgs());
+    }
+
+    @Test
+    public void openAndCloseTest() {
+        AttackTable<Integer, String> attacks = new AttackTable<>(100);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        for (int i = 0; i < 50; i++) {
+            Assert.assertNotNull(attacks.open(i, "state" + i, "ATTACK " + i, "start"));
+        }
+        Assert.assertEquals(50, attacks.size());
+        // close every other incident; the rest must still be found
+        for (int i = 0; i < 50; i += 2) {
+            attacks.close(i, "end", pcapFileSummary);
+        }
+        Assert.assertEquals(25, attacks.size());
+        Assert.assertEquals(25, pcapFileSummary.attackSummaries.size());
+        for (int i = 0; i < 50; i++) {
+            AttackSummary attackSummary = attacks.get(i);
+            if (i % 2 == 0) {
+                Assert.assertNull(attackSummary);
+            } else {
+                Assert.assertEquals("ATTACK " + i, attackSummary.getAttackName());
+            }
+        }
+    }
+
+    @Test
+    public void maxIncidentsTest() {
+        AttackTable<Integer, String> attacks = new AttackTable<>(2);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        Assert.assertNotNull(attacks.open(1, null, "ATTACK", "start"));
+        Assert.assertNotNull(attacks.open(2, null, "ATTACK", "start"));
+        Assert.assertNull(attacks.open(3, null, "ATTACK", "start"));
+        Assert.assertNull(attacks.open(3, null, "ATTACK", "start"));
+        Assert.assertEquals(1, attacks.getDroppedCount());
+        // once forgotten, the key counts again
+        attacks.forget(3);
+        Assert.assertNull(attacks.open(3, null, "ATTACK", "start"));
+        Assert.assertEquals(2, attacks.getDroppedCount());
+        attacks.close(1, "end", pcapFileSummary);
+        Assert.assertNotNull(attacks.open(3, null, "ATTACK", "start"));
+        attacks.closeAll("end", pcapFileSummary);
+        Assert.assertEquals(2, pcapFileSummary.droppedAttackCount);
+        Assert.assertEquals(0, attacks.getDroppedCount());
+    }
+
+    @Test
+    public void sweepTest() {
+        AttackTable<Integer, String> attacks = new AttackTable<>(100);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        for (int i = 0; i < 10; i++) {
+            attacks.open(i, (i < 5) ? "over" : "ongoing", "ATTACK " + i, "start");
+        }
+        AttackTable.IncidentVisitor<Integer, String> visitor = (key, state, attackSummary) -> {
+            if (!"over".equals(state)) {
+                return false;
+            }
+            attackSummary.setEndTimestamp("end " + key);
+            return true;
+        };
+        // each sweep checks two incidents, so ten sweeps visit every incident
+        for (int i = 0; i < 10; i++) {
+            attacks.sweep(pcapFileSummary, visitor);
+        }
+        Assert.assertEquals(5, attacks.size());
+        Assert.assertEquals(5, pcapFileSummary.attackSummaries.size());
+        for (AttackSummary attackSummary : pcapFileSummary.attackSummaries) {
+            Assert.assertEquals("end " + attackSummary.getAttackName().substring(7), attackSummary.getEndTimestamp());
+        }
+    }
+
+    @Test
+    public void closeAllTest() {
+        AttackTable<String, String> attacks = new AttackTable<>(100);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        attacks.open("c", null, "C", "start");
+        attacks.open("a", null, "A", "start");
+        attacks.open("b", null, "B", "start").setEndTimestamp("earlier");
+        attacks.close("a", "end", pcapFileSummary);
+        attacks.open("d", null, "D", "start");
+        attacks.closeAll("last", pcapFileSummary);
+        Assert.assertEquals(0, attacks.size());
+        Assert.assertNull(attacks.get("c"));
+        // closed incidents first, then the open ones in the order they were opened
+        String[] names = {"A", "C", "B", "D"};
+        String[] ends = {"end", "last", "earlier", "last"};
+        for (int i = 0; i < names.length; i++) {
+            Assert.assertEquals(names[i], pcapFileSummary.attackSummaries.get(i).getAttackName());
+            Assert.assertEquals(ends[i], pcapFileSummary.attackSummaries.get(i).getEndTimestamp());
+        }
+    }
+}
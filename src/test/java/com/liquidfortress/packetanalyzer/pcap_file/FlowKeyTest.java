@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * FlowKeyTest
+ * <p/>
+ * Tests for FlowKey
+ */
+public class FlowKeyTest {
+
+    private static PacketInfo ipv4Packet(int source, int sourcePort, int destination, int destinationPort) {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.ipVersion = PacketInfo.IPV4;
+        packetInfo.ipProtocol = (byte) FrameDecoder.PROTOCOL_TCP;
+        packetInfo.sourceIpv4 = source;
+        packetInfo.sourcePort = sourcePort;
+        packetInfo.destinationIpv4 = destination;
+        packetInfo.destinationPort = destinationPort;
+        return packetInfo;
+    }
+
+    @Test
+    public void directionTest() {
+        FlowKey forward = new FlowKey().setFlow(ipv4Packet(0xcdfbf267, 443, 0xb0206259, 22));
+        FlowKey reverse = new FlowKey().setFlow(ipv4Packet(0xb0206259, 22, 0xcdfbf267, 443));
+        Assert.assertEquals(forward, reverse);
+        Assert.assertEquals(forward.hashCode(), reverse.hashCode());
+        Assert.assertEquals(forward, reverse.copy());
+        // same addresses, one port differs
+        Assert.assertNotEquals(forward, new FlowKey().setFlow(ipv4Packet(0xcdfbf267, 443, 0xb0206259, 23)));
+        // same host, ports swapped between the endpoints
+        Assert.assertNotEquals(new FlowKey().setFlow(ipv4Packet(1, 80, 1, 81)), new FlowKey().setFlow(ipv4Packet(1, 81, 1, 82)));
+        Assert.assertEquals(new FlowKey().setFlow(ipv4Packet(1, 80, 1, 81)), new FlowKey().setFlow(ipv4Packet(1, 81, 1, 80)));
+    }
+
+    @Test
+    public void hostPairTest() {
+        FlowKey probe = new FlowKey();
+        FlowKey stored = probe.setHostPair(ipv4Packet(0x0a000001, 40000, 0x0a000002, 23)).copy();
+        Assert.assertEquals(stored, probe.setHostPair(ipv4Packet(0x0a000002, 23, 0x0a000001, 40001)));
+        Assert.assertNotEquals(stored, probe.setFlow(ipv4Packet(0x0a000002, 23, 0x0a000001, 40000)));
+        PacketInfo ipv6 = new PacketInfo();
+        ipv6.ipVersion = PacketInfo.IPV6;
+        ipv6.sourceIpv6Low = 0xffff0a000001L; // ::ffff:10.0.0.1 is the IPv4-mapped form of 10.0.0.1
+        ipv6.destinationIpv6Low = 0xffff0a000002L;
+        Assert.assertEquals(stored, probe.setHostPair(ipv6));
+    }
+
+    @Test
+    public void singleAddressTest() {
+        FlowKey probe = new FlowKey();
+        FlowKey target = probe.setDestination(ipv4Packet(0x0a000001, 40000, 0x0a000002, 23)).copy();
+        Assert.assertEquals(target, probe.setSource(ipv4Packet(0x0a000002, 23, 0x0a000003, 80)));
+        Assert.assertEquals(target.hashCode(), probe.hashCode());
+        Assert.assertNotEquals(target, probe.setDestination(ipv4Packet(0x0a000002, 23, 0x0a000001, 40000)));
+        Assert.assertEquals("10.0.0.2", target.getAddress(false));
+    }
+}
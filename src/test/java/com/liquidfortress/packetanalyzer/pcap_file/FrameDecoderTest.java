@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FrameDecoderTest
+ * <p/>
+ * Tests for FrameDecoder
+ */
+public class FrameDecoderTest {
+
+    // Ethernet + IPv4 + TCP SYN with 3 payload bytes, followed by 2 bytes of Ethernet padding
+    private static ByteBuffer tcpFrame() {
+        ByteBuffer frame = ByteBuffer.allocate(14 + 20 + 20 + 3 + 2);
+        frame.put(new byte[]{0, 1, 2, 3, 4, 5}).put(new byte[]{6, 7, 8, 9, 10, 11}).putShort((short) 0x0800);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) 43).putShort((short) 0x1234).putShort((short) 0)
+                .put((byte) 64).put((byte) 6).putShort((short) 0)
+                .put(new byte[]{10, 0, 0, 1}).put(new byte[]{(byte) 192, (byte) 168, 1, 10});
+        frame.putShort((short) 40000).putShort((short) 80).putInt(0xfffffffe).putInt(0)
+                .put((byte) 0x50).put((byte) 0x02).putShort((short) 1024).putShort((short) 0).putShort((short) 0);
+        frame.put(new byte[]{'a', 'b', 'c'});
+        frame.flip();
+        return frame;
+    }
+
+    @Test
+    public void tcpFrameTest() {
+        PacketInfo packetInfo = new PacketInfo();
+        int layers = FrameDecoder.decode(tcpFrame(), packetInfo);
+        Assert.assertEquals(PacketInfo.LINK_LAYER | PacketInfo.NETWORK_LAYER | PacketInfo.TRANSPORT_LAYER, layers);
+        Assert.assertEquals(0x060708090a0bL, packetInfo.sourceMac);
+        Assert.assertEquals("10.0.0.1", packetInfo.getSourceAddress());
+        Assert.assertEquals("192.168.1.10", packetInfo.getDestinationAddress());
+        Assert.assertEquals(FrameDecoder.PROTOCOL_TCP, packetInfo.getIpProtocol());
+        Assert.assertEquals(0x1234, packetInfo.ipIdentification);
+        Assert.assertEquals(40000, packetInfo.sourcePort);
+        Assert.assertEquals(80, packetInfo.destinationPort);
+        Assert.assertEquals(0xfffffffeL, packetInfo.sequenceNumber);
+        Assert.assertTrue(packetInfo.hasFlag(PacketInfo.SYN));
+        Assert.assertFalse(packetInfo.hasFlag(PacketInfo.ACK));
+        // the padding is not part of the segment
+        Assert.assertEquals(23, packetInfo.transportLength);
+        Assert.assertEquals(54, packetInfo.payloadOffset);
+        Assert.assertEquals(3, packetInfo.payloadLength);
+    }
+
+    @Test
+    public void truncatedTcpHeaderTest() {
+        ByteBuffer frame = tcpFrame();
+        frame.limit(14 + 20 + 10);
+        frame.putShort(16, (short) 30);
+        PacketInfo packetInfo = new PacketInfo();
+        int layers = FrameDecoder.decode(frame, packetInfo);
+        Assert.assertEquals(PacketInfo.LINK_LAYER | PacketInfo.NETWORK_LAYER, layers);
+        Assert.assertEquals(10, packetInfo.transportLength);
+        Assert.assertEquals(30, packetInfo.ipLength); // the bytes on the wire, not the bytes captured
+    }
+
+    @Test
+    public void fragmentTest() {
+        ByteBuffer frame = tcpFrame();
+        frame.putShort(20, (short) 0x2000); // more fragments
+        PacketInfo packetInfo = new PacketInfo();
+        int layers = FrameDecoder.decode(frame, packetInfo);
+        Assert.assertEquals(PacketInfo.LINK_LAYER | PacketInfo.NETWORK_LAYER, layers);
+        Assert.assertTrue(packetInfo.hasFlag(PacketInfo.MORE_FRAGMENTS));
+        Assert.assertEquals(0, packetInfo.sourcePort);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.logging.LoggerFactory;
+import com.liquidfortress.packetanalyzer.main.Main;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * MappedPcapReaderTest
+ * <p/>
+ * Tests for MappedPcapReader
+ */
+public class MappedPcapReaderTest {
+
+    @BeforeClass
+    public static void setUpLogger() {
+        Main.log = LoggerFactory.getLogger(new ValidatedArgs());
+    }
+
+    private static File writePcap(ByteOrder byteOrder, int magic, boolean truncateLast) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(byteOrder);
+        buffer.putInt(magic).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        // record 1: 3 bytes
+        buffer.putInt(1500000000).putInt(250).putInt(3).putInt(60);
+        buffer.put(new byte[]{1, 2, 3});
+        // record 2: 2 bytes
+        buffer.putInt(1500000001).putInt(7).putInt(2).putInt(2);
+        buffer.put(new byte[]{4, 5});
+        if (truncateLast) {
+            buffer.putInt(1500000002).putInt(0).putInt(100).putInt(100);
+            buffer.put(new byte[]{6});
+        }
+        File file = File.createTempFile("lfpa", ".pcap");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(buffer.array(), 0, buffer.position());
+        }
+        return file;
+    }
+
+    @Test
+    public void littleEndianMicrosecondsTest() throws IOException {
+        File file = writePcap(ByteOrder.LITTLE_ENDIAN, MappedPcapReader.MAGIC_MICROSECONDS, false);
+        try (MappedPcapReader reader = new MappedPcapReader(file)) {
+            Assert.assertEquals(1, reader.getLinkType());
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(1500000000000250000L, reader.getTimestampNanos());
+            Assert.assertEquals(3, reader.getCapturedLength());
+            Assert.assertEquals(60, reader.getOriginalLength());
+            ByteBuffer data = reader.getPacketData();
+            Assert.assertEquals(3, data.remaining());
+            Assert.assertEquals(3, data.get(2));
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(5, reader.getPacketData().get(1));
+            Assert.assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void bigEndianNanosecondsTest() throws IOException {
+        File file = writePcap(ByteOrder.BIG_ENDIAN, MappedPcapReader.MAGIC_NANOSECONDS, true);
+        try (MappedPcapReader reader = new MappedPcapReader(file)) {
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(1500000000000000250L, reader.getTimestampNanos());
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(1500000001000000007L, reader.getTimestampNanos());
+            // the truncated last record is skipped
+            Assert.assertFalse(reader.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void notAPcapFileTest() throws IOException {
+        File file = writePcap(ByteOrder.LITTLE_ENDIAN, 0x12345678, false);
+        new MappedPcapReader(file).close();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PacketRingTest
+ * <p/>
+ * Tests for PacketRing
+ */
+public class PacketRingTest {
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityTest() {
+        new PacketRing(6, 1);
+    }
+
+    @Test
+    public void emptyRingTest() throws InterruptedException {
+        PacketRing ring = new PacketRing(4, 1);
+        AtomicInteger available = new AtomicInteger();
+        Thread consumer = new Thread(() -> available.set(ring.available(1)));
+        consumer.start();
+        // nothing published yet, so the stage waits
+        consumer.join(100);
+        Assert.assertTrue(consumer.isAlive());
+        ring.claim().packetInfo.packetNumber = 1;
+        ring.publish();
+        consumer.join(TIMEOUT_MILLIS);
+        Assert.assertFalse(consumer.isAlive());
+        Assert.assertEquals(1, available.get());
+        Assert.assertEquals(1, ring.get(1, 0).packetInfo.packetNumber);
+    }
+
+    @Test
+    public void fullRingTest() throws InterruptedException {
+        PacketRing ring = new PacketRing(4, 1);
+        PacketRing.Slot first = ring.claim();
+        ring.publish();
+        for (int i = 1; i < 4; i++) {
+            ring.claim();
+            ring.publish();
+        }
+        PacketRing.Slot[] claimed = new PacketRing.Slot[1];
+        Thread producer = new Thread(() -> claimed[0] = ring.claim());
+        producer.start();
+        // every slot is waiting for the stage, so the producer waits
+        producer.join(100);
+        Assert.assertTrue(producer.isAlive());
+        Assert.assertEquals(4, ring.available(1));
+        ring.release(1, 1);
+        producer.join(TIMEOUT_MILLIS);
+        Assert.assertFalse(producer.isAlive());
+        Assert.assertSame(first, claimed[0]);
+    }
+
+    // the end of stream marker follows every packet through both stages, and both stages stop on it
+    @Test
+    public void drainTest() throws InterruptedException {
+        PacketRing ring = new PacketRing(8, 2);
+        ArrayList<Long> processed = new ArrayList<>();
+        Thread[] stages = new Thread[2];
+        for (int stage = 1; stage <= 2; stage++) {
+            int current = stage;
+            stages[stage - 1] = new Thread(() -> {
+                boolean running = true;
+                while (running) {
+                    int available = ring.available(current);
+                    for (int i = 0; i < available; i++) {
+                        PacketRing.Slot slot = ring.get(current, i);
+                        if (slot.endOfStream) {
+                            running = false;
+                        } else if (current == 2) {
+                            processed.add(slot.packetInfo.packetNumber);
+                        }
+                    }
+                    ring.release(current, available);
+                }
+            });
+            stages[stage - 1].start();
+        }
+        for (long packetNumber = 1; packetNumber <= 100; packetNumber++) {
+            PacketRing.Slot slot = ring.claim();
+            slot.packetInfo.reset();
+            slot.packetInfo.packetNumber = packetNumber;
+            ring.publish();
+        }
+        ring.claim().endOfStream = true;
+        ring.publish();
+        for (Thread stage : stages) {
+            stage.join(TIMEOUT_MILLIS);
+            Assert.assertFalse(stage.isAlive());
+        }
+        Assert.assertEquals(100, processed.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i + 1, (long) processed.get(i));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.logging.LoggerFactory;
+import com.liquidfortress.packetanalyzer.main.Main;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pcap4j.packet.namednumber.IpNumber;
+
+import java.util.Map;
+
+/**
+ * PcapFileSummaryTest
+ * <p/>
+ * Tests for PcapFileSummary
+ */
+public class PcapFileSummaryTest {
+
+    @BeforeClass
+    public static void setUpLogger() {
+        Main.log = LoggerFactory.getLogger(new ValidatedArgs());
+    }
+
+    @Test
+    public void mergeTest() {
+        PcapFileSummary first = new PcapFileSummary("first");
+        first.packetCount = 10;
+        first.tcpConnectionCount = 2;
+        first.uniqueIpAddresses.add("10.0.0.1");
+        first.uniqueIpAddresses.add("10.0.0.2");
+        first.udpSources.add("10.0.0.1:53");
+        first.ipProtocolCounter.increment(IpNumber.TCP);
+        first.attackSummaries.add(new AttackSummary());
+
+        PcapFileSummary second = new PcapFileSummary("second");
+        second.packetCount = 5;
+        second.nonIpPacketCount = 1;
+        second.uniqueIpAddresses.add("10.0.0.2");
+        second.uniqueIpAddresses.add("10.0.0.3");
+        second.udpSources.add("10.0.0.1:53");
+        second.ipProtocolCounter.increment(IpNumber.TCP);
+        second.ipProtocolCounter.increment(IpNumber.UDP);
+        second.attackSummaries.add(new AttackSummary());
+
+        PcapFileSummary combined = new PcapFileSummary("combined");
+        combined.merge(first);
+        combined.merge(second);
+        Assert.assertEquals(15, combined.packetCount);
+        Assert.assertEquals(1, combined.nonIpPacketCount);
+        Assert.assertEquals(2, combined.tcpConnectionCount);
+        Assert.assertEquals(3, combined.uniqueIpAddresses.size());
+        Assert.assertEquals(1, combined.udpSources.size());
+        Assert.assertEquals(2, combined.attackSummaries.size());
+        for (Map.Entry<IpNumber, Integer> entry : combined.ipProtocolCounter.entrySet()) {
+            Assert.assertEquals((entry.getKey() == IpNumber.TCP) ? 2 : 1, (int) entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * PcapFollowerTest
+ * <p/>
+ * Tests for PcapFollower
+ */
+public class PcapFollowerTest {
+
+    private static File write(File directory, String name, byte[] contents, long lastModified) throws IOException {
+        File file = new File(directory, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents);
+        }
+        file.setLastModified(lastModified);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static byte[] pcapHeader(ByteOrder byteOrder) {
+        ByteBuffer buffer = ByteBuffer.allocate(24).order(byteOrder);
+        buffer.putInt(MappedPcapReader.MAGIC_MICROSECONDS).putShort((short) 2).putShort((short) 4)
+                .putInt(0).putInt(0).putInt(65535).putInt(1);
+        return buffer.array();
+    }
+
+    @Test
+    public void capturesTest() throws IOException {
+        File directory = Files.createTempDirectory("lfpa").toFile();
+        directory.deleteOnExit();
+        File first = write(directory, "capture0", pcapHeader(ByteOrder.LITTLE_ENDIAN), 1000000);
+        write(directory, "capture0" + PcapIndex.SUFFIX, new byte[64], 2000000);
+        write(directory, "capture1.gz", new byte[]{0x1f, (byte) 0x8b, 8, 0, 0, 0}, 3000000);
+        write(directory, "README", "not a capture".getBytes("US-ASCII"), 4000000);
+        File second = write(directory, "capture2", pcapHeader(ByteOrder.BIG_ENDIAN), 5000000);
+        // the newest rotation has not got its header yet
+        File third = write(directory, "capture3", new byte[0], 6000000);
+        Assert.assertEquals(Arrays.asList(first, second, third), PcapFollower.captures(directory, new HashMap<>()));
+    }
+
+    @Test
+    public void skippedCaptureTest() throws IOException {
+        File directory = Files.createTempDirectory("lfpa").toFile();
+        directory.deleteOnExit();
+        File first = write(directory, "capture0", pcapHeader(ByteOrder.LITTLE_ENDIAN), 1000000);
+        File corrupt = write(directory, "capture1", pcapHeader(ByteOrder.LITTLE_ENDIAN), 2000000);
+        File last = write(directory, "capture2", pcapHeader(ByteOrder.LITTLE_ENDIAN), 3000000);
+        HashMap<File, Boolean> verdicts = new HashMap<>();
+        Assert.assertEquals(corrupt, PcapFollower.nextCapture(directory, first, verdicts));
+        // once a capture has been skipped, following goes on after it rather than at the newest capture
+        verdicts.put(corrupt, false);
+        Assert.assertEquals(last, PcapFollower.nextCapture(directory, corrupt, verdicts));
+        Assert.assertNull(PcapFollower.nextCapture(directory, last, verdicts));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.logging.LoggerFactory;
+import com.liquidfortress.packetanalyzer.main.Main;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * PcapIndexTest
+ * <p/>
+ * Tests for PcapIndex
+ */
+public class PcapIndexTest {
+
+    @BeforeClass
+    public static void setUpLogger() {
+        Main.log = LoggerFactory.getLogger(new ValidatedArgs());
+    }
+
+    // 10 one-byte records, two per second, starting at 1500000000 s
+    private static File writePcap() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(24 + 10 * (16 + 1)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MappedPcapReader.MAGIC_MICROSECONDS).putShort((short) 2).putShort((short) 4)
+                .putInt(0).putInt(0).putInt(65535).putInt(1);
+        for (int i = 0; i < 10; i++) {
+            buffer.putInt(1500000000 + i / 2).putInt((i % 2) * 500000).putInt(1).putInt(1).put((byte) i);
+        }
+        File file = File.createTempFile("lfpa", ".pcap");
+        file.deleteOnExit();
+        PcapIndex.sidecarOf(file).deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(buffer.array());
+        }
+        return file;
+    }
+
+    @Test
+    public void timeRangeTest() throws IOException {
+        File file = writePcap();
+        PcapIndex pcapIndex = PcapIndex.of(file);
+        Assert.assertEquals(5, pcapIndex.getEntryCount());
+        Assert.assertEquals(10, pcapIndex.getPacketCount());
+        Assert.assertTrue(PcapIndex.sidecarOf(file).isFile());
+        // the saved sidecar is read back
+        Assert.assertEquals(5, PcapIndex.of(file).getEntryCount());
+        // [1500000001.5 s, 1500000003 s) holds records 3, 4 and 5
+        try (PcapReader reader = PcapIndex.openTimeRange(file, 1500000001500000000L, 1500000003000000000L)) {
+            for (int i = 3; i <= 5; i++) {
+                Assert.assertTrue(reader.next());
+                Assert.assertEquals(i, reader.getPacketData().get(0));
+            }
+            Assert.assertFalse(reader.next());
+        }
+        // nothing after the end of the capture
+        try (PcapReader reader = PcapIndex.openTimeRange(file, 1600000000000000000L, Long.MAX_VALUE)) {
+            Assert.assertFalse(reader.next());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.logging.LoggerFactory;
+import com.liquidfortress.packetanalyzer.main.Main;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * PortScanDetectorTest
+ * <p/>
+ * Tests for PortScanDetector
+ */
+public class PortScanDetectorTest {
+    private static final long MILLISECOND = 1000000L;
+
+    @BeforeClass
+    public static void setUpLogger() {
+        Main.log = LoggerFactory.getLogger(new ValidatedArgs());
+    }
+
+    private static PacketInfo probe(int ipProtocol, int source, int sourcePort, int destination, int destinationPort,
+                                    int flags, long timestampNanos) {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.timestampNanos = timestampNanos;
+        packetInfo.ipVersion = PacketInfo.IPV4;
+        packetInfo.ipProtocol = (byte) ipProtocol;
+        packetInfo.sourceIpv4 = source;
+        packetInfo.sourcePort = sourcePort;
+        packetInfo.destinationIpv4 = destination;
+        packetInfo.destinationPort = destinationPort;
+        packetInfo.flags = flags;
+        return packetInfo;
+    }
+
+    private static PacketInfo syn(int source, int destinationPort, long timestampNanos) {
+        return probe(FrameDecoder.PROTOCOL_TCP, source, 40000, 0xc0a80101, destinationPort, PacketInfo.SYN, timestampNanos);
+    }
+
+    @Test
+    public void tcpPointsTest() {
+        Assert.assertEquals(10, PortScanDetector.tcpPoints(11));
+        Assert.assertEquals(10, PortScanDetector.tcpPoints(12));
+        Assert.assertEquals(10, PortScanDetector.tcpPoints(13));
+        Assert.assertEquals(10, PortScanDetector.tcpPoints(2000));
+        Assert.assertEquals(3, PortScanDetector.tcpPoints(22));
+        Assert.assertEquals(3, PortScanDetector.tcpPoints(1023));
+        Assert.assertEquals(1, PortScanDetector.tcpPoints(1024));
+        Assert.assertEquals(1, PortScanDetector.tcpPoints(8080));
+    }
+
+    // segments carrying an ACK are replies or established traffic, however many ports they touch
+    @Test
+    public void tcpAckTest() {
+        Assert.assertTrue(PortScanDetector.isProbe(syn(0x0a000001, 80, 0)));
+        Assert.assertFalse(PortScanDetector.isProbe(probe(FrameDecoder.PROTOCOL_TCP, 0x0a000001, 80, 0xc0a80101, 40000,
+                PacketInfo.SYN | PacketInfo.ACK, 0)));
+        PortScanDetector detector = new PortScanDetector(FrameDecoder.PROTOCOL_TCP, 10);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        long time = 0;
+        for (int port = 30000; port < 30500; port++) {
+            time += MILLISECOND;
+            detector.add(probe(FrameDecoder.PROTOCOL_TCP, 0x0a000001, 80, 0xc0a80101, port, PacketInfo.ACK, time),
+                    pcapFileSummary);
+        }
+        // the same sweep with SYNs is a scan
+        for (int port = 30000; port < 30500; port++) {
+            time += MILLISECOND;
+            detector.add(syn(0x0a000002, port, time), pcapFileSummary);
+        }
+        detector.closeAll(time, pcapFileSummary);
+        Assert.assertEquals(1, pcapFileSummary.attackSummaries.size());
+        Assert.assertTrue(pcapFileSummary.attackSummaries.getFirst().getSourceIpAndPorts().contains("10.0.0.2:40000"));
+    }
+
+    // sources that go quiet are dropped, so a long capture with many clients does not keep them all
+    @Test
+    public void purgeTest() {
+        PortScanDetector detector = new PortScanDetector(FrameDecoder.PROTOCOL_TCP, 10);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        long time = 0;
+        for (int source = 1; source <= 1000; source++) {
+            time += MILLISECOND / 10;
+            detector.add(syn(0x0a000000 + source, 80, time), pcapFileSummary);
+        }
+        Assert.assertEquals(1000, detector.sourceCount());
+        // two lookback windows later only the latest source is left
+        time += 1200 * MILLISECOND;
+        detector.add(syn(0x0b000001, 80, time), pcapFileSummary);
+        time += 1200 * MILLISECOND;
+        detector.add(syn(0x0b000001, 81, time), pcapFileSummary);
+        Assert.assertEquals(1, detector.sourceCount());
+        Assert.assertEquals(0, pcapFileSummary.attackSummaries.size());
+    }
+
+    private static PacketInfo udp(int source, int sourcePort, int destinationPort, long timestampNanos) {
+        return probe(FrameDecoder.PROTOCOL_UDP, source, sourcePort, 0xc0a80101, destinationPort, 0, timestampNanos);
+    }
+
+    // a UDP sweep paced at 50 ms per port is too slow for the TCP time range, but not for the UDP one
+    @Test
+    public void pacedUdpScanTest() {
+        PortScanDetector tcpDetector = new PortScanDetector(FrameDecoder.PROTOCOL_TCP, 10);
+        PortScanDetector udpDetector = new PortScanDetector(FrameDecoder.PROTOCOL_UDP, 10);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        int scanner = 0x0a000001;
+        long time = 0;
+        for (int port = 5000; port < 5060; port++) {
+            time += 50 * MILLISECOND;
+            tcpDetector.add(syn(scanner, port, time), pcapFileSummary);
+            udpDetector.add(udp(scanner, 40000, port, time), pcapFileSummary);
+        }
+        tcpDetector.closeAll(time, pcapFileSummary);
+        udpDetector.closeAll(time, pcapFileSummary);
+        Assert.assertEquals(1, pcapFileSummary.attackSummaries.size());
+        AttackSummary attackSummary = pcapFileSummary.attackSummaries.getFirst();
+        Assert.assertEquals("UDP PORT SCANNING", attackSummary.getAttackName());
+        Assert.assertTrue(attackSummary.getSourceIpAndPorts().contains("10.0.0.1:40000"));
+        Assert.assertTrue(attackSummary.getTargetIpAndPorts().contains("192.168.1.1:5000"));
+    }
+
+    // a DNS server answering many clients sends from port 53 to high ports; those are replies, not probes
+    @Test
+    public void udpServiceRepliesTest() {
+        Assert.assertFalse(PortScanDetector.isProbe(udp(0x08080808, 53, 40000, 0)));
+        Assert.assertTrue(PortScanDetector.isProbe(udp(0x0a000001, 40000, 53, 0)));
+        Assert.assertTrue(PortScanDetector.isProbe(udp(0x0a000001, 53, 123, 0)));
+        PortScanDetector detector = new PortScanDetector(FrameDecoder.PROTOCOL_UDP, 10);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        long time = 0;
+        for (int port = 30000; port < 30500; port++) {
+            time += MILLISECOND;
+            detector.add(udp(0x08080808, 53, port, time), pcapFileSummary);
+        }
+        detector.closeAll(time, pcapFileSummary);
+        Assert.assertEquals(0, pcapFileSummary.attackSummaries.size());
+    }
+
+    // echo and chargen are classic UDP probes
+    @Test
+    public void udpPointsTest() {
+        Assert.assertEquals(10, PortScanDetector.udpPoints(7));
+        Assert.assertEquals(10, PortScanDetector.udpPoints(19));
+        Assert.assertEquals(3, PortScanDetector.udpPoints(53));
+        Assert.assertEquals(3, PortScanDetector.udpPoints(1023));
+        Assert.assertEquals(1, PortScanDetector.udpPoints(1024));
+        // ten well-known ports score 30 points, but with echo and chargen among them 44
+        Assert.assertEquals(0, udpScan(1, 2, 3, 4, 5, 6, 8, 9, 10, 11));
+        Assert.assertEquals(1, udpScan(7, 19, 1, 2, 3, 4, 5, 6, 8, 9));
+    }
+
+    // the number of attacks found in one quick UDP probe of each port
+    private static int udpScan(int... ports) {
+        PortScanDetector detector = new PortScanDetector(FrameDecoder.PROTOCOL_UDP, 10);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        long time = 0;
+        for (int port : ports) {
+            time += MILLISECOND;
+            detector.add(udp(0x0a000001, 40000, port, time), pcapFileSummary);
+        }
+        detector.closeAll(time, pcapFileSummary);
+        return pcapFileSummary.attackSummaries.size();
+    }
+
+    // a second scanner while the table is full counts once, however many probes it sends, and again after it stops
+    @Test
+    public void droppedAttackTest() {
+        PortScanDetector detector = new PortScanDetector(FrameDecoder.PROTOCOL_TCP, 1);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        int first = 0x0a000001;
+        int second = 0x0a000002;
+        long time = 0;
+        for (int port = 1; port <= 500; port++) {
+            time += MILLISECOND;
+            detector.add(syn(first, port, time), pcapFileSummary);
+            detector.add(syn(second, port, time), pcapFileSummary);
+        }
+        // the second scanner pauses, so its score falls below the threshold, then scans again
+        for (int port = 501; port <= 1500; port++) {
+            time += MILLISECOND;
+            detector.add(syn(first, port, time), pcapFileSummary);
+        }
+        detector.add(syn(second, 1, time), pcapFileSummary);
+        for (int port = 2; port <= 500; port++) {
+            time += MILLISECOND;
+            detector.add(syn(first, 1000 + port, time), pcapFileSummary);
+            detector.add(syn(second, port, time), pcapFileSummary);
+        }
+        detector.closeAll(time, pcapFileSummary);
+        Assert.assertEquals(1, pcapFileSummary.attackSummaries.size());
+        Assert.assertEquals(2, pcapFileSummary.droppedAttackCount);
+    }
+}
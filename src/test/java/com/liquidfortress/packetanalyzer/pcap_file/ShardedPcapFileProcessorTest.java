@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.logging.LoggerFactory;
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.main.Mode;
+import com.liquidfortress.packetanalyzer.tcp.TcpConnectionTracker;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * ShardedPcapFileProcessorTest
+ * <p/>
+ * Tests for ShardedPcapFileProcessor
+ */
+public class ShardedPcapFileProcessorTest {
+    private static final int FIN = 0x01;
+    private static final int SYN = 0x02;
+    private static final int PSH = 0x08;
+    private static final int ACK = 0x10;
+    private static final int FLOWS = 24;
+
+    @BeforeClass
+    public static void setUpLogger() {
+        Main.log = LoggerFactory.getLogger(new ValidatedArgs());
+    }
+
+    private static ByteBuffer ethernet(ByteBuffer frame, int etherType) {
+        return frame.put(new byte[]{0, 1, 2, 3, 4, 5}).put(new byte[]{6, 7, 8, 9, 10, 11}).putShort((short) etherType);
+    }
+
+    private static ByteBuffer ipv4(int protocol, int source, int destination, int transportLength) {
+        ByteBuffer frame = ByteBuffer.allocate(14 + 20 + transportLength);
+        ethernet(frame, 0x0800);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) (20 + transportLength)).putShort((short) 0).putShort((short) 0)
+                .put((byte) 64).put((byte) protocol).putShort((short) 0).putInt(source).putInt(destination);
+        return frame;
+    }
+
+    private static byte[] tcp(int source, int sourcePort, int destination, int destinationPort,
+                              long sequenceNumber, long acknowledgementNumber, int flags, int payloadLength) {
+        ByteBuffer frame = ipv4(6, source, destination, 20 + payloadLength);
+        frame.putShort((short) sourcePort).putShort((short) destinationPort)
+                .putInt((int) sequenceNumber).putInt((int) acknowledgementNumber)
+                .put((byte) 0x50).put((byte) flags).putShort((short) 8192).putShort((short) 0).putShort((short) 0);
+        return frame.array();
+    }
+
+    private static byte[] udp(int source, int sourcePort, int destination, int destinationPort) {
+        ByteBuffer frame = ipv4(17, source, destination, 8 + 12);
+        frame.putShort((short) sourcePort).putShort((short) destinationPort).putShort((short) 20).putShort((short) 0);
+        return frame.array();
+    }
+
+    private static byte[] icmpEcho(int source, int destination) {
+        ByteBuffer frame = ipv4(1, source, destination, 8);
+        frame.put((byte) 8).put((byte) 0).putShort((short) 0).putShort((short) 1).putShort((short) 1);
+        return frame.array();
+    }
+
+    private static byte[] arp() {
+        ByteBuffer frame = ByteBuffer.allocate(14 + 28);
+        ethernet(frame, 0x0806);
+        return frame.array();
+    }
+
+    // the packets of one TCP flow, step by step: a handshake, some data and, unless left open, both FINs
+    private static List<byte[]> flow(int index) {
+        int client = 0x0a000000 | (index << 8) | 1; // 10.0.index.1
+        int server = 0xc0a80100 | (index % 7 + 1);  // 192.168.1.x
+        int clientPort = 40000 + index;
+        int serverPort = (index % 2 == 0) ? 80 : 443;
+        long clientSequence = 1000L * index;
+        long serverSequence = 5000000L + index;
+        List<byte[]> packets = new ArrayList<>(Arrays.asList(
+                tcp(client, clientPort, server, serverPort, clientSequence, 0, SYN, 0),
+                tcp(server, serverPort, client, clientPort, serverSequence, clientSequence + 1, SYN | ACK, 0),
+                tcp(client, clientPort, server, serverPort, clientSequence + 1, serverSequence + 1, ACK, 0),
+                tcp(client, clientPort, server, serverPort, clientSequence + 1, serverSequence + 1, PSH | ACK, 10),
+                tcp(server, serverPort, client, clientPort, serverSequence + 1, clientSequence + 11, ACK, 0)));
+        if (index % 5 != 0) {
+            packets.add(tcp(client, clientPort, server, serverPort, clientSequence + 11, serverSequence + 1, FIN | ACK, 0));
+            packets.add(tcp(server, serverPort, client, clientPort, serverSequence + 1, clientSequence + 12, FIN | ACK, 0));
+            packets.add(tcp(client, clientPort, server, serverPort, clientSequence + 12, serverSequence + 2, ACK, 0));
+        }
+        return packets;
+    }
+
+    private static File writePcap() throws IOException {
+        return writePcap(-1);
+    }
+
+    // the flows interleaved step by step, with UDP, ICMP and ARP traffic in between;
+    // a corrupt record is written before packet corruptAt, unless it is negative
+    private static File writePcap(int corruptAt) throws IOException {
+        List<List<byte[]>> flows = new ArrayList<>();
+        for (int index = 0; index < FLOWS; index++) {
+            flows.add(flow(index));
+        }
+        List<byte[]> packets = new ArrayList<>();
+        for (int step = 0; step < 8; step++) {
+            for (List<byte[]> flow : flows) {
+                if (step < flow.size()) {
+                    packets.add(flow.get(step));
+                }
+            }
+            for (int index = 0; index < 6; index++) {
+                int host = 0x0a010000 | (step << 8) | index; // 10.1.step.index
+                packets.add(udp(host, 5000 + index, 0x08080808, 53));
+                packets.add(udp(0x08080808, 53, host, 5000 + index));
+            }
+            packets.add(icmpEcho(0x0a020000 | step, 0xc0a80101));
+            packets.add(arp());
+        }
+        ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MappedPcapReader.MAGIC_MICROSECONDS).putShort((short) 2).putShort((short) 4)
+                .putInt(0).putInt(0).putInt(65535).putInt(1);
+        File file = File.createTempFile("lfpa", ".pcap");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(header.array());
+            for (int i = 0; i < packets.size(); i++) {
+                byte[] packet = packets.get(i);
+                if (i == corruptAt) {
+                    out.write(ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN)
+                            .putInt(1500000000).putInt(0).putInt(Integer.MAX_VALUE).putInt(0).array());
+                }
+                ByteBuffer recordHeader = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+                recordHeader.putInt(1500000000).putInt(i * 1000).putInt(packet.length).putInt(packet.length);
+                out.write(recordHeader.array());
+                out.write(packet);
+            }
+        }
+        return file;
+    }
+
+    private static PcapFileSummary analyze(File pcapFile, int shards) {
+        ValidatedArgs validatedArgs = new ValidatedArgs();
+        validatedArgs.mode = Mode.DETAILED_ANALYSIS;
+        validatedArgs.bufferConnections = true;
+        validatedArgs.shards = shards;
+        return ShardedPcapFileProcessor.analyzePcapFile(pcapFile, validatedArgs);
+    }
+
+    // the addresses in a toString() such as UniqueIpAddresses{a, b}, in sorted order
+    private static List<String> sortedElements(Object set) {
+        String text = set.toString();
+        List<String> elements = new ArrayList<>(Arrays.asList(text.substring(text.indexOf('{') + 1, text.lastIndexOf('}')).split(", ")));
+        Collections.sort(elements);
+        return elements;
+    }
+
+    private static List<String> connections(Stream<TcpConnectionTracker> trackers) {
+        return trackers.map(TcpConnectionTracker::toString).collect(Collectors.toList());
+    }
+
+    private static void assertSameSummaries(PcapFileSummary sequential, PcapFileSummary sharded) {
+        Assert.assertEquals(sequential.packetCount, sharded.packetCount);
+        Assert.assertEquals(sequential.nonIpPacketCount, sharded.nonIpPacketCount);
+        Assert.assertEquals(sequential.tcpConnectionCount, sharded.tcpConnectionCount);
+        Assert.assertEquals(sortedElements(sequential.uniqueIpAddresses), sortedElements(sharded.uniqueIpAddresses));
+        Assert.assertEquals(sequential.udpSources.size(), sharded.udpSources.size());
+        // closed connections are listed in the order they closed, the open ones in no particular order
+        Assert.assertEquals(connections(sequential.closedTcpConnections.stream()), connections(sharded.closedTcpConnections.stream()));
+        Assert.assertEquals(connections(sequential.expiredTcpConnections.stream()), connections(sharded.expiredTcpConnections.stream()));
+        Assert.assertEquals(connections(sequential.activeTcpConnections.values().stream().sorted(Comparator.comparing(Object::toString))),
+                connections(sharded.activeTcpConnections.values().stream().sorted(Comparator.comparing(Object::toString))));
+        Assert.assertEquals(sequential.ipProtocolCounter.toString(), sharded.ipProtocolCounter.toString());
+    }
+
+    @Test
+    public void shardedMatchesSequentialTest() throws IOException {
+        File pcapFile = writePcap();
+        PcapFileSummary sequential = analyze(pcapFile, 1);
+        PcapFileSummary sharded = analyze(pcapFile, 4);
+
+        Assert.assertEquals(FLOWS, sequential.tcpConnectionCount);
+        Assert.assertEquals(8, sharded.nonIpPacketCount);
+        Assert.assertEquals(8 * 6 + 1, sharded.udpSources.size());
+        Assert.assertTrue(sharded.udpSources.contains("8.8.8.8:53"));
+        for (int step = 0; step < 8; step++) {
+            for (int index = 0; index < 6; index++) {
+                Assert.assertTrue(sharded.udpSources.contains("10.1." + step + "." + index + ":" + (5000 + index)));
+            }
+        }
+        Assert.assertEquals(19, sequential.closedTcpConnections.size()); // every fifth flow is left open
+        Assert.assertEquals(5, sequential.activeTcpConnections.values().size());
+        assertSameSummaries(sequential, sharded);
+    }
+
+    // a corrupt record stops the reading, but what was read before it is still reported
+    @Test
+    public void corruptCaptureTest() throws IOException {
+        File pcapFile = writePcap(270);
+        PcapFileSummary sequential = analyze(pcapFile, 1);
+        PcapFileSummary sharded = analyze(pcapFile, 4);
+
+        Assert.assertEquals(270, sequential.packetCount);
+        Assert.assertTrue(sequential.closedTcpConnections.size() > 0);
+        Assert.assertTrue(sequential.uniqueIpAddresses.size() > 0);
+        assertSameSummaries(sequential, sharded);
+    }
+
+    @Test
+    public void truncatedCaptureTest() throws IOException {
+        File pcapFile = writePcap();
+        try (RandomAccessFile file = new RandomAccessFile(pcapFile, "rw")) {
+            file.setLength(file.length() - 500); // part way through the last step
+        }
+        PcapFileSummary sequential = analyze(pcapFile, 1);
+        PcapFileSummary sharded = analyze(pcapFile, 4);
+
+        Assert.assertTrue(sequential.closedTcpConnections.size() > 0);
+        assertSameSummaries(sequential, sharded);
+    }
+}
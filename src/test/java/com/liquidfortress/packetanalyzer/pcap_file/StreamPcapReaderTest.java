@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.logging.LoggerFactory;
+import com.liquidfortress.packetanalyzer.main.Main;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * StreamPcapReaderTest
+ * <p/>
+ * Tests for StreamPcapReader over compressed capture files and pipes
+ */
+public class StreamPcapReaderTest {
+
+    @BeforeClass
+    public static void setUpLogger() {
+        Main.log = LoggerFactory.getLogger(new ValidatedArgs());
+    }
+
+    private static byte[] globalHeader() {
+        ByteBuffer buffer = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MappedPcapReader.MAGIC_MICROSECONDS).putShort((short) 2).putShort((short) 4)
+                .putInt(0).putInt(0).putInt(65535).putInt(1);
+        return buffer.array();
+    }
+
+    // record i of 1000 bytes
+    private static byte[] record(int i) {
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 1000).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(1500000000 + i).putInt(0).putInt(1000).putInt(1000);
+        for (int j = 0; j < 1000; j++) {
+            buffer.put((byte) (i + j));
+        }
+        return buffer.array();
+    }
+
+    // a capture with 3 records of 1000 bytes each
+    private static byte[] pcap() {
+        ByteBuffer buffer = ByteBuffer.allocate(24 + 3 * (16 + 1000));
+        buffer.put(globalHeader());
+        for (int i = 0; i < 3; i++) {
+            buffer.put(record(i));
+        }
+        return buffer.array();
+    }
+
+    // the capture written through the given compressor
+    private static File writeCompressedPcap(Compression compression) throws IOException {
+        File file = File.createTempFile("lfpa", ".pcap." + compression.name().toLowerCase());
+        file.deleteOnExit();
+        try (OutputStream out = (compression == Compression.GZIP) ? new GZIPOutputStream(new FileOutputStream(file)) :
+                new ZstdOutputStream(new FileOutputStream(file))) {
+            out.write(pcap());
+        }
+        return file;
+    }
+
+    private static void assertRecords(File file, Compression compression) throws IOException {
+        Assert.assertEquals(compression, Compression.of(file));
+        try (PcapReader reader = PcapFileProcessor.openPcapReader(file, false)) {
+            Assert.assertTrue(reader instanceof StreamPcapReader);
+            Assert.assertEquals(1, reader.getLinkType());
+            for (int i = 0; i < 3; i++) {
+                assertRecord(reader, i);
+            }
+            Assert.assertFalse(reader.next());
+        }
+    }
+
+    private static void assertRecord(PcapReader reader, int i) throws IOException {
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals((1500000000L + i) * 1000000000L, reader.getTimestampNanos());
+        ByteBuffer data = reader.getPacketData();
+        Assert.assertEquals(1000, data.remaining());
+        Assert.assertEquals((byte) (i + 999), data.get(999));
+    }
+
+    // each record written to a pipe is read before the next one is written, not once a prefetch buffer fills
+    @Test(timeout = 10000)
+    public void pipeTest() throws IOException {
+        PipedOutputStream out = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(out, 64 * 1024);
+        out.write(globalHeader());
+        try (PcapReader reader = new StreamPcapReader(Compression.openStream(in, "pipe"), "pipe")) {
+            Assert.assertEquals(1, reader.getLinkType());
+            for (int i = 0; i < 3; i++) {
+                out.write(record(i));
+                out.flush();
+                assertRecord(reader, i);
+            }
+            out.close();
+            Assert.assertFalse(reader.next());
+        }
+    }
+
+    // the records read before a read error are still returned, then the error is raised
+    @Test
+    public void readErrorTest() throws IOException {
+        InputStream failing = new InputStream() {
+            private boolean sent = false;
+
+            @Override
+            public int read() throws IOException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (sent) {
+                    throw new IOException("device error");
+                }
+                sent = true;
+                byte[] pcap = pcap();
+                System.arraycopy(pcap, 0, buffer, offset, pcap.length);
+                return pcap.length;
+            }
+        };
+        try (PcapReader reader = new StreamPcapReader(new PrefetchInputStream(failing, "failing"), "failing")) {
+            for (int i = 0; i < 3; i++) {
+                assertRecord(reader, i);
+            }
+            try {
+                reader.next();
+                Assert.fail("the read error was not raised");
+            } catch (IOException e) {
+                Assert.assertEquals("device error", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void gzipTest() throws IOException {
+        assertRecords(writeCompressedPcap(Compression.GZIP), Compression.GZIP);
+    }
+
+    @Test
+    public void zstdTest() throws IOException {
+        assertRecords(writeCompressedPcap(Compression.ZSTD), Compression.ZSTD);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * TailingPcapReaderTest
+ * <p/>
+ * Tests for TailingPcapReader
+ */
+public class TailingPcapReaderTest {
+
+    @Test
+    public void growingFileTest() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(24 + 2 * (16 + 4)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MappedPcapReader.MAGIC_MICROSECONDS).putShort((short) 2).putShort((short) 4)
+                .putInt(0).putInt(0).putInt(65535).putInt(1);
+        buffer.putInt(1500000000).putInt(0).putInt(4).putInt(4).put(new byte[]{1, 2, 3, 4});
+        buffer.putInt(1500000001).putInt(0).putInt(4).putInt(4).put(new byte[]{5, 6, 7, 8});
+        File file = File.createTempFile("lfpa", ".pcap");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file);
+             TailingPcapReader reader = new TailingPcapReader(file)) {
+            // nothing written yet
+            Assert.assertFalse(reader.hasHeader());
+            Assert.assertFalse(reader.next());
+            // the header, the first record and half of the second
+            out.write(buffer.array(), 0, 24 + 20 + 10);
+            out.flush();
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(1, reader.getLinkType());
+            Assert.assertEquals(4, reader.getPacketData().remaining());
+            Assert.assertEquals(4, reader.getPacketData().get(3));
+            Assert.assertFalse(reader.next());
+            // the rest of the second record
+            out.write(buffer.array(), 24 + 20 + 10, 10);
+            out.flush();
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(1500000001000000000L, reader.getTimestampNanos());
+            Assert.assertEquals(8, reader.getPacketData().get(3));
+            Assert.assertFalse(reader.next());
+            Assert.assertFalse(reader.wasTruncated());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * HyperLogLogTest
+ * <p/>
+ * Tests for HyperLogLog
+ */
+public class HyperLogLogTest {
+
+    private static void assertWithinError(long expected, HyperLogLog sketch) {
+        // 4 standard errors, so the test does not depend on luck
+        double bound = 4 * sketch.getStandardError() * expected;
+        Assert.assertEquals(expected, sketch.estimate(), bound);
+    }
+
+    @Test
+    public void estimateTest() {
+        HyperLogLog sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        Assert.assertEquals(0, sketch.estimate());
+        for (int i = 0; i < 100; i++) {
+            sketch.add(HyperLogLog.hash(i));
+            sketch.add(HyperLogLog.hash(i)); // duplicates do not count
+        }
+        Assert.assertEquals(100, sketch.estimate()); // linear counting is exact this far below 2^14
+        for (int i = 100; i < 1000000; i++) {
+            sketch.add(HyperLogLog.hash(i));
+        }
+        assertWithinError(1000000, sketch);
+    }
+
+    @Test
+    public void mergeTest() {
+        HyperLogLog first = new HyperLogLog(12);
+        HyperLogLog second = new HyperLogLog(12);
+        for (int i = 0; i < 60000; i++) {
+            first.add(HyperLogLog.hash(i));
+            second.add(HyperLogLog.hash(i + 40000));
+        }
+        first.merge(second);
+        assertWithinError(100000, first);
+    }
+
+    @Test
+    public void approximateUniqueIpAddressesTest() {
+        UniqueIpAddresses exact = new UniqueIpAddresses();
+        UniqueIpAddresses approximate = new UniqueIpAddresses(HyperLogLog.DEFAULT_PRECISION);
+        for (int i = 0; i < 50000; i++) {
+            exact.addIpv4(0x0a000000 + i);
+            approximate.addIpv6(0x20010db800000000L, i);
+        }
+        approximate.add("10.0.0.1");
+        exact.merge(approximate); // mixing turns the exact set into a sketch
+        Assert.assertTrue(exact.isApproximate());
+        Assert.assertEquals(100000, exact.size(), 4 * 1.04 / Math.sqrt(1 << HyperLogLog.DEFAULT_PRECISION) * 100000);
+        Assert.assertTrue(exact.describeSize().startsWith("~"));
+    }
+}
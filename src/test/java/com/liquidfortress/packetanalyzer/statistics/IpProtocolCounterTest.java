@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.pcap4j.packet.namednumber.IpNumber;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * IpProtocolCounterTest
+ * <p/>
+ * Tests for ArrayIpProtocolCounter and StripedIpProtocolCounter
+ */
+public class IpProtocolCounterTest {
+
+    @Test
+    public void arrayCounterTest() {
+        IpProtocolCounter counter = new ArrayIpProtocolCounter();
+        counter.increment(6, 1500);
+        counter.increment(6, 40);
+        counter.increment(17, 76);
+        counter.increment(IpNumber.ICMPV4);
+        Assert.assertEquals(2, counter.getPacketCount(6));
+        Assert.assertEquals(1540, counter.getByteCount(6));
+        Assert.assertEquals(1, counter.getPacketCount(17));
+        Assert.assertEquals(76, counter.getByteCount(17));
+        Assert.assertEquals(1, counter.getPacketCount(1));
+        Assert.assertEquals(0, counter.getByteCount(1));
+        Assert.assertEquals(0, counter.getPacketCount(255));
+        // the observed protocols, in protocol number order
+        Iterator<Map.Entry<IpNumber, Integer>> entries = counter.entrySet().iterator();
+        Assert.assertEquals(IpNumber.ICMPV4, entries.next().getKey());
+        Assert.assertEquals(2, (int) entries.next().getValue());
+        Assert.assertEquals(IpNumber.UDP, entries.next().getKey());
+        Assert.assertFalse(entries.hasNext());
+    }
+
+    @Test
+    public void mergeTest() {
+        IpProtocolCounter array = new ArrayIpProtocolCounter();
+        array.increment(6, 100);
+        IpProtocolCounter striped = new StripedIpProtocolCounter();
+        striped.increment(6, 50);
+        striped.increment(17, 30);
+        array.merge(striped);
+        Assert.assertEquals(2, array.getPacketCount(6));
+        Assert.assertEquals(150, array.getByteCount(6));
+        Assert.assertEquals(30, array.getByteCount(17));
+        striped.merge(array);
+        Assert.assertEquals(3, striped.getPacketCount(6));
+        Assert.assertEquals(200, striped.getByteCount(6));
+        // a counter shared by several summaries is not added to itself
+        striped.merge(striped);
+        Assert.assertEquals(3, striped.getPacketCount(6));
+    }
+
+    @Test
+    public void concurrentIncrementTest() throws InterruptedException {
+        IpProtocolCounter counter = new StripedIpProtocolCounter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int packet = 0; packet < 100000; packet++) {
+                    counter.increment(6, 60);
+                    counter.increment(packet & 0xff, 1);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 391 of each thread's second increments also land on protocol 6
+        Assert.assertEquals(4 * (100000 + 391), counter.getPacketCount(6));
+        long packets = 0;
+        long bytes = 0;
+        for (int protocol = 0; protocol < IpProtocolCounter.PROTOCOLS; protocol++) {
+            packets += counter.getPacketCount(protocol);
+            bytes += counter.getByteCount(protocol);
+        }
+        Assert.assertEquals(2 * 4 * 100000, packets);
+        Assert.assertEquals(4 * 100000 * 60 + 4 * 100000, bytes);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * PortCounterTest
+ * <p/>
+ * Tests for PortCounter
+ */
+public class PortCounterTest {
+
+    @Test
+    public void scoreTest() {
+        PortCounter portCounter = new PortCounter(port -> (port < 1024) ? 3 : 1);
+        portCounter.add(22);
+        portCounter.add(22);
+        portCounter.add(8080);
+        Assert.assertEquals(2, portCounter.distinct());
+        Assert.assertEquals(4, portCounter.getScore());
+        portCounter.remove(22);
+        Assert.assertEquals(4, portCounter.getScore());
+        portCounter.remove(22);
+        Assert.assertEquals(1, portCounter.getScore());
+    }
+
+    @Test
+    public void denseTest() {
+        PortCounter portCounter = new PortCounter(port -> 1);
+        for (int port = 0; port < 65536; port++) {
+            portCounter.add(port);
+        }
+        portCounter.add(443);
+        Assert.assertEquals(65536, portCounter.distinct());
+        Assert.assertEquals(65536, portCounter.getScore());
+        for (int port = 0; port < 65536; port++) {
+            portCounter.remove(port);
+        }
+        Assert.assertEquals(1, portCounter.distinct());
+        portCounter.remove(443);
+        Assert.assertEquals(0, portCounter.distinct());
+        portCounter.add(443);
+        Assert.assertEquals(1, portCounter.getScore());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SlidingWindowTest
+ * <p/>
+ * Tests for SlidingWindow
+ */
+public class SlidingWindowTest {
+
+    @Test
+    public void expireTest() {
+        SlidingWindow<Void> window = new SlidingWindow<>(100, true);
+        for (int i = 0; i < 50; i++) {
+            window.add(i * 10, i % 5, 0);
+        }
+        // events at 390 and earlier are expired by the one at 490
+        Assert.assertEquals(10, window.size());
+        Assert.assertEquals(5, window.distinct());
+        Assert.assertEquals(400, window.getEarliest());
+        Assert.assertEquals(490, window.getLatest());
+        window.expire(1000);
+        Assert.assertTrue(window.isEmpty());
+        Assert.assertEquals(0, window.distinct());
+    }
+
+    @Test
+    public void removeTest() {
+        SlidingWindow<String> window = new SlidingWindow<>(1000, false);
+        for (int i = 1; i <= 10; i++) {
+            window.add(i, i, 0, "event " + i);
+        }
+        Assert.assertTrue(window.remove(1));
+        Assert.assertTrue(window.remove(10));
+        Assert.assertTrue(window.remove(5));
+        Assert.assertFalse(window.remove(5));
+        Assert.assertFalse(window.remove(42));
+        Assert.assertEquals(7, window.size());
+        Assert.assertEquals(2, window.getEarliest());
+        Assert.assertEquals(9, window.getLatest());
+        List<String> attachments = new ArrayList<>();
+        window.forEach((timestampNanos, value, data, attachment) -> attachments.add(attachment));
+        Assert.assertEquals(7, attachments.size());
+        Assert.assertFalse(attachments.contains("event 5"));
+    }
+
+    @Test
+    public void reportTest() {
+        SlidingWindow<Void> window = new SlidingWindow<>(1000, true);
+        Object first = new Object();
+        Object second = new Object();
+        List<Long> reported = new ArrayList<>();
+        window.add(1, 1, 0);
+        window.add(2, 2, 0);
+        window.report(first, (timestampNanos, value, data, attachment) -> reported.add(value));
+        window.add(3, 3, 0);
+        window.report(first, (timestampNanos, value, data, attachment) -> reported.add(value));
+        Assert.assertEquals(3, reported.size());
+        // a different incident gets every event still in the window
+        reported.clear();
+        window.report(second, (timestampNanos, value, data, attachment) -> reported.add(value));
+        Assert.assertEquals(3, reported.size());
+    }
+}
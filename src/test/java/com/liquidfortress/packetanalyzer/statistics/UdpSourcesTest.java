@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * UdpSourcesTest
+ * <p/>
+ * Tests for UdpSources
+ */
+public class UdpSourcesTest {
+
+    @Test
+    public void ipv4Test() {
+        UdpSources udpSources = new UdpSources();
+        for (int port = 0; port < 65536; port += 7) {
+            Assert.assertTrue(udpSources.addIpv4(0x0a000001, port));
+        }
+        Assert.assertTrue(udpSources.addIpv4(0, 0)); // 0.0.0.0:0 packs to zero
+        Assert.assertFalse(udpSources.addIpv4(0, 0));
+        Assert.assertFalse(udpSources.add("10.0.0.1:0"));
+        Assert.assertTrue(udpSources.add("10.0.0.1:53"));
+        Assert.assertTrue(udpSources.contains("10.0.0.1:53"));
+        Assert.assertFalse(udpSources.contains("10.0.0.2:53"));
+        Assert.assertFalse(udpSources.contains("not a source"));
+        Assert.assertEquals(9363 + 2, udpSources.size());
+    }
+
+    @Test
+    public void ipv6Test() {
+        UdpSources udpSources = new UdpSources();
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(udpSources.addIpv6(0xfe80000000000000L, i, 53));
+        }
+        Assert.assertTrue(udpSources.addIpv6(0xfe80000000000000L, 1, 54));
+        Assert.assertFalse(udpSources.add("fe80::1:53"));
+        Assert.assertTrue(udpSources.contains("fe80::1:54"));
+        Assert.assertTrue(udpSources.addIpv6(0, 0, 0));
+        Assert.assertEquals(1002, udpSources.size());
+    }
+
+    @Test
+    public void mergeTest() {
+        UdpSources first = new UdpSources();
+        first.add("10.0.0.1:53");
+        first.add("::1:53");
+        UdpSources second = new UdpSources();
+        second.add("10.0.0.1:53");
+        second.add("10.0.0.1:5353");
+        second.add("::1:53");
+        first.merge(second);
+        Assert.assertEquals(3, first.size());
+        Assert.assertTrue(first.contains("10.0.0.1:5353"));
+    }
+
+    // an exact set that takes in an approximate one becomes approximate itself and keeps no members
+    @Test
+    public void approximateMergeTest() {
+        UdpSources exact = new UdpSources();
+        for (int port = 0; port < 1000; port++) {
+            exact.addIpv4(0x0a000001, port);
+        }
+        exact.add("::1:53");
+        UdpSources approximate = new UdpSources(14);
+        approximate.add("10.0.0.2:53");
+        exact.merge(approximate);
+        Assert.assertTrue(exact.isApproximate());
+        Assert.assertEquals(1002, exact.size(), 1002 * 0.05);
+        Assert.assertFalse(exact.contains("10.0.0.1:1"));
+        Assert.assertTrue(exact.addIpv6(0, 1, 53));
+    }
+
+    // only address literals are accepted, so no name is ever looked up
+    @Test
+    public void hostNameTest() {
+        UdpSources udpSources = new UdpSources();
+        try {
+            udpSources.add("localhost:53");
+            Assert.fail("a host name was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertFalse(udpSources.contains("localhost:53"));
+        Assert.assertTrue(udpSources.add("127.0.0.1:53"));
+        Assert.assertTrue(udpSources.contains("127.0.0.1:53"));
+    }
+}
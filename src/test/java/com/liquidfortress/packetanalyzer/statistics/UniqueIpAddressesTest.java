@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * UniqueIpAddressesTest
+ * <p/>
+ * Tests for UniqueIpAddresses
+ */
+public class UniqueIpAddressesTest {
+
+    @Test
+    public void ipv4Test() {
+        UniqueIpAddresses uniqueIpAddresses = new UniqueIpAddresses();
+        // enough addresses to make the set grow several times
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(uniqueIpAddresses.addIpv4(0x0a000000 + i));
+        }
+        Assert.assertTrue(uniqueIpAddresses.addIpv4(0)); // 0.0.0.0 is a valid address
+        Assert.assertFalse(uniqueIpAddresses.addIpv4(0));
+        Assert.assertFalse(uniqueIpAddresses.add("10.0.0.1"));
+        Assert.assertEquals(10001, uniqueIpAddresses.size());
+    }
+
+    @Test
+    public void ipv6Test() {
+        UniqueIpAddresses uniqueIpAddresses = new UniqueIpAddresses();
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(uniqueIpAddresses.addIpv6(0xfe80000000000000L, i));
+        }
+        Assert.assertTrue(uniqueIpAddresses.addIpv6(0, 0));
+        Assert.assertFalse(uniqueIpAddresses.add("fe80::1"));
+        Assert.assertTrue(uniqueIpAddresses.add("2001:db8::1"));
+        Assert.assertEquals(1002, uniqueIpAddresses.size());
+    }
+
+    @Test
+    public void mergeTest() {
+        UniqueIpAddresses first = new UniqueIpAddresses();
+        first.add("10.0.0.1");
+        first.add("::1");
+        UniqueIpAddresses second = new UniqueIpAddresses();
+        second.add("10.0.0.1");
+        second.add("10.0.0.2");
+        second.add("::2");
+        first.merge(second);
+        Assert.assertEquals(4, first.size());
+        Assert.assertEquals("UniqueIpAddresses{10.0.0.1, 10.0.0.2, 0:0:0:0:0:0:0:1, 0:0:0:0:0:0:0:2}".length(), first.toString().length());
+    }
+
+    // an exact set that takes in an approximate one becomes approximate itself, keeping what it had counted
+    @Test
+    public void approximateMergeTest() {
+        UniqueIpAddresses exact = new UniqueIpAddresses();
+        for (int i = 0; i < 1000; i++) {
+            exact.addIpv4(0x0a000000 + i);
+        }
+        exact.add("::1");
+        UniqueIpAddresses approximate = new UniqueIpAddresses(14);
+        for (int i = 500; i < 1500; i++) {
+            approximate.addIpv4(0x0a000000 + i);
+        }
+        exact.merge(approximate);
+        Assert.assertTrue(exact.isApproximate());
+        Assert.assertEquals(1501, exact.size(), 1501 * 0.05);
+        Assert.assertTrue(exact.addIpv4(0x0b000001));
+        Assert.assertTrue(exact.toString().startsWith("UniqueIpAddresses{"));
+        // and can in turn be merged into another exact set
+        UniqueIpAddresses other = new UniqueIpAddresses();
+        other.add("10.0.0.1");
+        other.merge(exact);
+        Assert.assertTrue(other.isApproximate());
+        Assert.assertEquals(1502, other.size(), 1502 * 0.05);
+    }
+
+    // only address literals are accepted, so no name is ever looked up
+    @Test
+    public void hostNameTest() {
+        UniqueIpAddresses uniqueIpAddresses = new UniqueIpAddresses();
+        for (String name : new String[]{"localhost", "example.com", "", "10.0.0.1/8"}) {
+            try {
+                uniqueIpAddresses.add(name);
+                Assert.fail(name + " was accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        Assert.assertTrue(uniqueIpAddresses.add("FE80::1"));
+        Assert.assertEquals(1, uniqueIpAddresses.size());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.statistics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * WindowedLinearCounterTest
+ * <p/>
+ * Tests for WindowedLinearCounter
+ */
+public class WindowedLinearCounterTest {
+
+    @Test
+    public void estimateTest() {
+        WindowedLinearCounter counter = new WindowedLinearCounter(5000, 5);
+        for (int i = 0; i < 200; i++) {
+            counter.add(i * 10, HyperLogLog.hash(i));
+            counter.add(i * 10, HyperLogLog.hash(i)); // repeats do not count
+        }
+        Assert.assertEquals(200, counter.estimate(), 10);
+    }
+
+    @Test
+    public void expireTest() {
+        WindowedLinearCounter counter = new WindowedLinearCounter(5000, 5);
+        for (int i = 0; i < 100; i++) {
+            counter.add(0, HyperLogLog.hash(i));
+        }
+        for (int i = 100; i < 150; i++) {
+            counter.add(3000, HyperLogLog.hash(i));
+        }
+        Assert.assertEquals(150, counter.estimate(), 10);
+        // the first bucket leaves the window
+        counter.expire(5000);
+        Assert.assertEquals(50, counter.estimate(), 5);
+        counter.expire(9000);
+        Assert.assertTrue(counter.isEmpty());
+        Assert.assertEquals(0, counter.estimate());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * ActiveTcpConnectionsTest
+ * <p/>
+ * Tests for ActiveTcpConnections
+ */
+public class ActiveTcpConnectionsTest {
+    private static final long SECOND = 1000000000L;
+
+    private static PacketInfo packet(int client, int clientPort, long timestampNanos) {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.ipVersion = PacketInfo.IPV4;
+        packetInfo.ipProtocol = 6;
+        packetInfo.sourceIpv4 = client;
+        packetInfo.sourcePort = clientPort;
+        packetInfo.destinationIpv4 = 0x0a000001;
+        packetInfo.destinationPort = 80;
+        packetInfo.timestampNanos = timestampNanos;
+        return packetInfo;
+    }
+
+    @Test
+    public void putGetRemoveTest() {
+        ActiveTcpConnections connections = new ActiveTcpConnections();
+        HashMap<Integer, TcpConnectionTracker> expected = new HashMap<>();
+        Random random = new Random(17);
+        // few distinct flows and many removals, so probe runs are often shifted back
+        for (int i = 0; i < 100000; i++) {
+            int client = random.nextInt(500);
+            PacketInfo packetInfo = packet(client, 40000, 0);
+            if (random.nextInt(3) == 0) {
+                Assert.assertSame(expected.remove(client), connections.remove(packetInfo));
+            } else if (!expected.containsKey(client)) {
+                TcpConnectionTracker tracker = new TcpConnectionTracker("c" + client, "s");
+                expected.put(client, tracker);
+                connections.put(packetInfo, tracker);
+            }
+            Assert.assertEquals(expected.size(), connections.size());
+        }
+        for (int client = 0; client < 500; client++) {
+            Assert.assertSame(expected.get(client), connections.get(packet(client, 40000, 0)));
+        }
+    }
+
+    @Test
+    public void timeoutTest() {
+        ClosedTcpConnections expired = new ClosedTcpConnections();
+        ActiveTcpConnections connections = new ActiveTcpConnections(100, 10 * SECOND, 60 * SECOND, expired);
+        connections.put(packet(1, 1000, 0), new TcpConnectionTracker("idle", "s"));
+        connections.put(packet(2, 1000, 0), new TcpConnectionTracker("busy", "s"));
+        for (long time = 0; time <= 30 * SECOND; time += SECOND) {
+            connections.expire(packet(3, 1000, time));
+            connections.get(packet(2, 1000, time)); // keeps the second connection active
+        }
+        Assert.assertEquals(1, expired.size());
+        Assert.assertEquals("idle", expired.iterator().next().getClientAddress());
+        // active, but open for longer than the absolute timeout
+        for (long time = 31 * SECOND; time <= 61 * SECOND; time += SECOND) {
+            connections.get(packet(2, 1000, time));
+            connections.expire(packet(3, 1000, time));
+        }
+        Assert.assertEquals(2, expired.size());
+        Assert.assertEquals(0, connections.size());
+    }
+
+    @Test
+    public void capacityTest() {
+        ClosedTcpConnections expired = new ClosedTcpConnections();
+        ActiveTcpConnections connections = new ActiveTcpConnections(3, 3600 * SECOND, 3600 * SECOND, expired);
+        for (int client = 1; client <= 3; client++) {
+            connections.put(packet(client, 1000, client * SECOND), new TcpConnectionTracker("c" + client, "s"));
+        }
+        connections.put(packet(4, 1000, 4 * SECOND), new TcpConnectionTracker("c4", "s"));
+        Assert.assertEquals(3, connections.size());
+        Assert.assertEquals("c1", expired.iterator().next().getClientAddress()); // least recently seen
+        Assert.assertNull(connections.get(packet(1, 1000, 5 * SECOND)));
+    }
+
+    @Test
+    public void offHeapTest() {
+        for (FlowStorage flowStorage : new FlowStorage[]{FlowStorage.DIRECT, FlowStorage.MAPPED}) {
+            ActiveTcpConnections heap = new ActiveTcpConnections();
+            ActiveTcpConnections offHeap = new ActiveTcpConnections(ActiveTcpConnections.DEFAULT_CAPACITY,
+                    3600 * SECOND, 3600 * SECOND, FlowStore.create(flowStorage), new ClosedTcpConnections());
+            // enough connections for several slabs; clients on both sides of the server address
+            for (int client = 0x09000000; client < 0x0b000000; client += 0x1000) {
+                PacketInfo packetInfo = packet(client, 40000, 0);
+                for (ActiveTcpConnections connections : new ActiveTcpConnections[]{heap, offHeap}) {
+                    TcpConnectionTracker tracker = connections.open(packetInfo);
+                    tracker.setClosingPacketNumber(client);
+                    tracker.addFlowBytes(client & 0xffff);
+                }
+            }
+            Assert.assertEquals(heap.size(), offHeap.size());
+            ActiveTcpConnections merged = new ActiveTcpConnections(ActiveTcpConnections.DEFAULT_CAPACITY,
+                    3600 * SECOND, 3600 * SECOND, FlowStore.create(flowStorage), new ClosedTcpConnections());
+            merged.merge(offHeap);
+            for (int client = 0x09000000; client < 0x0b000000; client += 0x1000) {
+                PacketInfo packetInfo = packet(client, 40000, 0);
+                TcpConnectionTracker expected = heap.get(packetInfo);
+                TcpConnectionTracker actual = merged.get(packetInfo);
+                Assert.assertTrue(actual instanceof OffHeapTcpConnectionTracker);
+                Assert.assertEquals(expected.getClientAddress(), actual.getClientAddress());
+                Assert.assertEquals(expected.getServerAddress(), actual.getServerAddress());
+                Assert.assertEquals(client, actual.getClosingPacketNumber());
+                Assert.assertEquals(expected.toString(), actual.toString());
+                // a removed connection's tracker no longer depends on the store
+                TcpConnectionTracker removed = offHeap.remove(packetInfo);
+                Assert.assertFalse(removed instanceof OffHeapTcpConnectionTracker);
+                Assert.assertEquals(expected.toString(), removed.toString());
+            }
+            Assert.assertEquals(0, offHeap.size());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * ClosedTcpConnectionsTest
+ * <p/>
+ * Tests for ClosedTcpConnections
+ */
+public class ClosedTcpConnectionsTest {
+
+    private static TcpConnectionTracker tracker(int shard, long closingPacketNumber) {
+        TcpConnectionTracker tracker = new TcpConnectionTracker("10.0.0." + shard + ":40000", "10.0.1.1:80");
+        tracker.addFlowBytes(closingPacketNumber * 10);
+        tracker.setClosingPacketNumber(closingPacketNumber);
+        return tracker;
+    }
+
+    @Test
+    public void spooledMergeAndSortTest() {
+        ClosedTcpConnections spooled = new ClosedTcpConnections(true);
+        ClosedTcpConnections buffered = new ClosedTcpConnections();
+        // three shards closing interleaved connections; enough to fill several writer buffers
+        for (int shard = 0; shard < 3; shard++) {
+            ClosedTcpConnections shardSpooled = new ClosedTcpConnections(true);
+            ClosedTcpConnections shardBuffered = new ClosedTcpConnections();
+            for (long packetNumber = shard; packetNumber < 30000; packetNumber += 3) {
+                shardSpooled.add(tracker(shard, packetNumber));
+                shardBuffered.add(tracker(shard, packetNumber));
+            }
+            spooled.merge(shardSpooled);
+            buffered.merge(shardBuffered);
+            Assert.assertEquals(0, shardSpooled.size());
+        }
+        spooled.sortByClosingPacketNumber();
+        buffered.sortByClosingPacketNumber();
+        Assert.assertEquals(buffered.size(), spooled.size());
+        Iterator<TcpConnectionTracker> expected = buffered.iterator();
+        ArrayList<TcpConnectionTracker> actual = new ArrayList<>();
+        spooled.forEach(actual::add);
+        Assert.assertEquals(30000, actual.size());
+        for (TcpConnectionTracker tracker : actual) {
+            Assert.assertEquals(expected.next().toString(), tracker.toString());
+        }
+        // still readable after reading, and open for more connections
+        spooled.add(tracker(0, 30000));
+        Assert.assertEquals(30001, spooled.stream().count());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
+import com.liquidfortress.packetanalyzer.logging.LoggerFactory;
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * SynFloodDetectorTest
+ * <p/>
+ * Tests for SynFloodDetector
+ */
+public class SynFloodDetectorTest {
+    private static final long MILLISECOND = 1000000L;
+
+    @BeforeClass
+    public static void setUpLogger() {
+        Main.log = LoggerFactory.getLogger(new ValidatedArgs());
+    }
+
+    private static PacketInfo syn(int client, int server, long packetNumber, long timestampNanos) {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.packetNumber = packetNumber;
+        packetInfo.timestampNanos = timestampNanos;
+        packetInfo.ipVersion = PacketInfo.IPV4;
+        packetInfo.ipProtocol = 6;
+        packetInfo.sourceIpv4 = client;
+        packetInfo.sourcePort = 40000;
+        packetInfo.destinationIpv4 = server;
+        packetInfo.destinationPort = 80;
+        packetInfo.flags = PacketInfo.SYN;
+        return packetInfo;
+    }
+
+    @Test
+    public void synFloodTest() {
+        SynFloodDetector detector = new SynFloodDetector(10);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        int server = 0xc0a80101;
+        String serverAddress = PacketInfoUtils.formatIpv4Address(server);
+        long time = 0;
+        for (int i = 1; i <= 100; i++) {
+            time += MILLISECOND;
+            detector.detect(serverAddress, syn(0x0a000000 + i, server, i, time), pcapFileSummary);
+        }
+        detector.closeAll(time, pcapFileSummary);
+        Assert.assertEquals(1, pcapFileSummary.attackSummaries.size());
+        Assert.assertEquals("SYN FLOOD", pcapFileSummary.attackSummaries.getFirst().getAttackName());
+    }
+
+    // a few SYNs to each of many servers, as with spoofed destinations, are dropped once they expire
+    @Test
+    public void purgeTest() {
+        SynFloodDetector detector = new SynFloodDetector(10);
+        PcapFileSummary pcapFileSummary = new PcapFileSummary("test");
+        long time = 0;
+        for (int i = 1; i <= 1000; i++) {
+            time += MILLISECOND / 10;
+            int server = 0xc0a80000 + i;
+            detector.detect(PacketInfoUtils.formatIpv4Address(server), syn(0x0a000001, server, i, time), pcapFileSummary);
+        }
+        Assert.assertEquals(1000, detector.serverCount());
+        // two lookback windows later only the latest server is left
+        for (int i = 1001; i <= 1002; i++) {
+            time += 1200 * MILLISECOND;
+            detector.detect("10.9.9.9", syn(0x0a000001, 0x0a090909, i, time), pcapFileSummary);
+        }
+        Assert.assertEquals(1, detector.serverCount());
+        Assert.assertEquals(0, pcapFileSummary.attackSummaries.size());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * LongIntHashMapTest
+ * <p/>
+ * Tests for LongIntHashMap
+ */
+public class LongIntHashMapTest {
+    private static final int INITIAL_MASK = 7; // the map starts with 8 slots and holds 4 keys before growing
+
+    // the first keys from start up whose home slot in a new map is home
+    private static List<Long> keysHomedAt(int home, int count, long start) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = start; keys.size() < count; key++) {
+            if ((LongHashSet.mix(key) & INITIAL_MASK) == home) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    public void countTest() {
+        LongIntHashMap map = new LongIntHashMap();
+        Assert.assertEquals(1, map.increment(0)); // 0 is a valid key
+        Assert.assertEquals(2, map.increment(0));
+        Assert.assertEquals(1, map.increment(-1));
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals(1, map.decrement(0));
+        Assert.assertEquals(0, map.decrement(-1));
+        Assert.assertEquals(0, map.decrement(-1)); // absent keys stay absent
+        Assert.assertEquals(1, map.size());
+        Assert.assertEquals(0, map.get(-1));
+        map.clear();
+        Assert.assertEquals(0, map.size());
+        Assert.assertEquals(0, map.get(0));
+    }
+
+    // keys homed at the last slots run over the end of the table; removing them in any order
+    // must shift the wrapped entries back without losing the ones still in the map
+    @Test
+    public void wrappedRemovalTest() {
+        List<Long> keys = new ArrayList<>();
+        keys.add(keysHomedAt(6, 1, 0).get(0));
+        keys.addAll(keysHomedAt(7, 2, 0)); // the second one wraps to slot 0
+        keys.add(keysHomedAt(0, 1, 0).get(0)); // displaced to slot 1 by the wrapped key
+        for (int[] order : permutations(keys.size())) {
+            LongIntHashMap map = new LongIntHashMap();
+            for (int i = 0; i < keys.size(); i++) {
+                for (int j = 0; j <= i; j++) {
+                    map.increment(keys.get(i)); // key i has count i + 1
+                }
+            }
+            boolean[] removed = new boolean[keys.size()];
+            for (int i : order) {
+                for (int count = i; count >= 0; count--) {
+                    Assert.assertEquals(count, map.decrement(keys.get(i)));
+                }
+                removed[i] = true;
+                for (int j = 0; j < keys.size(); j++) {
+                    Assert.assertEquals(removed[j] ? 0 : j + 1, map.get(keys.get(j)));
+                }
+            }
+            Assert.assertEquals(0, map.size());
+        }
+    }
+
+    // many keys sharing a few home slots, added and removed at random, against a HashMap
+    @Test
+    public void collidingKeysTest() {
+        List<Long> keys = new ArrayList<>();
+        for (int home = 0; home <= INITIAL_MASK; home++) {
+            keys.addAll(keysHomedAt(home, 8, 0));
+        }
+        LongIntHashMap map = new LongIntHashMap();
+        HashMap<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long key = keys.get(random.nextInt(keys.size()));
+            if (random.nextBoolean()) {
+                Assert.assertEquals((int) expected.merge(key, 1, Integer::sum), map.increment(key));
+            } else {
+                int count = expected.getOrDefault(key, 0);
+                if (count > 1) {
+                    expected.put(key, count - 1);
+                } else {
+                    expected.remove(key);
+                }
+                Assert.assertEquals(Math.max(count - 1, 0), map.decrement(key));
+            }
+            Assert.assertEquals(expected.size(), map.size());
+        }
+        for (long key : keys) {
+            Assert.assertEquals((int) expected.getOrDefault(key, 0), map.get(key));
+        }
+        HashMap<Long, Integer> actual = new HashMap<>();
+        map.forEach((key, count) -> actual.put(key, count));
+        Assert.assertEquals(expected, actual);
+    }
+
+    private static List<int[]> permutations(int n) {
+        List<int[]> permutations = new ArrayList<>();
+        permute(new int[n], new boolean[n], 0, permutations);
+        return permutations;
+    }
+
+    private static void permute(int[] order, boolean[] used, int position, List<int[]> permutations) {
+        if (position == order.length) {
+            permutations.add(order.clone());
+            return;
+        }
+        for (int i = 0; i < order.length; i++) {
+            if (!used[i]) {
+                used[i] = true;
+                order[position] = i;
+                permute(order, used, position + 1, permutations);
+                used[i] = false;
+            }
+        }
+    }
+}